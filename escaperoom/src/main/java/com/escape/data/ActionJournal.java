@@ -0,0 +1,738 @@
+package com.escape.data;
+
+import com.escape.game.ItemRegistry;
+import com.escape.objects.InteractiveObject;
+import com.escape.objects.ObjectState;
+import com.escape.puzzles.Puzzle;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of player actions, shared by every session in the process.
+ *
+ * Each action is logged as a small binary record carrying the state it left
+ * behind (the object's state after a collect, the puzzle's state words after
+ * a solve attempt), so replaying a record is just putting that state back and
+ * can't diverge from what the player saw. Records from all sessions go into
+ * one segment file: [varint length][payload][CRC32C of payload].
+ *
+ * Appending only copies the record into a buffer. A single writer thread
+ * group-commits whatever has built up every commit interval with one write
+ * and one force(), however many sessions contributed to it. When a session has
+ * logged enough since its last checkpoint, the game hands it a SaveSnapshot,
+ * which the writer stores next to the log; segments are rolled at a size
+ * limit and deleted once every session in them has checkpointed past them.
+ *
+ * On start-up the directory is recovered with JournalRecovery: the newest
+ * checkpoint of each session plus the records logged after it. A torn record
+ * at the end of the log (a crash mid-write) ends recovery and is cut off.
+ * Only one process may use a directory at a time.
+ */
+public class ActionJournal {
+
+    public static final String DEFAULT_DIRECTORY = "saves/journal";
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 20;
+    public static final long DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_CHECKPOINT_BYTES = 16 * 1024;
+
+    static final int SEGMENT_MAGIC = 0x484A4E4C;      // "HJNL"
+    static final int CHECKPOINT_MAGIC = 0x48434B50;   // "HCKP"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int CHECKPOINT_HEADER_SIZE = 16;
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_EXTENSION = ".log";
+    static final String CHECKPOINT_EXTENSION = ".ckpt";
+
+    // Record types. Object records carry the object's state after the action,
+    // puzzle records its state words.
+    static final int DECLARE = 0;   // binds a session's number to its id within a segment
+    public static final int START = 1;
+    public static final int COLLECT = 2;
+    public static final int UNLOCK = 3;
+    public static final int OPEN = 4;
+    public static final int CYCLE = 5;
+    public static final int PLACE = 6;
+    public static final int EXAMINE = 7;
+    public static final int OBJECT = 8;
+    public static final int SOLVE_ATTEMPT = 9;
+    public static final int PUZZLE = 10;
+    public static final int TRANSITION = 11;
+    public static final int INVENTORY = 12;
+    public static final int TIMER = 13;
+    public static final int END = 14;
+
+    // Flush early rather than let one batch grow without bound
+    private static final int FLUSH_BYTES = 256 * 1024;
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private static final ThreadLocal<VarintWriter> SCRATCH = ThreadLocal.withInitial(() -> new VarintWriter(256));
+
+    private final Path directory;
+    private final long commitIntervalNanos;
+    private final long segmentLimit;
+    private final int checkpointBytes;
+    private final JournalRecovery recovery;
+    private final Thread writer;
+
+    // Everything below is guarded by lock
+    private final Object lock = new Object();
+    private VarintWriter active = new VarintWriter(64 * 1024);
+    private VarintWriter spare = new VarintWriter(64 * 1024);
+    private int appendSegment;
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean urgent;
+    private boolean closed;
+    private int nextSessionRef = 1;
+    private final Map<String, Session> sessions = new HashMap<>();
+    // Per segment: each session in it and the highest sequence number it logged there
+    private final TreeMap<Integer, Map<String, Long>> segmentSessions = new TreeMap<>();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final ArrayDeque<Cover> covers = new ArrayDeque<>();
+    private final Map<String, PendingCheckpoint> pendingCheckpoints = new HashMap<>();
+
+    // Owned by the writer thread
+    private FileChannel channel;
+    private int writeSegment;
+    private long segmentBytes;
+
+    // Stats
+    private volatile long commits;
+    private volatile long bytesWritten;
+    private volatile long checkpointsWritten;
+    private volatile long lastCommitNanos;
+
+    public ActionJournal() throws IOException {
+        this(Paths.get(DEFAULT_DIRECTORY), DEFAULT_COMMIT_INTERVAL_MILLIS, DEFAULT_SEGMENT_BYTES, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Recovers whatever an earlier run left in the directory, then starts a
+     * fresh segment after it. Old segments stay until their sessions have
+     * been resumed and checkpointed, or discarded.
+     */
+    public ActionJournal(Path directory, long commitIntervalMillis, long segmentLimit, int checkpointBytes) throws IOException {
+        this.directory = directory;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.segmentLimit = segmentLimit;
+        this.checkpointBytes = checkpointBytes;
+
+        Files.createDirectories(directory);
+        this.recovery = JournalRecovery.recover(directory);
+        for (Map.Entry<Integer, Map<String, Long>> segment : recovery.segmentSessions.entrySet()) {
+            segmentSessions.put(segment.getKey(), new HashMap<>(segment.getValue()));
+        }
+        appendSegment = recovery.lastSegment + 1;
+        openSegment(appendSegment);
+
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ---------------------------------------------------------------
+    // Sessions
+    // ---------------------------------------------------------------
+
+    /** What the previous run left for this session, or null. */
+    public JournalRecovery.RecoveredSession getRecovered(String sessionId) {
+        return recovery.getSession(sessionId);
+    }
+
+    public JournalRecovery getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * Starts a new game for the session. Anything an earlier run logged under
+     * the same id is superseded once the START record is on disk.
+     */
+    public Session open(String sessionId, String startRoomId) {
+        Session session = register(sessionId);
+        session.start(startRoomId);
+        return session;
+    }
+
+    /**
+     * Continues a recovered session after its state has been applied to the
+     * game. Call checkpoint() on it soon so the old segments can go.
+     */
+    public Session resume(JournalRecovery.RecoveredSession recovered) {
+        Session session = register(recovered.getSessionId());
+        synchronized (lock) {
+            session.coveredSeq = recovered.getCheckpointSeq();
+        }
+        return session;
+    }
+
+    /** Drops a recovered session nobody is going to continue. */
+    public void discard(String sessionId) {
+        register(sessionId).end();
+    }
+
+    private Session register(String sessionId) {
+        if (sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            throw new IllegalArgumentException("Session ids are letters, digits, '_', '.' and '-': " + sessionId);
+        }
+        JournalRecovery.RecoveredSession recovered = recovery.getSession(sessionId);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (sessions.containsKey(sessionId)) {
+                throw new IllegalStateException("Session " + sessionId + " is already open");
+            }
+            // Sequence numbers carry on from the last run so old records sort first
+            Session session = new Session(sessionId, nextSessionRef++, recovered != null ? recovered.getLastSeq() : 0);
+            sessions.put(sessionId, session);
+            return session;
+        }
+    }
+
+    /**
+     * One player's game. A session is used from the thread that owns its game
+     * state; different sessions can log from different threads.
+     */
+    public class Session {
+        private final String sessionId;
+        private final int ref;
+        private int declaredSegment = -1;     // guarded by lock
+        private long seq;
+        private long coveredSeq;              // guarded by lock: records up to here are no longer needed
+        private int bytesSinceCheckpoint;
+        private int lastTimer = Integer.MIN_VALUE;
+        private boolean ended;
+
+        private Session(String sessionId, int ref, long seq) {
+            this.sessionId = sessionId;
+            this.ref = ref;
+            this.seq = seq;
+        }
+
+        void start(String roomId) {
+            VarintWriter out = begin(START);
+            out.writeString(roomId);
+            long startSeq = seq;
+            long lsn = append(out);
+            synchronized (lock) {
+                covers.add(new Cover(this, startSeq - 1, lsn));
+            }
+        }
+
+        /**
+         * Logs an object after the player acted on it.
+         * @param type COLLECT, UNLOCK, OPEN, CYCLE, PLACE, EXAMINE or OBJECT
+         */
+        public void objectChanged(int type, String roomId, InteractiveObject object) {
+            if (type < COLLECT || type > OBJECT) {
+                throw new IllegalArgumentException("Not an object record type: " + type);
+            }
+            ObjectState state = object.captureState();
+            VarintWriter out = begin(type);
+            out.writeString(roomId);
+            out.writeString(object.getObjectId());
+            SaveFormat.writeObjectState(out, state);
+            out.writeString(state.ref >= 0 ? ItemRegistry.getInstance().getItemId(state.ref) : null);
+            append(out);
+        }
+
+        /** @param type SOLVE_ATTEMPT, or PUZZLE for any other progress such as a hint */
+        public void puzzleChanged(int type, Puzzle puzzle) {
+            if (type != SOLVE_ATTEMPT && type != PUZZLE) {
+                throw new IllegalArgumentException("Not a puzzle record type: " + type);
+            }
+            long[] words = puzzle.snapshotState();
+            VarintWriter out = begin(type);
+            out.writeString(puzzle.getPuzzleId());
+            out.writeVarInt(words.length);
+            for (long word : words) {
+                out.writeVarLong(word);
+            }
+            append(out);
+        }
+
+        public void transition(String roomId) {
+            VarintWriter out = begin(TRANSITION);
+            out.writeString(roomId);
+            append(out);
+        }
+
+        public void inventoryAdded(String itemId) {
+            VarintWriter out = begin(INVENTORY);
+            out.writeString(itemId);
+            append(out);
+        }
+
+        /** Logs the time left; repeats of the last value are skipped. */
+        public void timer(int secondsRemaining) {
+            if (secondsRemaining == lastTimer) {
+                return;
+            }
+            lastTimer = secondsRemaining;
+            VarintWriter out = begin(TIMER);
+            out.writeZigZag(secondsRemaining);
+            append(out);
+        }
+
+        /** Timer checkpoint from the manager's "MM:SS" display. */
+        public void timer(String formatted) {
+            int seconds = SaveSnapshot.parseSeconds(formatted);
+            if (seconds != SaveSnapshot.UNKNOWN_TIME) {
+                timer(seconds);
+            }
+        }
+
+        /** The game is over; once this is on disk the session's records and checkpoint are dropped. */
+        public void end() {
+            if (ended) {
+                return;
+            }
+            long lsn = append(begin(END));
+            ended = true;
+            synchronized (lock) {
+                covers.add(new Cover(this, Long.MAX_VALUE, lsn));
+            }
+        }
+
+        /** True once enough has been logged that replay would be slow without a fresh checkpoint. */
+        public boolean needsCheckpoint() {
+            return !ended && bytesSinceCheckpoint >= checkpointBytes;
+        }
+
+        /**
+         * Hands the writer a snapshot of the game as of the last record logged.
+         * Only the newest pending snapshot per session is written.
+         */
+        public void checkpoint(SaveSnapshot snapshot) {
+            checkpoint(snapshot, null);
+        }
+
+        /** Same for a game state version, copied into a snapshot on the writer thread. */
+        public void checkpoint(GameState state) {
+            checkpoint(null, state);
+        }
+
+        private void checkpoint(SaveSnapshot snapshot, GameState state) {
+            if (ended) {
+                return;
+            }
+            bytesSinceCheckpoint = 0;
+            synchronized (lock) {
+                pendingCheckpoints.put(sessionId, new PendingCheckpoint(this, seq, snapshot, state));
+                lock.notifyAll();
+            }
+        }
+
+        /** Completes once everything this session has logged so far is on disk. */
+        public CompletableFuture<Void> commit() {
+            return ActionJournal.this.commit();
+        }
+
+        private VarintWriter begin(int type) {
+            if (ended) {
+                throw new IllegalStateException("Session " + sessionId + " has ended");
+            }
+            VarintWriter out = SCRATCH.get();
+            out.reset();
+            out.writeVarInt(type);
+            out.writeVarInt(ref);
+            out.writeVarLong(++seq);
+            return out;
+        }
+
+        private long append(VarintWriter payload) {
+            bytesSinceCheckpoint += payload.size;
+            return ActionJournal.this.append(this, payload);
+        }
+
+        public String getSessionId() { return sessionId; }
+        public long getSeq() { return seq; }
+        public boolean isEnded() { return ended; }
+    }
+
+    // ---------------------------------------------------------------
+    // Appending
+    // ---------------------------------------------------------------
+
+    private long append(Session session, VarintWriter payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.buffer, 0, payload.size);
+        int checksum = (int) crc.getValue();
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            int start = active.size;
+            // Refs are only meaningful within the segment that declares them
+            if (session.declaredSegment != appendSegment) {
+                VarintWriter declare = new VarintWriter(32);
+                declare.writeVarInt(DECLARE);
+                declare.writeVarInt(session.ref);
+                declare.writeString(session.sessionId);
+                frame(declare.buffer, declare.size, crc(declare));
+                session.declaredSegment = appendSegment;
+            }
+            frame(payload.buffer, payload.size, checksum);
+            segmentSessions.computeIfAbsent(appendSegment, k -> new HashMap<>()).put(session.sessionId, session.seq);
+            appendedLsn++;
+            // The writer only needs waking for the first record of a batch, or a full one
+            if (start == 0 || active.size >= FLUSH_BYTES) {
+                lock.notifyAll();
+            }
+            return appendedLsn;
+        }
+    }
+
+    private void frame(byte[] payload, int length, int checksum) {
+        active.writeVarInt(length);
+        active.writeBytes(payload, 0, length);
+        active.writeInt(checksum);
+    }
+
+    private static int crc(VarintWriter payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.buffer, 0, payload.size);
+        return (int) crc.getValue();
+    }
+
+    /** Completes once everything appended so far, by any session, is on disk. */
+    public CompletableFuture<Void> commit() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (lock) {
+            if (durableLsn >= appendedLsn) {
+                done.complete(null);
+                return done;
+            }
+            waiters.add(new Waiter(appendedLsn, done));
+            urgent = true;
+            lock.notifyAll();
+        }
+        return done;
+    }
+
+    // ---------------------------------------------------------------
+    // Writer thread
+    // ---------------------------------------------------------------
+
+    private void writeLoop() {
+        while (true) {
+            VarintWriter batch;
+            long batchLsn;
+            boolean roll = false;
+            List<PendingCheckpoint> checkpoints;
+            boolean stop;
+            synchronized (lock) {
+                try {
+                    while (!closed && active.size == 0 && pendingCheckpoints.isEmpty()) {
+                        lock.wait();
+                    }
+                    // Give other sessions a moment to join the batch
+                    long deadline = System.nanoTime() + commitIntervalNanos;
+                    while (!closed && !urgent && active.size < FLUSH_BYTES && pendingCheckpoints.isEmpty()) {
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(lock, left);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                urgent = false;
+                batch = active;
+                active = spare;
+                active.reset();
+                batchLsn = appendedLsn;
+                // Records appended from here on belong to the next segment
+                if (segmentBytes + batch.size >= segmentLimit) {
+                    appendSegment++;
+                    roll = true;
+                }
+                checkpoints = new ArrayList<>(pendingCheckpoints.values());
+                pendingCheckpoints.clear();
+                stop = closed;
+            }
+
+            List<Waiter> ready = new ArrayList<>();
+            IOException failure = null;
+            try {
+                if (batch.size > 0) {
+                    long start = System.nanoTime();
+                    writeFully(channel, ByteBuffer.wrap(batch.buffer, 0, batch.size));
+                    channel.force(false);
+                    lastCommitNanos = System.nanoTime() - start;
+                    segmentBytes += batch.size;
+                    bytesWritten += batch.size;
+                    commits++;
+                }
+                if (roll) {
+                    channel.close();
+                    openSegment(writeSegment + 1);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing action journal: " + e.getMessage());
+                e.printStackTrace();
+                failure = e;
+            }
+
+            List<Cover> durable = new ArrayList<>();
+            synchronized (lock) {
+                if (failure == null) {
+                    durableLsn = batchLsn;
+                }
+                while (!waiters.isEmpty() && (failure != null || waiters.peek().lsn <= batchLsn)) {
+                    ready.add(waiters.poll());
+                }
+                while (failure == null && !covers.isEmpty() && covers.peek().lsn <= durableLsn) {
+                    durable.add(covers.poll());
+                }
+                batch.reset();
+                spare = batch;
+            }
+            for (Waiter waiter : ready) {
+                if (failure == null) {
+                    waiter.done.complete(null);
+                } else {
+                    waiter.done.completeExceptionally(failure);
+                }
+            }
+
+            for (Cover cover : durable) {
+                if (cover.seq == Long.MAX_VALUE) {
+                    // Ended: the checkpoint must go before the records that outlive it
+                    deleteQuietly(checkpointPath(directory, cover.session.sessionId));
+                }
+                synchronized (lock) {
+                    cover.session.coveredSeq = Math.max(cover.session.coveredSeq, cover.seq);
+                }
+            }
+            for (PendingCheckpoint checkpoint : checkpoints) {
+                writeCheckpoint(checkpoint);
+            }
+            if (!durable.isEmpty() || !checkpoints.isEmpty() || roll) {
+                deleteCoveredSegments();
+            }
+
+            if (stop) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Everything is already forced
+                }
+                return;
+            }
+        }
+    }
+
+    private void writeCheckpoint(PendingCheckpoint checkpoint) {
+        Session session = checkpoint.session;
+        synchronized (lock) {
+            if (session.coveredSeq == Long.MAX_VALUE) {
+                return;   // ended while the snapshot was waiting
+            }
+        }
+        try {
+            byte[] snapshot = SaveFormat.encode(checkpoint.snapshot != null
+                ? checkpoint.snapshot : SaveSnapshot.of(checkpoint.state));
+            ByteBuffer file = ByteBuffer.allocate(CHECKPOINT_HEADER_SIZE + snapshot.length);
+            file.putInt(CHECKPOINT_MAGIC).putLong(checkpoint.seq);
+            CRC32C crc = new CRC32C();
+            crc.update(file.array(), 0, 12);
+            file.putInt((int) crc.getValue());
+            file.put(snapshot);
+            writeDurably(checkpointPath(directory, session.sessionId), file.array());
+            checkpointsWritten++;
+            synchronized (lock) {
+                session.coveredSeq = Math.max(session.coveredSeq, checkpoint.seq);
+            }
+        } catch (Exception e) {
+            System.err.println("Error writing checkpoint for " + session.sessionId + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deletes segments older than the one being written whose every session
+     * has checkpointed, restarted or ended past what it logged there.
+     * Sessions recovered but neither resumed nor discarded keep theirs.
+     */
+    private void deleteCoveredSegments() {
+        List<Integer> deletable = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<Map.Entry<Integer, Map<String, Long>>> it = segmentSessions.headMap(writeSegment).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, Map<String, Long>> segment = it.next();
+                boolean covered = true;
+                for (Map.Entry<String, Long> entry : segment.getValue().entrySet()) {
+                    Session session = sessions.get(entry.getKey());
+                    if (session == null || session.coveredSeq < entry.getValue()) {
+                        covered = false;
+                        break;
+                    }
+                }
+                if (covered) {
+                    deletable.add(segment.getKey());
+                    it.remove();
+                }
+            }
+        }
+        for (int segment : deletable) {
+            deleteQuietly(segmentPath(directory, segment));
+        }
+        // Segments that ended up with no records at all
+        for (int segment : recovery.emptySegments) {
+            if (segment < writeSegment) {
+                deleteQuietly(segmentPath(directory, segment));
+            }
+        }
+        recovery.emptySegments.clear();
+    }
+
+    private void openSegment(int number) throws IOException {
+        Path path = segmentPath(directory, number);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(number);
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 0, 12);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        writeFully(channel, header);
+        channel.force(true);
+        forceDirectory();
+        writeSegment = number;
+        segmentBytes = SEGMENT_HEADER_SIZE;
+    }
+
+    private void writeDurably(Path target, byte[] data) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(file, ByteBuffer.wrap(data));
+            file.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    private void forceDirectory() {
+        // Not every platform can open a directory
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    static Path segmentPath(Path directory, int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_EXTENSION));
+    }
+
+    static Path checkpointPath(Path directory, String sessionId) {
+        return directory.resolve(sessionId + CHECKPOINT_EXTENSION);
+    }
+
+    /** Commits what is buffered, writes pending checkpoints and stops the writer. */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            if (writer.isAlive()) {
+                System.err.println("Journal writer did not finish within 5 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stats
+    public long getCommits() { return commits; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getCheckpointsWritten() { return checkpointsWritten; }
+    public long getLastCommitNanos() { return lastCommitNanos; }
+    public long getRecordsAppended() { synchronized (lock) { return appendedLsn; } }
+    /** Segments still holding records someone may need. */
+    public int getSegmentCount() { synchronized (lock) { return segmentSessions.size(); } }
+
+    public void printStats() {
+        long n = commits;
+        System.out.println("Journal: " + getRecordsAppended() + " records, " + n + " commits"
+            + (n > 0 ? String.format(" (%.1f records/commit)", (double) getRecordsAppended() / n) : "")
+            + ", " + bytesWritten + " bytes, " + checkpointsWritten + " checkpoints, "
+            + getSegmentCount() + " segments");
+    }
+
+    /** A commit() caller waiting for its records to reach disk. */
+    private static class Waiter {
+        final long lsn;
+        final CompletableFuture<Void> done;
+
+        Waiter(long lsn, CompletableFuture<Void> done) {
+            this.lsn = lsn;
+            this.done = done;
+        }
+    }
+
+    /** Once the record at lsn is on disk, the session no longer needs its records up to seq. */
+    private static class Cover {
+        final Session session;
+        final long seq;
+        final long lsn;
+
+        Cover(Session session, long seq, long lsn) {
+            this.session = session;
+            this.seq = seq;
+            this.lsn = lsn;
+        }
+    }
+
+    private static class PendingCheckpoint {
+        final Session session;
+        final long seq;
+        final SaveSnapshot snapshot;   // or the state to build it from
+        final GameState state;
+
+        PendingCheckpoint(Session session, long seq, SaveSnapshot snapshot, GameState state) {
+            this.session = session;
+            this.seq = seq;
+            this.snapshot = snapshot;
+            this.state = state;
+        }
+    }
+}
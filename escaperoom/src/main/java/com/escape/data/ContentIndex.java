@@ -0,0 +1,234 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.*;
+import java.util.*;
+
+/**
+ * Link phase run after loading.
+ * Resolves every string reference in the content (exits, required items,
+ * container contents, expected tokens and evidence, room puzzles) to a
+ * direct handle, and builds reverse indexes over them. Every dangling
+ * reference is collected so broken content is reported in one go.
+ *
+ * The index in use is swapped whole on reload, so readers on other threads
+ * see either the old one or the new one.
+ */
+public class ContentIndex {
+
+    private static volatile ContentIndex current;
+
+    private final Map<String, Room> roomsById = new LinkedHashMap<>();
+    private final Map<Room, Map<String, InteractiveObject>> objectsByRoom = new IdentityHashMap<>();
+    private final Map<Room, Room> exits = new IdentityHashMap<>();
+    private final Map<Room, List<Room>> entrances = new IdentityHashMap<>();
+    private final Map<Room, Integer> requiredItems = new IdentityHashMap<>();
+    private final Map<Room, Puzzle> puzzles = new IdentityHashMap<>();
+
+    // Reverse indexes by interned item id
+    private final Map<Integer, List<ContainerObject>> containersByItem = new HashMap<>();
+    private final Map<Integer, List<Room>> roomsRequiringItem = new HashMap<>();
+    private final Map<Integer, List<InteractiveObject>> slotsExpectingItem = new HashMap<>();
+
+    private final List<String> problems = new ArrayList<>();
+
+    private ContentIndex() {
+    }
+
+    /** Index currently in use by the game, if content has been linked. */
+    public static ContentIndex getCurrent() { return current; }
+    public static void setCurrent(ContentIndex index) { current = index; }
+
+    public static ContentIndex link(List<Room> rooms, HollowmoreGameManager gameManager) {
+        ContentIndex index = new ContentIndex();
+        index.linkAll(rooms, gameManager, ItemRegistry.getInstance());
+        return index;
+    }
+
+    private void linkAll(List<Room> rooms, HollowmoreGameManager gameManager, ItemRegistry registry) {
+        // Pass 1: rooms and their objects by id
+        for (Room room : rooms) {
+            if (roomsById.put(room.getRoomId(), room) != null) {
+                problems.add("Duplicate room id '" + room.getRoomId() + "'");
+            }
+            Map<String, InteractiveObject> objects = new LinkedHashMap<>();
+            for (InteractiveObject obj : room.getObjects()) {
+                if (objects.put(obj.getObjectId(), obj) != null) {
+                    problems.add(where(room) + "duplicate object id '" + obj.getObjectId() + "'");
+                }
+            }
+            objectsByRoom.put(room, objects);
+        }
+
+        // Pass 2: resolve references
+        for (Room room : rooms) {
+            String exitTo = room.getExitTo();
+            if (exitTo != null) {
+                Room target = roomsById.get(exitTo);
+                if (target == null) {
+                    problems.add(where(room) + "exitTo unknown room '" + exitTo + "'");
+                } else {
+                    exits.put(room, target);
+                    entrances.computeIfAbsent(target, r -> new ArrayList<>()).add(room);
+                }
+            }
+
+            String requiredItem = room.getRequiredItem();
+            if (requiredItem != null) {
+                int itemId = resolveItem(registry, requiredItem, where(room) + "requiredItem");
+                if (itemId != ItemRegistry.NO_ITEM) {
+                    requiredItems.put(room, itemId);
+                    roomsRequiringItem.computeIfAbsent(itemId, i -> new ArrayList<>()).add(room);
+                }
+            }
+
+            RoomPuzzle roomPuzzle = room.getPuzzle();
+            if (roomPuzzle != null) {
+                Puzzle puzzle = gameManager.getPuzzle(roomPuzzle.getPuzzleId());
+                if (puzzle == null) {
+                    problems.add(where(room) + "puzzle '" + roomPuzzle.getPuzzleId() + "' was never registered");
+                } else {
+                    puzzles.put(room, puzzle);
+                    String problem = puzzle.validate();
+                    if (problem != null) {
+                        problems.add(where(room) + problem);
+                    }
+                }
+            }
+
+            for (InteractiveObject obj : room.getObjects()) {
+                linkObject(room, obj, registry);
+            }
+        }
+    }
+
+    private void linkObject(Room room, InteractiveObject obj, ItemRegistry registry) {
+        String owner = where(room) + obj.getObjectId();
+
+        if (obj instanceof ContainerObject) {
+            ContainerObject container = (ContainerObject) obj;
+            for (int itemId : container.getContainedItemIds()) {
+                if (checkItem(registry, itemId, owner + " contains")) {
+                    containersByItem.computeIfAbsent(itemId, i -> new ArrayList<>()).add(container);
+                }
+            }
+        } else if (obj instanceof EvidenceHolderObject) {
+            int itemId = ((EvidenceHolderObject) obj).getCorrectItemId();
+            if (itemId != ItemRegistry.NO_ITEM && checkItem(registry, itemId, owner + " correctItem")) {
+                slotsExpectingItem.computeIfAbsent(itemId, i -> new ArrayList<>()).add(obj);
+            }
+        } else if (obj instanceof TokenSlotObject) {
+            int itemId = ((TokenSlotObject) obj).getCorrectTokenId();
+            if (itemId != ItemRegistry.NO_ITEM && checkItem(registry, itemId, owner + " correctToken")) {
+                slotsExpectingItem.computeIfAbsent(itemId, i -> new ArrayList<>()).add(obj);
+            }
+        }
+    }
+
+    private int resolveItem(ItemRegistry registry, String itemId, String owner) {
+        int id = registry.idOf(itemId);
+        if (id == ItemRegistry.NO_ITEM || !registry.isDefined(id)) {
+            problems.add(owner + " references unknown item '" + itemId + "'");
+            return ItemRegistry.NO_ITEM;
+        }
+        return id;
+    }
+
+    private boolean checkItem(ItemRegistry registry, int itemId, String owner) {
+        if (!registry.isDefined(itemId)) {
+            problems.add(owner + " references unknown item '" + registry.getItemId(itemId) + "'");
+            return false;
+        }
+        return true;
+    }
+
+    private static String where(Room room) {
+        return "room '" + room.getRoomId() + "': ";
+    }
+
+    // ---------------------------------------------------------------
+    // Results
+    // ---------------------------------------------------------------
+
+    public boolean isValid() { return problems.isEmpty(); }
+    public List<String> getProblems() { return Collections.unmodifiableList(problems); }
+
+    /** Throws with every problem listed if any reference failed to resolve. */
+    public ContentIndex requireValid() throws ContentLinkException {
+        if (!problems.isEmpty()) {
+            throw new ContentLinkException(problems);
+        }
+        return this;
+    }
+
+    public Room getRoom(String roomId) { return roomsById.get(roomId); }
+    public Collection<Room> getRooms() { return Collections.unmodifiableCollection(roomsById.values()); }
+    public Room getExit(Room room) { return exits.get(room); }
+    public Puzzle getPuzzle(Room room) { return puzzles.get(room); }
+
+    public int getRequiredItem(Room room) {
+        Integer itemId = requiredItems.get(room);
+        return itemId != null ? itemId : ItemRegistry.NO_ITEM;
+    }
+
+    public InteractiveObject getObject(Room room, String objectId) {
+        Map<String, InteractiveObject> objects = objectsByRoom.get(room);
+        return objects != null ? objects.get(objectId) : null;
+    }
+
+    /** The object by id, from the index if it covers the room, else by walking the room. */
+    public InteractiveObject findObject(Room room, String objectId) {
+        Map<String, InteractiveObject> objects = objectsByRoom.get(room);
+        return objects != null ? objects.get(objectId) : scan(room, objectId);
+    }
+
+    /** findObject() on the current index, for callers without one of their own. */
+    public static InteractiveObject find(Room room, String objectId) {
+        ContentIndex index = current;
+        return index != null ? index.findObject(room, objectId) : scan(room, objectId);
+    }
+
+    private static InteractiveObject scan(Room room, String objectId) {
+        for (InteractiveObject obj : room.getObjects()) {
+            if (obj.getObjectId().equals(objectId)) {
+                return obj;
+            }
+        }
+        return null;
+    }
+
+    /** Rooms whose exit leads into this room. */
+    public List<Room> getEntrances(Room room) {
+        return entrances.getOrDefault(room, Collections.emptyList());
+    }
+
+    /** Containers that hold the item. */
+    public List<ContainerObject> getContainersHolding(int itemId) {
+        return containersByItem.getOrDefault(itemId, Collections.emptyList());
+    }
+
+    /** Rooms that can only be left with the item. */
+    public List<Room> getRoomsRequiring(int itemId) {
+        return roomsRequiringItem.getOrDefault(itemId, Collections.emptyList());
+    }
+
+    /** Evidence holders and token slots that expect the item. */
+    public List<InteractiveObject> getSlotsExpecting(int itemId) {
+        return slotsExpectingItem.getOrDefault(itemId, Collections.emptyList());
+    }
+
+    /** Thrown by requireValid when content has dangling references. */
+    public static class ContentLinkException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> problems;
+
+        ContentLinkException(List<String> problems) {
+            super(problems.size() + " broken reference(s) in content:\n  " + String.join("\n  ", problems));
+            this.problems = new ArrayList<>(problems);
+        }
+
+        public List<String> getProblems() { return problems; }
+    }
+}
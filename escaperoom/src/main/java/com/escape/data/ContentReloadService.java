@@ -0,0 +1,344 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.gameExec.TileManager;
+import com.escape.objects.*;
+import com.escape.puzzles.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the content file and map directory and hot-reloads changes.
+ * Only the file that changed is re-read. For the content file, each room
+ * record is hashed and only rooms whose bytes changed are parsed again.
+ * Changes are queued and applied on the game thread by applyPending(), so
+ * the game loop never sees a half-applied reload. Objects and puzzles keep
+ * their progress across a reload, and the content is linked again after
+ * every reload so ContentIndex hands out the live rooms.
+ */
+public class ContentReloadService implements Runnable {
+
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    private final HollowmoreGameManager gameManager;
+    private final Path contentFile;
+    private final Path mapsDir;
+    private TileManager tileManager;
+
+    private final Map<String, Long> roomHashes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    private WatchService watcher;
+    private Thread thread;
+    private volatile boolean running;
+
+    public ContentReloadService(HollowmoreGameManager gameManager, Path contentFile, Path mapsDir) {
+        this.gameManager = gameManager;
+        this.contentFile = contentFile.toAbsolutePath();
+        this.mapsDir = mapsDir != null ? mapsDir.toAbsolutePath() : null;
+    }
+
+    public void setTileManager(TileManager tileManager) {
+        this.tileManager = tileManager;
+    }
+
+    public void start() throws IOException {
+        // Baseline hashes of what is loaded right now
+        byte[] data = Files.readAllBytes(contentFile);
+        RoomIndex index = RoomIndex.build(data);
+        for (RoomIndex.Entry entry : index.getEntries()) {
+            roomHashes.put(entry.roomId, hash(data, entry));
+        }
+
+        watcher = FileSystems.getDefault().newWatchService();
+        contentFile.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_CREATE);
+        if (mapsDir != null && Files.isDirectory(mapsDir)) {
+            mapsDir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        }
+
+        running = true;
+        thread = new Thread(this, "content-reload");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + contentFile + " for changes");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (watcher != null) {
+                watcher.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing watcher: " + e.getMessage());
+        }
+    }
+
+    /** Whether a reload is waiting for applyPending(). */
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /** Applies queued reloads. Call from the game loop. */
+    public int applyPending() {
+        int applied = 0;
+        Runnable change;
+        while ((change = pending.poll()) != null) {
+            change.run();
+            applied++;
+        }
+        return applied;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                WatchKey key = watcher.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(key, changed);
+
+                // Editors often write a file in several steps, wait for them to settle
+                while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+
+                for (Path file : changed) {
+                    if (file.equals(contentFile)) {
+                        reloadContent();
+                    } else if (mapsDir != null && file.getParent().equals(mapsDir)
+                               && file.toString().endsWith(".txt")) {
+                        reloadMap(file);
+                    }
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                // A broken edit should not kill the watcher, just report it
+                System.err.println("Reload failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path) {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    // ---------------------------------------------------------------
+    // Content
+    // ---------------------------------------------------------------
+
+    private void reloadContent() throws IOException {
+        long start = System.nanoTime();
+        byte[] data = Files.readAllBytes(contentFile);
+        RoomIndex index = RoomIndex.build(data);
+
+        // New hashes are only recorded once their room is applied, so a failed reload is retried in full
+        List<HollowmoreStreamLoader.LoadedRoom> changedRooms = new ArrayList<>();
+        Map<String, Long> newHashes = new HashMap<>();
+        for (RoomIndex.Entry entry : index.getEntries()) {
+            long h = hash(data, entry);
+            Long previous = roomHashes.get(entry.roomId);
+            if (previous == null || previous != h) {
+                changedRooms.add(parseRoom(data, entry));
+                newHashes.put(entry.roomId, h);
+            }
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (RoomIndex.Entry entry : index.getItemEntries()) {
+            items.add(recordLoader(data, entry).readItem());
+        }
+
+        long parseMillis = (System.nanoTime() - start) / 1_000_000;
+        pending.add(() -> {
+            for (Item item : items) {
+                ItemRegistry.getInstance().register(item);
+            }
+            for (HollowmoreStreamLoader.LoadedRoom loaded : changedRooms) {
+                String roomId = loaded.room.getRoomId();
+                if (applyRoom(loaded)) {
+                    roomHashes.put(roomId, newHashes.get(roomId));
+                }
+            }
+            relink(changedRooms);
+            System.out.println("↻ Reloaded " + changedRooms.size() + " room(s) from "
+                + contentFile.getFileName() + " in " + parseMillis + " ms");
+        });
+    }
+
+    private HollowmoreStreamLoader.LoadedRoom parseRoom(byte[] data, RoomIndex.Entry entry) throws IOException {
+        return recordLoader(data, entry).readRoomRecord();
+    }
+
+    private HollowmoreStreamLoader recordLoader(byte[] data, RoomIndex.Entry entry) {
+        ByteArrayInputStream in = new ByteArrayInputStream(data, (int) entry.offset, entry.length);
+        return new HollowmoreStreamLoader(new JsonPullParser(in, entry.offset, entry.length));
+    }
+
+    /** Applies one parsed room; false if it was kept as it is until the next reload. */
+    private boolean applyRoom(HollowmoreStreamLoader.LoadedRoom loaded) {
+        Room fresh = loaded.room;
+        String roomId = fresh.getRoomId();
+        Room live = gameManager.getRoom(roomId);
+
+        if (live == null) {
+            if (loaded.puzzle != null) {
+                gameManager.addPuzzle(loaded.puzzle);
+            }
+            gameManager.addRoom(fresh);
+            return true;
+        }
+
+        // A solved puzzle stays as it is; an unsolved one takes the new definition with its progress
+        boolean puzzleKept = false;
+        if (loaded.puzzle != null) {
+            Puzzle livePuzzle = gameManager.getPuzzle(loaded.puzzle.getPuzzleId());
+            if (livePuzzle != null && livePuzzle.isSolved()) {
+                puzzleKept = true;
+            } else {
+                if (livePuzzle != null) {
+                    carryProgress(livePuzzle, loaded.puzzle);
+                }
+                gameManager.addPuzzle(loaded.puzzle);
+            }
+        }
+
+        Map<String, InteractiveObject> liveObjects = new HashMap<>();
+        for (InteractiveObject obj : live.getObjects()) {
+            liveObjects.put(obj.getObjectId(), obj);
+        }
+
+        if (sameStructure(live, fresh, liveObjects)) {
+            // Patch the live room in place, objects keep their progress and identity
+            for (InteractiveObject obj : fresh.getObjects()) {
+                liveObjects.get(obj.getObjectId()).copyDefinitionFrom(obj);
+            }
+            live.setExitTo(fresh.getExitTo());
+            live.setRequiredItem(fresh.getRequiredItem());
+            if (fresh.getDialogue() != null) {
+                live.setDialogue(fresh.getDialogue());
+            }
+            if (fresh.getPuzzle() != null && !puzzleKept) {
+                live.setPuzzle(fresh.getPuzzle());
+            }
+            return true;
+        }
+
+        // Objects were added or removed: swap in the new room, carrying state over
+        for (InteractiveObject obj : fresh.getObjects()) {
+            InteractiveObject old = liveObjects.get(obj.getObjectId());
+            if (old != null && old.getType().equals(obj.getType())) {
+                obj.restoreState(old.captureState());
+            }
+        }
+        if (puzzleKept) {
+            fresh.setPuzzle(live.getPuzzle());
+        }
+        gameManager.addRoom(fresh);
+
+        // The manager has no setter for its current room, so move the player into the new one
+        if (gameManager.getCurrentRoom() == live && !gameManager.transitionToRoom(roomId)) {
+            gameManager.addRoom(live);
+            System.err.println("Room " + roomId + " changed shape but the player could not be moved into it;"
+                + " keeping the old room until the next reload");
+            return false;
+        }
+        return true;
+    }
+
+    // Progress words only fit a puzzle of the same kind and shape
+    private static void carryProgress(Puzzle from, Puzzle to) {
+        long[] progress = from.snapshotState();
+        if (from.getClass() == to.getClass() && progress.length == to.snapshotState().length) {
+            to.restoreState(progress);
+        } else {
+            System.err.println("Puzzle " + to.getPuzzleId() + " changed shape, its progress starts over");
+        }
+    }
+
+    // Rooms may have been swapped, so resolve every reference again against the live ones
+    private void relink(List<HollowmoreStreamLoader.LoadedRoom> changedRooms) {
+        ContentIndex previous = ContentIndex.getCurrent();
+        if (previous == null) {
+            return;
+        }
+        Map<String, Room> rooms = new LinkedHashMap<>();
+        for (Room room : previous.getRooms()) {
+            rooms.put(room.getRoomId(), room);
+        }
+        for (HollowmoreStreamLoader.LoadedRoom loaded : changedRooms) {
+            rooms.putIfAbsent(loaded.room.getRoomId(), loaded.room);
+        }
+        List<Room> live = new ArrayList<>(rooms.size());
+        for (String roomId : rooms.keySet()) {
+            Room room = gameManager.getRoom(roomId);
+            live.add(room != null ? room : rooms.get(roomId));
+        }
+        ContentIndex index = ContentIndex.link(live, gameManager);
+        for (String problem : index.getProblems()) {
+            System.err.println("Reload: " + problem);
+        }
+        ContentIndex.setCurrent(index);
+    }
+
+    private static boolean sameStructure(Room live, Room fresh, Map<String, InteractiveObject> liveObjects) {
+        if (!Objects.equals(live.getName(), fresh.getName())
+            || !Objects.equals(live.getDescription(), fresh.getDescription())
+            || live.getObjects().size() != fresh.getObjects().size()) {
+            return false;
+        }
+        for (InteractiveObject obj : fresh.getObjects()) {
+            InteractiveObject old = liveObjects.get(obj.getObjectId());
+            if (old == null || !old.getType().equals(obj.getType())
+                || old.getClass() != obj.getClass()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------
+    // Maps
+    // ---------------------------------------------------------------
+
+    private void reloadMap(Path file) {
+        TileManager tiles = tileManager;
+        if (tiles == null || tiles.getCurrentMapPath() == null
+            || !tiles.getCurrentMapPath().endsWith("/" + file.getFileName())) {
+            return;
+        }
+        pending.add(() -> {
+            try {
+                int changed = tiles.reloadMap(file);
+                System.out.println("↻ Reloaded " + file.getFileName() + ": " + changed + " tile(s) changed");
+            } catch (IOException e) {
+                System.err.println("Could not reload map " + file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // FNV-1a over the record bytes
+    private static long hash(byte[] data, RoomIndex.Entry entry) {
+        long h = 0xcbf29ce484222325L;
+        int end = (int) entry.offset + entry.length;
+        for (int i = (int) entry.offset; i < end; i++) {
+            h ^= data[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,242 @@
+package com.escape.data;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * One compiled dialogue file, memory-mapped and read in place.
+ *
+ * Source files are plain text split into sections:
+ *
+ *   # comment
+ *   [onEnter]
+ *   You enter a vast library...
+ *   [onEnter@it]
+ *   Entri in una vasta biblioteca...
+ *   [ask.librarian.yes]
+ *
+ * A section name is a key, "@locale" marks a translated variant of it and
+ * dotted keys are used for branches. The compiled form is a small key table,
+ * a table of line offsets and the UTF-8 text, so a line is found with two
+ * int reads and only decoded when asked for.
+ */
+public class DialogueFile {
+
+    public static final String SOURCE_EXTENSION = ".txt";
+    public static final String COMPILED_EXTENSION = ".dlg";
+
+    private static final int MAGIC = 0x48444C47;   // "HDLG"
+    private static final int VERSION = 1;
+
+    // Header: magic, version, key count, line count, offset table position, text position
+    private static final int HEADER_SIZE = 24;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Long> keys;   // key -> first line (high 32 bits) | line count
+    private final int lineCount;
+    private final int linesStart;
+    private final int textStart;
+
+    private DialogueFile(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled dialogue file: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported dialogue file version " + buffer.getInt(4) + ": " + path);
+        }
+        int keyCount = buffer.getInt(8);
+        this.lineCount = buffer.getInt(12);
+        this.linesStart = buffer.getInt(16);
+        this.textStart = buffer.getInt(20);
+        if (linesStart < HEADER_SIZE || textStart < linesStart + 4 * (lineCount + 1) || textStart > buffer.capacity()) {
+            throw new IOException("Corrupt dialogue file: " + path);
+        }
+
+        // The key table is tiny, so it is the one part kept on the heap
+        this.keys = new HashMap<>(keyCount * 2);
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < keyCount; i++) {
+            int nameLength = buffer.getShort(pos) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            buffer.get(pos + 2, name);
+            pos += 2 + nameLength;
+            int first = buffer.getInt(pos);
+            int count = buffer.getInt(pos + 4);
+            pos += 8;
+            keys.put(new String(name, StandardCharsets.UTF_8), ((long) first << 32) | count);
+        }
+    }
+
+    /** Maps an already compiled file. */
+    public static DialogueFile open(Path compiled) throws IOException {
+        try (FileChannel channel = FileChannel.open(compiled, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new DialogueFile(compiled, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Opens the compiled form of a source file, recompiling it first
+     * when it is missing or older than the source.
+     */
+    public static DialogueFile openSource(Path source) throws IOException {
+        Path compiled = compiledPath(source);
+        if (Files.exists(source) && (!Files.exists(compiled)
+                || Files.getLastModifiedTime(compiled).compareTo(Files.getLastModifiedTime(source)) < 0)) {
+            compile(source, compiled);
+        }
+        return open(compiled);
+    }
+
+    public static Path compiledPath(Path source) {
+        String name = source.getFileName().toString();
+        if (name.endsWith(SOURCE_EXTENSION)) {
+            name = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        }
+        return source.resolveSibling(name + COMPILED_EXTENSION);
+    }
+
+    // ---------------------------------------------------------------
+    // Lookup
+    // ---------------------------------------------------------------
+
+    public boolean hasKey(String key) {
+        return keys.containsKey(key);
+    }
+
+    public int getLineCount(String key) {
+        Long range = keys.get(key);
+        return range == null ? 0 : (int) (range & 0xFFFFFFFFL);
+    }
+
+    /** Returns the line, or null if the key or index doesn't exist. */
+    public String getLine(String key, int index) {
+        Long range = keys.get(key);
+        if (range == null || index < 0 || index >= (int) (range & 0xFFFFFFFFL)) {
+            return null;
+        }
+        int line = (int) (range >>> 32) + index;
+        int start = buffer.getInt(linesStart + 4 * line);
+        int end = buffer.getInt(linesStart + 4 * (line + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(textStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Keys starting with the prefix, e.g. the options of a branch. */
+    public List<String> getKeys(String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String key : keys.keySet()) {
+            if (key.startsWith(prefix) && key.indexOf('@') < 0) {
+                result.add(key);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(keys.keySet());
+    }
+
+    public int getTotalLineCount() { return lineCount; }
+    public int getMappedBytes() { return buffer.capacity(); }
+    public Path getPath() { return path; }
+
+    // ---------------------------------------------------------------
+    // Compiling
+    // ---------------------------------------------------------------
+
+    /** Parses a source file into ordered sections. */
+    public static Map<String, List<String>> readSource(Path source) throws IOException {
+        Map<String, List<String>> sections = new LinkedHashMap<>();
+        List<String> current = null;
+        int lineNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                    String key = trimmed.substring(1, trimmed.length() - 1).trim();
+                    if (key.isEmpty()) {
+                        throw new IOException(source + ":" + lineNumber + ": empty section name");
+                    }
+                    current = sections.computeIfAbsent(key, k -> new ArrayList<>());
+                    continue;
+                }
+                if (current == null) {
+                    throw new IOException(source + ":" + lineNumber + ": text before the first [section]");
+                }
+                current.add(trimmed);
+            }
+        }
+        return sections;
+    }
+
+    public static void compile(Path source, Path target) throws IOException {
+        write(readSource(source), target);
+    }
+
+    /** Writes sections in the compiled format, replacing the target atomically. */
+    public static void write(Map<String, List<String>> sections, Path target) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>();
+        ByteArrayOutputStream keyTable = new ByteArrayOutputStream();
+        DataOutputStream keyOut = new DataOutputStream(keyTable);
+
+        int line = 0;
+        for (Map.Entry<String, List<String>> section : sections.entrySet()) {
+            byte[] name = section.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IOException("Dialogue key too long: " + section.getKey());
+            }
+            keyOut.writeShort(name.length);
+            keyOut.write(name);
+            keyOut.writeInt(line);
+            keyOut.writeInt(section.getValue().size());
+
+            for (String value : section.getValue()) {
+                offsets.add(text.size());
+                text.write(value.getBytes(StandardCharsets.UTF_8));
+                line++;
+            }
+        }
+        offsets.add(text.size());
+
+        int linesStart = HEADER_SIZE + keyTable.size();
+        int textStart = linesStart + 4 * offsets.size();
+
+        ByteBuffer out = ByteBuffer.allocate(textStart + text.size());
+        out.putInt(MAGIC).putInt(VERSION).putInt(sections.size()).putInt(line)
+            .putInt(linesStart).putInt(textStart);
+        out.put(keyTable.toByteArray());
+        for (int offset : offsets) {
+            out.putInt(offset);
+        }
+        out.put(text.toByteArray());
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,163 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dialogue lookup by (room, key, index) backed by compiled dialogue files.
+ * Rooms register the dialogueFile named in their content record; the file is
+ * only mapped the first time one of its lines is needed, and lines are decoded
+ * one at a time when they are shown. Lookups try the current locale first and
+ * fall back to the untranslated key.
+ */
+public class DialogueStore {
+
+    public static final String DEFAULT_DIRECTORY = "json/dialogue";
+
+    public static final String ON_ENTER = "onEnter";
+    public static final String ON_PUZZLE_SOLVED = "onPuzzleSolved";
+    public static final String ON_SCARE = "onScare";
+
+    private volatile Path directory = Paths.get(DEFAULT_DIRECTORY);
+    private volatile String locale;
+
+    private final Map<String, String> fileByRoom = new ConcurrentHashMap<>();
+    private final Map<String, DialogueFile> openFiles = new ConcurrentHashMap<>();
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    // Created on first use without locking every later call
+    private static class Holder {
+        static final DialogueStore INSTANCE = new DialogueStore();
+    }
+
+    public static DialogueStore getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+        openFiles.clear();
+        missing.clear();
+    }
+
+    /** Locale tag such as "it", or null for the untranslated text. */
+    public void setLocale(String locale) { this.locale = locale; }
+    public String getLocale() { return locale; }
+
+    /** Called by the loaders for every room record with a dialogueFile. */
+    public void registerRoom(String roomId, String fileName) {
+        if (roomId != null && fileName != null) {
+            fileByRoom.put(roomId, fileName);
+        }
+    }
+
+    public boolean hasDialogue(String roomId) {
+        return file(roomId) != null;
+    }
+
+    // ---------------------------------------------------------------
+    // Lookup
+    // ---------------------------------------------------------------
+
+    public String getLine(String roomId, String key, int index) {
+        DialogueFile file = file(roomId);
+        return file == null ? null : file.getLine(resolve(file, key), index);
+    }
+
+    public int getLineCount(String roomId, String key) {
+        DialogueFile file = file(roomId);
+        return file == null ? 0 : file.getLineCount(resolve(file, key));
+    }
+
+    /**
+     * View of one section. Nothing is decoded until get() is called,
+     * so this can be handed to the UI in place of a list of strings.
+     */
+    public List<String> getLines(String roomId, String key) {
+        DialogueFile file = file(roomId);
+        if (file == null) {
+            return Collections.emptyList();
+        }
+        String resolved = resolve(file, key);
+        int count = file.getLineCount(resolved);
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+                }
+                return file.getLine(resolved, index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /** Branch keys below a prefix, e.g. getBranches(room, "ask.librarian."). */
+    public List<String> getBranches(String roomId, String prefix) {
+        DialogueFile file = file(roomId);
+        return file == null ? Collections.emptyList() : file.getKeys(prefix);
+    }
+
+    private String resolve(DialogueFile file, String key) {
+        String tag = locale;
+        if (tag != null) {
+            String localized = key + "@" + tag;
+            if (file.hasKey(localized)) {
+                return localized;
+            }
+        }
+        return key;
+    }
+
+    private DialogueFile file(String roomId) {
+        String fileName = fileByRoom.get(roomId);
+        if (fileName == null || missing.contains(fileName)) {
+            return null;
+        }
+        DialogueFile file = openFiles.get(fileName);
+        if (file != null) {
+            return file;
+        }
+        return openFiles.computeIfAbsent(fileName, this::openFile);
+    }
+
+    private DialogueFile openFile(String fileName) {
+        Path source = directory.resolve(fileName);
+        try {
+            if (fileName.endsWith(DialogueFile.COMPILED_EXTENSION)) {
+                return DialogueFile.open(source);
+            }
+            if (!Files.exists(source) && !Files.exists(DialogueFile.compiledPath(source))) {
+                System.err.println("Dialogue file not found: " + source);
+                missing.add(fileName);
+                return null;
+            }
+            return DialogueFile.openSource(source);
+        } catch (Exception e) {
+            System.err.println("Error loading dialogue file " + source + ": " + e.getMessage());
+            e.printStackTrace();
+            missing.add(fileName);
+            return null;
+        }
+    }
+
+    // Stats
+    public int getRegisteredRoomCount() { return fileByRoom.size(); }
+    public int getOpenFileCount() { return openFiles.size(); }
+
+    public long getMappedBytes() {
+        long total = 0;
+        for (DialogueFile file : openFiles.values()) {
+            total += file.getMappedBytes();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,137 @@
+package com.escape.data;
+
+import com.escape.objects.ObjectState;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * One immutable version of the game's progress: current room, timer,
+ * inventory, every object's state by room and every puzzle's state words.
+ * Changes return a new version that shares everything else with this one,
+ * so holding on to a version (for a save, an undo step, a peer) costs only
+ * what changes after it, and any thread can read it while the game goes on.
+ * GameStateTracker produces the versions; nothing here touches live objects.
+ *
+ * The ObjectStates and state words held here belong to the version: callers
+ * must not modify what they read.
+ */
+public final class GameState {
+
+    public static final GameState EMPTY = new GameState(0, 0, null, SaveSnapshot.UNKNOWN_TIME,
+        new String[0], PersistentMap.empty(), PersistentMap.empty());
+
+    private final long version;
+    private final long changedAt;
+    private final String currentRoomId;
+    private final int timeRemainingSeconds;
+    private final String[] inventory;   // replaced, never modified; inventories are short
+    private final PersistentMap<String, PersistentMap<String, ObjectState>> rooms;
+    private final PersistentMap<String, long[]> puzzles;
+
+    private GameState(long version, long changedAt, String currentRoomId, int timeRemainingSeconds, String[] inventory,
+                      PersistentMap<String, PersistentMap<String, ObjectState>> rooms,
+                      PersistentMap<String, long[]> puzzles) {
+        this.version = version;
+        this.changedAt = changedAt;
+        this.currentRoomId = currentRoomId;
+        this.timeRemainingSeconds = timeRemainingSeconds;
+        this.inventory = inventory;
+        this.rooms = rooms;
+        this.puzzles = puzzles;
+    }
+
+    private GameState next(String currentRoomId, int timeRemainingSeconds, String[] inventory,
+                           PersistentMap<String, PersistentMap<String, ObjectState>> rooms,
+                           PersistentMap<String, long[]> puzzles) {
+        return new GameState(version + 1, System.currentTimeMillis(), currentRoomId, timeRemainingSeconds,
+            inventory, rooms, puzzles);
+    }
+
+    // ---------------------------------------------------------------
+    // Changes
+    // ---------------------------------------------------------------
+
+    public GameState withCurrentRoom(String roomId) {
+        if (roomId == null ? currentRoomId == null : roomId.equals(currentRoomId)) {
+            return this;
+        }
+        return next(roomId, timeRemainingSeconds, inventory, rooms, puzzles);
+    }
+
+    public GameState withTimeRemaining(int seconds) {
+        if (seconds == timeRemainingSeconds) {
+            return this;
+        }
+        return next(currentRoomId, seconds, inventory, rooms, puzzles);
+    }
+
+    public GameState withInventory(List<String> items) {
+        if (items.size() == inventory.length) {
+            boolean same = true;
+            for (int i = 0; i < inventory.length && same; i++) {
+                same = inventory[i].equals(items.get(i));
+            }
+            if (same) {
+                return this;
+            }
+        }
+        return next(currentRoomId, timeRemainingSeconds, items.toArray(new String[0]), rooms, puzzles);
+    }
+
+    /** The state is kept as given; don't modify it afterwards. */
+    public GameState withObject(String roomId, String objectId, ObjectState state) {
+        PersistentMap<String, ObjectState> objects = rooms.get(roomId);
+        if (objects == null) {
+            objects = PersistentMap.empty();
+        }
+        PersistentMap<String, ObjectState> updated = objects.with(objectId, state);
+        if (updated == objects) {
+            return this;
+        }
+        return next(currentRoomId, timeRemainingSeconds, inventory, rooms.with(roomId, updated), puzzles);
+    }
+
+    /** The words are kept as given; don't modify them afterwards. */
+    public GameState withPuzzle(String puzzleId, long[] words) {
+        PersistentMap<String, long[]> updated = puzzles.with(puzzleId, words);
+        if (updated == puzzles) {
+            return this;
+        }
+        return next(currentRoomId, timeRemainingSeconds, inventory, rooms, updated);
+    }
+
+    // ---------------------------------------------------------------
+    // Reads
+    // ---------------------------------------------------------------
+
+    public ObjectState getObjectState(String roomId, String objectId) {
+        PersistentMap<String, ObjectState> objects = rooms.get(roomId);
+        return objects != null ? objects.get(objectId) : null;
+    }
+
+    public long[] getPuzzleState(String puzzleId) {
+        return puzzles.get(puzzleId);
+    }
+
+    /** Visits each room's id and its objects, keyed by object id. */
+    public void forEachRoom(BiConsumer<String, PersistentMap<String, ObjectState>> action) {
+        rooms.forEach(action);
+    }
+
+    public void forEachPuzzle(BiConsumer<String, long[]> action) {
+        puzzles.forEach(action);
+    }
+
+    /** Counts up by one with every change, so two versions compare by age. */
+    public long getVersion() { return version; }
+    public long getChangedAt() { return changedAt; }
+    public String getCurrentRoomId() { return currentRoomId; }
+    public int getTimeRemainingSeconds() { return timeRemainingSeconds; }
+    public List<String> getInventory() { return Collections.unmodifiableList(Arrays.asList(inventory)); }
+    // Replaced whenever the inventory changes, so identity tells two versions' inventories apart
+    String[] inventoryArray() { return inventory; }
+    public int getRoomCount() { return rooms.size(); }
+    public int getPuzzleCount() { return puzzles.size(); }
+}
@@ -0,0 +1,154 @@
+package com.escape.data;
+
+import com.escape.game.HollowmoreGameManager;
+import com.escape.game.Room;
+import com.escape.objects.InteractiveObject;
+import com.escape.objects.ObjectState;
+import com.escape.puzzles.Puzzle;
+import java.util.Arrays;
+
+/**
+ * Keeps a persistent GameState in step with the live game, so a snapshot
+ * for an autosave, an undo step or a peer is a single read of current().
+ * The game thread calls sync() once a tick; it compares the current room's
+ * objects and puzzle, the room, the inventory and the timer with the last
+ * version and folds in only what changed. Objects only change through the
+ * current room, so that is all it has to look at; after anything that
+ * rewrites other rooms (loading a save, recovery) call syncAll().
+ *
+ * A Listener hears about each change sync() folds in, with the version
+ * before and after; UndoHistory builds on that.
+ *
+ * current() may be read from any thread. The other methods belong to the
+ * game thread.
+ */
+public class GameStateTracker {
+
+    private final HollowmoreGameManager gameManager;
+    private volatile GameState current = GameState.EMPTY;
+    private String lastTimer;
+    private Listener listener;
+
+    /** Told about the changes each sync() folds in, on the game thread. */
+    public interface Listener {
+        /** before is null the first time an object is seen. */
+        void objectChanged(String roomId, String objectId, ObjectState before, ObjectState after);
+        void puzzleChanged(String roomId, String puzzleId, long[] before, long[] after);
+        /** End of a sync(); inventoryChanged if items came or went in it. */
+        void synced(GameState state, boolean inventoryChanged);
+        /** syncAll() re-read everything; earlier changes no longer lead to this state. */
+        void resynced(GameState state);
+    }
+
+    // Stats
+    private long syncs;
+    private long versions;
+
+    public GameStateTracker(HollowmoreGameManager gameManager) {
+        this.gameManager = gameManager;
+    }
+
+    /** The newest version. O(1) and lock-free; the result never changes. */
+    public GameState current() {
+        return current;
+    }
+
+    /** Re-reads every loaded room and puzzle. */
+    public void syncAll() {
+        GameState state = current;
+        for (Room room : SaveSnapshot.roomsOf(gameManager)) {
+            state = syncRoom(state, room, false);
+        }
+        lastTimer = null;
+        publish(syncCommon(state));
+        if (listener != null) {
+            listener.resynced(current);
+        }
+    }
+
+    /** Folds in what changed since the last call. Call once a tick. */
+    public void sync() {
+        sync(gameManager.getCurrentRoom());
+    }
+
+    /** Same, looking at the given room's objects instead of the current room's. */
+    public void sync(Room room) {
+        syncs++;
+        GameState state = current;
+        if (room != null) {
+            state = syncRoom(state, room, listener != null);
+        }
+        String[] inventory = state.inventoryArray();
+        state = syncCommon(state);
+        publish(state);
+        if (listener != null) {
+            listener.synced(state, state.inventoryArray() != inventory);
+        }
+    }
+
+    private GameState syncRoom(GameState state, Room room, boolean notify) {
+        String roomId = room.getRoomId();
+        for (InteractiveObject object : room.getObjects()) {
+            ObjectState live = object.captureState();
+            ObjectState known = state.getObjectState(roomId, object.getObjectId());
+            if (!live.sameAs(known)) {
+                state = state.withObject(roomId, object.getObjectId(), live);
+                if (notify) {
+                    listener.objectChanged(roomId, object.getObjectId(), known, live);
+                }
+            }
+        }
+        if (room.getPuzzle() != null) {
+            Puzzle puzzle = gameManager.getPuzzle(room.getPuzzle().getPuzzleId());
+            if (puzzle != null) {
+                long[] words = puzzle.snapshotState();
+                long[] known = state.getPuzzleState(puzzle.getPuzzleId());
+                if (!Arrays.equals(words, known)) {
+                    state = state.withPuzzle(puzzle.getPuzzleId(), words);
+                    if (notify) {
+                        listener.puzzleChanged(roomId, puzzle.getPuzzleId(), known, words);
+                    }
+                }
+            }
+        }
+        return state;
+    }
+
+    private GameState syncCommon(GameState state) {
+        Room room = gameManager.getCurrentRoom();
+        state = state.withCurrentRoom(room != null ? room.getRoomId() : null);
+        state = state.withInventory(gameManager.getInventory());
+        // The manager only exposes the formatted timer; parse it when it moves
+        String timer = gameManager.getTimeRemainingFormatted();
+        if (timer != null && !timer.equals(lastTimer)) {
+            state = state.withTimeRemaining(SaveSnapshot.parseSeconds(timer));
+            lastTimer = timer;
+        }
+        return state;
+    }
+
+    private void publish(GameState state) {
+        if (state != current) {
+            versions += state.getVersion() - current.getVersion();
+            current = state;
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public HollowmoreGameManager getGameManager() {
+        return gameManager;
+    }
+
+    // Stats
+    public long getSyncs() { return syncs; }
+    public long getVersions() { return versions; }
+
+    public void printStats() {
+        GameState state = current;
+        System.out.println("Game state: version " + state.getVersion() + ", " + state.getRoomCount() + " rooms, "
+            + state.getPuzzleCount() + " puzzles, " + versions + " changes over " + syncs + " ticks");
+    }
+}
@@ -134,8 +134,15 @@ public class HollowmoreDataLoader {
             case "CIPHER_DECODE":
                 String encrypted = (String) puzzleJson.get("encryptedText");
                 String decrypted = (String) puzzleJson.get("solution");
-                Long shift = (Long) puzzleJson.get("shift");
-                puzzle = new CipherPuzzle(puzzleId, encrypted, decrypted, shift.intValue());
+                String cipherType = (String) puzzleJson.get("cipher");
+                if (cipherType != null) {
+                    Object key = puzzleJson.get("key");
+                    puzzle = new CipherPuzzle(puzzleId, encrypted, decrypted,
+                        CipherEngine.of(cipherType, key == null ? null : key.toString()));
+                } else {
+                    Long shift = (Long) puzzleJson.get("shift");
+                    puzzle = new CipherPuzzle(puzzleId, encrypted, decrypted, shift.intValue());
+                }
                 break;
                 
             case "ITEM_ARRANGEMENT":
@@ -160,14 +167,34 @@ public class HollowmoreDataLoader {
                 
                 // Load solution
                 JSONObject solutionObj = (JSONObject) puzzleJson.get("solution");
-                String[][] solutionGrid = new String[victimList.size()][2];
-                for (int i = 0; i < victimList.size(); i++) {
-                    String victim = victimList.get(i);
-                    JSONObject victimData = (JSONObject) solutionObj.get(victim);
-                    solutionGrid[i][0] = (String) victimData.get("weapon");
-                    solutionGrid[i][1] = (String) victimData.get("time");
+                if (solutionObj != null) {
+                    String[][] solutionGrid = new String[victimList.size()][2];
+                    for (int i = 0; i < victimList.size(); i++) {
+                        String victim = victimList.get(i);
+                        JSONObject victimData = (JSONObject) solutionObj.get(victim);
+                        solutionGrid[i][0] = (String) victimData.get("weapon");
+                        solutionGrid[i][1] = (String) victimData.get("time");
+                    }
+                    logicPuzzle.setSolution(solutionGrid);
+                }
+                
+                // Clues and their constraints drive the hints
+                JSONArray clues = (JSONArray) puzzleJson.get("clues");
+                if (clues != null) {
+                    for (String clue : jsonArrayToStringList(clues)) {
+                        logicPuzzle.addClue(clue);
+                    }
+                }
+                JSONArray constraints = (JSONArray) puzzleJson.get("constraints");
+                if (constraints != null) {
+                    for (Object c : constraints) {
+                        JSONObject constraint = (JSONObject) c;
+                        Long clueIndex = (Long) constraint.get("clue");
+                        logicPuzzle.addConstraint((String) constraint.get("type"),
+                            (String) constraint.get("a"), (String) constraint.get("b"),
+                            clueIndex == null ? -1 : clueIndex.intValue());
+                    }
                 }
-                logicPuzzle.setSolution(solutionGrid);
                 puzzle = logicPuzzle;
                 break;
                 
@@ -194,6 +221,9 @@ public class HollowmoreDataLoader {
     private static void loadDialogue(JSONObject dialogueJson, Room room) {
         RoomDialogue dialogue = new RoomDialogue();
         
+        // Lines in a dialogueFile are served by the DialogueStore
+        DialogueStore.getInstance().registerRoom(room.getRoomId(), (String) dialogueJson.get("dialogueFile"));
+        
         JSONArray onEnter = (JSONArray) dialogueJson.get("onEnter");
         if (onEnter != null) {
             for (Object line : onEnter) {
@@ -358,7 +388,7 @@ public class HollowmoreDataLoader {
         item.setDescription(description);
         item.setSprite(sprite);
         
-        // In full implementation, add to game manager's item registry
+        ItemRegistry.getInstance().register(item);
     }
     
     // Helper method
@@ -550,6 +580,18 @@ class HollowmoreRoomBuilder {
         };
         puzzle.setSolution(solution);
         
+        puzzle.addClue("J.M. was killed at midnight, but not with poison.");
+        puzzle.addClue("The rope murder happened at 3AM.");
+        puzzle.addClue("L.K. was poisoned at dawn.");
+        puzzle.addClue("S.T. was not killed with a knife or rope.");
+        puzzle.addConstraint("same", "J.M.", "Midnight", 0);
+        puzzle.addConstraint("not", "J.M.", "Poison", 0);
+        puzzle.addConstraint("same", "Rope", "3AM", 1);
+        puzzle.addConstraint("same", "L.K.", "Poison", 2);
+        puzzle.addConstraint("same", "L.K.", "Dawn", 2);
+        puzzle.addConstraint("not", "S.T.", "Knife", 3);
+        puzzle.addConstraint("not", "S.T.", "Rope", 3);
+        
         RoomPuzzle puzzleInfo = new RoomPuzzle("greenhouse_logic", "LOGIC_GRID", "Victim Pattern");
         greenhouse.setPuzzle(puzzleInfo);
         gameManager.addPuzzle(puzzle);
@@ -0,0 +1,600 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.*;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Streaming replacement for HollowmoreDataLoader.
+ * Reads hollowmore.json with JsonPullParser and builds rooms, puzzles,
+ * objects and items as soon as each record has been read, so only one
+ * record's worth of fields is held in memory at a time.
+ */
+public class HollowmoreStreamLoader {
+
+    private static final String HOLLOWMORE_JSON = "json/hollowmore.json";
+
+    private final JsonPullParser parser;
+
+    // Scratch records, reset and reused for every room / puzzle / object
+    private final PuzzleRecord puzzleRecord = new PuzzleRecord();
+    private final ObjectRecord objectRecord = new ObjectRecord();
+    private String dialogueFile;   // dialogueFile of the room being read
+
+    public HollowmoreStreamLoader(JsonPullParser parser) {
+        this.parser = parser;
+    }
+
+    public static void loadGameData(HollowmoreGameManager gameManager) {
+        loadGameData(gameManager, HOLLOWMORE_JSON);
+    }
+
+    public static void loadGameData(HollowmoreGameManager gameManager, String path) {
+        try (InputStream in = new FileInputStream(path)) {
+            HollowmoreStreamLoader loader = new HollowmoreStreamLoader(new JsonPullParser(in));
+            loader.readDocument(gameManager);
+            System.out.println("✓ Game data streamed successfully from " + path);
+        } catch (Exception e) {
+            System.err.println("Failed to load game data: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void readDocument(HollowmoreGameManager gameManager) throws IOException {
+        List<Room> rooms = new ArrayList<>();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "game_config":
+                    readGameConfig();
+                    break;
+                case "rooms":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        Room room = readRoom(gameManager);
+                        gameManager.addRoom(room);
+                        rooms.add(room);
+                    }
+                    parser.endArray();
+                    break;
+                case "items":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        ItemRegistry.getInstance().register(readItem());
+                    }
+                    parser.endArray();
+                    break;
+                default:
+                    parser.skipValue();
+                    break;
+            }
+        }
+        parser.endObject();
+
+        ContentIndex contentIndex = ContentIndex.link(rooms, gameManager);
+        ContentIndex.setCurrent(contentIndex);
+        for (String problem : contentIndex.getProblems()) {
+            System.err.println("Broken reference: " + problem);
+        }
+    }
+
+    private void readGameConfig() throws IOException {
+        String title = null;
+        long timeLimit = 0;
+        String startRoom = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "title": title = parser.nextString(); break;
+                case "time_limit_minutes": timeLimit = parser.nextLong(); break;
+                case "player_start_room": startRoom = parser.nextString(); break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+
+        System.out.println("Loading: " + title);
+        System.out.println("Time limit: " + timeLimit + " minutes");
+        System.out.println("Starting room: " + startRoom);
+    }
+
+    /**
+     * Reads one room record positioned at its opening brace.
+     * Its puzzle is registered with the game manager; the room itself is returned.
+     */
+    Room readRoom(HollowmoreGameManager gameManager) throws IOException {
+        LoadedRoom loaded = readRoomRecord();
+        if (loaded.puzzle != null) {
+            gameManager.addPuzzle(loaded.puzzle);
+        }
+        return loaded.room;
+    }
+
+    /**
+     * Reads one room record without touching the game manager,
+     * so records can be parsed on any thread and merged later.
+     */
+    LoadedRoom readRoomRecord() throws IOException {
+        String roomId = null;
+        String name = null;
+        String description = null;
+        String exitTo = null;
+        String requiredItem = null;
+        Puzzle puzzle = null;
+        RoomPuzzle roomPuzzle = null;
+        RoomDialogue dialogue = null;
+        List<InteractiveObject> objects = new ArrayList<>();
+        dialogueFile = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "roomId": roomId = parser.nextString(); break;
+                case "name": name = parser.nextString(); break;
+                case "description": description = parser.nextString(); break;
+                case "exitTo": exitTo = parser.nextString(); break;
+                case "requiredItem": requiredItem = parser.nextString(); break;
+                case "puzzle":
+                    readPuzzleRecord();
+                    roomPuzzle = new RoomPuzzle(puzzleRecord.puzzleId, puzzleRecord.type, puzzleRecord.title);
+                    puzzle = buildPuzzle(puzzleRecord);
+                    break;
+                case "dialogue":
+                    dialogue = readDialogue();
+                    break;
+                case "interactiveObjects":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        readObjectRecord();
+                        objects.add(buildObject(objectRecord));
+                    }
+                    parser.endArray();
+                    break;
+                default:
+                    parser.skipValue();
+                    break;
+            }
+        }
+        parser.endObject();
+
+        Room room = new Room(roomId, name, description);
+        if (dialogueFile != null) {
+            // Lines are served from the compiled file instead of the heap
+            DialogueStore.getInstance().registerRoom(roomId, dialogueFile);
+        }
+        if (roomPuzzle != null) {
+            room.setPuzzle(roomPuzzle);
+        }
+        if (dialogue != null) {
+            room.setDialogue(dialogue);
+        }
+        for (InteractiveObject obj : objects) {
+            room.addObject(obj);
+        }
+        if (exitTo != null) {
+            room.setExitTo(exitTo);
+        }
+        if (requiredItem != null) {
+            room.setRequiredItem(requiredItem);
+        }
+        return new LoadedRoom(room, puzzle);
+    }
+
+    // ---------------------------------------------------------------
+    // Puzzles
+    // ---------------------------------------------------------------
+
+    private void readPuzzleRecord() throws IOException {
+        PuzzleRecord r = puzzleRecord;
+        r.reset();
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "puzzleId": r.puzzleId = parser.nextString(); break;
+                case "type": r.type = parser.nextString(); break;
+                case "title": r.title = parser.nextString(); break;
+                case "description": r.description = parser.nextString(); break;
+                case "encryptedText": r.encryptedText = parser.nextString(); break;
+                case "shift": r.shift = parser.nextInt(); break;
+                case "cipher": r.cipher = parser.nextString(); break;
+                case "key": r.cipherKey = parser.nextString(); break;
+                case "victims": readStrings(r.victims); break;
+                case "weapons": readStrings(r.weapons); break;
+                case "times": readStrings(r.times); break;
+                case "hints": readStrings(r.hints); break;
+                case "clues": readStrings(r.clues); break;
+                case "constraints": readConstraints(r.constraints); break;
+                case "solution":
+                    // The shape of the solution depends on the puzzle type
+                    switch (parser.peek()) {
+                        case STRING:
+                            r.solutionText = parser.nextString();
+                            break;
+                        case BEGIN_ARRAY:
+                            readStrings(r.solutionList);
+                            break;
+                        case BEGIN_OBJECT:
+                            readSolutionGrid(r.solutionGrid);
+                            break;
+                        default:
+                            parser.skipValue();
+                            break;
+                    }
+                    break;
+                default:
+                    parser.skipValue();
+                    break;
+            }
+        }
+        parser.endObject();
+    }
+
+    private void readSolutionGrid(Map<String, String[]> grid) throws IOException {
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String victim = parser.nextName();
+            String[] row = new String[2];
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "weapon": row[0] = parser.nextString(); break;
+                    case "time": row[1] = parser.nextString(); break;
+                    default: parser.skipValue(); break;
+                }
+            }
+            parser.endObject();
+            grid.put(victim, row);
+        }
+        parser.endObject();
+    }
+
+    /** Logic grid constraints: {"type": "same", "a": "J.M.", "b": "Midnight", "clue": 0} */
+    private void readConstraints(List<String[]> constraints) throws IOException {
+        parser.beginArray();
+        while (parser.hasNext()) {
+            String[] c = new String[4];
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "type": c[0] = parser.nextString(); break;
+                    case "a": c[1] = parser.nextString(); break;
+                    case "b": c[2] = parser.nextString(); break;
+                    case "clue": c[3] = String.valueOf(parser.nextInt()); break;
+                    default: parser.skipValue(); break;
+                }
+            }
+            parser.endObject();
+            constraints.add(c);
+        }
+        parser.endArray();
+    }
+
+    private static Puzzle buildPuzzle(PuzzleRecord r) {
+        Puzzle puzzle = null;
+
+        switch (r.type) {
+            case "LEDGER_ASSEMBLY":
+                puzzle = new LedgerAssemblyPuzzle(r.puzzleId, r.solutionText, 3);
+                break;
+
+            case "PORTRAIT_EYES":
+                puzzle = new PortraitEyesPuzzle(r.puzzleId, r.solutionList);
+                break;
+
+            case "CIPHER_DECODE":
+                puzzle = r.cipher == null
+                    ? new CipherPuzzle(r.puzzleId, r.encryptedText, r.solutionText, r.shift)
+                    : new CipherPuzzle(r.puzzleId, r.encryptedText, r.solutionText, CipherEngine.of(r.cipher, r.cipherKey));
+                break;
+
+            case "ITEM_ARRANGEMENT":
+                puzzle = new ItemArrangementPuzzle(r.puzzleId, r.solutionList);
+                break;
+
+            case "LOGIC_GRID":
+                LogicGridPuzzle logicPuzzle = new LogicGridPuzzle(r.puzzleId, r.victims, r.weapons, r.times);
+                if (!r.solutionGrid.isEmpty()) {
+                    String[][] solutionGrid = new String[r.victims.size()][];
+                    for (int i = 0; i < r.victims.size(); i++) {
+                        solutionGrid[i] = r.solutionGrid.get(r.victims.get(i));
+                    }
+                    logicPuzzle.setSolution(solutionGrid);
+                }
+                for (String clue : r.clues) {
+                    logicPuzzle.addClue(clue);
+                }
+                for (String[] c : r.constraints) {
+                    logicPuzzle.addConstraint(c[0], c[1], c[2], c[3] == null ? -1 : Integer.parseInt(c[3]));
+                }
+                puzzle = logicPuzzle;
+                break;
+
+            case "TOKEN_SEQUENCE":
+                puzzle = new TokenSequencePuzzle(r.puzzleId, r.solutionList, r.solutionList.size());
+                break;
+        }
+
+        if (puzzle != null) {
+            for (String hint : r.hints) {
+                puzzle.addHint(hint);
+            }
+        }
+        return puzzle;
+    }
+
+    // ---------------------------------------------------------------
+    // Dialogue
+    // ---------------------------------------------------------------
+
+    private RoomDialogue readDialogue() throws IOException {
+        RoomDialogue dialogue = new RoomDialogue();
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "dialogueFile":
+                    dialogueFile = parser.nextString();
+                    break;
+                case "onEnter":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        dialogue.addOnEnter(parser.nextString());
+                    }
+                    parser.endArray();
+                    break;
+                case "onPuzzleSolved":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        dialogue.addOnPuzzleSolved(parser.nextString());
+                    }
+                    parser.endArray();
+                    break;
+                default:
+                    parser.skipValue();
+                    break;
+            }
+        }
+        parser.endObject();
+        return dialogue;
+    }
+
+    // ---------------------------------------------------------------
+    // Interactive objects
+    // ---------------------------------------------------------------
+
+    private void readObjectRecord() throws IOException {
+        ObjectRecord r = objectRecord;
+        r.reset();
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "objectId": r.objectId = parser.nextString(); break;
+                case "name": r.name = parser.nextString(); break;
+                case "type": r.type = parser.nextString(); break;
+                case "x": r.x = parser.nextDouble(); break;
+                case "y": r.y = parser.nextDouble(); break;
+                case "sprite": r.sprite = parser.nextString(); break;
+                case "description": r.description = parser.nextString(); break;
+                case "evidenceValue": r.evidenceValue = parser.nextString(); break;
+                case "unlockCode": r.unlockCode = parser.nextString(); break;
+                case "unlockCondition": r.unlockCondition = parser.nextString(); break;
+                case "containsItems": readStrings(r.containsItems); break;
+                case "locked": r.locked = parser.nextBoolean() ? 1 : 0; break;
+                case "states": readStrings(r.states); break;
+                case "currentState": r.currentState = parser.nextString(); break;
+                case "containsText": r.containsText = parser.nextString(); break;
+                case "correctItem": r.correctItem = parser.nextString(); break;
+                case "slotNumber": r.slotNumber = parser.nextInt(); break;
+                case "correctToken": r.correctToken = parser.nextString(); break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+    }
+
+    private static InteractiveObject buildObject(ObjectRecord r) {
+        InteractiveObject obj;
+
+        switch (r.type) {
+            case "COLLECTIBLE":
+                CollectibleObject collectible = new CollectibleObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                collectible.setDescription(r.description);
+                if (r.evidenceValue != null) {
+                    collectible.setEvidenceValue(r.evidenceValue);
+                }
+                obj = collectible;
+                break;
+
+            case "CONTAINER":
+                ContainerObject container = new ContainerObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                container.setDescription(r.description);
+                if (r.unlockCode != null) {
+                    container.setUnlockCode(r.unlockCode);
+                }
+                if (r.unlockCondition != null) {
+                    container.setUnlockCondition(r.unlockCondition);
+                }
+                for (String itemId : r.containsItems) {
+                    container.addItem(itemId);
+                }
+                if (r.locked == 0) {
+                    container.unlock();
+                }
+                obj = container;
+                break;
+
+            case "CYCLIC":
+                CyclicObject cyclic = new CyclicObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                cyclic.setDescription(r.description);
+                if (!r.states.isEmpty()) {
+                    cyclic.setStates(r.states);
+                }
+                if (r.currentState != null) {
+                    cyclic.setCurrentState(r.currentState);
+                }
+                obj = cyclic;
+                break;
+
+            case "DRAGGABLE":
+                DraggableObject draggable = new DraggableObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                draggable.setDescription(r.description);
+                obj = draggable;
+                break;
+
+            case "EXAMINE":
+                ExamineObject examine = new ExamineObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                examine.setDescription(r.description);
+                if (r.containsText != null) {
+                    examine.setExamineText(r.containsText);
+                } else if (r.description != null) {
+                    examine.setExamineText(r.description);
+                }
+                obj = examine;
+                break;
+
+            case "EVIDENCE_HOLDER":
+                EvidenceHolderObject holder = new EvidenceHolderObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                holder.setDescription(r.description);
+                if (r.correctItem != null) {
+                    holder.setCorrectItem(r.correctItem);
+                }
+                obj = holder;
+                break;
+
+            case "TOKEN_SLOT":
+                TokenSlotObject slot = new TokenSlotObject(r.objectId, r.name, r.x, r.y, r.slotNumber);
+                slot.setDescription(r.description);
+                if (r.correctToken != null) {
+                    slot.setCorrectToken(r.correctToken);
+                }
+                obj = slot;
+                break;
+
+            case "PUZZLE_SURFACE":
+            case "AUDIO_PLAYER":
+            default:
+                // For now, create as examine object
+                ExamineObject defaultObj = new ExamineObject(r.objectId, r.name, r.x, r.y, r.sprite);
+                defaultObj.setDescription(r.description);
+                obj = defaultObj;
+                break;
+        }
+
+        return obj;
+    }
+
+    // ---------------------------------------------------------------
+    // Items
+    // ---------------------------------------------------------------
+
+    Item readItem() throws IOException {
+        String itemId = null;
+        String name = null;
+        String type = null;
+        String description = null;
+        String sprite = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "itemId": itemId = parser.nextString(); break;
+                case "name": name = parser.nextString(); break;
+                case "type": type = parser.nextString(); break;
+                case "description": description = parser.nextString(); break;
+                case "sprite": sprite = parser.nextString(); break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+
+        Item item = new Item(itemId, name, type);
+        item.setDescription(description);
+        item.setSprite(sprite);
+        return item;
+    }
+
+    // Helper method
+    private void readStrings(List<String> target) throws IOException {
+        target.clear();
+        parser.beginArray();
+        while (parser.hasNext()) {
+            target.add(parser.nextString());
+        }
+        parser.endArray();
+    }
+
+    /** A room together with the puzzle that belongs to it. */
+    static class LoadedRoom {
+        final Room room;
+        final Puzzle puzzle;
+
+        LoadedRoom(Room room, Puzzle puzzle) {
+            this.room = room;
+            this.puzzle = puzzle;
+        }
+    }
+
+    /**
+     * Flat field holder for one puzzle record.
+     * Lists are copied by the puzzle constructors, so they can be reused.
+     */
+    private static class PuzzleRecord {
+        String puzzleId, type, title, description;
+        String solutionText, encryptedText;
+        String cipher, cipherKey;
+        int shift;
+        final List<String> solutionList = new ArrayList<>();
+        final Map<String, String[]> solutionGrid = new HashMap<>();
+        final List<String> victims = new ArrayList<>();
+        final List<String> weapons = new ArrayList<>();
+        final List<String> times = new ArrayList<>();
+        final List<String> hints = new ArrayList<>();
+        final List<String> clues = new ArrayList<>();
+        final List<String[]> constraints = new ArrayList<>();   // type, a, b, clue
+
+        void reset() {
+            puzzleId = type = title = description = null;
+            solutionText = encryptedText = null;
+            cipher = cipherKey = null;
+            shift = 0;
+            solutionList.clear();
+            solutionGrid.clear();
+            victims.clear();
+            weapons.clear();
+            times.clear();
+            hints.clear();
+            clues.clear();
+            constraints.clear();
+        }
+    }
+
+    /** Flat field holder for one interactive object record. */
+    private static class ObjectRecord {
+        String objectId, name, type, sprite, description;
+        double x, y;
+        String evidenceValue, unlockCode, unlockCondition;
+        int locked;   // -1 = not specified, 0 = false, 1 = true
+        String currentState, containsText, correctItem, correctToken;
+        int slotNumber;
+        final List<String> containsItems = new ArrayList<>();
+        final List<String> states = new ArrayList<>();
+
+        void reset() {
+            objectId = name = type = sprite = description = null;
+            x = y = 0;
+            evidenceValue = unlockCode = unlockCondition = null;
+            locked = -1;
+            currentState = containsText = correctItem = correctToken = null;
+            slotNumber = 0;
+            containsItems.clear();
+            states.clear();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.escape.data;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes the input a game applies, tick by tick, so InputRecording can
+ * replay it. The game calls key()/click() for each input as it applies it
+ * and endTick() after every simulation step. Ticks without input cost
+ * nothing; a tick with input is a varint tick delta, an event count and a
+ * varint or three per event. A recording that is never finished (the game
+ * crashed) has no trailer and is rejected on reading.
+ *
+ * Not thread-safe: use it from the game thread. Write errors are reported
+ * once and stop the recording rather than the game.
+ */
+public class InputRecorder {
+
+    private final Path file;
+    private final OutputStream out;
+    private final CRC32C crc = new CRC32C();
+    private final VarintWriter tickEvents = new VarintWriter(64);
+    private final VarintWriter scratch = new VarintWriter(64);
+    private int eventCount;
+    private long tick;
+    private long lastWrittenTick;
+    private boolean failed;
+    private boolean finished;
+
+    /**
+     * @param seed         the engine's random seed, 0 if it draws no random numbers
+     * @param source       which engine recorded, e.g. "gameExec"
+     * @param contentId    what the engine loaded, e.g. the map path
+     * @param contentHash  hash of that content, checked before replaying
+     * @param startDigest  the engine's state digest before the first tick
+     */
+    public InputRecorder(Path file, long seed, long tickNanos, String source, String contentId,
+                         long contentHash, long startDigest) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+
+        VarintWriter header = new VarintWriter(128);
+        header.writeInt(InputRecording.MAGIC);
+        header.writeInt(InputRecording.VERSION);
+        header.writeLong(seed);
+        header.writeVarLong(tickNanos);
+        header.writeString(source);
+        header.writeString(contentId);
+        header.writeLong(contentHash);
+        header.writeLong(startDigest);
+        write(header);
+    }
+
+    public void keyPressed(int code) {
+        event(InputRecording.KEY_PRESSED, code);
+    }
+
+    public void keyReleased(int code) {
+        event(InputRecording.KEY_RELEASED, code);
+    }
+
+    /** Coordinates are kept to 1/16 px; apply the same rounding live via InputRecording.quantize. */
+    public void click(double x, double y, int button) {
+        event(InputRecording.CLICK, button);
+        tickEvents.writeZigZag((int) Math.round(x * InputRecording.CLICK_SCALE));
+        tickEvents.writeZigZag((int) Math.round(y * InputRecording.CLICK_SCALE));
+    }
+
+    private void event(int type, int code) {
+        tickEvents.writeVarInt(type | (code << 2));
+        eventCount++;
+    }
+
+    /** Closes the current tick; its events, if any, go to the file. */
+    public void endTick() {
+        if (eventCount > 0 && !failed && !finished) {
+            scratch.reset();
+            scratch.writeVarLong(tick - lastWrittenTick);
+            scratch.writeVarInt(eventCount);
+            scratch.writeBytes(tickEvents.buffer, 0, tickEvents.size);
+            write(scratch);
+            lastWrittenTick = tick;
+        }
+        tickEvents.reset();
+        eventCount = 0;
+        tick++;
+    }
+
+    /**
+     * Writes the trailer (tick count and the engine's final state digest,
+     * which a replay must reproduce) and closes the file.
+     */
+    public void finish(long finalDigest) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (!failed) {
+                scratch.reset();
+                scratch.writeVarLong(tick - lastWrittenTick);
+                scratch.writeVarInt(0);
+                scratch.writeLong(finalDigest);
+                write(scratch);
+                scratch.reset();
+                scratch.writeInt((int) crc.getValue());
+                out.write(scratch.buffer, 0, scratch.size);
+            }
+            out.close();
+            System.out.println("Recorded " + tick + " ticks to " + file);
+        } catch (IOException e) {
+            System.err.println("Error finishing input recording: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void write(VarintWriter bytes) {
+        if (failed) {
+            return;
+        }
+        try {
+            out.write(bytes.buffer, 0, bytes.size);
+            crc.update(bytes.buffer, 0, bytes.size);
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Error writing input recording, recording stopped: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public long getTicks() { return tick; }
+    public boolean isFinished() { return finished; }
+}
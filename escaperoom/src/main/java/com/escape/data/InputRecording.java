@@ -0,0 +1,172 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * A finished InputRecorder file, read back for replay.
+ * Besides the input it holds what a replay needs to start from the same
+ * place (the seed, the tick length, the content and its hash, the state
+ * digest before the first tick) and the digest the replay has to end on.
+ */
+public class InputRecording {
+
+    static final int MAGIC = 0x48494E50;   // "HINP"
+    static final int VERSION = 1;
+
+    public static final int KEY_PRESSED = 0;
+    public static final int KEY_RELEASED = 1;
+    public static final int CLICK = 2;
+
+    static final int CLICK_SCALE = 16;
+
+    private final long seed;
+    private final long tickNanos;
+    private final String source;
+    private final String contentId;
+    private final long contentHash;
+    private final long startDigest;
+    private final long finalDigest;
+    private final long tickCount;
+
+    // Events of each tick that had any, in order
+    private final long[] ticks;
+    private final List<List<Event>> events;
+
+    /** One input applied at a tick. */
+    public static class Event {
+        public final int type;
+        public final int code;       // key code, or mouse button for clicks
+        public final double x;
+        public final double y;
+
+        Event(int type, int code, double x, double y) {
+            this.type = type;
+            this.code = code;
+            this.x = x;
+            this.y = y;
+        }
+
+        public boolean isKey() { return type != CLICK; }
+        public boolean isPressed() { return type == KEY_PRESSED; }
+    }
+
+    private InputRecording(long seed, long tickNanos, String source, String contentId, long contentHash,
+                           long startDigest, long finalDigest, long tickCount, long[] ticks, List<List<Event>> events) {
+        this.seed = seed;
+        this.tickNanos = tickNanos;
+        this.source = source;
+        this.contentId = contentId;
+        this.contentHash = contentHash;
+        this.startDigest = startDigest;
+        this.finalDigest = finalDigest;
+        this.tickCount = tickCount;
+        this.ticks = ticks;
+        this.events = events;
+    }
+
+    /** Rounds a live click position the way the recording stores it, so live play and replay see the same value. */
+    public static double quantize(double coordinate) {
+        return Math.round(coordinate * CLICK_SCALE) / (double) CLICK_SCALE;
+    }
+
+    public static InputRecording read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 8) {
+            throw new IOException("Input recording is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        VarintReader check = new VarintReader(data, data.length - 4, data.length);
+        if (check.readInt() != (int) crc.getValue()) {
+            throw new IOException("Input recording is corrupt or was never finished");
+        }
+
+        VarintReader in = new VarintReader(data, 0, data.length - 4);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an input recording");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input recording version " + version);
+        }
+        long seed = in.readLong();
+        long tickNanos = in.readVarLong();
+        String source = in.readString();
+        String contentId = in.readString();
+        long contentHash = in.readLong();
+        long startDigest = in.readLong();
+
+        List<Long> tickList = new ArrayList<>();
+        List<List<Event>> events = new ArrayList<>();
+        long tick = 0;
+        while (true) {
+            tick += in.readVarLong();
+            int count = in.readCount();
+            if (count == 0) {
+                break;
+            }
+            List<Event> group = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int head = in.readVarInt();
+                int type = head & 3;
+                int code = head >>> 2;
+                if (type == CLICK) {
+                    double x = in.readZigZag() / (double) CLICK_SCALE;
+                    double y = in.readZigZag() / (double) CLICK_SCALE;
+                    group.add(new Event(type, code, x, y));
+                } else if (type == KEY_PRESSED || type == KEY_RELEASED) {
+                    group.add(new Event(type, code, 0, 0));
+                } else {
+                    throw new IOException("Unknown input event type " + type);
+                }
+            }
+            tickList.add(tick);
+            events.add(Collections.unmodifiableList(group));
+        }
+        long finalDigest = in.readLong();
+
+        long[] ticks = new long[tickList.size()];
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = tickList.get(i);
+        }
+        return new InputRecording(seed, tickNanos, source, contentId, contentHash,
+            startDigest, finalDigest, tick, ticks, events);
+    }
+
+    /** Steps through the recording one tick at a time. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public class Cursor {
+        private int next;
+
+        /** Events of the given tick; ticks must be asked for in increasing order. */
+        public List<Event> eventsAt(long tick) {
+            while (next < ticks.length && ticks[next] < tick) {
+                next++;
+            }
+            if (next < ticks.length && ticks[next] == tick) {
+                return events.get(next++);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    public long getSeed() { return seed; }
+    public long getTickNanos() { return tickNanos; }
+    public String getSource() { return source; }
+    public String getContentId() { return contentId; }
+    public long getContentHash() { return contentHash; }
+    public long getStartDigest() { return startDigest; }
+    public long getFinalDigest() { return finalDigest; }
+    public long getTickCount() { return tickCount; }
+    /** Number of ticks that had any input. */
+    public int getInputTicks() { return ticks.length; }
+}
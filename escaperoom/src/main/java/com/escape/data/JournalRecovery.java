@@ -0,0 +1,408 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.Puzzle;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * What an ActionJournal directory holds after a run: per session, the newest
+ * checkpoint and the records logged after it, ready to be applied to freshly
+ * loaded content. Segments are read oldest first and each stops at its first
+ * torn or corrupt record; a torn tail on the newest segment is what a crash
+ * mid-commit leaves and is cut off the file.
+ */
+public class JournalRecovery {
+
+    final Map<String, RecoveredSession> sessions = new LinkedHashMap<>();
+    // Per segment: sessions that logged in it and the highest sequence number each reached
+    final TreeMap<Integer, Map<String, Long>> segmentSessions = new TreeMap<>();
+    final List<Integer> emptySegments = new ArrayList<>();
+    int lastSegment = -1;
+    private long truncatedBytes;
+    private int corruptSegments;
+
+    /** Reads the directory; missing directories recover to nothing. */
+    public static JournalRecovery recover(Path directory) throws IOException {
+        JournalRecovery recovery = new JournalRecovery();
+        if (!Files.isDirectory(directory)) {
+            return recovery;
+        }
+
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(ActionJournal.SEGMENT_PREFIX) && name.endsWith(ActionJournal.SEGMENT_EXTENSION)) {
+                    String number = name.substring(ActionJournal.SEGMENT_PREFIX.length(),
+                        name.length() - ActionJournal.SEGMENT_EXTENSION.length());
+                    try {
+                        segments.put(Integer.parseInt(number), file);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Ignoring " + name + " in journal directory");
+                    }
+                } else if (name.endsWith(ActionJournal.CHECKPOINT_EXTENSION)) {
+                    checkpoints.add(file);
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            boolean newest = segment.getKey().equals(segments.lastKey());
+            recovery.readSegment(segment.getKey(), segment.getValue(), newest);
+            recovery.lastSegment = segment.getKey();
+        }
+        for (Path file : checkpoints) {
+            String name = file.getFileName().toString();
+            String sessionId = name.substring(0, name.length() - ActionJournal.CHECKPOINT_EXTENSION.length());
+            recovery.readCheckpoint(sessionId, file);
+        }
+        for (RecoveredSession session : recovery.sessions.values()) {
+            session.settle();
+        }
+        return recovery;
+    }
+
+    // ---------------------------------------------------------------
+    // Reading
+    // ---------------------------------------------------------------
+
+    private void readSegment(int number, Path path, boolean newest) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        if (!validHeader(data, number)) {
+            System.err.println("Journal segment " + path.getFileName() + " has a bad header, skipping it");
+            corruptSegments++;
+            return;
+        }
+
+        Map<Integer, String> refs = new HashMap<>();
+        Map<String, Long> maxSeq = new HashMap<>();
+        int pos = ActionJournal.SEGMENT_HEADER_SIZE;
+        while (pos < data.length) {
+            int next = readRecord(data, pos, refs, maxSeq);
+            if (next < 0) {
+                break;
+            }
+            pos = next;
+        }
+
+        if (pos < data.length) {
+            if (newest) {
+                // A commit the crash cut short; nothing after it was acknowledged
+                truncatedBytes += data.length - pos;
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(pos);
+                    channel.force(true);
+                }
+            } else {
+                System.err.println("Journal segment " + path.getFileName() + " is corrupt after byte " + pos);
+                corruptSegments++;
+            }
+        }
+        if (maxSeq.isEmpty()) {
+            emptySegments.add(number);
+        } else {
+            segmentSessions.put(number, maxSeq);
+        }
+    }
+
+    private static boolean validHeader(byte[] data, int number) {
+        if (data.length < ActionJournal.SEGMENT_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, 0, ActionJournal.SEGMENT_HEADER_SIZE);
+        int magic = header.getInt();
+        int version = header.getShort() & 0xFFFF;
+        header.getShort();   // flags, none defined yet
+        int segment = header.getInt();
+        int checksum = header.getInt();
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, 12);
+        return magic == ActionJournal.SEGMENT_MAGIC && version == ActionJournal.VERSION
+            && segment == number && checksum == (int) crc.getValue();
+    }
+
+    /** @return the offset after the record, or -1 if it is torn or corrupt */
+    private int readRecord(byte[] data, int pos, Map<Integer, String> refs, Map<String, Long> maxSeq) {
+        try {
+            VarintReader frame = new VarintReader(data, pos, data.length);
+            int length = frame.readVarInt();
+            int start = frame.position();
+            if (length <= 0 || length > data.length - start - 4) {
+                return -1;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(data, start, length);
+            int checksum = new VarintReader(data, start + length, start + length + 4).readInt();
+            if (checksum != (int) crc.getValue()) {
+                return -1;
+            }
+
+            VarintReader in = new VarintReader(data, start, start + length);
+            int type = in.readVarInt();
+            int ref = in.readVarInt();
+            if (type == ActionJournal.DECLARE) {
+                refs.put(ref, in.readString());
+                return start + length + 4;
+            }
+            String sessionId = refs.get(ref);
+            if (sessionId == null) {
+                throw new IOException("Record for undeclared session " + ref);
+            }
+            JournalEntry entry = JournalEntry.read(type, in.readVarLong(), in);
+            session(sessionId).entries.add(entry);
+            maxSeq.merge(sessionId, entry.seq, Math::max);
+            return start + length + 4;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void readCheckpoint(String sessionId, Path file) {
+        try {
+            byte[] data = Files.readAllBytes(file);
+            if (data.length < ActionJournal.CHECKPOINT_HEADER_SIZE) {
+                throw new IOException("Checkpoint is truncated");
+            }
+            ByteBuffer header = ByteBuffer.wrap(data, 0, ActionJournal.CHECKPOINT_HEADER_SIZE);
+            int magic = header.getInt();
+            long seq = header.getLong();
+            int checksum = header.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(data, 0, 12);
+            if (magic != ActionJournal.CHECKPOINT_MAGIC || checksum != (int) crc.getValue()) {
+                throw new IOException("Checkpoint header is corrupt");
+            }
+            byte[] snapshot = new byte[data.length - ActionJournal.CHECKPOINT_HEADER_SIZE];
+            System.arraycopy(data, ActionJournal.CHECKPOINT_HEADER_SIZE, snapshot, 0, snapshot.length);
+            RecoveredSession session = session(sessionId);
+            session.checkpoint = SaveFormat.decode(snapshot);
+            session.checkpointSeq = seq;
+        } catch (IOException e) {
+            // The records alone may still be enough
+            System.err.println("Error reading checkpoint " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private RecoveredSession session(String sessionId) {
+        return sessions.computeIfAbsent(sessionId, RecoveredSession::new);
+    }
+
+    // ---------------------------------------------------------------
+    // Results
+    // ---------------------------------------------------------------
+
+    public RecoveredSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public Collection<RecoveredSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /** Bytes cut off the newest segment as a torn commit. */
+    public long getTruncatedBytes() { return truncatedBytes; }
+    public int getCorruptSegments() { return corruptSegments; }
+
+    /** One session's checkpoint and the records logged after it. */
+    public static class RecoveredSession {
+        private final String sessionId;
+        private SaveSnapshot checkpoint;
+        private long checkpointSeq;
+        private List<JournalEntry> entries = new ArrayList<>();
+        private long lastSeq;
+        private boolean ended;
+        private int timeRemainingSeconds = SaveSnapshot.UNKNOWN_TIME;
+
+        RecoveredSession(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /** Keeps only what the newest game of the session needs. */
+        void settle() {
+            long lastStart = -1;
+            for (JournalEntry entry : entries) {
+                lastSeq = Math.max(lastSeq, entry.seq);
+                if (entry.type == ActionJournal.START) {
+                    lastStart = Math.max(lastStart, entry.seq);
+                }
+            }
+            lastSeq = Math.max(lastSeq, checkpointSeq);
+
+            // A checkpoint older than the last START belongs to an abandoned game
+            long from;
+            if (checkpoint != null && checkpointSeq >= lastStart) {
+                from = checkpointSeq + 1;
+                timeRemainingSeconds = checkpoint.getTimeRemainingSeconds();
+            } else {
+                checkpoint = null;
+                checkpointSeq = 0;
+                from = Math.max(lastStart, 0);
+            }
+            List<JournalEntry> kept = new ArrayList<>();
+            for (JournalEntry entry : entries) {
+                if (entry.seq >= from) {
+                    kept.add(entry);
+                    if (entry.type == ActionJournal.END) {
+                        ended = true;
+                    } else if (entry.type == ActionJournal.TIMER) {
+                        timeRemainingSeconds = entry.seconds;
+                    }
+                }
+            }
+            entries = kept;
+        }
+
+        /**
+         * Puts the session's state back into loaded content: the checkpoint
+         * first, then every record after it in order, then the last time left
+         * that was logged.
+         * @return the number of entries that no longer match the content
+         */
+        public int apply(HollowmoreGameManager gameManager) {
+            int unmatched = checkpoint != null ? checkpoint.apply(gameManager) : 0;
+            for (JournalEntry entry : entries) {
+                if (!entry.apply(gameManager)) {
+                    unmatched++;
+                }
+            }
+            // Replaying a START restarts the countdown
+            if (timeRemainingSeconds != SaveSnapshot.UNKNOWN_TIME) {
+                gameManager.setTimeRemainingSeconds(timeRemainingSeconds);
+            }
+            return unmatched;
+        }
+
+        public String getSessionId() { return sessionId; }
+        public boolean hasCheckpoint() { return checkpoint != null; }
+        public long getCheckpointSeq() { return checkpointSeq; }
+        public long getLastSeq() { return lastSeq; }
+        /** Records to replay on top of the checkpoint. */
+        public int getEntryCount() { return entries.size(); }
+        /** The game was over, so there is nothing to continue. */
+        public boolean isEnded() { return ended; }
+        /** Nothing to restore: no checkpoint and no records. */
+        public boolean isEmpty() { return checkpoint == null && entries.isEmpty(); }
+        public int getTimeRemainingSeconds() { return timeRemainingSeconds; }
+    }
+}
+
+/** One decoded journal record. */
+class JournalEntry {
+    final int type;
+    final long seq;
+    String roomId;
+    String targetId;       // object, puzzle or item id
+    ObjectState state;
+    String itemRef;
+    long[] words;
+    int seconds;
+
+    private JournalEntry(int type, long seq) {
+        this.type = type;
+        this.seq = seq;
+    }
+
+    static JournalEntry read(int type, long seq, VarintReader in) throws IOException {
+        JournalEntry entry = new JournalEntry(type, seq);
+        switch (type) {
+            case ActionJournal.START:
+            case ActionJournal.TRANSITION:
+                entry.roomId = in.readString();
+                break;
+            case ActionJournal.COLLECT:
+            case ActionJournal.UNLOCK:
+            case ActionJournal.OPEN:
+            case ActionJournal.CYCLE:
+            case ActionJournal.PLACE:
+            case ActionJournal.EXAMINE:
+            case ActionJournal.OBJECT:
+                entry.roomId = in.readString();
+                entry.targetId = in.readString();
+                entry.state = SaveFormat.readObjectState(in);
+                entry.itemRef = in.readString();
+                break;
+            case ActionJournal.SOLVE_ATTEMPT:
+            case ActionJournal.PUZZLE:
+                entry.targetId = in.readString();
+                entry.words = new long[in.readCount()];
+                for (int i = 0; i < entry.words.length; i++) {
+                    entry.words[i] = in.readVarLong();
+                }
+                break;
+            case ActionJournal.INVENTORY:
+                entry.targetId = in.readString();
+                break;
+            case ActionJournal.TIMER:
+                entry.seconds = in.readZigZag();
+                break;
+            case ActionJournal.END:
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+        if (in.hasMore()) {
+            throw new IOException("Trailing bytes in journal record");
+        }
+        return entry;
+    }
+
+    /** @return false if the room, object or puzzle is gone from the content */
+    boolean apply(HollowmoreGameManager gameManager) {
+        switch (type) {
+            case ActionJournal.START:
+                gameManager.startGame(roomId);
+                return true;
+            case ActionJournal.TRANSITION: {
+                Room current = gameManager.getCurrentRoom();
+                if (current != null && current.getRoomId().equals(roomId)) {
+                    return true;
+                }
+                return gameManager.transitionToRoom(roomId);
+            }
+            case ActionJournal.INVENTORY:
+                gameManager.addToInventory(targetId);
+                return true;
+            case ActionJournal.SOLVE_ATTEMPT:
+            case ActionJournal.PUZZLE: {
+                Puzzle puzzle = gameManager.getPuzzle(targetId);
+                if (puzzle == null || puzzle.snapshotState().length != words.length) {
+                    return false;
+                }
+                puzzle.restoreState(words);
+                return true;
+            }
+            case ActionJournal.TIMER:
+            case ActionJournal.END:
+                return true;
+            default: {
+                Room room = gameManager.getRoom(roomId);
+                if (room == null) {
+                    return false;
+                }
+                InteractiveObject object = ContentIndex.find(room, targetId);
+                if (object == null) {
+                    return false;
+                }
+                SaveFormat.restoreObjectState(object, state, itemRef);
+                return true;
+            }
+        }
+    }
+}
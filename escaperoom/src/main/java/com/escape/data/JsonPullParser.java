@@ -0,0 +1,519 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal pull parser for the content files.
+ * Walks the raw UTF-8 bytes token by token so loaders can build game
+ * objects directly without an intermediate JSONObject tree.
+ * Numbers are returned as primitives and field names are cached, so
+ * parsing a record allocates little more than its string values.
+ */
+public class JsonPullParser {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY,
+        NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NAME_CACHE_SIZE = 256;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private long bufferStart;   // absolute byte offset of buffer[0]
+
+    // Nesting stack: true = object, false = array
+    private boolean[] stack = new boolean[32];
+    private int depth;
+    private boolean expectName;     // inside an object, waiting for a field name
+    private boolean needComma;      // a value has been read at this level
+
+    private Token peeked;
+    private long peekedOffset;
+
+    private char[] chars = new char[256];
+    private int charCount;
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+    public JsonPullParser(InputStream in) {
+        this(in, 0);
+    }
+
+    /**
+     * @param startOffset absolute offset of the first byte of the stream,
+     *                    used when parsing a single record out of a larger file
+     */
+    public JsonPullParser(InputStream in, long startOffset) {
+        this(in, startOffset, BUFFER_SIZE);
+    }
+
+    /** @param bufferSize read buffer size, can be the record length for small records */
+    public JsonPullParser(InputStream in, long startOffset, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[Math.max(16, Math.min(bufferSize, BUFFER_SIZE))];
+        this.bufferStart = startOffset;
+    }
+
+    // ---------------------------------------------------------------
+    // Public API
+    // ---------------------------------------------------------------
+
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = readToken();
+        }
+        return peeked;
+    }
+
+    /** Absolute byte offset at which the next token starts. */
+    public long peekOffset() throws IOException {
+        peek();
+        return peekedOffset;
+    }
+
+    /** Absolute byte offset just past the last consumed token. */
+    public long position() {
+        return bufferStart + pos;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(true);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        pop();
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(false);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        pop();
+    }
+
+    /** True while the current object or array has more entries. */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return cachedName();
+    }
+
+    /** Returns the next string value, or null for a JSON null. */
+    public String nextString() throws IOException {
+        Token t = peek();
+        if (t == Token.NULL) {
+            peeked = null;
+            return null;
+        }
+        expect(Token.STRING);
+        return new String(chars, 0, charCount);
+    }
+
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        return parseNumberChars();
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw syntaxError("Number out of int range");
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        expect(Token.NUMBER);
+        for (int i = 0; i < charCount; i++) {
+            char c = chars[i];
+            if (c == '.' || c == 'e' || c == 'E') {
+                return parseDoubleChars();
+            }
+        }
+        return parseNumberChars();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return chars[0] == 't';
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /** Skips the next value, including any nested objects or arrays. */
+    public void skipValue() throws IOException {
+        int skipDepth = 0;
+        do {
+            Token t = peek();
+            peeked = null;
+            switch (t) {
+                case BEGIN_OBJECT:
+                    push(true);
+                    skipDepth++;
+                    break;
+                case BEGIN_ARRAY:
+                    push(false);
+                    skipDepth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    pop();
+                    skipDepth--;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    break;
+            }
+        } while (skipDepth > 0);
+    }
+
+    // ---------------------------------------------------------------
+    // Tokenizer
+    // ---------------------------------------------------------------
+
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected) {
+            throw syntaxError("Expected " + expected + " but was " + t);
+        }
+        peeked = null;
+    }
+
+    private void push(boolean isObject) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = isObject;
+        expectName = isObject;
+        needComma = false;
+    }
+
+    private void pop() {
+        depth--;
+        needComma = true;
+        expectName = false;
+    }
+
+    private Token readToken() throws IOException {
+        int c = nextNonWhitespace();
+
+        // Close the current scope
+        if (c == '}' || c == ']') {
+            peekedOffset = position() - 1;
+            return c == '}' ? Token.END_OBJECT : Token.END_ARRAY;
+        }
+
+        if (needComma) {
+            if (c == ',') {
+                c = nextNonWhitespace();
+            } else if (c != -1) {
+                throw syntaxError("Expected ',' but was '" + (char) c + "'");
+            }
+            needComma = false;
+            if (depth > 0 && stack[depth - 1]) {
+                expectName = true;
+            }
+        }
+
+        peekedOffset = position() - 1;
+
+        if (c == -1) {
+            if (depth != 0) {
+                throw syntaxError("Unexpected end of document");
+            }
+            return Token.END_DOCUMENT;
+        }
+
+        if (expectName) {
+            if (c != '"') {
+                throw syntaxError("Expected field name");
+            }
+            readString();
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':' after field name");
+            }
+            expectName = false;
+            return Token.NAME;
+        }
+
+        // Any value other than the start of a container completes an entry
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                needComma = true;
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                chars[0] = 't';
+                needComma = true;
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                chars[0] = 'f';
+                needComma = true;
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                needComma = true;
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    needComma = true;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            int c = buffer[pos++] & 0xFF;
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private int nextByte() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of document");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private void appendChar(char c) {
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, charCount * 2);
+        }
+        chars[charCount++] = c;
+    }
+
+    private void readString() throws IOException {
+        charCount = 0;
+        while (true) {
+            // Fast path: plain ASCII run inside the current buffer
+            while (pos < limit) {
+                byte b = buffer[pos];
+                if (b < 0x20 || b == '"' || b == '\\') {
+                    break;
+                }
+                appendChar((char) b);
+                pos++;
+            }
+
+            int c = nextByte();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c >= 0x80) {
+                readMultiByte(c);
+            } else if (c < 0x20) {
+                throw syntaxError("Control character in string");
+            } else {
+                appendChar((char) c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = nextByte();
+        switch (c) {
+            case '"':  appendChar('"'); break;
+            case '\\': appendChar('\\'); break;
+            case '/':  appendChar('/'); break;
+            case 'b':  appendChar('\b'); break;
+            case 'f':  appendChar('\f'); break;
+            case 'n':  appendChar('\n'); break;
+            case 'r':  appendChar('\r'); break;
+            case 't':  appendChar('\t'); break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextByte(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                appendChar((char) value);
+                break;
+            default:
+                throw syntaxError("Invalid escape '\\" + (char) c + "'");
+        }
+    }
+
+    private void readMultiByte(int first) throws IOException {
+        int codePoint;
+        int extra;
+        if ((first & 0xE0) == 0xC0) {
+            codePoint = first & 0x1F;
+            extra = 1;
+        } else if ((first & 0xF0) == 0xE0) {
+            codePoint = first & 0x0F;
+            extra = 2;
+        } else if ((first & 0xF8) == 0xF0) {
+            codePoint = first & 0x07;
+            extra = 3;
+        } else {
+            throw syntaxError("Invalid UTF-8 sequence");
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = nextByte();
+            if ((b & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8 continuation byte");
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        // Overlong forms, UTF-16 surrogates and anything past U+10FFFF aren't valid UTF-8
+        int min = extra == 1 ? 0x80 : extra == 2 ? 0x800 : 0x10000;
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            throw syntaxError("Invalid UTF-8 sequence");
+        }
+        if (codePoint >= 0x10000) {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        charCount = 0;
+        appendChar((char) first);
+        while (pos < limit || fill()) {
+            int c = buffer[pos] & 0xFF;
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                appendChar((char) c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (nextByte() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    // Accumulated as a negative number so Long.MIN_VALUE fits
+    private long parseNumberChars() throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int i = 0;
+        if (charCount > 0 && chars[0] == '-') {
+            negative = true;
+            i = 1;
+        }
+        if (i == charCount) {
+            throw syntaxError("Invalid number");
+        }
+        for (; i < charCount; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                // Fractional or exponent form
+                double d = parseDoubleChars();
+                if (d < Long.MIN_VALUE || d >= 0x1p63) {
+                    throw syntaxError("Number out of long range");
+                }
+                return (long) d;
+            }
+            int digit = c - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw syntaxError("Number out of long range");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw syntaxError("Number out of long range");
+            }
+            return -value;
+        }
+        return value;
+    }
+
+    private double parseDoubleChars() throws IOException {
+        double d;
+        try {
+            d = Double.parseDouble(new String(chars, 0, charCount));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number");
+        }
+        if (Double.isInfinite(d)) {
+            throw syntaxError("Number out of range");
+        }
+        return d;
+    }
+
+    /** Field names repeat in every record, so reuse the String instances. */
+    private String cachedName() {
+        int hash = 0;
+        for (int i = 0; i < charCount; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String cached = nameCache[slot];
+        if (cached != null && cached.length() == charCount) {
+            boolean same = true;
+            for (int i = 0; i < charCount; i++) {
+                if (cached.charAt(i) != chars[i]) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return cached;
+            }
+        }
+        String name = new String(chars, 0, charCount);
+        nameCache[slot] = name;
+        return name;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + position());
+    }
+}
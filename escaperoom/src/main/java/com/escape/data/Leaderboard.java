@@ -0,0 +1,553 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Completion results per content set, ranked by ending (WIN, PARTIAL_WIN,
+ * FRAMED, FAIL), then completion time, hints used and attempts.
+ *
+ * Each board is a persistent order-statistic treap: a submission copies the
+ * O(log n) path to its place under the board's lock and publishes the new
+ * root, so rank and page queries read one volatile root and never block or
+ * see a half-done insert. The top TOP_K entries are kept as a ready-made
+ * array that is only rebuilt when a submission lands inside it.
+ *
+ * Results are appended to leaderboards/<content set>.hlb by a writer thread
+ * that batches whatever has queued up into one write and force, and read
+ * back when a board is first used. A torn last record is dropped; a
+ * damaged one with good records after it is skipped.
+ */
+public class Leaderboard {
+
+    public static final String DEFAULT_DIRECTORY = "leaderboards";
+    public static final String EXTENSION = ".hlb";
+    public static final int TOP_K = 100;
+    public static final int PAGE_SIZE = 20;
+
+    static final String[] ENDINGS = {"WIN", "PARTIAL_WIN", "FRAMED", "FAIL"};
+
+    private static final int MAGIC = 0x484C4244;   // "HLBD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD = 64 * 1024;
+
+    private final Path directory;
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> unwritten = new ArrayBlockingQueue<>(64 * 1024);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Stats
+    private volatile long writes;
+    private volatile long written;
+
+    public Leaderboard() {
+        this(Paths.get(DEFAULT_DIRECTORY));
+    }
+
+    public Leaderboard(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::writeLoop, "leaderboard-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** One result. Immutable. */
+    public static class Entry {
+        final String contentSet;
+        final String player;
+        final String ending;
+        final int endingRank;
+        final long completionMillis;
+        final int hintsUsed;
+        final int attempts;
+        final long submittedAt;
+        final long seq;          // tie-breaker, also orders equal results by arrival
+
+        Entry(String contentSet, String player, String ending, long completionMillis, int hintsUsed, int attempts,
+              long submittedAt, long seq) {
+            this.contentSet = contentSet;
+            this.player = player;
+            this.ending = ending;
+            this.endingRank = endingRank(ending);
+            this.completionMillis = completionMillis;
+            this.hintsUsed = hintsUsed;
+            this.attempts = attempts;
+            this.submittedAt = submittedAt;
+            this.seq = seq;
+        }
+
+        public String getPlayer() { return player; }
+        public String getEnding() { return ending; }
+        public long getCompletionMillis() { return completionMillis; }
+        public int getHintsUsed() { return hintsUsed; }
+        public int getAttempts() { return attempts; }
+        public long getSubmittedAt() { return submittedAt; }
+
+        @Override
+        public String toString() {
+            long seconds = completionMillis / 1000;
+            return String.format("%-16s %-12s %2d:%02d  hints %d  attempts %d",
+                player, ending, seconds / 60, seconds % 60, hintsUsed, attempts);
+        }
+    }
+
+    static int endingRank(String ending) {
+        for (int i = 0; i < ENDINGS.length; i++) {
+            if (ENDINGS[i].equals(ending)) {
+                return i;
+            }
+        }
+        return ENDINGS.length;
+    }
+
+    static int compare(Entry a, Entry b) {
+        int c = Integer.compare(a.endingRank, b.endingRank);
+        if (c == 0) c = Long.compare(a.completionMillis, b.completionMillis);
+        if (c == 0) c = Integer.compare(a.hintsUsed, b.hintsUsed);
+        if (c == 0) c = Integer.compare(a.attempts, b.attempts);
+        if (c == 0) c = Long.compare(a.seq, b.seq);
+        return c;
+    }
+
+    // ---------------------------------------------------------------
+    // Submitting and querying
+    // ---------------------------------------------------------------
+
+    /**
+     * Records a result and returns its rank (1 is best). Safe from any
+     * thread; the result is written to disk shortly after.
+     */
+    public int submit(String contentSet, String player, String ending, long completionMillis,
+                      int hintsUsed, int attempts) {
+        Board board = board(contentSet);
+        Entry entry = board.insert(player, ending, completionMillis, hintsUsed, attempts);
+        if (!unwritten.offer(entry)) {
+            try {
+                unwritten.put(entry);   // the writer is far behind; wait for room
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return board.root.rankOf(entry);
+    }
+
+    /** The rank a result with these numbers would get now, without recording it. */
+    public int rankFor(String contentSet, String ending, long completionMillis, int hintsUsed, int attempts) {
+        Entry probe = new Entry(contentSet, null, ending, completionMillis, hintsUsed, attempts, 0, Long.MAX_VALUE);
+        Tree root = board(contentSet).root;
+        return root.rankOf(probe);
+    }
+
+    /** The best k results, k at most TOP_K. */
+    public List<Entry> top(String contentSet, int k) {
+        Entry[] top = board(contentSet).top();
+        return Collections.unmodifiableList(Arrays.asList(top).subList(0, Math.min(k, top.length)));
+    }
+
+    /** Page 0 is ranks 1 to PAGE_SIZE. */
+    public List<Entry> page(String contentSet, int page) {
+        return range(contentSet, page * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    /** Up to count results from the given 0-based position. */
+    public List<Entry> range(String contentSet, int from, int count) {
+        Board board = board(contentSet);
+        if ((long) from + count <= TOP_K) {
+            Entry[] top = board.top();
+            if (from >= top.length) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(Arrays.asList(top).subList(from, Math.min(from + count, top.length)));
+        }
+        Tree root = board.root;
+        int to = (int) Math.min((long) from + count, root.size());
+        List<Entry> result = new ArrayList<>(Math.max(to - from, 0));
+        root.collect(from, to, result);
+        return Collections.unmodifiableList(result);
+    }
+
+    public int size(String contentSet) {
+        return board(contentSet).root.size();
+    }
+
+    private Board board(String contentSet) {
+        return boards.computeIfAbsent(contentSet, this::load);
+    }
+
+    // ---------------------------------------------------------------
+    // Boards
+    // ---------------------------------------------------------------
+
+    private class Board {
+        final String contentSet;
+        volatile Tree root = Tree.EMPTY;
+        volatile TopCache topCache;
+        private long nextSeq;
+
+        Board(String contentSet) {
+            this.contentSet = contentSet;
+        }
+
+        Entry insert(String player, String ending, long completionMillis, int hintsUsed, int attempts) {
+            synchronized (this) {
+                Entry entry = new Entry(contentSet, player, ending, completionMillis, hintsUsed, attempts,
+                    System.currentTimeMillis(), nextSeq++);
+                add(entry);
+                return entry;
+            }
+        }
+
+        // Caller holds the lock, or the board isn't shared yet
+        void add(Entry entry) {
+            Tree before = root;
+            Tree after = before.with(entry);
+            TopCache cache = topCache;
+            root = after;
+            if (cache != null && cache.root == before && cache.top.length >= TOP_K
+                    && compare(entry, cache.top[TOP_K - 1]) > 0) {
+                // Landed below the top: the cached top still holds for the new root
+                topCache = new TopCache(after, cache.top);
+            }
+            nextSeq = Math.max(nextSeq, entry.seq + 1);
+        }
+
+        // Only before the board is shared
+        void addAll(List<Entry> entries) {
+            entries.sort(Leaderboard::compare);
+            root = Tree.build(entries);
+            for (Entry entry : entries) {
+                nextSeq = Math.max(nextSeq, entry.seq + 1);
+            }
+        }
+
+        Entry[] top() {
+            Tree current = root;
+            TopCache cache = topCache;
+            if (cache == null || cache.root != current) {
+                List<Entry> entries = new ArrayList<>(TOP_K);
+                current.collect(0, TOP_K, entries);
+                cache = new TopCache(current, entries.toArray(new Entry[0]));
+                topCache = cache;   // racing rebuilds produce the same thing
+            }
+            return cache.top;
+        }
+    }
+
+    private static class TopCache {
+        final Tree root;
+        final Entry[] top;
+
+        TopCache(Tree root, Entry[] top) {
+            this.root = root;
+            this.top = top;
+        }
+    }
+
+    /**
+     * Immutable treap node with subtree sizes; an empty tree is EMPTY.
+     * Priorities come from the entry's sequence number, so the shape is
+     * random-looking but reproducible.
+     */
+    static final class Tree {
+        static final Tree EMPTY = new Tree(null, 0, null, null, 0);
+
+        final Entry entry;
+        final int priority;
+        final Tree left, right;
+        final int size;
+
+        private Tree(Entry entry, int priority, Tree left, Tree right, int size) {
+            this.entry = entry;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size;
+        }
+
+        private static Tree node(Entry entry, int priority, Tree left, Tree right) {
+            return new Tree(entry, priority, left, right, left.size + right.size + 1);
+        }
+
+        int size() { return size; }
+
+        /**
+         * The tree holding the given sorted entries, in O(n): the same tree
+         * inserting them one by one would give, without the copying.
+         */
+        static Tree build(List<Entry> sorted) {
+            int n = sorted.size();
+            int[] priority = new int[n];
+            int[] left = new int[n];
+            int[] right = new int[n];
+            int[] stack = new int[n];
+            int top = 0;
+            for (int i = 0; i < n; i++) {
+                priority[i] = priorityOf(sorted.get(i).seq);
+                left[i] = -1;
+                right[i] = -1;
+                int last = -1;
+                while (top > 0 && priority[stack[top - 1]] < priority[i]) {
+                    last = stack[--top];
+                }
+                left[i] = last;
+                if (top > 0) {
+                    right[stack[top - 1]] = i;
+                }
+                stack[top++] = i;
+            }
+            return top == 0 ? EMPTY : freeze(stack[0], sorted, priority, left, right);
+        }
+
+        private static Tree freeze(int i, List<Entry> sorted, int[] priority, int[] left, int[] right) {
+            Tree l = left[i] < 0 ? EMPTY : freeze(left[i], sorted, priority, left, right);
+            Tree r = right[i] < 0 ? EMPTY : freeze(right[i], sorted, priority, left, right);
+            return node(sorted.get(i), priority[i], l, r);
+        }
+
+        Tree with(Entry entry) {
+            return insert(this, entry, priorityOf(entry.seq));
+        }
+
+        private static Tree insert(Tree t, Entry entry, int priority) {
+            if (t.size == 0) {
+                return node(entry, priority, EMPTY, EMPTY);
+            }
+            if (compare(entry, t.entry) < 0) {
+                Tree l = insert(t.left, entry, priority);
+                if (l.priority > t.priority) {
+                    return node(l.entry, l.priority, l.left, node(t.entry, t.priority, l.right, t.right));
+                }
+                return node(t.entry, t.priority, l, t.right);
+            }
+            Tree r = insert(t.right, entry, priority);
+            if (r.priority > t.priority) {
+                return node(r.entry, r.priority, node(t.entry, t.priority, t.left, r.left), r.right);
+            }
+            return node(t.entry, t.priority, t.left, r);
+        }
+
+        /** 1 + the number of entries ordered before the given one. */
+        int rankOf(Entry entry) {
+            int before = 0;
+            Tree t = this;
+            while (t.size != 0) {
+                if (compare(entry, t.entry) <= 0) {
+                    t = t.left;
+                } else {
+                    before += t.left.size + 1;
+                    t = t.right;
+                }
+            }
+            return before + 1;
+        }
+
+        /** Appends the entries at positions [from, to) in order. */
+        void collect(int from, int to, List<Entry> out) {
+            if (size == 0 || from >= to || to <= 0 || from >= size) {
+                return;
+            }
+            left.collect(from, to, out);
+            int self = left.size;
+            if (self >= from && self < to) {
+                out.add(entry);
+            }
+            right.collect(from - self - 1, to - self - 1, out);
+        }
+
+        private static int priorityOf(long seq) {
+            long z = seq + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return (int) (z ^ (z >>> 31));
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Persistence
+    // ---------------------------------------------------------------
+
+    public Path pathOf(String contentSet) {
+        // Keep file names portable; the exact name is stored in every record
+        return directory.resolve(contentSet.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION);
+    }
+
+    private Board load(String contentSet) {
+        Board board = new Board(contentSet);
+        List<Entry> entries = new ArrayList<>();
+        Path file = pathOf(contentSet);
+        if (!Files.exists(file)) {
+            return board;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] data = Files.readAllBytes(file);
+            if (data.length < HEADER_SIZE || ByteBuffer.wrap(data).getInt() != MAGIC) {
+                System.err.println("Not a leaderboard file, ignoring: " + file);
+                return board;
+            }
+            int pos = HEADER_SIZE;
+            CRC32C crc = new CRC32C();
+            while (pos < data.length) {
+                VarintReader in = new VarintReader(data, pos, data.length);
+                Entry entry = null;
+                int end = -1;
+                try {
+                    int length = in.readCount();
+                    int start = in.position();
+                    if (start + length + 4 <= data.length) {
+                        end = start + length + 4;
+                        crc.reset();
+                        crc.update(data, start, length);
+                        if (ByteBuffer.wrap(data, start + length, 4).getInt() == (int) crc.getValue()) {
+                            entry = decode(new VarintReader(data, start, start + length));
+                        }
+                    }
+                } catch (IOException e) {
+                    // Torn length prefix, or a record that doesn't decode; handled below
+                }
+                if (entry == null && (end < 0 || end == data.length)) {
+                    // A crash mid-append leaves a torn tail; drop it so new records follow good ones
+                    System.err.println("Leaderboard " + file + ": dropping " + (data.length - pos) + " bytes of torn tail");
+                    channel.truncate(pos);
+                    break;
+                }
+                if (entry == null) {
+                    // Damaged in place with good records after it; keep those
+                    System.err.println("Leaderboard " + file + ": skipping bad record at offset " + pos);
+                    pos = end;
+                    continue;
+                }
+                if (entry.contentSet.equals(contentSet)) {
+                    entries.add(entry);
+                }
+                pos = end;
+            }
+        } catch (Exception e) {
+            System.err.println("Error reading leaderboard " + file + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+        board.addAll(entries);
+        return board;
+    }
+
+    private static void encode(VarintWriter out, Entry entry) {
+        out.writeString(entry.contentSet);
+        out.writeString(entry.player);
+        out.writeString(entry.ending);
+        out.writeVarLong(entry.completionMillis);
+        out.writeVarInt(entry.hintsUsed);
+        out.writeVarInt(entry.attempts);
+        out.writeLong(entry.submittedAt);
+        out.writeVarLong(entry.seq);
+    }
+
+    private static Entry decode(VarintReader in) throws IOException {
+        String contentSet = in.readString();
+        String player = in.readString();
+        String ending = in.readString();
+        long millis = in.readVarLong();
+        int hints = in.readVarInt();
+        int attempts = in.readVarInt();
+        long submittedAt = in.readLong();
+        long seq = in.readVarLong();
+        return new Entry(contentSet, player, ending, millis, hints, attempts, submittedAt, seq);
+    }
+
+    // Everything queued goes out as one append and one force per file
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        VarintWriter payload = new VarintWriter(128);
+        while (running || !unwritten.isEmpty()) {
+            try {
+                Entry first = unwritten.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                unwritten.drainTo(batch);
+                Map<String, VarintWriter> files = new HashMap<>();
+                for (Entry entry : batch) {
+                    VarintWriter out = files.computeIfAbsent(entry.contentSet, set -> new VarintWriter(4096));
+                    payload.reset();
+                    encode(payload, entry);
+                    if (payload.size > MAX_RECORD) {
+                        System.err.println("Leaderboard entry too large, not saved: " + entry.player);
+                        continue;
+                    }
+                    CRC32C crc = new CRC32C();
+                    crc.update(payload.buffer, 0, payload.size);
+                    out.writeVarInt(payload.size);
+                    out.writeBytes(payload.buffer, 0, payload.size);
+                    out.writeInt((int) crc.getValue());
+                }
+                for (Map.Entry<String, VarintWriter> file : files.entrySet()) {
+                    append(pathOf(file.getKey()), file.getValue());
+                }
+                writes++;
+                written += batch.size();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                System.err.println("Error writing leaderboard: " + e.getMessage());
+                e.printStackTrace();
+            }
+            batch.clear();
+        }
+    }
+
+    private void append(Path file, VarintWriter records) throws IOException {
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                channel.write(header);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records.buffer, 0, records.size);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /** Writes everything still queued, then stops the writer thread. */
+    public void close() {
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stats
+    public long getWrites() { return writes; }
+    public long getWritten() { return written; }
+
+    public void printTop(String contentSet, int k) {
+        System.out.println("Leaderboard for " + contentSet + " (" + size(contentSet) + " results)");
+        int rank = 1;
+        for (Entry entry : top(contentSet, k)) {
+            System.out.printf("%4d. %s%n", rank++, entry);
+        }
+    }
+}
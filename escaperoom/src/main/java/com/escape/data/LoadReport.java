@@ -0,0 +1,65 @@
+package com.escape.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a content load: how many records made it in and
+ * which ones failed, each with its own error.
+ */
+public class LoadReport {
+
+    public static class RecordError {
+        public final String kind;       // "room" or "item"
+        public final String recordId;
+        public final long offset;
+        public final Exception error;
+
+        RecordError(String kind, String recordId, long offset, Exception error) {
+            this.kind = kind;
+            this.recordId = recordId;
+            this.offset = offset;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " '" + recordId + "' at byte " + offset + ": " + error.getMessage();
+        }
+    }
+
+    private int roomsLoaded;
+    private int itemsLoaded;
+    private final List<RecordError> errors = new ArrayList<>();
+    private ContentIndex contentIndex;
+    private long elapsedNanos;
+
+    void roomLoaded() { roomsLoaded++; }
+    void itemLoaded() { itemsLoaded++; }
+    void addError(RecordError error) { errors.add(error); }
+    void setElapsedNanos(long nanos) { this.elapsedNanos = nanos; }
+    void setContentIndex(ContentIndex index) { this.contentIndex = index; }
+
+    public boolean isSuccessful() {
+        return errors.isEmpty() && (contentIndex == null || contentIndex.isValid());
+    }
+    public int getRoomsLoaded() { return roomsLoaded; }
+    public int getItemsLoaded() { return itemsLoaded; }
+    public List<RecordError> getErrors() { return Collections.unmodifiableList(errors); }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+    public ContentIndex getContentIndex() { return contentIndex; }
+
+    public void print() {
+        System.out.println("Loaded " + roomsLoaded + " rooms and " + itemsLoaded + " items in "
+            + getElapsedMillis() + " ms");
+        for (RecordError error : errors) {
+            System.err.println("  Failed " + error);
+        }
+        if (contentIndex != null) {
+            for (String problem : contentIndex.getProblems()) {
+                System.err.println("  Broken reference: " + problem);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file mapped into memory in fixed-size chunks, so it can grow past the
+ * 2 GB a single mapping allows. Values never straddle a chunk boundary as
+ * long as they are aligned to their size.
+ */
+class MappedFile {
+    private static final int CHUNK_SHIFT = 26;   // 64 MB
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    private final FileChannel channel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private long size;
+
+    MappedFile(Path path, long minSize) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+        ensureSize(minSize);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Grows the file to at least the given size, doubling up to a chunk at a time. */
+    void ensureSize(long needed) throws IOException {
+        if (needed <= size) {
+            return;
+        }
+        long grown = size == 0 ? needed : Math.max(needed, Math.min(size * 2, size + CHUNK_SIZE));
+        // Writing the last byte extends the file; the rest reads as zeros
+        channel.write(ByteBuffer.wrap(new byte[1]), grown - 1);
+        size = grown;
+        int count = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] remapped = Arrays.copyOf(chunks, count);
+        // The old last chunk may have been mapped short
+        for (int i = Math.max(0, chunks.length - 1); i < count; i++) {
+            remapped[i] = null;
+        }
+        chunks = remapped;
+    }
+
+    private MappedByteBuffer chunk(long position) throws IOException {
+        int i = (int) (position >>> CHUNK_SHIFT);
+        MappedByteBuffer chunk = chunks[i];
+        if (chunk == null) {
+            long start = (long) i << CHUNK_SHIFT;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK_SIZE, size - start));
+            chunks[i] = chunk;
+        }
+        return chunk;
+    }
+
+    private static int offset(long position) {
+        return (int) (position & (CHUNK_SIZE - 1));
+    }
+
+    int getInt(long position) {
+        try {
+            return chunk(position).getInt(offset(position));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map " + position, e);
+        }
+    }
+
+    long getLong(long position) {
+        try {
+            return chunk(position).getLong(offset(position));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map " + position, e);
+        }
+    }
+
+    void putInt(long position, int value) throws IOException {
+        chunk(position).putInt(offset(position), value);
+    }
+
+    void putLong(long position, long value) throws IOException {
+        chunk(position).putLong(offset(position), value);
+    }
+
+    void get(long position, byte[] into) {
+        try {
+            chunk(position).get(offset(position), into);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map " + position, e);
+        }
+    }
+
+    void put(long position, byte[] bytes) throws IOException {
+        chunk(position).put(offset(position), bytes);
+    }
+
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+    }
+
+    void close() throws IOException {
+        force();
+        chunks = new MappedByteBuffer[0];
+        channel.close();
+    }
+}
@@ -0,0 +1,176 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel content loader.
+ * The file is memory-mapped and indexed by a parallel scan of the mapping,
+ * then every room and item record is parsed on its own fork/join task. Results are merged into the game
+ * manager on the calling thread in file order, so the outcome is the same as
+ * a sequential load. A broken record is reported on its own and the rest of
+ * the content still loads.
+ */
+public class ParallelContentLoader {
+
+    private static final String HOLLOWMORE_JSON = "json/hollowmore.json";
+
+    // Records per leaf task; small records are cheap, so batch a few together
+    private static final int BATCH_SIZE = 8;
+
+    public static LoadReport loadGameData(HollowmoreGameManager gameManager) {
+        return loadGameData(gameManager, HOLLOWMORE_JSON, ForkJoinPool.commonPool());
+    }
+
+    public static LoadReport loadGameData(HollowmoreGameManager gameManager, String path, ForkJoinPool pool) {
+        LoadReport report = new LoadReport();
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            // Record offsets are ints in the index and the parse slices
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Content file too large to map: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            RoomIndex index = RoomIndex.scan(mapped, pool);
+
+            RoomIndex.Entry[] rooms = index.getEntries().toArray(new RoomIndex.Entry[0]);
+            List<RoomIndex.Entry> itemList = index.getItemEntries();
+            RoomIndex.Entry[] items = itemList.toArray(new RoomIndex.Entry[0]);
+
+            Object[] roomResults = new Object[rooms.length];
+            Object[] itemResults = new Object[items.length];
+
+            // Intern declared items in file order before any room parses, so ids don't depend on task scheduling
+            ItemRegistry registry = ItemRegistry.getInstance();
+            pool.invoke(new ParseTask(mapped, items, itemResults, 0, items.length, false));
+            for (int i = 0; i < items.length; i++) {
+                if (itemResults[i] instanceof Item) {
+                    registry.intern(((Item) itemResults[i]).getItemId());
+                }
+            }
+            pool.invoke(new ParseTask(mapped, rooms, roomResults, 0, rooms.length, true));
+
+            // Merge in file order
+            List<Room> loadedRooms = new ArrayList<>(rooms.length);
+            for (int i = 0; i < rooms.length; i++) {
+                if (roomResults[i] instanceof HollowmoreStreamLoader.LoadedRoom) {
+                    HollowmoreStreamLoader.LoadedRoom loaded = (HollowmoreStreamLoader.LoadedRoom) roomResults[i];
+                    if (loaded.puzzle != null) {
+                        gameManager.addPuzzle(loaded.puzzle);
+                    }
+                    gameManager.addRoom(loaded.room);
+                    loadedRooms.add(loaded.room);
+                    report.roomLoaded();
+                } else {
+                    report.addError(new LoadReport.RecordError("room", recordId(mapped, rooms[i], "roomId"),
+                        rooms[i].offset, (Exception) roomResults[i]));
+                }
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (itemResults[i] instanceof Item) {
+                    registry.register((Item) itemResults[i]);
+                    report.itemLoaded();
+                } else {
+                    report.addError(new LoadReport.RecordError("item", recordId(mapped, items[i], "itemId"),
+                        items[i].offset, (Exception) itemResults[i]));
+                }
+            }
+
+            // Resolve cross references now that everything is in
+            ContentIndex contentIndex = ContentIndex.link(loadedRooms, gameManager);
+            ContentIndex.setCurrent(contentIndex);
+            report.setContentIndex(contentIndex);
+        } catch (IOException e) {
+            // The file itself could not be read or indexed
+            report.addError(new LoadReport.RecordError("file", path, 0, e));
+        }
+
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    // The scan doesn't decode ids, so a broken record's id is read back only for its report
+    private static String recordId(ByteBuffer mapped, RoomIndex.Entry entry, String field) {
+        try {
+            JsonPullParser parser = open(mapped, entry);
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (parser.nextName().equals(field)) {
+                    return parser.nextString();
+                }
+                parser.skipValue();
+            }
+        } catch (Exception e) {
+            // Fall through: the record is broken before its id
+        }
+        return "?";
+    }
+
+    // Each caller reads its own view of the mapping
+    private static JsonPullParser open(ByteBuffer mapped, RoomIndex.Entry entry) {
+        int offset = Math.toIntExact(entry.offset);
+        ByteBuffer slice = mapped.duplicate();
+        slice.position(offset);
+        slice.limit(offset + entry.length);
+        return new JsonPullParser(new ByteBufferInputStream(slice), entry.offset, entry.length);
+    }
+
+    /** Parses a range of records, splitting until ranges are one batch long. */
+    @SuppressWarnings("serial")
+    private static class ParseTask extends RecursiveAction {
+        private final ByteBuffer mapped;
+        private final RoomIndex.Entry[] entries;
+        private final Object[] results;
+        private final int from, to;
+        private final boolean rooms;
+
+        ParseTask(ByteBuffer mapped, RoomIndex.Entry[] entries, Object[] results,
+                  int from, int to, boolean rooms) {
+            this.mapped = mapped;
+            this.entries = entries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.rooms = rooms;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = parse(entries[i]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParseTask(mapped, entries, results, from, mid, rooms),
+                      new ParseTask(mapped, entries, results, mid, to, rooms));
+        }
+
+        private Object parse(RoomIndex.Entry entry) {
+            try {
+                HollowmoreStreamLoader loader = new HollowmoreStreamLoader(open(mapped, entry));
+                if (rooms) {
+                    return loader.readRoomRecord();
+                }
+                Item item = loader.readItem();
+                if (item.getItemId() == null) {
+                    throw new IOException("Item record without itemId at offset " + entry.offset);
+                }
+                return item;
+            } catch (Exception e) {
+                return e;
+            }
+        }
+    }
+}
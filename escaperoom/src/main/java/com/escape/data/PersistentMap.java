@@ -0,0 +1,277 @@
+package com.escape.data;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map whose updates return a new map sharing all untouched
+ * structure with the old one (a hash array mapped trie, 32 ways per level).
+ * with() and without() copy only the path to the changed entry, a handful
+ * of small arrays, so keeping every version a snapshot needs costs memory
+ * in proportion to what changed between them. Any thread can read any
+ * version without locking.
+ *
+ * Keys must not be null and must have stable hashCode/equals. Iteration
+ * order is by hash, not insertion.
+ */
+public final class PersistentMap<K, V> {
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+    private static final Object NOT_FOUND = new Object();
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    public boolean containsKey(Object key) {
+        return root != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    /** The map with key mapped to value; this map itself if it already was. */
+    public PersistentMap<K, V> with(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node start = root != null ? root : BitmapNode.EMPTY;
+        Node updated = start.with(0, hash(key), key, value, added);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentMap<>(updated, added[0] ? size + 1 : size);
+    }
+
+    /** The map without key; this map itself if it had no such key. */
+    public PersistentMap<K, V> without(Object key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        Node updated = root.without(0, hash(key), key);
+        return size == 1 ? empty() : new PersistentMap<>(updated, size - 1);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // ---------------------------------------------------------------
+    // Nodes; never modified once they are reachable from a map
+    // ---------------------------------------------------------------
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+        abstract Node with(int shift, int hash, Object key, Object value, boolean[] added);
+        /** Only called for keys that are present. Returns null once the node is empty. */
+        abstract Node without(int shift, int hash, Object key);
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Up to 32 slots, one per 5 hash bits at this level; only occupied ones
+     * are stored. A slot is a key and value pair, or null and a child node.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private static int bit(int shift, int hash) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit);
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                return ((Node) v).find(shift + 5, hash, key);
+            }
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        @Override
+        Node with(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, 2 * i);
+                copy[2 * i] = key;
+                copy[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, copy, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object k = array[2 * i];
+            Object v = array[2 * i + 1];
+            if (k == null) {
+                Node child = ((Node) v).with(shift + 5, hash, key, value, added);
+                return child == v ? this : replace(i, null, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : replace(i, k, value);
+            }
+            // Two keys share this slot: push both a level down
+            added[0] = true;
+            return replace(i, null, pair(shift + 5, k, v, hash, key, value));
+        }
+
+        private BitmapNode replace(int i, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[2 * i] = key;
+            copy[2 * i + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            int i = index(bit);
+            Object k = array[2 * i];
+            if (k == null) {
+                Node child = ((Node) array[2 * i + 1]).without(shift + 5, hash, key);
+                if (child != null) {
+                    return replace(i, null, child);
+                }
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, copy, 2 * i, array.length - 2 * i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    // A node holding two entries whose hashes differ from this level on
+    private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2) {
+            return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.with(shift, h1, k1, v1, added).with(shift, h2, k2, v2, added);
+    }
+
+    /** Keys with the same full hash, in a flat key and value array. */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+
+        @Override
+        Node with(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Nest this node under a bitmap node at its own slot, then add the key there
+                Node parent = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[] {null, this});
+                return parent.with(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            if (array.length == 2) {
+                return null;
+            }
+            int i = indexOf(key);
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
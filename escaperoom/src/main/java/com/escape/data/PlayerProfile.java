@@ -0,0 +1,127 @@
+package com.escape.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One player's profile, as kept in users.json and the ProfileStore.
+ * The fixed part (ids, level, room, position) fits the store's fixed-size
+ * record; the inventory and sprite paths go to its overflow area.
+ */
+public class PlayerProfile {
+
+    private String userId;
+    private String username;
+    private String passwordHash;
+    private int level = 1;
+    private String currentRoomId;
+
+    // playerState
+    private int worldX;
+    private int worldY;
+    private int speed;
+    private String direction = "down";
+    private int solidX;
+    private int solidY;
+    private int solidWidth;
+    private int solidHeight;
+    private boolean collisionOn;
+    private final Map<String, String> spriteImages = new LinkedHashMap<>();
+
+    // inventory
+    private String inventoryId;
+    private int maxCapacity;
+    private final List<InventoryItem> items = new ArrayList<>();
+
+    public PlayerProfile() {
+    }
+
+    public PlayerProfile(String userId, String username) {
+        this.userId = userId;
+        this.username = username;
+    }
+
+    /** An item as stored in a profile's inventory. */
+    public static class InventoryItem {
+        private final String itemId;
+        private final String name;
+        private final String hint;
+        private final String description;
+
+        public InventoryItem(String itemId, String name, String hint, String description) {
+            this.itemId = itemId;
+            this.name = name;
+            this.hint = hint;
+            this.description = description;
+        }
+
+        public String getItemId() { return itemId; }
+        public String getName() { return name; }
+        public String getHint() { return hint; }
+        public String getDescription() { return description; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof InventoryItem)) {
+                return false;
+            }
+            InventoryItem other = (InventoryItem) o;
+            return Objects.equals(itemId, other.itemId) && Objects.equals(name, other.name)
+                && Objects.equals(hint, other.hint) && Objects.equals(description, other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(itemId, name, hint, description);
+        }
+    }
+
+    // Getters
+    public String getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public String getPasswordHash() { return passwordHash; }
+    public int getLevel() { return level; }
+    public String getCurrentRoomId() { return currentRoomId; }
+    public int getWorldX() { return worldX; }
+    public int getWorldY() { return worldY; }
+    public int getSpeed() { return speed; }
+    public String getDirection() { return direction; }
+    public int getSolidX() { return solidX; }
+    public int getSolidY() { return solidY; }
+    public int getSolidWidth() { return solidWidth; }
+    public int getSolidHeight() { return solidHeight; }
+    public boolean isCollisionOn() { return collisionOn; }
+    public Map<String, String> getSpriteImages() { return spriteImages; }
+    public String getInventoryId() { return inventoryId; }
+    public int getMaxCapacity() { return maxCapacity; }
+    public List<InventoryItem> getItems() { return items; }
+
+    // Setters
+    public void setUserId(String userId) { this.userId = userId; }
+    public void setUsername(String username) { this.username = username; }
+    public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
+    public void setLevel(int level) { this.level = level; }
+    public void setCurrentRoomId(String currentRoomId) { this.currentRoomId = currentRoomId; }
+    public void setPosition(int worldX, int worldY) { this.worldX = worldX; this.worldY = worldY; }
+    public void setSpeed(int speed) { this.speed = speed; }
+    public void setDirection(String direction) { this.direction = direction; }
+    public void setSolidArea(int x, int y, int width, int height) {
+        this.solidX = x;
+        this.solidY = y;
+        this.solidWidth = width;
+        this.solidHeight = height;
+    }
+    public void setCollisionOn(boolean collisionOn) { this.collisionOn = collisionOn; }
+    public void setInventory(String inventoryId, int maxCapacity) {
+        this.inventoryId = inventoryId;
+        this.maxCapacity = maxCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return username + " (" + userId + ", level " + level + ", " + currentRoomId + ", " + items.size() + " items)";
+    }
+}
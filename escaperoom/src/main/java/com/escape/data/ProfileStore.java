@@ -0,0 +1,928 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Embedded store for player profiles, replacing the users.json array.
+ *
+ * Profiles are fixed 256-byte records in a memory-mapped data file, found
+ * through two open-addressing hash tables (by userId and by username, the
+ * latter case-insensitive) in a memory-mapped index file. Inventories and
+ * sprite paths don't fit a fixed record and live in an overflow file; a
+ * record points at its blob and keeps room for it to grow in place.
+ *
+ * Every change is written to a small write-ahead log and forced before the
+ * mapped pages are touched, so a crash never leaves a half-updated record,
+ * index slot or blob: opening the store replays the log. The pages
+ * themselves are only forced when the log is checkpointed. A lookup reads
+ * one index slot (a probe or two more on collisions) and one record; a save
+ * costs one log write and one force, however many profiles there are.
+ */
+public class ProfileStore {
+
+    public static final String DEFAULT_DIRECTORY = "profiles";
+    static final String DATA_FILE = "profiles.dat";
+    static final String INDEX_FILE = "profiles.idx";
+    static final String OVERFLOW_FILE = "profiles.ovf";
+    static final String WAL_FILE = "profiles.wal";
+
+    static final int MAGIC = 0x48505246;   // "HPRF"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 256;
+    static final int HEADER_SIZE = RECORD_SIZE;   // the data file's first record slot holds its header
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+    private static final long WAL_CHECKPOINT_BYTES = 1024 * 1024;
+    private static final int IMPORT_BATCH = 512;
+
+    // Header fields
+    private static final int H_RECORD_COUNT = 8;
+    private static final int H_LIVE_COUNT = 16;
+    private static final int H_OVERFLOW_END = 24;
+    private static final int H_GARBAGE = 32;
+    private static final int H_TOMBSTONES = 40;
+
+    // Record layout
+    private static final int R_FLAGS = 0;
+    private static final int R_USER_ID = 2;          // length byte + up to 47 bytes
+    private static final int R_USERNAME = 50;        // length byte + up to 39
+    private static final int R_PASSWORD = 90;        // length byte + up to 71
+    private static final int R_ROOM = 162;           // length byte + up to 31
+    private static final int R_LEVEL = 194;
+    private static final int R_WORLD_X = 198;
+    private static final int R_WORLD_Y = 202;
+    private static final int R_SPEED = 206;
+    private static final int R_DIRECTION = 210;
+    private static final int R_COLLISION = 211;
+    private static final int R_SOLID = 212;          // x, y, width, height
+    private static final int R_OVF_OFFSET = 228;
+    private static final int R_OVF_LENGTH = 236;
+    private static final int R_OVF_CAPACITY = 240;
+    private static final int R_OVF_CRC = 244;
+    private static final int R_CRC = 252;
+
+    private static final int FLAG_LIVE = 1;
+    private static final int NULL_STRING = 0xFF;
+    private static final String[] DIRECTIONS = {"up", "down", "left", "right"};
+
+    // Index slots: hash tag in the high half, record number + 1 in the low half
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = -1L;
+    private static final int BY_USER_ID = 0;
+    private static final int BY_USERNAME = 1;
+
+    // Log operations
+    private static final int OP_RECORD = 1;
+    private static final int OP_SLOT = 2;
+    private static final int OP_BLOB = 3;
+    private static final int OP_HEADER = 4;
+
+    private final Path directory;
+    private final MappedFile data;
+    private MappedFile index;
+    private final FileChannel overflow;
+    private final FileChannel wal;
+    private long walBytes;
+    private int indexCapacity;   // slots per table
+
+    private long recordCount;
+    private long liveCount;
+    private long overflowEnd;
+    private long garbageBytes;
+    private long tombstones;
+
+    // Changes staged for the next log commit, visible to lookups in the meantime
+    private final VarintWriter batch = new VarintWriter(4096);
+    private final Map<Long, Long> pendingSlots = new HashMap<>();
+    private final Map<Long, byte[]> pendingRecords = new HashMap<>();
+
+    public ProfileStore() throws IOException {
+        this(Paths.get(DEFAULT_DIRECTORY));
+    }
+
+    public ProfileStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(INDEX_FILE + ".tmp"));
+
+        data = new MappedFile(directory.resolve(DATA_FILE), HEADER_SIZE);
+        if (data.getInt(0) == 0) {
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.force();
+        } else if (data.getInt(0) != MAGIC) {
+            throw new IOException(DATA_FILE + " is not a profile store");
+        } else if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported profile store version " + data.getInt(4));
+        }
+        recordCount = data.getLong(H_RECORD_COUNT);
+        liveCount = data.getLong(H_LIVE_COUNT);
+        overflowEnd = data.getLong(H_OVERFLOW_END);
+        garbageBytes = data.getLong(H_GARBAGE);
+        tombstones = data.getLong(H_TOMBSTONES);
+
+        Path indexPath = directory.resolve(INDEX_FILE);
+        index = new MappedFile(indexPath, 2L * INITIAL_INDEX_CAPACITY * 8);
+        indexCapacity = (int) (index.size() / 16);
+        if (Integer.bitCount(indexCapacity) != 1 || index.size() != 16L * indexCapacity) {
+            throw new IOException(INDEX_FILE + " has a bad size " + index.size());
+        }
+
+        overflow = FileChannel.open(directory.resolve(OVERFLOW_FILE), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        wal = FileChannel.open(directory.resolve(WAL_FILE), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int replayed = replayLog();
+        if (replayed > 0) {
+            System.out.println("Profile store: replayed " + replayed + " logged changes");
+        }
+        checkpoint();
+    }
+
+    // ---------------------------------------------------------------
+    // Lookups
+    // ---------------------------------------------------------------
+
+    public synchronized PlayerProfile findByUserId(String userId) throws IOException {
+        long record = find(BY_USER_ID, userId);
+        return record < 0 ? null : read(record);
+    }
+
+    /** Usernames match ignoring case, as at login. */
+    public synchronized PlayerProfile findByUsername(String username) throws IOException {
+        long record = find(BY_USERNAME, username);
+        return record < 0 ? null : read(record);
+    }
+
+    public synchronized boolean contains(String userId) {
+        return find(BY_USER_ID, userId) >= 0;
+    }
+
+    /** Number of profiles stored. */
+    public synchronized long size() {
+        return liveCount;
+    }
+
+    /** Visits every profile in the order they were first saved. */
+    public synchronized void forEach(Consumer<PlayerProfile> action) throws IOException {
+        for (long r = 0; r < recordCount; r++) {
+            if ((recordBytes(r)[R_FLAGS] & FLAG_LIVE) != 0) {
+                action.accept(read(r));
+            }
+        }
+    }
+
+    private long find(int table, String key) {
+        if (key == null) {
+            return -1;
+        }
+        long hash = hash(table, key);
+        int tag = (int) (hash >>> 32);
+        int mask = indexCapacity - 1;
+        for (int probe = 0, slot = (int) hash & mask; probe < indexCapacity; probe++, slot = (slot + 1) & mask) {
+            long value = readSlot(table, slot);
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != TOMBSTONE && (int) (value >>> 32) == tag) {
+                long record = (value & 0xFFFFFFFFL) - 1;
+                if (keyMatches(table, key, recordBytes(record))) {
+                    return record;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Slot position of the key in the table, or -1. */
+    private int findSlot(int table, String key, long record) {
+        long hash = hash(table, key);
+        long expected = slotValue(hash, record);
+        int mask = indexCapacity - 1;
+        for (int probe = 0, slot = (int) hash & mask; probe < indexCapacity; probe++, slot = (slot + 1) & mask) {
+            long value = readSlot(table, slot);
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value == expected) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean keyMatches(int table, String key, byte[] record) {
+        String stored = getString(record, table == BY_USER_ID ? R_USER_ID : R_USERNAME);
+        return table == BY_USER_ID ? key.equals(stored) : key.equalsIgnoreCase(stored);
+    }
+
+    /** 64-bit FNV-1a of the key; usernames are hashed lower-cased. */
+    private static long hash(int table, String key) {
+        String k = table == BY_USERNAME ? key.toLowerCase(Locale.ROOT) : key;
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < k.length(); i++) {
+            h ^= k.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // FNV's low bits are weak for short keys; finish with a mixer
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long slotValue(long hash, long record) {
+        return (hash & 0xFFFFFFFF00000000L) | (record + 1);
+    }
+
+    private long readSlot(int table, int slot) {
+        long position = slotPosition(table, slot);
+        Long pending = pendingSlots.get(position);
+        return pending != null ? pending : index.getLong(position);
+    }
+
+    private long slotPosition(int table, int slot) {
+        return ((long) table * indexCapacity + slot) * 8;
+    }
+
+    private byte[] recordBytes(long record) {
+        byte[] pending = pendingRecords.get(record);
+        if (pending != null) {
+            return pending;
+        }
+        byte[] bytes = new byte[RECORD_SIZE];
+        data.get(HEADER_SIZE + record * RECORD_SIZE, bytes);
+        return bytes;
+    }
+
+    // ---------------------------------------------------------------
+    // Saving
+    // ---------------------------------------------------------------
+
+    /**
+     * Inserts the profile, or replaces the one with the same userId.
+     * @throws IllegalArgumentException if another profile has the username,
+     *         or a field is too long for its fixed slot
+     */
+    public synchronized void save(PlayerProfile profile) throws IOException {
+        saveAll(Collections.singletonList(profile));
+    }
+
+    /**
+     * Saves many profiles with one log write per batch, as an import does.
+     * All or nothing: if one profile is rejected, none of them is saved.
+     */
+    public synchronized void saveAll(List<PlayerProfile> profiles) throws IOException {
+        for (PlayerProfile profile : profiles) {
+            validate(profile);
+        }
+        reserve(profiles);
+
+        // The batch is empty here, so undoing a failed stage is just dropping it
+        long[] counters = { recordCount, liveCount, overflowEnd, garbageBytes, tombstones };
+        try {
+            for (PlayerProfile profile : profiles) {
+                stage(profile);
+            }
+        } catch (RuntimeException | IOException e) {
+            batch.reset();
+            pendingSlots.clear();
+            pendingRecords.clear();
+            recordCount = counters[0];
+            liveCount = counters[1];
+            overflowEnd = counters[2];
+            garbageBytes = counters[3];
+            tombstones = counters[4];
+            throw e;
+        }
+        commit();
+    }
+
+    /** Throws if the profile can't be stored whatever else is in the store. */
+    private static void validate(PlayerProfile profile) {
+        if (profile.getUserId() == null || profile.getUsername() == null) {
+            throw new IllegalArgumentException("A profile needs a userId and a username");
+        }
+        encodeRecord(profile, 0, encodeOverflow(profile));   // throws on fields too long
+    }
+
+    /** Grows the index up front so staging a batch never has to commit halfway. */
+    private void reserve(List<PlayerProfile> profiles) throws IOException {
+        long added = 0;
+        for (PlayerProfile profile : profiles) {
+            if (find(BY_USER_ID, profile.getUserId()) < 0) {
+                added++;
+            }
+        }
+        if (liveCount + tombstones + added > indexCapacity * MAX_LOAD) {
+            rebuildIndex(added);
+        }
+    }
+
+    public synchronized boolean delete(String userId) throws IOException {
+        long record = find(BY_USER_ID, userId);
+        if (record < 0) {
+            return false;
+        }
+        byte[] bytes = recordBytes(record).clone();
+        clearSlot(BY_USER_ID, userId, record);
+        clearSlot(BY_USERNAME, getString(bytes, R_USERNAME), record);
+        garbageBytes += RECORD_SIZE + ByteBuffer.wrap(bytes).getInt(R_OVF_CAPACITY);
+        bytes[R_FLAGS] = 0;
+        sealRecord(bytes);
+        stageRecord(record, bytes);
+        liveCount--;
+        stageHeader();
+        commit();
+        return true;
+    }
+
+    // Callers validate() and reserve() first
+    private void stage(PlayerProfile profile) throws IOException {
+        long record = find(BY_USER_ID, profile.getUserId());
+        long owner = find(BY_USERNAME, profile.getUsername());
+        if (owner >= 0 && owner != record) {
+            throw new IllegalArgumentException("Username " + profile.getUsername() + " is taken");
+        }
+        byte[] blob = encodeOverflow(profile);
+
+        if (record < 0) {
+            // A profile with a userId seen earlier in the batch is already in the index, so this fits
+            record = recordCount++;
+            liveCount++;
+            byte[] bytes = encodeRecord(profile, allocate(blob.length, 0, 0), blob);
+            stageBlob(bytes, blob);
+            stageRecord(record, bytes);
+            addSlot(BY_USER_ID, profile.getUserId(), record);
+            addSlot(BY_USERNAME, profile.getUsername(), record);
+        } else {
+            byte[] old = recordBytes(record);
+            ByteBuffer oldFields = ByteBuffer.wrap(old);
+            long offset = allocate(blob.length, oldFields.getLong(R_OVF_OFFSET), oldFields.getInt(R_OVF_CAPACITY));
+            byte[] bytes = encodeRecord(profile, offset, blob);
+            if (offset != oldFields.getLong(R_OVF_OFFSET)) {
+                garbageBytes += oldFields.getInt(R_OVF_CAPACITY);
+            } else {
+                // Same space, so it keeps its capacity
+                ByteBuffer.wrap(bytes).putInt(R_OVF_CAPACITY, oldFields.getInt(R_OVF_CAPACITY));
+                sealRecord(bytes);
+            }
+            String oldName = getString(old, R_USERNAME);
+            if (!oldName.equals(profile.getUsername())) {
+                clearSlot(BY_USERNAME, oldName, record);
+                addSlot(BY_USERNAME, profile.getUsername(), record);
+            }
+            stageBlob(bytes, blob);
+            stageRecord(record, bytes);
+        }
+        stageHeader();
+    }
+
+    /** Reuses the old blob's space when the new one fits, otherwise appends with room to grow. */
+    private long allocate(int length, long oldOffset, int oldCapacity) {
+        if (length <= oldCapacity) {
+            return oldOffset;
+        }
+        long offset = overflowEnd;
+        overflowEnd += blobCapacity(length);
+        return offset;
+    }
+
+    private static int blobCapacity(int length) {
+        return Math.max(64, (length + length / 2 + 63) & ~63);
+    }
+
+    private void addSlot(int table, String key, long record) {
+        long hash = hash(table, key);
+        int mask = indexCapacity - 1;
+        int slot = (int) hash & mask;
+        while (true) {
+            long value = readSlot(table, slot);
+            if (value == EMPTY || value == TOMBSTONE) {
+                if (value == TOMBSTONE) {
+                    tombstones--;
+                }
+                stageSlot(slotPosition(table, slot), slotValue(hash, record));
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void clearSlot(int table, String key, long record) {
+        int slot = findSlot(table, key, record);
+        if (slot >= 0) {
+            stageSlot(slotPosition(table, slot), TOMBSTONE);
+            tombstones++;
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Write-ahead log
+    // ---------------------------------------------------------------
+
+    private void stageRecord(long record, byte[] bytes) {
+        batch.writeVarInt(OP_RECORD);
+        batch.writeVarLong(record);
+        batch.writeBytes(bytes);
+        pendingRecords.put(record, bytes);
+    }
+
+    private void stageSlot(long position, long value) {
+        batch.writeVarInt(OP_SLOT);
+        batch.writeVarLong(position);
+        batch.writeLong(value);
+        pendingSlots.put(position, value);
+    }
+
+    private void stageBlob(byte[] record, byte[] blob) {
+        batch.writeVarInt(OP_BLOB);
+        batch.writeVarLong(ByteBuffer.wrap(record).getLong(R_OVF_OFFSET));
+        batch.writeVarInt(blob.length);
+        batch.writeBytes(blob);
+    }
+
+    private void stageHeader() {
+        batch.writeVarInt(OP_HEADER);
+        batch.writeVarLong(recordCount);
+        batch.writeVarLong(liveCount);
+        batch.writeVarLong(overflowEnd);
+        batch.writeVarLong(garbageBytes);
+        batch.writeVarLong(tombstones);
+    }
+
+    /** Forces the staged batch to the log, then applies it to the files. */
+    private void commit() throws IOException {
+        if (batch.size == 0) {
+            return;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(batch.buffer, 0, batch.size);
+        ByteBuffer frame = ByteBuffer.allocate(8 + batch.size);
+        frame.putInt(batch.size).putInt((int) crc.getValue()).put(batch.buffer, 0, batch.size).flip();
+        wal.position(walBytes);
+        while (frame.hasRemaining()) {
+            wal.write(frame);
+        }
+        wal.force(false);
+        walBytes += 8 + batch.size;
+
+        apply(batch.buffer, batch.size);
+        batch.reset();
+        pendingSlots.clear();
+        pendingRecords.clear();
+        if (walBytes >= WAL_CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    private void apply(byte[] payload, int length) throws IOException {
+        VarintReader in = new VarintReader(payload, 0, length);
+        while (in.hasMore()) {
+            int op = in.readVarInt();
+            switch (op) {
+                case OP_RECORD: {
+                    long record = in.readVarLong();
+                    long position = HEADER_SIZE + record * RECORD_SIZE;
+                    data.ensureSize(position + RECORD_SIZE);
+                    data.put(position, in.readBytes(RECORD_SIZE));
+                    break;
+                }
+                case OP_SLOT:
+                    index.putLong(in.readVarLong(), in.readLong());
+                    break;
+                case OP_BLOB: {
+                    long offset = in.readVarLong();
+                    ByteBuffer blob = ByteBuffer.wrap(in.readBytes(in.readCount()));
+                    while (blob.hasRemaining()) {
+                        overflow.write(blob, offset + blob.position());
+                    }
+                    break;
+                }
+                case OP_HEADER:
+                    recordCount = in.readVarLong();
+                    liveCount = in.readVarLong();
+                    overflowEnd = in.readVarLong();
+                    garbageBytes = in.readVarLong();
+                    tombstones = in.readVarLong();
+                    data.putLong(H_RECORD_COUNT, recordCount);
+                    data.putLong(H_LIVE_COUNT, liveCount);
+                    data.putLong(H_OVERFLOW_END, overflowEnd);
+                    data.putLong(H_GARBAGE, garbageBytes);
+                    data.putLong(H_TOMBSTONES, tombstones);
+                    break;
+                default:
+                    throw new IOException("Unknown profile log operation " + op);
+            }
+        }
+    }
+
+    /** Applies every complete batch in the log; a torn last batch was never acknowledged. */
+    private int replayLog() throws IOException {
+        long size = wal.size();
+        int batches = 0;
+        long position = 0;
+        ByteBuffer head = ByteBuffer.allocate(8);
+        while (position + 8 <= size) {
+            head.clear();
+            wal.read(head, position);
+            head.flip();
+            int length = head.getInt();
+            int checksum = head.getInt();
+            if (length <= 0 || position + 8 + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining() && wal.read(payload, position + 8 + payload.position()) > 0) {
+                // keep reading
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(payload.array(), length);
+            position += 8 + length;
+            batches++;
+        }
+        return batches;
+    }
+
+    /** Forces the mapped pages and the overflow file, after which the log can be emptied. */
+    private void checkpoint() throws IOException {
+        data.force();
+        index.force();
+        overflow.force(false);
+        wal.truncate(0);
+        wal.force(true);
+        walBytes = 0;
+    }
+
+    /**
+     * Rewrites the index at a size that leaves it at most a third full once
+     * the given number of profiles is added, dropping tombstones. Built
+     * beside the old one and renamed over it.
+     */
+    private void rebuildIndex(long adding) throws IOException {
+        checkpoint();
+        int capacity = indexCapacity;
+        while (liveCount + adding + 1 > capacity * MAX_LOAD / 2) {
+            capacity *= 2;
+        }
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.deleteIfExists(temp);
+        MappedFile rebuilt = new MappedFile(temp, 16L * capacity);
+        int mask = capacity - 1;
+        for (long r = 0; r < recordCount; r++) {
+            byte[] bytes = recordBytes(r);
+            if ((bytes[R_FLAGS] & FLAG_LIVE) == 0) {
+                continue;
+            }
+            for (int table = BY_USER_ID; table <= BY_USERNAME; table++) {
+                long hash = hash(table, getString(bytes, table == BY_USER_ID ? R_USER_ID : R_USERNAME));
+                int slot = (int) hash & mask;
+                long base = (long) table * capacity;
+                while (rebuilt.getLong((base + slot) * 8) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                rebuilt.putLong((base + slot) * 8, slotValue(hash, r));
+            }
+        }
+        rebuilt.force();
+        rebuilt.close();
+        index.close();
+        Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index = new MappedFile(directory.resolve(INDEX_FILE), 16L * capacity);
+        indexCapacity = capacity;
+        tombstones = 0;
+        stageHeader();
+        commit();
+    }
+
+    // ---------------------------------------------------------------
+    // Record encoding
+    // ---------------------------------------------------------------
+
+    private static byte[] encodeRecord(PlayerProfile profile, long overflowOffset, byte[] blob) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        bytes[R_FLAGS] = FLAG_LIVE;
+        putString(bytes, R_USER_ID, 47, profile.getUserId(), "userId");
+        putString(bytes, R_USERNAME, 39, profile.getUsername(), "username");
+        putString(bytes, R_PASSWORD, 71, profile.getPasswordHash(), "password hash");
+        putString(bytes, R_ROOM, 31, profile.getCurrentRoomId(), "currentRoomId");
+        buffer.putInt(R_LEVEL, profile.getLevel());
+        buffer.putInt(R_WORLD_X, profile.getWorldX());
+        buffer.putInt(R_WORLD_Y, profile.getWorldY());
+        buffer.putInt(R_SPEED, profile.getSpeed());
+        bytes[R_DIRECTION] = (byte) Math.max(0, Arrays.asList(DIRECTIONS).indexOf(profile.getDirection()));
+        bytes[R_COLLISION] = (byte) (profile.isCollisionOn() ? 1 : 0);
+        buffer.putInt(R_SOLID, profile.getSolidX());
+        buffer.putInt(R_SOLID + 4, profile.getSolidY());
+        buffer.putInt(R_SOLID + 8, profile.getSolidWidth());
+        buffer.putInt(R_SOLID + 12, profile.getSolidHeight());
+        buffer.putLong(R_OVF_OFFSET, overflowOffset);
+        buffer.putInt(R_OVF_LENGTH, blob.length);
+        buffer.putInt(R_OVF_CAPACITY, blobCapacity(blob.length));
+        CRC32C crc = new CRC32C();
+        crc.update(blob, 0, blob.length);
+        buffer.putInt(R_OVF_CRC, (int) crc.getValue());
+        sealRecord(bytes);
+        return bytes;
+    }
+
+    private static void sealRecord(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, R_CRC);
+        ByteBuffer.wrap(bytes).putInt(R_CRC, (int) crc.getValue());
+    }
+
+    private PlayerProfile read(long record) throws IOException {
+        byte[] bytes = recordBytes(record);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, R_CRC);
+        if ((int) crc.getValue() != buffer.getInt(R_CRC)) {
+            throw new IOException("Profile record " + record + " is corrupt");
+        }
+        PlayerProfile profile = new PlayerProfile(getString(bytes, R_USER_ID), getString(bytes, R_USERNAME));
+        profile.setPasswordHash(getString(bytes, R_PASSWORD));
+        profile.setCurrentRoomId(getString(bytes, R_ROOM));
+        profile.setLevel(buffer.getInt(R_LEVEL));
+        profile.setPosition(buffer.getInt(R_WORLD_X), buffer.getInt(R_WORLD_Y));
+        profile.setSpeed(buffer.getInt(R_SPEED));
+        profile.setDirection(DIRECTIONS[bytes[R_DIRECTION] & 3]);
+        profile.setCollisionOn(bytes[R_COLLISION] != 0);
+        profile.setSolidArea(buffer.getInt(R_SOLID), buffer.getInt(R_SOLID + 4),
+            buffer.getInt(R_SOLID + 8), buffer.getInt(R_SOLID + 12));
+
+        ByteBuffer blob = ByteBuffer.allocate(buffer.getInt(R_OVF_LENGTH));
+        long offset = buffer.getLong(R_OVF_OFFSET);
+        while (blob.hasRemaining()) {
+            if (overflow.read(blob, offset + blob.position()) < 0) {
+                throw new IOException("Profile overflow data is truncated");
+            }
+        }
+        crc.reset();
+        crc.update(blob.array(), 0, blob.capacity());
+        if ((int) crc.getValue() != buffer.getInt(R_OVF_CRC)) {
+            throw new IOException("Profile overflow data for " + profile.getUserId() + " is corrupt");
+        }
+        decodeOverflow(profile, blob.array());
+        return profile;
+    }
+
+    private static void putString(byte[] bytes, int offset, int max, String value, String field) {
+        if (value == null) {
+            bytes[offset] = (byte) NULL_STRING;
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > max) {
+            throw new IllegalArgumentException("The " + field + " is longer than " + max + " bytes: " + value);
+        }
+        bytes[offset] = (byte) utf8.length;
+        System.arraycopy(utf8, 0, bytes, offset + 1, utf8.length);
+    }
+
+    private static String getString(byte[] bytes, int offset) {
+        int length = bytes[offset] & 0xFF;
+        return length == NULL_STRING ? null : new String(bytes, offset + 1, length, StandardCharsets.UTF_8);
+    }
+
+    /** Inventory and sprite paths, which have no fixed size. */
+    private static byte[] encodeOverflow(PlayerProfile profile) {
+        VarintWriter out = new VarintWriter(256);
+        out.writeString(profile.getInventoryId());
+        out.writeVarInt(profile.getMaxCapacity());
+        out.writeVarInt(profile.getItems().size());
+        for (PlayerProfile.InventoryItem item : profile.getItems()) {
+            out.writeString(item.getItemId());
+            out.writeString(item.getName());
+            out.writeString(item.getHint());
+            out.writeString(item.getDescription());
+        }
+        out.writeVarInt(profile.getSpriteImages().size());
+        for (Map.Entry<String, String> sprite : profile.getSpriteImages().entrySet()) {
+            out.writeString(sprite.getKey());
+            out.writeString(sprite.getValue());
+        }
+        return Arrays.copyOf(out.buffer, out.size);
+    }
+
+    private static void decodeOverflow(PlayerProfile profile, byte[] blob) throws IOException {
+        VarintReader in = new VarintReader(blob, 0, blob.length);
+        String inventoryId = in.readString();
+        profile.setInventory(inventoryId, in.readVarInt());
+        for (int i = in.readCount(); i > 0; i--) {
+            profile.getItems().add(new PlayerProfile.InventoryItem(in.readString(), in.readString(),
+                in.readString(), in.readString()));
+        }
+        for (int i = in.readCount(); i > 0; i--) {
+            profile.getSpriteImages().put(in.readString(), in.readString());
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // users.json import
+    // ---------------------------------------------------------------
+
+    /** Opens the store, importing the old users.json the first time it is empty. */
+    public static ProfileStore openWithImport(Path directory, Path usersJson) throws IOException {
+        ProfileStore store = new ProfileStore(directory);
+        if (store.size() == 0 && Files.exists(usersJson)) {
+            int imported = store.importJson(usersJson);
+            System.out.println("Imported " + imported + " profiles from " + usersJson);
+        }
+        return store;
+    }
+
+    /**
+     * Streams users.json into the store, replacing profiles with the same
+     * userId. The file is read twice, record by record: once to check every
+     * profile and username, then again to save them in batches, so a bad
+     * record anywhere means nothing is imported. Only the usernames are held
+     * in memory, so the file's size hardly matters.
+     * @return the number of profiles imported
+     */
+    public synchronized int importJson(Path usersJson) throws IOException {
+        Map<String, String> owners = new HashMap<>();
+        readUsers(usersJson, profile -> {
+            validate(profile);
+            String username = profile.getUsername().toLowerCase(Locale.ROOT);
+            String previous = owners.putIfAbsent(username, profile.getUserId());
+            if (previous != null && !previous.equals(profile.getUserId())) {
+                throw new IllegalArgumentException("Username " + profile.getUsername() + " is used twice in " + usersJson);
+            }
+            long owner = find(BY_USERNAME, profile.getUsername());
+            if (owner >= 0 && owner != find(BY_USER_ID, profile.getUserId())) {
+                throw new IllegalArgumentException("Username " + profile.getUsername() + " is taken");
+            }
+        });
+
+        List<PlayerProfile> pending = new ArrayList<>(IMPORT_BATCH);
+        int[] count = { 0 };
+        readUsers(usersJson, profile -> {
+            pending.add(profile);
+            if (pending.size() == IMPORT_BATCH) {
+                saveAll(pending);
+                count[0] += pending.size();
+                pending.clear();
+            }
+        });
+        saveAll(pending);
+        return count[0] + pending.size();
+    }
+
+    private interface ProfileSink {
+        void accept(PlayerProfile profile) throws IOException;
+    }
+
+    private static void readUsers(Path usersJson, ProfileSink sink) throws IOException {
+        try (InputStream in = Files.newInputStream(usersJson)) {
+            JsonPullParser parser = new JsonPullParser(in);
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (!parser.nextName().equals("users")) {
+                    parser.skipValue();
+                    continue;
+                }
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    sink.accept(readProfile(parser));
+                }
+                parser.endArray();
+            }
+            parser.endObject();
+        }
+    }
+
+    private static PlayerProfile readProfile(JsonPullParser parser) throws IOException {
+        PlayerProfile profile = new PlayerProfile();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "userId": profile.setUserId(parser.nextString()); break;
+                case "username": profile.setUsername(parser.nextString()); break;
+                case "password": profile.setPasswordHash(parser.nextString()); break;
+                case "level": profile.setLevel(parser.nextInt()); break;
+                case "currentRoomId": profile.setCurrentRoomId(parser.nextString()); break;
+                case "playerState": readPlayerState(parser, profile); break;
+                case "inventory": readInventory(parser, profile); break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+        return profile;
+    }
+
+    private static void readPlayerState(JsonPullParser parser, PlayerProfile profile) throws IOException {
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "worldX": profile.setPosition(parser.nextInt(), profile.getWorldY()); break;
+                case "worldY": profile.setPosition(profile.getWorldX(), parser.nextInt()); break;
+                case "speed": profile.setSpeed(parser.nextInt()); break;
+                case "direction": profile.setDirection(parser.nextString()); break;
+                case "collisionOn": profile.setCollisionOn(parser.nextBoolean()); break;
+                case "solidArea": {
+                    int x = 0, y = 0, width = 0, height = 0;
+                    parser.beginObject();
+                    while (parser.hasNext()) {
+                        switch (parser.nextName()) {
+                            case "x": x = parser.nextInt(); break;
+                            case "y": y = parser.nextInt(); break;
+                            case "width": width = parser.nextInt(); break;
+                            case "height": height = parser.nextInt(); break;
+                            default: parser.skipValue(); break;
+                        }
+                    }
+                    parser.endObject();
+                    profile.setSolidArea(x, y, width, height);
+                    break;
+                }
+                case "spriteImages":
+                    parser.beginObject();
+                    while (parser.hasNext()) {
+                        String key = parser.nextName();
+                        profile.getSpriteImages().put(key, parser.nextString());
+                    }
+                    parser.endObject();
+                    break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+    }
+
+    private static void readInventory(JsonPullParser parser, PlayerProfile profile) throws IOException {
+        String inventoryId = null;
+        int maxCapacity = 0;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "inventoryId": inventoryId = parser.nextString(); break;
+                case "maxCapacity": maxCapacity = parser.nextInt(); break;
+                case "items":
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        String itemId = null, name = null, hint = null, description = null;
+                        parser.beginObject();
+                        while (parser.hasNext()) {
+                            switch (parser.nextName()) {
+                                case "itemID": itemId = parser.nextString(); break;
+                                case "name": name = parser.nextString(); break;
+                                case "hint": hint = parser.nextString(); break;
+                                case "description": description = parser.nextString(); break;
+                                default: parser.skipValue(); break;
+                            }
+                        }
+                        parser.endObject();
+                        profile.getItems().add(new PlayerProfile.InventoryItem(itemId, name, hint, description));
+                    }
+                    parser.endArray();
+                    break;
+                default: parser.skipValue(); break;
+            }
+        }
+        parser.endObject();
+        profile.setInventory(inventoryId, maxCapacity);
+    }
+
+    // ---------------------------------------------------------------
+
+    /** Checkpoints the log and closes the files. */
+    public synchronized void close() throws IOException {
+        commit();
+        checkpoint();
+        data.close();
+        index.close();
+        overflow.close();
+        wal.close();
+    }
+
+    // Stats
+    public synchronized int getIndexCapacity() { return indexCapacity; }
+    /** Bytes of records and overflow space no longer used by any profile. */
+    public synchronized long getGarbageBytes() { return garbageBytes; }
+    public synchronized long getLogBytes() { return walBytes; }
+}
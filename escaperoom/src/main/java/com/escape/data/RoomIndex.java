@@ -0,0 +1,338 @@
+package com.escape.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Byte-offset index of the room and item records in a content file.
+ * build() skims the file once with the pull parser and decodes only the
+ * record ids. scan() works on a mapped file instead: it cuts the bytes
+ * into slices and looks only at strings, braces and brackets, on all
+ * cores, so indexing costs little next to parsing the records.
+ */
+public class RoomIndex {
+
+    private static final int MIN_SLICE = 64 * 1024;
+
+    // Structure found by a slice scan, packed as kind << 56 | position
+    private static final long STRING_OPEN = 1L << 56;    // a string at depth 1: a top-level key or value
+    private static final long STRING_CLOSE = 2L << 56;
+    private static final long VALUE_OPEN = 3L << 56;     // depth 1 -> 2: a top-level object or array
+    private static final long VALUE_CLOSE = 4L << 56;
+    private static final long RECORD_OPEN = 5L << 56;    // depth 2 -> 3: an element of a top-level array
+    private static final long RECORD_CLOSE = 6L << 56;
+    private static final long KIND_MASK = 0xFFL << 56;
+    private static final long POSITION_MASK = ~KIND_MASK;
+
+    public static class Entry {
+        public final String roomId;  // record id (itemId for item entries); null from scan()
+        public final long offset;    // first byte of the record object
+        public final int length;     // bytes up to and including the closing brace
+
+        Entry(String roomId, long offset, int length) {
+            this.roomId = roomId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Entry> itemEntries = new ArrayList<>();
+    private String startRoomId;
+
+    private RoomIndex() {
+    }
+
+    public static RoomIndex build(String path) throws IOException {
+        RoomIndex index = new RoomIndex();
+        try (InputStream in = new FileInputStream(path)) {
+            index.scan(new JsonPullParser(in));
+        }
+        return index;
+    }
+
+    /** Builds the index from file contents already in memory. */
+    public static RoomIndex build(byte[] data) throws IOException {
+        RoomIndex index = new RoomIndex();
+        index.scan(new JsonPullParser(new ByteArrayInputStream(data)));
+        return index;
+    }
+
+    /**
+     * Builds the index from a whole mapped content file, scanning slices of
+     * it on the pool. Entries come without ids; each record carries its own.
+     */
+    public static RoomIndex scan(ByteBuffer data, ForkJoinPool pool) throws IOException {
+        int size = data.limit();
+        int parts = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, size / MIN_SLICE));
+        Slice[] slices = new Slice[parts];
+        int from = 0;
+        for (int i = 0; i < parts; i++) {
+            int to = i == parts - 1 ? size : (int) ((long) size * (i + 1) / parts);
+            // Never cut right after a backslash, so no escape straddles two slices
+            while (to < size && to > from && data.get(to - 1) == '\\') {
+                to++;
+            }
+            to = Math.max(to, from);
+            slices[i] = new Slice(from, to);
+            from = to;
+        }
+
+        // Quote parity and bracket balance per slice, then each slice's
+        // starting state from the ones before it
+        pool.invoke(new SliceTask(data, slices, 0, parts, false));
+        boolean inString = false;
+        int depth = 0;
+        for (Slice slice : slices) {
+            slice.startInString = inString;
+            slice.startDepth = depth;
+            depth += inString ? slice.balanceIfInString : slice.balance;
+            inString ^= slice.oddQuotes;
+        }
+        if (inString || depth != 0) {
+            throw new IOException("Content file has unbalanced strings or brackets");
+        }
+
+        pool.invoke(new SliceTask(data, slices, 0, parts, true));
+        RoomIndex index = new RoomIndex();
+        index.collect(data, slices);
+        return index;
+    }
+
+    /** A stretch of the file, with what each pass learned about it. */
+    private static class Slice {
+        final int from, to;
+        boolean oddQuotes;
+        int balance;             // brackets outside strings, if the slice starts outside one
+        int balanceIfInString;   // the same, if it starts inside a string
+        boolean startInString;
+        int startDepth;
+        long[] events = new long[16];
+        int eventCount;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void count(ByteBuffer data) {
+            boolean in = false;
+            boolean escaped = false;
+            for (int p = from; p < to; p++) {
+                byte c = data.get(p);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    in = !in;
+                    oddQuotes = !oddQuotes;
+                } else if (c == '{' || c == '[') {
+                    if (in) {
+                        balanceIfInString++;
+                    } else {
+                        balance++;
+                    }
+                } else if (c == '}' || c == ']') {
+                    if (in) {
+                        balanceIfInString--;
+                    } else {
+                        balance--;
+                    }
+                }
+            }
+        }
+
+        void findEvents(ByteBuffer data) {
+            boolean in = startInString;
+            boolean escaped = false;
+            int depth = startDepth;
+            for (int p = from; p < to; p++) {
+                byte c = data.get(p);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    if (depth == 1) {
+                        add((in ? STRING_CLOSE : STRING_OPEN) | p);
+                    }
+                    in = !in;
+                } else if (in) {
+                    continue;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                    if (depth == 2) {
+                        add(VALUE_OPEN | p);
+                    } else if (depth == 3) {
+                        add(RECORD_OPEN | p);
+                    }
+                } else if (c == '}' || c == ']') {
+                    if (depth == 3) {
+                        add(RECORD_CLOSE | p);
+                    } else if (depth == 2) {
+                        add(VALUE_CLOSE | p);
+                    }
+                    depth--;
+                }
+            }
+        }
+
+        private void add(long event) {
+            if (eventCount == events.length) {
+                events = Arrays.copyOf(events, eventCount * 2);
+            }
+            events[eventCount++] = event;
+        }
+    }
+
+    /** Runs one pass over a range of slices. */
+    @SuppressWarnings("serial")
+    private static class SliceTask extends RecursiveAction {
+        private final ByteBuffer data;
+        private final Slice[] slices;
+        private final int from, to;
+        private final boolean events;
+
+        SliceTask(ByteBuffer data, Slice[] slices, int from, int to, boolean events) {
+            this.data = data;
+            this.slices = slices;
+            this.from = from;
+            this.to = to;
+            this.events = events;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (events) {
+                    slices[from].findEvents(data);
+                } else {
+                    slices[from].count(data);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SliceTask(data, slices, from, mid, events),
+                      new SliceTask(data, slices, mid, to, events));
+        }
+    }
+
+    // Walks the events in file order; a top-level value's key is the last depth-1 string before it
+    private void collect(ByteBuffer data, Slice[] slices) throws IOException {
+        int stringStart = 0;
+        int stringEnd = 0;
+        String key = null;
+        int valueStart = 0;
+        boolean inArray = false;
+        int recordStart = 0;
+        for (Slice slice : slices) {
+            for (int i = 0; i < slice.eventCount; i++) {
+                long event = slice.events[i];
+                int p = (int) (event & POSITION_MASK);
+                long kind = event & KIND_MASK;
+                if (kind == STRING_OPEN) {
+                    stringStart = p + 1;
+                } else if (kind == STRING_CLOSE) {
+                    stringEnd = p;
+                } else if (kind == VALUE_OPEN) {
+                    key = decode(data, stringStart, stringEnd);
+                    valueStart = p;
+                    inArray = data.get(p) == '[';
+                } else if (kind == RECORD_OPEN) {
+                    recordStart = p;
+                } else if (kind == RECORD_CLOSE) {
+                    if (inArray && data.get(recordStart) == '{') {
+                        Entry entry = new Entry(null, recordStart, p + 1 - recordStart);
+                        if ("rooms".equals(key)) {
+                            entries.add(entry);
+                        } else if ("items".equals(key)) {
+                            itemEntries.add(entry);
+                        }
+                    }
+                } else if (kind == VALUE_CLOSE && "game_config".equals(key) && !inArray) {
+                    ByteBuffer config = data.duplicate();
+                    config.position(valueStart);
+                    config.limit(p + 1);
+                    readConfig(new JsonPullParser(new ByteBufferInputStream(config), valueStart, p + 1 - valueStart));
+                }
+            }
+        }
+    }
+
+    private static String decode(ByteBuffer data, int from, int to) {
+        byte[] bytes = new byte[Math.max(0, to - from)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void readConfig(JsonPullParser parser) throws IOException {
+        parser.beginObject();
+        while (parser.hasNext()) {
+            if (parser.nextName().equals("player_start_room")) {
+                startRoomId = parser.nextString();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+    }
+
+    private void scan(JsonPullParser parser) throws IOException {
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if (name.equals("rooms")) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    entries.add(scanRecord(parser, "roomId"));
+                }
+                parser.endArray();
+            } else if (name.equals("items")) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    itemEntries.add(scanRecord(parser, "itemId"));
+                }
+                parser.endArray();
+            } else if (name.equals("game_config")) {
+                readConfig(parser);
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+    }
+
+    private Entry scanRecord(JsonPullParser parser, String idField) throws IOException {
+        long start = parser.peekOffset();
+        String id = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            if (parser.nextName().equals(idField)) {
+                id = parser.nextString();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (id == null) {
+            throw new IOException("Record at byte " + start + " has no " + idField);
+        }
+        return new Entry(id, start, Math.toIntExact(parser.position() - start));
+    }
+
+    public List<Entry> getEntries() { return Collections.unmodifiableList(entries); }
+    public List<Entry> getItemEntries() { return Collections.unmodifiableList(itemEntries); }
+    public String getStartRoomId() { return startRoomId; }
+}
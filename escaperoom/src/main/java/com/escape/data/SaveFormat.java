@@ -0,0 +1,246 @@
+package com.escape.data;
+
+import com.escape.game.ItemRegistry;
+import com.escape.objects.InteractiveObject;
+import com.escape.objects.ObjectState;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary encoding of a SaveSnapshot.
+ *
+ * A 20-byte header (magic "HSAV", format version, flags, payload length,
+ * payload CRC32C, and a CRC32 of the header fields before it) is followed by
+ * the payload. Every string in the payload (room, object, item and puzzle
+ * ids) is written once in a string table and referred to by index after
+ * that. Counts and indexes are unsigned varints, signed values zigzag
+ * varints, so a typical save is a few hundred bytes.
+ */
+public class SaveFormat {
+
+    public static final int MAGIC = 0x48534156;   // "HSAV"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+
+    // Per-object bits ahead of its state
+    private static final int OBJ_VISIBLE = 1;
+    private static final int OBJ_FRACTIONAL = 1 << 1;   // position written as raw doubles
+
+    public static byte[] encode(SaveSnapshot snapshot) {
+        StringTable strings = new StringTable();
+        strings.add(snapshot.currentRoomId);
+        for (String item : snapshot.inventory) {
+            strings.add(item);
+        }
+        for (int r = 0; r < snapshot.roomIds.length; r++) {
+            strings.add(snapshot.roomIds[r]);
+            for (int i = 0; i < snapshot.objectIds[r].length; i++) {
+                strings.add(snapshot.objectIds[r][i]);
+                strings.add(snapshot.objectRefs[r][i]);
+            }
+        }
+        for (String puzzleId : snapshot.puzzleIds) {
+            strings.add(puzzleId);
+        }
+
+        VarintWriter out = new VarintWriter(256);
+        out.writeVarLong(snapshot.capturedAt);
+        out.writeVarInt(strings.size());
+        for (int i = 0; i < strings.size(); i++) {
+            byte[] utf8 = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            out.writeVarInt(utf8.length);
+            out.writeBytes(utf8);
+        }
+
+        out.writeVarInt(strings.ref(snapshot.currentRoomId));
+        out.writeZigZag(snapshot.timeRemainingSeconds);
+        out.writeVarInt(snapshot.inventory.length);
+        for (String item : snapshot.inventory) {
+            out.writeVarInt(strings.ref(item));
+        }
+
+        out.writeVarInt(snapshot.roomIds.length);
+        for (int r = 0; r < snapshot.roomIds.length; r++) {
+            out.writeVarInt(strings.ref(snapshot.roomIds[r]));
+            out.writeVarInt(snapshot.objectIds[r].length);
+            for (int i = 0; i < snapshot.objectIds[r].length; i++) {
+                out.writeVarInt(strings.ref(snapshot.objectIds[r][i]));
+                writeObjectState(out, snapshot.objectStates[r][i]);
+                out.writeVarInt(strings.ref(snapshot.objectRefs[r][i]));
+            }
+        }
+
+        out.writeVarInt(snapshot.puzzleIds.length);
+        for (int p = 0; p < snapshot.puzzleIds.length; p++) {
+            long[] words = snapshot.puzzleStates[p];
+            out.writeVarInt(strings.ref(snapshot.puzzleIds[p]));
+            out.writeVarInt(words.length);
+            for (long word : words) {
+                out.writeVarLong(word);
+            }
+        }
+
+        CRC32C payloadCrc = new CRC32C();
+        payloadCrc.update(out.buffer, 0, out.size);
+
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + out.size);
+        file.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+            .putInt(out.size).putInt((int) payloadCrc.getValue());
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(file.array(), 0, 16);
+        file.putInt((int) headerCrc.getValue());
+        file.put(out.buffer, 0, out.size);
+        return file.array();
+    }
+
+    public static SaveSnapshot decode(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE) {
+            throw new IOException("Save file is truncated");
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        int version = header.getShort() & 0xFFFF;
+        header.getShort();   // flags, none defined yet
+        int length = header.getInt();
+        int payloadCrc = header.getInt();
+        int headerCrc = header.getInt();
+
+        CRC32 checkHeader = new CRC32();
+        checkHeader.update(data, 0, 16);
+        if ((int) checkHeader.getValue() != headerCrc) {
+            throw new IOException("Save file header is corrupt");
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported save file version " + version);
+        }
+        if (length < 0 || HEADER_SIZE + length > data.length) {
+            throw new IOException("Save file is truncated");
+        }
+        CRC32C checkPayload = new CRC32C();
+        checkPayload.update(data, HEADER_SIZE, length);
+        if ((int) checkPayload.getValue() != payloadCrc) {
+            throw new IOException("Save file checksum mismatch");
+        }
+
+        VarintReader in = new VarintReader(data, HEADER_SIZE, HEADER_SIZE + length);
+        long capturedAt = in.readVarLong();
+        String[] strings = new String[in.readCount()];
+        for (int i = 0; i < strings.length; i++) {
+            int n = in.readCount();
+            strings[i] = new String(in.readBytes(n), StandardCharsets.UTF_8);
+        }
+
+        String currentRoomId = in.readString(strings);
+        int timeRemaining = in.readZigZag();
+        String[] inventory = new String[in.readCount()];
+        for (int i = 0; i < inventory.length; i++) {
+            inventory[i] = in.readString(strings);
+        }
+
+        int roomCount = in.readCount();
+        String[] roomIds = new String[roomCount];
+        String[][] objectIds = new String[roomCount][];
+        ObjectState[][] objectStates = new ObjectState[roomCount][];
+        String[][] objectRefs = new String[roomCount][];
+        for (int r = 0; r < roomCount; r++) {
+            roomIds[r] = in.readString(strings);
+            int n = in.readCount();
+            objectIds[r] = new String[n];
+            objectStates[r] = new ObjectState[n];
+            objectRefs[r] = new String[n];
+            for (int i = 0; i < n; i++) {
+                objectIds[r][i] = in.readString(strings);
+                objectStates[r][i] = readObjectState(in);
+                objectRefs[r][i] = in.readString(strings);
+            }
+        }
+
+        String[] puzzleIds = new String[in.readCount()];
+        long[][] puzzleStates = new long[puzzleIds.length][];
+        for (int p = 0; p < puzzleIds.length; p++) {
+            puzzleIds[p] = in.readString(strings);
+            long[] words = new long[in.readCount()];
+            for (int w = 0; w < words.length; w++) {
+                words[w] = in.readVarLong();
+            }
+            puzzleStates[p] = words;
+        }
+
+        return new SaveSnapshot(capturedAt, currentRoomId, timeRemaining, inventory,
+            roomIds, objectIds, objectStates, objectRefs, puzzleIds, puzzleStates);
+    }
+
+    /** Visibility, position, flags and index of an object; the item ref is left to the caller. */
+    static void writeObjectState(VarintWriter out, ObjectState state) {
+        boolean fractional = state.x != Math.rint(state.x) || state.y != Math.rint(state.y)
+            || Math.abs(state.x) > Integer.MAX_VALUE || Math.abs(state.y) > Integer.MAX_VALUE;
+        out.writeVarInt((state.visible ? OBJ_VISIBLE : 0) | (fractional ? OBJ_FRACTIONAL : 0));
+        if (fractional) {
+            out.writeLong(Double.doubleToLongBits(state.x));
+            out.writeLong(Double.doubleToLongBits(state.y));
+        } else {
+            out.writeZigZag((int) state.x);
+            out.writeZigZag((int) state.y);
+        }
+        out.writeVarInt(state.flags);
+        out.writeZigZag(state.index);
+    }
+
+    static ObjectState readObjectState(VarintReader in) throws IOException {
+        int bits = in.readVarInt();
+        ObjectState state = new ObjectState();
+        state.visible = (bits & OBJ_VISIBLE) != 0;
+        if ((bits & OBJ_FRACTIONAL) != 0) {
+            state.x = Double.longBitsToDouble(in.readLong());
+            state.y = Double.longBitsToDouble(in.readLong());
+        } else {
+            state.x = in.readZigZag();
+            state.y = in.readZigZag();
+        }
+        state.flags = in.readVarInt();
+        state.index = in.readZigZag();
+        return state;
+    }
+
+    /**
+     * Puts a saved state back on an object. The placed item is stored by id,
+     * since interned ids change between runs. The saved state is left as it is.
+     */
+    static void restoreObjectState(InteractiveObject object, ObjectState saved, String itemRef) {
+        ObjectState state = saved.copy();
+        state.ref = itemRef != null ? ItemRegistry.getInstance().intern(itemRef) : -1;
+        object.restoreState(state);
+    }
+
+    /** Distinct strings in first-seen order; ref 0 stands for null. */
+    private static class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private String[] values = new String[32];
+        private int count;
+
+        void add(String value) {
+            if (value != null && !index.containsKey(value)) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                index.put(value, count);
+                values[count++] = value;
+            }
+        }
+
+        int ref(String value) {
+            return value == null ? 0 : index.get(value) + 1;
+        }
+
+        String get(int i) { return values[i]; }
+        int size() { return count; }
+    }
+}
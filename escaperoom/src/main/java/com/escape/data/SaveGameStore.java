@@ -0,0 +1,186 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save slots on disk, written off the game thread.
+ * save() only queues the snapshot; a single writer thread encodes it, writes
+ * a temp file, forces it to disk and renames it over the slot, so a crash
+ * leaves either the old save or the new one. If the game saves again before
+ * the writer gets to a slot, only the newest snapshot is written and every
+ * caller's future completes with that write.
+ */
+public class SaveGameStore {
+
+    public static final String DEFAULT_DIRECTORY = "saves";
+    public static final String EXTENSION = ".hsav";
+
+    private final Path directory;
+    private final ExecutorService writer;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private volatile long lastWriteNanos;
+    private volatile int lastWriteBytes;
+
+    public SaveGameStore() {
+        this(Paths.get(DEFAULT_DIRECTORY));
+    }
+
+    public SaveGameStore(Path directory) {
+        this.directory = directory;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "save-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues the snapshot for the slot and returns at once.
+     * The future completes with the file path once the data is on disk.
+     */
+    public CompletableFuture<Path> save(String slot, SaveSnapshot snapshot) {
+        return queue(slot, snapshot, null);
+    }
+
+    /**
+     * Same for a game state version. Taking the version is all the game
+     * thread pays; it is copied into a snapshot on the writer thread.
+     */
+    public CompletableFuture<Path> save(String slot, GameState state) {
+        return queue(slot, null, state);
+    }
+
+    private CompletableFuture<Path> queue(String slot, SaveSnapshot snapshot, GameState state) {
+        CompletableFuture<Path> done = new CompletableFuture<>();
+        boolean[] queued = new boolean[1];
+        pending.compute(slot, (key, entry) -> {
+            if (entry == null) {
+                entry = new Pending();
+                queued[0] = true;
+            }
+            entry.snapshot = snapshot;
+            entry.state = state;
+            entry.waiters.add(done);
+            return entry;
+        });
+        if (queued[0]) {
+            writer.execute(() -> write(slot));
+        }
+        return done;
+    }
+
+    private void write(String slot) {
+        Pending entry = pending.remove(slot);
+        if (entry == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            SaveSnapshot snapshot = entry.snapshot != null ? entry.snapshot : SaveSnapshot.of(entry.state);
+            byte[] data = SaveFormat.encode(snapshot);
+            Path target = pathOf(slot);
+            writeDurably(target, data);
+            lastWriteNanos = System.nanoTime() - start;
+            lastWriteBytes = data.length;
+            for (CompletableFuture<Path> waiter : entry.waiters) {
+                waiter.complete(target);
+            }
+        } catch (Exception e) {
+            System.err.println("Error writing save slot " + slot + ": " + e.getMessage());
+            e.printStackTrace();
+            for (CompletableFuture<Path> waiter : entry.waiters) {
+                waiter.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeDurably(Path target, byte[] data) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Make the rename itself durable; not every platform can open a directory
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Loading
+    // ---------------------------------------------------------------
+
+    public boolean exists(String slot) {
+        return Files.exists(pathOf(slot));
+    }
+
+    /** Reads and verifies a slot. Throws if the file is missing, corrupt or from another version. */
+    public SaveSnapshot load(String slot) throws IOException {
+        return SaveFormat.decode(Files.readAllBytes(pathOf(slot)));
+    }
+
+    public List<String> listSlots() throws IOException {
+        List<String> slots = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    slots.add(name.substring(0, name.length() - EXTENSION.length()));
+                }
+            }
+        }
+        return slots;
+    }
+
+    public Path pathOf(String slot) {
+        return directory.resolve(slot + EXTENSION);
+    }
+
+    /** Writes whatever is still queued, then stops the writer thread. */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Save writer did not finish within 5 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stats
+    public long getLastWriteNanos() { return lastWriteNanos; }
+    public int getLastWriteBytes() { return lastWriteBytes; }
+
+    /** Newest snapshot for a slot and everyone waiting on it. */
+    private static class Pending {
+        SaveSnapshot snapshot;   // or the state to build it from
+        GameState state;
+        final List<CompletableFuture<Path>> waiters = new ArrayList<>();
+    }
+}
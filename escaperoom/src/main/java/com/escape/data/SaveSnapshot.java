@@ -0,0 +1,236 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.Puzzle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-in-time copy of everything a save file holds: the current room,
+ * inventory and timer, every object's state in every room, and every
+ * puzzle's state words. Capturing only copies small values into arrays, so
+ * it is cheap enough to do on the game thread; encoding and writing happen
+ * later on SaveGameStore's writer thread. A snapshot is never modified after
+ * it is built. of() builds one from a GameState instead, on any thread.
+ */
+public class SaveSnapshot {
+
+    public static final int UNKNOWN_TIME = -1;
+
+    final long capturedAt;
+    final String currentRoomId;
+    final int timeRemainingSeconds;
+    final String[] inventory;
+
+    // Per room: id, then its objects' ids, states and placed item ids
+    final String[] roomIds;
+    final String[][] objectIds;
+    final ObjectState[][] objectStates;
+    final String[][] objectRefs;
+
+    final String[] puzzleIds;
+    final long[][] puzzleStates;
+
+    SaveSnapshot(long capturedAt, String currentRoomId, int timeRemainingSeconds, String[] inventory,
+                 String[] roomIds, String[][] objectIds, ObjectState[][] objectStates, String[][] objectRefs,
+                 String[] puzzleIds, long[][] puzzleStates) {
+        this.capturedAt = capturedAt;
+        this.currentRoomId = currentRoomId;
+        this.timeRemainingSeconds = timeRemainingSeconds;
+        this.inventory = inventory;
+        this.roomIds = roomIds;
+        this.objectIds = objectIds;
+        this.objectStates = objectStates;
+        this.objectRefs = objectRefs;
+        this.puzzleIds = puzzleIds;
+        this.puzzleStates = puzzleStates;
+    }
+
+    // ---------------------------------------------------------------
+    // Capture
+    // ---------------------------------------------------------------
+
+    /** Captures the loaded content's rooms, or just the current room if nothing was linked. */
+    public static SaveSnapshot capture(HollowmoreGameManager gameManager) {
+        return capture(gameManager, roomsOf(gameManager));
+    }
+
+    static Collection<Room> roomsOf(HollowmoreGameManager gameManager) {
+        ContentIndex index = ContentIndex.getCurrent();
+        if (index != null) {
+            return index.getRooms();
+        } else if (gameManager.getCurrentRoom() != null) {
+            return Collections.singletonList(gameManager.getCurrentRoom());
+        }
+        return Collections.emptyList();
+    }
+
+    /** Must run on the thread that owns the game state. */
+    public static SaveSnapshot capture(HollowmoreGameManager gameManager, Collection<Room> rooms) {
+        ItemRegistry registry = ItemRegistry.getInstance();
+        Room current = gameManager.getCurrentRoom();
+
+        int roomCount = rooms.size();
+        String[] roomIds = new String[roomCount];
+        String[][] objectIds = new String[roomCount][];
+        ObjectState[][] objectStates = new ObjectState[roomCount][];
+        String[][] objectRefs = new String[roomCount][];
+        List<String> puzzleIds = new ArrayList<>(roomCount);
+        List<long[]> puzzleStates = new ArrayList<>(roomCount);
+
+        int r = 0;
+        for (Room room : rooms) {
+            roomIds[r] = room.getRoomId();
+            List<InteractiveObject> objects = room.getObjects();
+            int n = objects.size();
+            objectIds[r] = new String[n];
+            objectStates[r] = new ObjectState[n];
+            objectRefs[r] = new String[n];
+            for (int i = 0; i < n; i++) {
+                InteractiveObject object = objects.get(i);
+                ObjectState state = object.captureState();
+                objectIds[r][i] = object.getObjectId();
+                objectStates[r][i] = state;
+                // Interned ids depend on load order, so save the item's name
+                objectRefs[r][i] = state.ref >= 0 ? registry.getItemId(state.ref) : null;
+            }
+
+            if (room.getPuzzle() != null) {
+                Puzzle puzzle = gameManager.getPuzzle(room.getPuzzle().getPuzzleId());
+                if (puzzle != null) {
+                    puzzleIds.add(puzzle.getPuzzleId());
+                    puzzleStates.add(puzzle.snapshotState());
+                }
+            }
+            r++;
+        }
+
+        return new SaveSnapshot(System.currentTimeMillis(),
+            current != null ? current.getRoomId() : null,
+            parseSeconds(gameManager.getTimeRemainingFormatted()),
+            gameManager.getInventory().toArray(new String[0]),
+            roomIds, objectIds, objectStates, objectRefs,
+            puzzleIds.toArray(new String[0]), puzzleStates.toArray(new long[0][]));
+    }
+
+    /** Copies a game state version into a snapshot; safe on any thread, as the version never changes. */
+    public static SaveSnapshot of(GameState state) {
+        ItemRegistry registry = ItemRegistry.getInstance();
+        int roomCount = state.getRoomCount();
+        String[] roomIds = new String[roomCount];
+        String[][] objectIds = new String[roomCount][];
+        ObjectState[][] objectStates = new ObjectState[roomCount][];
+        String[][] objectRefs = new String[roomCount][];
+        int[] r = new int[1];
+        state.forEachRoom((roomId, objects) -> {
+            int room = r[0]++;
+            roomIds[room] = roomId;
+            objectIds[room] = new String[objects.size()];
+            objectStates[room] = new ObjectState[objects.size()];
+            objectRefs[room] = new String[objects.size()];
+            int[] i = new int[1];
+            objects.forEach((objectId, objectState) -> {
+                objectIds[room][i[0]] = objectId;
+                objectStates[room][i[0]] = objectState;
+                objectRefs[room][i[0]] = objectState.ref >= 0 ? registry.getItemId(objectState.ref) : null;
+                i[0]++;
+            });
+        });
+
+        String[] puzzleIds = new String[state.getPuzzleCount()];
+        long[][] puzzleStates = new long[puzzleIds.length][];
+        int[] p = new int[1];
+        state.forEachPuzzle((puzzleId, words) -> {
+            puzzleIds[p[0]] = puzzleId;
+            puzzleStates[p[0]++] = words;
+        });
+
+        return new SaveSnapshot(state.getChangedAt(), state.getCurrentRoomId(), state.getTimeRemainingSeconds(),
+            state.getInventory().toArray(new String[0]), roomIds, objectIds, objectStates, objectRefs,
+            puzzleIds, puzzleStates);
+    }
+
+    /** "MM:SS" or "H:MM:SS" to seconds; the manager only exposes the formatted timer. */
+    static int parseSeconds(String formatted) {
+        if (formatted == null) {
+            return UNKNOWN_TIME;
+        }
+        int seconds = 0;
+        for (String part : formatted.trim().split(":")) {
+            try {
+                seconds = seconds * 60 + Integer.parseInt(part.trim());
+            } catch (NumberFormatException e) {
+                return UNKNOWN_TIME;
+            }
+        }
+        return seconds;
+    }
+
+    // ---------------------------------------------------------------
+    // Restore
+    // ---------------------------------------------------------------
+
+    /**
+     * Applies the snapshot to loaded content: the game restarts in the saved
+     * room with the saved time left, the inventory is refilled and object and
+     * puzzle states are put back. Rooms, objects and puzzles missing from the
+     * content are skipped.
+     * @return the number of saved entries that could not be matched
+     */
+    public int apply(HollowmoreGameManager gameManager) {
+        int unmatched = 0;
+        if (currentRoomId != null) {
+            gameManager.startGame(currentRoomId);
+        }
+        // startGame restarts the countdown
+        if (timeRemainingSeconds != UNKNOWN_TIME) {
+            gameManager.setTimeRemainingSeconds(timeRemainingSeconds);
+        }
+        for (String itemId : inventory) {
+            gameManager.addToInventory(itemId);
+        }
+
+        for (int r = 0; r < roomIds.length; r++) {
+            Room room = gameManager.getRoom(roomIds[r]);
+            if (room == null) {
+                unmatched++;
+                continue;
+            }
+            for (int i = 0; i < objectIds[r].length; i++) {
+                InteractiveObject object = find(room, objectIds[r][i]);
+                if (object == null) {
+                    unmatched++;
+                    continue;
+                }
+                SaveFormat.restoreObjectState(object, objectStates[r][i], objectRefs[r][i]);
+            }
+        }
+
+        for (int p = 0; p < puzzleIds.length; p++) {
+            Puzzle puzzle = gameManager.getPuzzle(puzzleIds[p]);
+            long[] words = puzzleStates[p];
+            // A different word count means the puzzle changed shape since the save
+            if (puzzle == null || puzzle.snapshotState().length != words.length) {
+                unmatched++;
+                continue;
+            }
+            puzzle.restoreState(words);
+        }
+        return unmatched;
+    }
+
+    private static InteractiveObject find(Room room, String objectId) {
+        return ContentIndex.find(room, objectId);
+    }
+
+    public long getCapturedAt() { return capturedAt; }
+    public String getCurrentRoomId() { return currentRoomId; }
+    public int getTimeRemainingSeconds() { return timeRemainingSeconds; }
+    public List<String> getInventory() { return Collections.unmodifiableList(Arrays.asList(inventory)); }
+    public int getRoomCount() { return roomIds.length; }
+    public int getPuzzleCount() { return puzzleIds.length; }
+}
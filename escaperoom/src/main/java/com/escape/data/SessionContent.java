@@ -0,0 +1,164 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.Puzzle;
+import com.escape.puzzles.PuzzleGenerator;
+import com.escape.puzzles.PuzzleVariant;
+import com.escape.puzzles.PuzzleVariantCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Loaded content kept as a template that many games are started from.
+ * Each new game gets its own game manager with its own rooms, objects and
+ * puzzles, copied from the template; the authored parts (text, codes,
+ * images, dialogue, item ids) are shared by every copy instead of being
+ * loaded again, so a game costs only its player state.
+ *
+ * The template is never played. Capture it once content is loaded and
+ * don't change the source objects afterwards. With useGeneratedPuzzles(),
+ * games swap in pre-generated variants of the puzzles that allow it.
+ */
+public class SessionContent {
+
+    private final List<Room> rooms = new ArrayList<>();
+    private final List<Puzzle> puzzles = new ArrayList<>();
+    private final String startRoomId;
+    private final List<String> generatedPuzzleIds = new ArrayList<>();
+    private volatile String variantBand;   // null: every game plays the authored puzzles
+
+    private SessionContent(String startRoomId) {
+        this.startRoomId = startRoomId;
+    }
+
+    /** Takes copies of every room and puzzle loaded into the manager. */
+    public static SessionContent capture(HollowmoreGameManager source, String startRoomId) {
+        SessionContent content = new SessionContent(startRoomId);
+        Collection<Room> loaded = SaveSnapshot.roomsOf(source);
+        for (Room room : loaded) {
+            content.rooms.add(copyRoom(room));
+            if (room.getPuzzle() != null) {
+                Puzzle puzzle = source.getPuzzle(room.getPuzzle().getPuzzleId());
+                if (puzzle != null) {
+                    content.puzzles.add(puzzle.copy());
+                }
+            }
+        }
+        if (source.getRoom(startRoomId) == null) {
+            System.err.println("Session content has no start room '" + startRoomId + "'");
+        }
+        return content;
+    }
+
+    /** A new game on its own manager, started in the start room. */
+    public HollowmoreGameManager newGame() {
+        HollowmoreGameManager gameManager = new HollowmoreGameManager();
+        for (Room room : rooms) {
+            gameManager.addRoom(copyRoom(room));
+        }
+        for (Puzzle puzzle : puzzles) {
+            gameManager.addPuzzle(puzzle.copy());
+        }
+        if (variantBand != null) {
+            useVariants(gameManager, variantBand);
+        }
+        gameManager.startGame(startRoomId);
+        return gameManager;
+    }
+
+    /**
+     * Has each new game take a ready variant, in the given band, of every
+     * puzzle a variant can replace. Variants are generated in the background;
+     * a game started before one is ready plays the authored puzzle.
+     */
+    public void useGeneratedPuzzles(String band) {
+        PuzzleVariantCache cache = PuzzleVariantCache.getInstance();
+        for (Puzzle puzzle : puzzles) {
+            String puzzleId = puzzle.getPuzzleId();
+            if (PuzzleGenerator.isSelfContained(puzzle) && (cache.isRegistered(puzzleId) || cache.register(puzzle))) {
+                generatedPuzzleIds.add(puzzleId);
+                cache.prefill(puzzleId, band);
+            }
+        }
+        variantBand = band;
+    }
+
+    private void useVariants(HollowmoreGameManager gameManager, String band) {
+        PuzzleVariantCache cache = PuzzleVariantCache.getInstance();
+        for (String puzzleId : generatedPuzzleIds) {
+            PuzzleVariant variant = cache.takeVariant(puzzleId, band);
+            if (variant == null) {
+                continue;   // the authored copy stays; a refill is under way
+            }
+            Puzzle authored = gameManager.getPuzzle(puzzleId);
+            Puzzle generated = variant.build(puzzleId);
+            gameManager.addPuzzle(generated);
+            showText(gameManager, puzzleId, authored.getShownText(), generated.getShownText());
+        }
+    }
+
+    // Objects showing the authored puzzle's text (the diary's cipher) show the variant's instead
+    private void showText(HollowmoreGameManager gameManager, String puzzleId, String from, String to) {
+        if (from == null || to == null) {
+            return;
+        }
+        for (Room template : rooms) {
+            if (template.getPuzzle() == null || !template.getPuzzle().getPuzzleId().equals(puzzleId)) {
+                continue;
+            }
+            for (InteractiveObject obj : gameManager.getRoom(template.getRoomId()).getObjects()) {
+                if (obj instanceof ExamineObject && from.equals(((ExamineObject) obj).getExamineText())) {
+                    ((ExamineObject) obj).setExamineText(to);
+                }
+            }
+        }
+    }
+
+    /** Links a game's own rooms, so its lookups go through handles instead of ids. */
+    public ContentIndex link(HollowmoreGameManager gameManager) {
+        List<Room> own = new ArrayList<>(rooms.size());
+        for (Room room : rooms) {
+            Room copy = gameManager.getRoom(room.getRoomId());
+            if (copy != null) {
+                own.add(copy);
+            }
+        }
+        return ContentIndex.link(own, gameManager);
+    }
+
+    private static Room copyRoom(Room room) {
+        Room copy = new Room(room.getRoomId(), room.getName(), room.getDescription());
+        // Puzzle references and dialogue are read-only
+        if (room.getPuzzle() != null) {
+            copy.setPuzzle(room.getPuzzle());
+        }
+        if (room.getDialogue() != null) {
+            copy.setDialogue(room.getDialogue());
+        }
+        if (room.getExitTo() != null) {
+            copy.setExitTo(room.getExitTo());
+        }
+        if (room.getRequiredItem() != null) {
+            copy.setRequiredItem(room.getRequiredItem());
+        }
+        for (InteractiveObject obj : room.getObjects()) {
+            copy.addObject(obj.copy());
+        }
+        return copy;
+    }
+
+    public String getStartRoomId() { return startRoomId; }
+    public int getRoomCount() { return rooms.size(); }
+    public int getPuzzleCount() { return puzzles.size(); }
+    public int getGeneratedPuzzleCount() { return generatedPuzzleIds.size(); }
+
+    public int getObjectCount() {
+        int count = 0;
+        for (Room room : rooms) {
+            count += room.getObjects().size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,912 @@
+package com.escape.data;
+
+import com.escape.game.*;
+import com.escape.objects.*;
+import com.escape.puzzles.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Offline check that a content set can be won.
+ *
+ * A game state is packed into a few longs: the current room, one bit per
+ * solved puzzle, one bit per opened container and the inventory as a bitset.
+ * Transitions follow the content: solving the room's puzzle, opening
+ * containers, collecting pickups, walking through an exit (once the room's
+ * puzzle is solved and the room's required item is held: requiredItem is
+ * what it takes to leave a room, not to enter it) and walking back. The state
+ * space is explored breadth-first, one level at a time, with each level
+ * expanded on fork/join tasks into a striped hash table of visited states.
+ *
+ * Modelling assumptions: a locked container with an unlock code or unlock
+ * condition opens once its room's puzzle is solved; a room's puzzle needs the
+ * declared items its evidence holders and token slots expect.
+ *
+ * Run with the content path as argument (and --no-backtrack to forbid walking
+ * back); exits with 1 if the game can't be won or rooms are unreachable, so it
+ * can be used in CI.
+ */
+public class SolvabilityAnalyzer {
+
+    private static final String HOLLOWMORE_JSON = "json/hollowmore.json";
+    private static final int DEFAULT_MAX_STATES = 20_000_000;
+
+    // Frontier states per leaf task
+    private static final int LEAF_SIZE = 1024;
+
+    // Actions are stored as kind << 24 | index
+    private static final int MOVE = 1;
+    private static final int SOLVE = 2;
+    private static final int OPEN = 3;
+    private static final int COLLECT = 4;
+
+    // Container gates
+    private static final int GATE_FREE = -1;
+    private static final int GATE_NEVER = -2;
+
+    // Rooms
+    private final String[] roomIds;
+    private final int[] exitOf;           // room -> room or -1
+    private final int[][] entrancesOf;
+    private final int[] requiredItemOf;   // room -> bit of the item needed to leave it, or -1
+    private final int[] puzzleOf;         // room -> puzzle bit or -1
+    private final int[][] containersIn;
+    private final int[][] pickupsIn;
+    private final int startRoom;
+
+    // Puzzles
+    private final String[] puzzleIds;
+    private final long[][] puzzleNeeds;   // item mask per puzzle
+
+    // Containers
+    private final String[] containerIds;
+    private final int[] containerGate;    // puzzle bit, GATE_FREE or GATE_NEVER
+    private final long[][] containerItems;
+
+    // Pickups (collectible objects) and items
+    private final String[] pickupIds;
+    private final int[] pickupItem;
+    private final List<String> itemNames = new ArrayList<>();
+
+    // State layout
+    private final int solvedBase;
+    private final int openedBase;
+    private final int itemBase;
+    private final int words;
+
+    private int maxStates = DEFAULT_MAX_STATES;
+    private boolean backtracking = true;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    public SolvabilityAnalyzer(ContentIndex index, String startRoomId) {
+        List<Room> rooms = new ArrayList<>(index.getRooms());
+        Map<Room, Integer> roomIndex = new IdentityHashMap<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            roomIndex.put(rooms.get(i), i);
+        }
+        if (rooms.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Too many rooms to analyze: " + rooms.size());
+        }
+
+        int n = rooms.size();
+        roomIds = new String[n];
+        exitOf = new int[n];
+        entrancesOf = new int[n][];
+        requiredItemOf = new int[n];
+        puzzleOf = new int[n];
+        containersIn = new int[n][];
+        pickupsIn = new int[n][];
+
+        ItemRegistry registry = ItemRegistry.getInstance();
+        Map<String, Integer> itemBits = new HashMap<>();
+        List<String> puzzles = new ArrayList<>();
+        List<List<Integer>> needs = new ArrayList<>();
+        List<String> containers = new ArrayList<>();
+        List<Integer> gates = new ArrayList<>();
+        List<List<Integer>> contents = new ArrayList<>();
+        List<String> pickups = new ArrayList<>();
+        List<Integer> pickupBits = new ArrayList<>();
+
+        for (int r = 0; r < n; r++) {
+            Room room = rooms.get(r);
+            roomIds[r] = room.getRoomId();
+
+            Room exit = index.getExit(room);
+            exitOf[r] = exit != null ? roomIndex.get(exit) : -1;
+
+            List<Room> entrances = index.getEntrances(room);
+            entrancesOf[r] = new int[entrances.size()];
+            for (int i = 0; i < entrances.size(); i++) {
+                entrancesOf[r][i] = roomIndex.get(entrances.get(i));
+            }
+
+            int required = index.getRequiredItem(room);
+            requiredItemOf[r] = required != ItemRegistry.NO_ITEM
+                ? bitFor(registry.getItemId(required), itemBits) : -1;
+
+            Puzzle puzzle = index.getPuzzle(room);
+            List<Integer> need = null;
+            if (puzzle != null) {
+                need = new ArrayList<>();
+                puzzleOf[r] = puzzles.size();
+                puzzles.add(puzzle.getPuzzleId());
+                needs.add(need);
+            } else {
+                puzzleOf[r] = -1;
+            }
+
+            List<Integer> roomContainers = new ArrayList<>();
+            List<Integer> roomPickups = new ArrayList<>();
+            for (InteractiveObject obj : room.getObjects()) {
+                if (obj instanceof ContainerObject) {
+                    ContainerObject container = (ContainerObject) obj;
+                    int gate;
+                    if (!container.isLocked()) {
+                        gate = GATE_FREE;
+                    } else if (container.getUnlockCode() == null && container.getUnlockCondition() == null) {
+                        gate = GATE_NEVER;
+                    } else {
+                        gate = puzzleOf[r] >= 0 ? puzzleOf[r] : GATE_FREE;
+                    }
+                    List<Integer> held = new ArrayList<>();
+                    for (int itemId : container.getContainedItemIds()) {
+                        held.add(bitFor(registry.getItemId(itemId), itemBits));
+                    }
+                    roomContainers.add(containers.size());
+                    containers.add(room.getRoomId() + "/" + container.getObjectId());
+                    gates.add(gate);
+                    contents.add(held);
+                } else if (obj instanceof CollectibleObject) {
+                    roomPickups.add(pickups.size());
+                    pickups.add(room.getRoomId() + "/" + obj.getObjectId());
+                    pickupBits.add(bitFor(obj.getObjectId(), itemBits));
+                } else if (obj instanceof EvidenceHolderObject) {
+                    addNeed(need, ((EvidenceHolderObject) obj).getCorrectItemId(), registry, itemBits);
+                } else if (obj instanceof TokenSlotObject) {
+                    addNeed(need, ((TokenSlotObject) obj).getCorrectTokenId(), registry, itemBits);
+                }
+            }
+            containersIn[r] = toArray(roomContainers);
+            pickupsIn[r] = toArray(roomPickups);
+        }
+
+        Room start = index.getRoom(startRoomId);
+        if (start == null) {
+            throw new IllegalArgumentException("Unknown start room '" + startRoomId + "'");
+        }
+        startRoom = roomIndex.get(start);
+
+        puzzleIds = puzzles.toArray(new String[0]);
+        containerIds = containers.toArray(new String[0]);
+        containerGate = toArray(gates);
+        pickupIds = pickups.toArray(new String[0]);
+        pickupItem = toArray(pickupBits);
+
+        // Room id in the low 16 bits, then the flag sections
+        solvedBase = 16;
+        openedBase = solvedBase + puzzleIds.length;
+        itemBase = openedBase + containerIds.length;
+        words = (itemBase + itemNames.size() + 63) >>> 6;
+
+        puzzleNeeds = new long[puzzleIds.length][];
+        for (int p = 0; p < puzzleIds.length; p++) {
+            puzzleNeeds[p] = itemMask(needs.get(p));
+        }
+        containerItems = new long[containerIds.length][];
+        for (int c = 0; c < containerIds.length; c++) {
+            containerItems[c] = itemMask(contents.get(c));
+        }
+    }
+
+    private int bitFor(String key, Map<String, Integer> itemBits) {
+        Integer bit = itemBits.get(key);
+        if (bit == null) {
+            bit = itemNames.size();
+            itemBits.put(key, bit);
+            itemNames.add(key);
+        }
+        return bit;
+    }
+
+    private void addNeed(List<Integer> need, int itemId, ItemRegistry registry, Map<String, Integer> itemBits) {
+        // Undefined items are already reported by the link phase
+        if (need != null && registry.isDefined(itemId)) {
+            need.add(bitFor(registry.getItemId(itemId), itemBits));
+        }
+    }
+
+    /** Item mask laid out like a full state, so it can be OR-ed straight in. */
+    private long[] itemMask(List<Integer> items) {
+        long[] mask = new long[words];
+        for (int item : items) {
+            setBit(mask, 0, itemBase + item);
+        }
+        return mask;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    public void setMaxStates(int maxStates) { this.maxStates = maxStates; }
+
+    /** Whether the player can walk back into rooms already passed. Without it, leaving early can strand them. */
+    public void setBacktracking(boolean backtracking) { this.backtracking = backtracking; }
+    public void setPool(ForkJoinPool pool) { this.pool = pool; }
+
+    // ---------------------------------------------------------------
+    // State helpers
+    // ---------------------------------------------------------------
+
+    private static boolean bit(long[] s, int off, int bit) {
+        return (s[off + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private static void setBit(long[] s, int off, int bit) {
+        s[off + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private static int roomOf(long[] s, int off) {
+        return (int) (s[off] & 0xFFFF);
+    }
+
+    private boolean hasAll(long[] s, int off, long[] mask) {
+        for (int w = 0; w < words; w++) {
+            if ((s[off + w] & mask[w]) != mask[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isGoal(long[] s, int off) {
+        int room = roomOf(s, off);
+        return exitOf[room] < 0 && (puzzleOf[room] < 0 || bit(s, off, solvedBase + puzzleOf[room]));
+    }
+
+    /**
+     * Writes every successor of the state at off into out, one after the other,
+     * and their actions into actions. Returns the number of successors.
+     */
+    private int expand(long[] s, int off, long[] out, int[] actions) {
+        int count = 0;
+        int room = roomOf(s, off);
+        int puzzle = puzzleOf[room];
+        boolean puzzleDone = puzzle < 0 || bit(s, off, solvedBase + puzzle);
+
+        if (!puzzleDone && hasAll(s, off, puzzleNeeds[puzzle])) {
+            System.arraycopy(s, off, out, count * words, words);
+            setBit(out, count * words, solvedBase + puzzle);
+            actions[count++] = SOLVE << 24 | puzzle;
+        }
+
+        for (int c : containersIn[room]) {
+            int gate = containerGate[c];
+            if (bit(s, off, openedBase + c) || gate == GATE_NEVER
+                    || (gate >= 0 && !bit(s, off, solvedBase + gate))) {
+                continue;
+            }
+            int base = count * words;
+            System.arraycopy(s, off, out, base, words);
+            setBit(out, base, openedBase + c);
+            long[] items = containerItems[c];
+            for (int w = 0; w < words; w++) {
+                out[base + w] |= items[w];
+            }
+            actions[count++] = OPEN << 24 | c;
+        }
+
+        for (int k : pickupsIn[room]) {
+            if (bit(s, off, itemBase + pickupItem[k])) {
+                continue;
+            }
+            System.arraycopy(s, off, out, count * words, words);
+            setBit(out, count * words, itemBase + pickupItem[k]);
+            actions[count++] = COLLECT << 24 | k;
+        }
+
+        int exit = exitOf[room];
+        int required = requiredItemOf[room];
+        if (exit >= 0 && puzzleDone && (required < 0 || bit(s, off, itemBase + required))) {
+            count = addMove(s, off, exit, out, actions, count);
+        }
+        if (backtracking) {
+            for (int back : entrancesOf[room]) {
+                count = addMove(s, off, back, out, actions, count);
+            }
+        }
+        return count;
+    }
+
+    private int addMove(long[] s, int off, int room, long[] out, int[] actions, int count) {
+        int base = count * words;
+        System.arraycopy(s, off, out, base, words);
+        out[base] = (out[base] & ~0xFFFFL) | room;
+        actions[count] = MOVE << 24 | room;
+        return count + 1;
+    }
+
+    private int maxSuccessors() {
+        int max = 0;
+        for (int r = 0; r < roomIds.length; r++) {
+            max = Math.max(max, 2 + containersIn[r].length + pickupsIn[r].length + entrancesOf[r].length);
+        }
+        return max;
+    }
+
+    private String describe(int action) {
+        int index = action & 0xFFFFFF;
+        switch (action >>> 24) {
+            case MOVE: return "go to " + roomIds[index];
+            case SOLVE: return "solve " + puzzleIds[index];
+            case OPEN: return "open " + containerIds[index];
+            case COLLECT: return "collect " + pickupIds[index];
+            default: return "start in " + roomIds[startRoom];
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Search
+    // ---------------------------------------------------------------
+
+    public Report analyze() {
+        long startTime = System.nanoTime();
+        Report report = new Report();
+        StateTable table = new StateTable(words);
+
+        long[] start = new long[words];
+        start[0] = startRoom;
+        int startId = table.insert(start, 0, -1, 0);
+
+        List<int[]> levels = new ArrayList<>();
+        levels.add(new int[] {startId});
+        Frontier first = new Frontier(words);
+        first.add(start, 0, startId);
+        List<Frontier> frontier = Collections.singletonList(first);
+        AtomicBoolean limitReached = new AtomicBoolean();
+
+        long[] seen = new long[words];
+        BitSet roomsReached = new BitSet();
+        int goalId = isGoal(start, 0) ? startId : -1;
+        or(seen, start, 0);
+        roomsReached.set(startRoom);
+
+        while (!frontier.isEmpty() && !limitReached.get()) {
+            // Cut the level into leaf-sized slices; each slice writes its own result chunk
+            List<Frontier> chunks = new ArrayList<>();
+            List<int[]> ranges = new ArrayList<>();
+            for (Frontier chunk : frontier) {
+                for (int from = 0; from < chunk.count; from += LEAF_SIZE) {
+                    chunks.add(chunk);
+                    ranges.add(new int[] {from, Math.min(chunk.count, from + LEAF_SIZE)});
+                }
+            }
+            Frontier[] results = new Frontier[chunks.size()];
+            pool.invoke(new ExpandTask(table, chunks, ranges, results, 0, results.length, limitReached));
+
+            List<Frontier> next = new ArrayList<>();
+            int total = 0;
+            for (Frontier result : results) {
+                if (result.count == 0) {
+                    continue;
+                }
+                next.add(result);
+                total += result.count;
+                or(seen, result.seen, 0);
+                roomsReached.or(result.rooms);
+                if (goalId < 0 && result.goalId >= 0) {
+                    goalId = result.goalId;
+                    report.solutionDepth = levels.size();
+                }
+            }
+            if (total > 0) {
+                int[] ids = new int[total];
+                int at = 0;
+                for (Frontier result : next) {
+                    System.arraycopy(result.ids, 0, ids, at, result.count);
+                    at += result.count;
+                }
+                levels.add(ids);
+            }
+            frontier = next;
+        }
+        report.truncated = limitReached.get();
+
+        report.statesExplored = table.size();
+        report.depth = levels.size() - 1;
+        report.winnable = goalId >= 0;
+        if (goalId >= 0) {
+            report.solution = pathTo(table, goalId);
+        }
+
+        // What was never reached in any state
+        for (int r = 0; r < roomIds.length; r++) {
+            if (!roomsReached.get(r)) {
+                String reason = "";
+                for (int from : entrancesOf[r]) {
+                    int required = requiredItemOf[from];
+                    if (roomsReached.get(from) && required >= 0 && !bit(seen, 0, itemBase + required)) {
+                        reason = " (leaving " + roomIds[from] + " requires " + itemNames.get(required)
+                            + ", which is never obtained)";
+                    }
+                }
+                report.unreachableRooms.add(roomIds[r] + reason);
+            }
+        }
+        for (int p = 0; p < puzzleIds.length; p++) {
+            if (!bit(seen, 0, solvedBase + p)) {
+                report.unsolvedPuzzles.add(puzzleIds[p]);
+            }
+        }
+        for (int c = 0; c < containerIds.length; c++) {
+            if (!bit(seen, 0, openedBase + c)) {
+                report.unopenedContainers.add(containerIds[c]);
+            }
+        }
+        for (int i = 0; i < itemNames.size(); i++) {
+            if (!bit(seen, 0, itemBase + i)) {
+                report.unobtainedItems.add(itemNames.get(i));
+            }
+        }
+
+        if (report.winnable && !report.truncated) {
+            findDeadEnds(table, levels, report);
+        }
+        report.elapsedNanos = System.nanoTime() - startTime;
+        return report;
+    }
+
+    private static void or(long[] into, long[] s, int off) {
+        for (int w = 0; w < into.length; w++) {
+            into[w] |= s[off + w];
+        }
+    }
+
+    private List<String> pathTo(StateTable table, int id) {
+        LinkedList<String> path = new LinkedList<>();
+        while (id >= 0) {
+            path.addFirst(describe(table.actionOf(id)));
+            id = table.parentOf(id);
+        }
+        return path;
+    }
+
+    /**
+     * Marks states that can still reach a goal, working back from the last
+     * level until nothing changes. Walking between rooms can form cycles within
+     * a level, hence the repeat. States left unmarked are dead ends.
+     */
+    private void findDeadEnds(StateTable table, List<int[]> levels, Report report) {
+        StateSet alive = new StateSet(table);
+        AtomicBoolean changed = new AtomicBoolean(true);
+        while (changed.getAndSet(false)) {
+            for (int l = levels.size() - 1; l >= 0; l--) {
+                int[] level = levels.get(l);
+                pool.invoke(new MarkTask(table, alive, level, 0, level.length, changed));
+            }
+        }
+
+        // The shallowest step from a winnable state into a dead one
+        for (int[] level : levels) {
+            for (int id : level) {
+                if (alive.contains(id)) {
+                    continue;
+                }
+                report.deadEnds++;
+                if (report.pointOfNoReturn == null && alive.contains(table.parentOf(id))) {
+                    report.pointOfNoReturn = pathTo(table, id);
+                }
+            }
+        }
+    }
+
+    /** Marks the states of a level slice that are goals or have a winnable successor. */
+    @SuppressWarnings("serial")
+    private class MarkTask extends RecursiveAction {
+        private final StateTable table;
+        private final StateSet alive;
+        private final int[] level;
+        private final int from, to;
+        private final AtomicBoolean changed;
+
+        MarkTask(StateTable table, StateSet alive, int[] level, int from, int to, AtomicBoolean changed) {
+            this.table = table;
+            this.alive = alive;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.changed = changed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MarkTask(table, alive, level, from, mid, changed),
+                          new MarkTask(table, alive, level, mid, to, changed));
+                return;
+            }
+
+            long[] s = new long[words];
+            long[] out = new long[maxSuccessors() * words];
+            int[] actions = new int[maxSuccessors()];
+            for (int i = from; i < to; i++) {
+                int id = level[i];
+                if (alive.contains(id)) {
+                    continue;
+                }
+                table.read(id, s, 0);
+                boolean canWin = isGoal(s, 0);
+                int count = canWin ? 0 : expand(s, 0, out, actions);
+                for (int k = 0; k < count && !canWin; k++) {
+                    canWin = alive.contains(table.find(out, k * words));
+                }
+                if (canWin) {
+                    alive.add(id);
+                    changed.set(true);
+                }
+            }
+        }
+    }
+
+    /** One bit per state id, split by stripe like the ids themselves. Safe to set from any thread. */
+    private static class StateSet {
+        private final AtomicLongArray[] stripes = new AtomicLongArray[StateTable.STRIPES];
+
+        StateSet(StateTable table) {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new AtomicLongArray((table.stripes[i].size() + 63) >>> 6);
+            }
+        }
+
+        void add(int id) {
+            int index = id & StateTable.INDEX_MASK;
+            stripes[id >>> StateTable.STRIPE_SHIFT].accumulateAndGet(index >>> 6, 1L << index, (a, b) -> a | b);
+        }
+
+        boolean contains(int id) {
+            if (id < 0) {
+                return false;
+            }
+            int index = id & StateTable.INDEX_MASK;
+            return (stripes[id >>> StateTable.STRIPE_SHIFT].get(index >>> 6) & (1L << index)) != 0;
+        }
+    }
+
+    /** Expands slices of the current level; each slice fills its own result chunk. */
+    @SuppressWarnings("serial")
+    private class ExpandTask extends RecursiveAction {
+        private final StateTable table;
+        private final List<Frontier> chunks;
+        private final List<int[]> ranges;
+        private final Frontier[] results;
+        private final int from, to;
+        private final AtomicBoolean limitReached;
+
+        ExpandTask(StateTable table, List<Frontier> chunks, List<int[]> ranges, Frontier[] results,
+                   int from, int to, AtomicBoolean limitReached) {
+            this.table = table;
+            this.chunks = chunks;
+            this.ranges = ranges;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.limitReached = limitReached;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ExpandTask(table, chunks, ranges, results, from, mid, limitReached),
+                          new ExpandTask(table, chunks, ranges, results, mid, to, limitReached));
+                return;
+            }
+
+            Frontier next = new Frontier(words);
+            results[from] = next;
+            if (limitReached.get() || table.size() > maxStates) {
+                limitReached.set(true);
+                return;
+            }
+
+            Frontier frontier = chunks.get(from);
+            int[] range = ranges.get(from);
+            long[] out = new long[maxSuccessors() * words];
+            int[] actions = new int[maxSuccessors()];
+            for (int i = range[0]; i < range[1]; i++) {
+                int off = i * words;
+                if (isGoal(frontier.states, off)) {
+                    continue;   // the game ends here
+                }
+                int count = expand(frontier.states, off, out, actions);
+                for (int k = 0; k < count; k++) {
+                    int id = table.insert(out, k * words, frontier.ids[i], actions[k]);
+                    if (id >= 0) {
+                        next.add(out, k * words, id);
+                        or(next.seen, out, k * words);
+                        next.rooms.set(roomOf(out, k * words));
+                        if (next.goalId < 0 && isGoal(out, k * words)) {
+                            next.goalId = id;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** A chunk of one BFS level: states stored back to back with their ids. */
+    private static class Frontier {
+        final int words;
+        long[] states;
+        int[] ids;
+        int count;
+        final long[] seen;    // union of all states, for the reachability report
+        final BitSet rooms = new BitSet();
+        int goalId = -1;
+
+        Frontier(int words) {
+            this.words = words;
+            this.states = new long[words * 16];
+            this.ids = new int[16];
+            this.seen = new long[words];
+        }
+
+        void add(long[] s, int off, int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                states = Arrays.copyOf(states, states.length * 2);
+            }
+            System.arraycopy(s, off, states, count * words, words);
+            ids[count++] = id;
+        }
+    }
+
+    /**
+     * Visited states with their BFS parent and action.
+     * Split into lock stripes so tasks rarely contend; a state id is
+     * stripe << STRIPE_SHIFT | index within the stripe.
+     */
+    private static class StateTable {
+        private static final int STRIPES = 64;
+        private static final int STRIPE_SHIFT = 25;
+        private static final int INDEX_MASK = (1 << STRIPE_SHIFT) - 1;
+
+        private final int words;
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        StateTable(int words) {
+            this.words = words;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(words);
+            }
+        }
+
+        static long hash(long[] s, int off, int words) {
+            long h = 0x9E3779B97F4A7C15L;
+            for (int w = 0; w < words; w++) {
+                h = (h ^ s[off + w]) * 0xBF58476D1CE4E5B9L;
+                h ^= h >>> 31;
+            }
+            return h;
+        }
+
+        /** Returns the new state's id, or -1 if it was already present. */
+        int insert(long[] s, int off, int parent, int action) {
+            long h = hash(s, off, words);
+            int stripe = (int) (h >>> 58);
+            int index = stripes[stripe].insert(s, off, (int) h, parent, action);
+            return index < 0 ? -1 : stripe << STRIPE_SHIFT | index;
+        }
+
+        int find(long[] s, int off) {
+            long h = hash(s, off, words);
+            int stripe = (int) (h >>> 58);
+            int index = stripes[stripe].find(s, off, (int) h);
+            return index < 0 ? -1 : stripe << STRIPE_SHIFT | index;
+        }
+
+        void read(int id, long[] dst, int off) {
+            stripes[id >>> STRIPE_SHIFT].read(id & INDEX_MASK, dst, off);
+        }
+
+        int parentOf(int id) {
+            return id < 0 ? -1 : stripes[id >>> STRIPE_SHIFT].parentOf(id & INDEX_MASK);
+        }
+
+        int actionOf(int id) {
+            return stripes[id >>> STRIPE_SHIFT].actionOf(id & INDEX_MASK);
+        }
+
+        int size() {
+            int total = 0;
+            for (Stripe stripe : stripes) {
+                total += stripe.size();
+            }
+            return total;
+        }
+    }
+
+    /** Open-addressed table of packed states; slots hold index + 1. */
+    private static class Stripe {
+        private final int words;
+        private long[] keys;
+        private int[] parents;
+        private int[] actions;
+        private int[] slots = new int[64];
+        private int count;
+
+        Stripe(int words) {
+            this.words = words;
+            this.keys = new long[words * 32];
+            this.parents = new int[32];
+            this.actions = new int[32];
+        }
+
+        synchronized int insert(long[] s, int off, int hash, int parent, int action) {
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                if (matches(slots[slot] - 1, s, off)) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (count == 1 << StateTable.STRIPE_SHIFT) {
+                throw new IllegalStateException("State table stripe is full");
+            }
+            if (count == parents.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                parents = Arrays.copyOf(parents, count * 2);
+                actions = Arrays.copyOf(actions, count * 2);
+            }
+            System.arraycopy(s, off, keys, count * words, words);
+            parents[count] = parent;
+            actions[count] = action;
+            slots[slot] = ++count;
+            if (count * 2 > slots.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        synchronized int find(long[] s, int off, int hash) {
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                if (matches(slots[slot] - 1, s, off)) {
+                    return slots[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean matches(int index, long[] s, int off) {
+            int base = index * words;
+            for (int w = 0; w < words; w++) {
+                if (keys[base + w] != s[off + w]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            int[] fresh = new int[slots.length * 2];
+            int mask = fresh.length - 1;
+            for (int i = 0; i < count; i++) {
+                int slot = (int) StateTable.hash(keys, i * words, words) & mask;
+                while (fresh[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                fresh[slot] = i + 1;
+            }
+            slots = fresh;
+        }
+
+        synchronized void read(int index, long[] dst, int off) {
+            System.arraycopy(keys, index * words, dst, off, words);
+        }
+
+        synchronized int parentOf(int index) { return parents[index]; }
+        synchronized int actionOf(int index) { return actions[index]; }
+        synchronized int size() { return count; }
+    }
+
+    // ---------------------------------------------------------------
+    // Report
+    // ---------------------------------------------------------------
+
+    public static class Report {
+        private boolean winnable;
+        private boolean truncated;
+        private List<String> solution = Collections.emptyList();
+        private int solutionDepth;
+        private List<String> pointOfNoReturn;
+        private int deadEnds;
+        private final List<String> unreachableRooms = new ArrayList<>();
+        private final List<String> unsolvedPuzzles = new ArrayList<>();
+        private final List<String> unopenedContainers = new ArrayList<>();
+        private final List<String> unobtainedItems = new ArrayList<>();
+        private int statesExplored;
+        private int depth;
+        private long elapsedNanos;
+
+        public boolean isWinnable() { return winnable; }
+        public boolean isTruncated() { return truncated; }
+        public boolean isClean() { return winnable && !truncated && unreachableRooms.isEmpty(); }
+        public List<String> getSolution() { return Collections.unmodifiableList(solution); }
+        public List<String> getPointOfNoReturn() { return pointOfNoReturn; }
+        public int getDeadEnds() { return deadEnds; }
+        public List<String> getUnreachableRooms() { return Collections.unmodifiableList(unreachableRooms); }
+        public List<String> getUnsolvedPuzzles() { return Collections.unmodifiableList(unsolvedPuzzles); }
+        public List<String> getUnopenedContainers() { return Collections.unmodifiableList(unopenedContainers); }
+        public List<String> getUnobtainedItems() { return Collections.unmodifiableList(unobtainedItems); }
+        public int getStatesExplored() { return statesExplored; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        public void print() {
+            System.out.println("Explored " + statesExplored + " states to depth " + depth
+                + " in " + getElapsedMillis() + " ms" + (truncated ? " (state limit reached)" : ""));
+            if (winnable) {
+                System.out.println("Winnable in " + solutionDepth + " steps:");
+                for (String step : solution) {
+                    System.out.println("  " + step);
+                }
+            } else {
+                System.err.println("NOT winnable: no reachable state completes the final room");
+            }
+            if (deadEnds > 0) {
+                System.err.println(deadEnds + " reachable states can no longer be won");
+                if (pointOfNoReturn != null) {
+                    System.err.println("  First dead end: " + String.join(" -> ", pointOfNoReturn));
+                }
+            }
+            print("Unreachable room", unreachableRooms);
+            print("Puzzle never solved", unsolvedPuzzles);
+            print("Container never opened", unopenedContainers);
+            print("Item never obtained", unobtainedItems);
+        }
+
+        private static void print(String label, List<String> entries) {
+            for (String entry : entries) {
+                System.err.println("  " + label + ": " + entry);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String path = HOLLOWMORE_JSON;
+        boolean backtracking = true;
+        for (String arg : args) {
+            if (arg.equals("--no-backtrack")) {
+                backtracking = false;
+            } else {
+                path = arg;
+            }
+        }
+        try {
+            HollowmoreStreamLoader.loadGameData(HollowmoreGameManager.getInstance(), path);
+            ContentIndex index = ContentIndex.getCurrent();
+            String startRoom = RoomIndex.build(path).getStartRoomId();
+
+            SolvabilityAnalyzer analyzer = new SolvabilityAnalyzer(index, startRoom);
+            analyzer.setBacktracking(backtracking);
+            Report report = analyzer.analyze();
+            report.print();
+            System.exit(report.isClean() ? 0 : 1);
+        } catch (Exception e) {
+            System.err.println("Error analyzing " + path + ": " + e.getMessage());
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+}
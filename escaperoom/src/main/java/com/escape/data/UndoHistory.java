@@ -0,0 +1,491 @@
+package com.escape.data;
+
+import com.escape.game.HollowmoreGameManager;
+import com.escape.game.Room;
+import com.escape.objects.InteractiveObject;
+import com.escape.objects.ObjectState;
+import com.escape.puzzles.Puzzle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded undo and redo of object and puzzle changes, one history per room.
+ * It listens to a GameStateTracker: every change a tick folds in becomes a
+ * delta (the state before and after), and the deltas of one tick form a
+ * step. Only the fields that changed are kept, packed as varints, so a
+ * typical step (a portrait cycled, a token placed) takes about 16 bytes;
+ * puzzle state words are the tracker's own immutable arrays, shared rather
+ * than copied. Undoing puts the before values back on the live objects, so
+ * going back n steps touches only the objects those steps changed.
+ *
+ * Steps that hand out items or solve the room's puzzle can't be taken back
+ * (the items would stay in the inventory), so they clear the room's
+ * history. Consecutive ticks that change the same objects, like a drag,
+ * are merged into one step.
+ *
+ * Game thread only.
+ */
+public class UndoHistory implements GameStateTracker.Listener {
+
+    public static final int DEFAULT_MAX_STEPS = 4096;
+
+    private final GameStateTracker tracker;
+    private final HollowmoreGameManager gameManager;
+    private final int maxSteps;
+    private final Map<String, RoomHistory> rooms = new HashMap<>();
+
+    private boolean applying;   // our own undo/redo, don't record it
+    private long syncNumber;
+    private final Map<String, RoomHistory> touched = new HashMap<>();
+
+    public UndoHistory(GameStateTracker tracker) {
+        this(tracker, DEFAULT_MAX_STEPS);
+    }
+
+    public UndoHistory(GameStateTracker tracker, int maxStepsPerRoom) {
+        this.tracker = tracker;
+        this.gameManager = tracker.getGameManager();
+        this.maxSteps = maxStepsPerRoom;
+        tracker.setListener(this);
+    }
+
+    // ---------------------------------------------------------------
+    // Recording
+    // ---------------------------------------------------------------
+
+    @Override
+    public void objectChanged(String roomId, String objectId, ObjectState before, ObjectState after) {
+        if (!applying && before != null) {
+            record(roomId, objectId, before, after);
+        }
+    }
+
+    @Override
+    public void puzzleChanged(String roomId, String puzzleId, long[] before, long[] after) {
+        if (!applying && before != null) {
+            record(roomId, puzzleId, before, after);
+        }
+    }
+
+    private void record(String roomId, String key, ObjectState before, ObjectState after) {
+        history(roomId).addObject(key, before, after);
+    }
+
+    private void record(String roomId, String key, long[] before, long[] after) {
+        history(roomId).addPuzzle(key, before, after);
+    }
+
+    private RoomHistory history(String roomId) {
+        RoomHistory history = rooms.computeIfAbsent(roomId, id -> new RoomHistory());
+        touched.put(roomId, history);
+        return history;
+    }
+
+    @Override
+    public void synced(GameState state, boolean inventoryChanged) {
+        syncNumber++;
+        if (touched.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, RoomHistory> entry : touched.entrySet()) {
+            RoomHistory history = entry.getValue();
+            Puzzle puzzle = puzzleOf(entry.getKey());
+            if (inventoryChanged || (puzzle != null && puzzle.isSolved())) {
+                history.clear();
+            } else {
+                history.closeStep(syncNumber, maxSteps);
+            }
+        }
+        touched.clear();
+    }
+
+    @Override
+    public void resynced(GameState state) {
+        // A load or reload replaced the state; old deltas no longer lead to it
+        rooms.clear();
+        touched.clear();
+    }
+
+    // ---------------------------------------------------------------
+    // Undo / redo
+    // ---------------------------------------------------------------
+
+    public boolean canUndo() { return canUndo(currentRoomId()); }
+    public boolean canRedo() { return canRedo(currentRoomId()); }
+    public boolean undo() { return undo(currentRoomId()); }
+    public boolean redo() { return redo(currentRoomId()); }
+
+    public boolean canUndo(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null && history.position > 0;
+    }
+
+    public boolean canRedo(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null && history.position < history.stepCount;
+    }
+
+    public boolean undo(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null && history.position > 0 && rewindTo(roomId, history.position - 1) == 1;
+    }
+
+    public boolean redo(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null && history.position < history.stepCount && rewindTo(roomId, history.position + 1) == 1;
+    }
+
+    /**
+     * Moves the room to the state after the given number of steps, back or
+     * forward. 0 is as far back as the history reaches. Only the objects
+     * changed by the steps in between are touched.
+     * @return the number of steps undone or redone
+     */
+    public int rewindTo(String roomId, int step) {
+        Room room = gameManager.getRoom(roomId);
+        if (room != null) {
+            // Changes made this tick and not synced yet become a step of their own first
+            tracker.sync(room);
+        }
+        RoomHistory history = rooms.get(roomId);
+        if (history == null || room == null || step < 0 || step > history.stepCount || step == history.position) {
+            return 0;
+        }
+        int moved = Math.abs(step - history.position);
+        if (step < history.position) {
+            // Newest first, so the oldest delta's before values are what remains
+            for (int d = history.stepEnd(history.position - 1) - 1; d >= history.stepStart(step); d--) {
+                apply(room, history, d, true);
+            }
+        } else {
+            for (int d = history.stepStart(history.position); d < history.stepEnd(step - 1); d++) {
+                apply(room, history, d, false);
+            }
+        }
+        history.position = step;
+        history.lastStepSync = -2;
+
+        // Fold the result into the game state without recording it as new steps
+        applying = true;
+        try {
+            tracker.sync(room);
+        } finally {
+            applying = false;
+        }
+        return moved;
+    }
+
+    private void apply(Room room, RoomHistory history, int delta, boolean undo) {
+        String key = history.keyOf(delta);
+        long[][] words = history.puzzleWords[delta];
+        if (words != null) {
+            Puzzle puzzle = gameManager.getPuzzle(key);
+            if (puzzle != null) {
+                puzzle.restoreState(undo ? words[0] : words[1]);
+            }
+            return;
+        }
+        InteractiveObject object = ContentIndex.find(room, key);
+        if (object != null) {
+            ObjectState state = object.captureState();
+            history.applyFields(delta, state, undo);
+            object.restoreState(state);
+        }
+    }
+
+    private Puzzle puzzleOf(String roomId) {
+        Room room = gameManager.getRoom(roomId);
+        if (room == null || room.getPuzzle() == null) {
+            return null;
+        }
+        return gameManager.getPuzzle(room.getPuzzle().getPuzzleId());
+    }
+
+    private String currentRoomId() {
+        Room room = gameManager.getCurrentRoom();
+        return room != null ? room.getRoomId() : null;
+    }
+
+    /** Steps back from the current state in the room, and the steps that could be redone. */
+    public int getUndoSteps(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null ? history.position : 0;
+    }
+
+    public int getRedoSteps(String roomId) {
+        RoomHistory history = rooms.get(roomId);
+        return history != null ? history.stepCount - history.position : 0;
+    }
+
+    public int getDeltaCount() {
+        int total = 0;
+        for (RoomHistory history : rooms.values()) {
+            total += history.deltaCount;
+        }
+        return total;
+    }
+
+    /** Rough memory held by all rooms' histories, not counting shared puzzle words. */
+    public long getByteSize() {
+        long total = 0;
+        for (RoomHistory history : rooms.values()) {
+            total += history.byteSize();
+        }
+        return total;
+    }
+}
+
+/**
+ * One room's deltas. Object deltas are packed into a byte buffer: key
+ * index, a mask of the fields that changed, then each changed field's value
+ * before and after. Puzzle deltas keep the before and after word arrays.
+ * Step i covers deltas [stepStart(i), stepEnd(i)); deltas past the last
+ * step belong to the step being built this tick.
+ */
+class RoomHistory {
+    // Field bits in a delta's mask
+    private static final int VISIBLE = 1, X = 1 << 1, Y = 1 << 2, FLAGS = 1 << 3, INDEX = 1 << 4, REF = 1 << 5;
+    private static final int FIELDS = 6;
+
+    final VarintWriter bytes = new VarintWriter(256);
+    int[] deltaStarts = new int[16];
+    long[][][] puzzleWords = new long[16][][];   // before and after, for puzzle deltas
+    int deltaCount;
+
+    int[] stepEnds = new int[16];
+    int stepCount;
+    int position;             // steps applied; those from here on can be redone
+    long lastStepSync = -2;   // sync that closed the newest step, for merging
+
+    // Object and puzzle ids, numbered per room
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIndex = new HashMap<>();
+
+    // Scratch for decoding a delta: mask, then before and after per field
+    private final long[] before = new long[FIELDS];
+    private final long[] after = new long[FIELDS];
+
+    int stepStart(int step) { return step == 0 ? 0 : stepEnds[step - 1]; }
+    int stepEnd(int step) { return stepEnds[step]; }
+
+    String keyOf(int delta) {
+        return keys.get(decode(delta, null, null));
+    }
+
+    void addObject(String key, ObjectState beforeState, ObjectState afterState) {
+        int mask = 0;
+        mask |= beforeState.visible != afterState.visible ? VISIBLE : 0;
+        mask |= beforeState.x != afterState.x ? X : 0;
+        mask |= beforeState.y != afterState.y ? Y : 0;
+        mask |= beforeState.flags != afterState.flags ? FLAGS : 0;
+        mask |= beforeState.index != afterState.index ? INDEX : 0;
+        mask |= beforeState.ref != afterState.ref ? REF : 0;
+        fieldsOf(beforeState, before);
+        fieldsOf(afterState, after);
+        startDelta(null);
+        encode(indexOf(key), mask, before, after);
+    }
+
+    void addPuzzle(String key, long[] beforeWords, long[] afterWords) {
+        startDelta(new long[][] {beforeWords, afterWords});
+        bytes.writeVarInt(indexOf(key));
+    }
+
+    private void startDelta(long[][] words) {
+        if (position < stepCount) {
+            // A new change after undoing drops the undone steps
+            truncate(stepStart(position));
+            stepCount = position;
+        }
+        if (deltaCount == deltaStarts.length) {
+            deltaStarts = Arrays.copyOf(deltaStarts, deltaCount * 2);
+            puzzleWords = Arrays.copyOf(puzzleWords, deltaCount * 2);
+        }
+        deltaStarts[deltaCount] = bytes.size;
+        puzzleWords[deltaCount] = words;
+        deltaCount++;
+    }
+
+    private int indexOf(String key) {
+        Integer index = keyIndex.get(key);
+        if (index == null) {
+            index = keys.size();
+            keys.add(key);
+            keyIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private static void fieldsOf(ObjectState state, long[] fields) {
+        fields[0] = state.visible ? 1 : 0;
+        fields[1] = Double.doubleToRawLongBits(state.x);
+        fields[2] = Double.doubleToRawLongBits(state.y);
+        fields[3] = state.flags;
+        fields[4] = state.index;
+        fields[5] = state.ref;
+    }
+
+    private void encode(int key, int mask, long[] beforeFields, long[] afterFields) {
+        bytes.writeVarInt(key);
+        bytes.writeVarInt(mask);
+        for (int f = 0; f < FIELDS; f++) {
+            if ((mask & (1 << f)) != 0) {
+                writeField(f, beforeFields[f]);
+                writeField(f, afterFields[f]);
+            }
+        }
+    }
+
+    private void writeField(int field, long value) {
+        if (field == 1 || field == 2) {
+            bytes.writeLong(value);
+        } else {
+            bytes.writeZigZag((int) value);
+        }
+    }
+
+    /** Decodes a delta's key, and its mask and fields into the given arrays if not null. */
+    private int decode(int delta, long[] beforeFields, long[] afterFields) {
+        int end = delta + 1 < deltaCount ? deltaStarts[delta + 1] : bytes.size;
+        VarintReader in = new VarintReader(bytes.buffer, deltaStarts[delta], end);
+        try {
+            int key = in.readVarInt();
+            if (beforeFields == null || puzzleWords[delta] != null) {
+                return key;
+            }
+            int mask = in.readVarInt();
+            for (int f = 0; f < FIELDS; f++) {
+                if ((mask & (1 << f)) != 0) {
+                    beforeFields[f] = readField(in, f);
+                    afterFields[f] = readField(in, f);
+                }
+            }
+            return key | (mask << 24);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt undo history", e);
+        }
+    }
+
+    private static long readField(VarintReader in, int field) throws IOException {
+        return field == 1 || field == 2 ? in.readLong() : in.readZigZag();
+    }
+
+    /** Puts the delta's before (undo) or after values into state, leaving the other fields. */
+    void applyFields(int delta, ObjectState state, boolean undo) {
+        int mask = decode(delta, before, after) >>> 24;
+        long[] values = undo ? before : after;
+        if ((mask & VISIBLE) != 0) state.visible = values[0] != 0;
+        if ((mask & X) != 0) state.x = Double.longBitsToDouble(values[1]);
+        if ((mask & Y) != 0) state.y = Double.longBitsToDouble(values[2]);
+        if ((mask & FLAGS) != 0) state.flags = (int) values[3];
+        if ((mask & INDEX) != 0) state.index = (int) values[4];
+        if ((mask & REF) != 0) state.ref = (int) values[5];
+    }
+
+    void closeStep(long syncNumber, int maxSteps) {
+        int start = stepStart(stepCount);
+        if (start == deltaCount) {
+            return;
+        }
+        if (stepCount > 0 && syncNumber == lastStepSync + 1 && canMerge(stepStart(stepCount - 1), start)) {
+            merge(stepStart(stepCount - 1), start);
+        } else {
+            if (stepCount == stepEnds.length) {
+                stepEnds = Arrays.copyOf(stepEnds, stepCount * 2);
+            }
+            stepEnds[stepCount++] = deltaCount;
+        }
+        position = stepCount;
+        lastStepSync = syncNumber;
+        if (stepCount > maxSteps + maxSteps / 8) {
+            dropOldest(stepCount - maxSteps);
+        }
+    }
+
+    // Same objects, in the same order, as the previous step (a drag, say)
+    private boolean canMerge(int previous, int start) {
+        if (start - previous != deltaCount - start) {
+            return false;
+        }
+        for (int i = 0; i < start - previous; i++) {
+            if (puzzleWords[previous + i] != null || puzzleWords[start + i] != null
+                    || decode(previous + i, null, null) != decode(start + i, null, null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Re-encodes the previous step going from its own before values to this tick's after values
+    private void merge(int previous, int start) {
+        int count = start - previous;
+        int[] keyIds = new int[count];
+        int[] masks = new int[count];
+        long[][] befores = new long[count][FIELDS];
+        long[][] afters = new long[count][FIELDS];
+        for (int i = 0; i < count; i++) {
+            long[] first = befores[i], firstAfter = new long[FIELDS];
+            int head = decode(previous + i, first, firstAfter);
+            keyIds[i] = head & 0xFFFFFF;
+            int firstMask = head >>> 24;
+            long[] secondBefore = new long[FIELDS];
+            int secondMask = decode(start + i, secondBefore, afters[i]) >>> 24;
+            for (int f = 0; f < FIELDS; f++) {
+                int bit = 1 << f;
+                if ((firstMask & bit) == 0 && (secondMask & bit) != 0) {
+                    first[f] = secondBefore[f];
+                }
+                if ((secondMask & bit) == 0 && (firstMask & bit) != 0) {
+                    afters[i][f] = firstAfter[f];
+                }
+            }
+            masks[i] = firstMask | secondMask;
+        }
+        truncate(previous);
+        for (int i = 0; i < count; i++) {
+            startDelta(null);
+            encode(keyIds[i], masks[i], befores[i], afters[i]);
+        }
+    }
+
+    private void truncate(int delta) {
+        if (delta < deltaCount) {
+            bytes.size = deltaStarts[delta];
+            Arrays.fill(puzzleWords, delta, deltaCount, null);
+            deltaCount = delta;
+        }
+    }
+
+    // Batched, so the shift is paid once per maxSteps/8 steps
+    private void dropOldest(int steps) {
+        int drop = stepEnds[steps - 1];
+        int dropBytes = drop < deltaCount ? deltaStarts[drop] : bytes.size;
+        System.arraycopy(bytes.buffer, dropBytes, bytes.buffer, 0, bytes.size - dropBytes);
+        bytes.size -= dropBytes;
+        for (int d = drop; d < deltaCount; d++) {
+            deltaStarts[d - drop] = deltaStarts[d] - dropBytes;
+        }
+        System.arraycopy(puzzleWords, drop, puzzleWords, 0, deltaCount - drop);
+        Arrays.fill(puzzleWords, deltaCount - drop, deltaCount, null);
+        deltaCount -= drop;
+        for (int i = steps; i < stepCount; i++) {
+            stepEnds[i - steps] = stepEnds[i] - drop;
+        }
+        stepCount -= steps;
+        position = Math.max(0, position - steps);
+    }
+
+    void clear() {
+        truncate(0);
+        stepCount = 0;
+        position = 0;
+    }
+
+    int byteSize() {
+        return bytes.buffer.length + 8 * deltaStarts.length + 4 * stepEnds.length;
+    }
+}
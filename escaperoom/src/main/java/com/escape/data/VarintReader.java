@@ -0,0 +1,110 @@
+package com.escape.data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Bounds-checked reader for what VarintWriter writes. */
+class VarintReader {
+    private final byte[] data;
+    private int pos;
+    private final int end;
+
+    VarintReader(byte[] data, int from, int to) {
+        this.data = data;
+        this.pos = from;
+        this.end = to;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = next();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at " + pos);
+    }
+
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if ((value >>> 32) != 0) {
+            throw new IOException("Varint out of range at " + pos);
+        }
+        return (int) value;
+    }
+
+    /** A count or length, which can't be larger than the bytes left. */
+    int readCount() throws IOException {
+        int value = readVarInt();
+        if (value < 0 || value > end - pos) {
+            throw new IOException("Bad count " + value + " at " + pos);
+        }
+        return value;
+    }
+
+    int readZigZag() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (next() & 0xFF);
+        }
+        return value;
+    }
+
+    byte[] readBytes(int n) throws IOException {
+        if (n < 0 || n > end - pos) {
+            throw new IOException("Unexpected end of data");
+        }
+        byte[] bytes = Arrays.copyOfRange(data, pos, pos + n);
+        pos += n;
+        return bytes;
+    }
+
+    int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (next() & 0xFF);
+        }
+        return value;
+    }
+
+    /** What VarintWriter.writeString wrote. */
+    String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        // Like readCount, but the length is stored plus one so 0 can mean null
+        if (length < 0 || length - 1 > end - pos) {
+            throw new IOException("Bad string length " + (length - 1) + " at " + pos);
+        }
+        String value = new String(data, pos, length - 1, StandardCharsets.UTF_8);
+        pos += length - 1;
+        return value;
+    }
+
+    int position() { return pos; }
+    boolean hasMore() { return pos < end; }
+
+    String readString(String[] strings) throws IOException {
+        int ref = readVarInt();
+        if (ref < 0 || ref > strings.length) {
+            throw new IOException("Bad string reference " + ref + " at " + pos);
+        }
+        return ref == 0 ? null : strings[ref - 1];
+    }
+
+    private byte next() throws IOException {
+        if (pos >= end) {
+            throw new IOException("Unexpected end of data");
+        }
+        return data[pos++];
+    }
+}
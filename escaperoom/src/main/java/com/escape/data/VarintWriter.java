@@ -0,0 +1,76 @@
+package com.escape.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Growable byte buffer with LEB128 varint writes. */
+class VarintWriter {
+    byte[] buffer;
+    int size;
+
+    VarintWriter(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    void writeZigZag(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeLong(long value) {
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buffer[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    void writeInt(int value) {
+        ensure(4);
+        for (int i = 3; i >= 0; i--) {
+            buffer[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /** Length-prefixed UTF-8 written in place, for records too small to carry a string table. */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(utf8.length + 1);
+        writeBytes(utf8);
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
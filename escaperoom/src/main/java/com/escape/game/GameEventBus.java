@@ -0,0 +1,347 @@
+package com.escape.game;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Typed game events on a ring of pre-allocated, mutable slots. The game
+ * thread is the only publisher: publish() fills the next slot and moves
+ * the cursor, nothing is allocated. Every subscriber has its own sequence
+ * and reads at its own pace.
+ *
+ * Two kinds of subscriber:
+ *
+ *   - gating subscribers are polled on the game thread and never lose an
+ *     event. If one is a whole ring behind, publish() drains it inline
+ *     before reusing the slot. Its handler gets a copy, since a handler
+ *     that publishes may reuse the very slot it was handed.
+ *   - the others run on their own threads (audio, analytics, saving,
+ *     networking) and never hold up the game. Each copies the slot into
+ *     its own event before handling it; one that gets lapped skips ahead
+ *     and counts what it missed.
+ *
+ * Publishers may change threads (a server session hands over under its
+ * lock), but only one may publish at a time.
+ */
+public class GameEventBus {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long MAX_IDLE_PARK_NANOS = 1_000_000;
+
+    public enum Type { ITEM_COLLECTED, CONTAINER_OPENED, PUZZLE_SOLVED, ROOM_ENTERED, TIMER_EXPIRED }
+
+    /**
+     * One event. The bus reuses it, so a handler copies out what it wants
+     * to keep instead of holding on to the event.
+     */
+    public static final class GameEvent {
+        volatile long sequence = -1;   // -1 while the publisher is writing the slot
+        Type type;
+        String roomId;
+        String subjectId;              // item, container, puzzle or timer id
+        long value;                    // type-specific: game tick, count
+
+        public Type getType() { return type; }
+        public String getRoomId() { return roomId; }
+        public String getSubjectId() { return subjectId; }
+        public long getValue() { return value; }
+        public long getSequence() { return sequence; }
+
+        void copyFrom(GameEvent other) {
+            type = other.type;
+            roomId = other.roomId;
+            subjectId = other.subjectId;
+            value = other.value;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + subjectId + " in " + roomId + (value != 0 ? " (" + value + ")" : "");
+        }
+    }
+
+    /** Reacts to one event; runs on whichever thread polls the subscriber. */
+    public interface Handler {
+        void onEvent(GameEvent event);
+    }
+
+    /** A reader of the ring with its own sequence. */
+    public final class Subscriber {
+        private final String name;
+        private final Handler handler;
+        private final boolean gating;
+        private final int typeMask;
+        private final GameEvent copy = new GameEvent();
+        private GameEvent[] nested = new GameEvent[0];   // gating copies for handlers that publish, by depth
+        private int depth;
+        private volatile long sequence;       // last event consumed
+        private volatile boolean running;
+        private Thread thread;
+
+        // Stats
+        private volatile long handled;
+        private volatile long missed;
+
+        Subscriber(String name, Handler handler, boolean gating, int typeMask, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.gating = gating;
+            this.typeMask = typeMask;
+            this.sequence = start;
+        }
+
+        /**
+         * Handles everything published since the last poll and returns how
+         * many events were handed over. A gating subscriber must be polled
+         * on the publishing thread.
+         */
+        public int poll() {
+            return gating ? pollGating() : pollCopying();
+        }
+
+        // The publisher is this thread, so nothing changes the slot while it is copied
+        private int pollGating() {
+            int count = 0;
+            long next;
+            while ((next = sequence + 1) <= cursor) {
+                GameEvent slot = ring[(int) next & mask];
+                // Move on first: the handler may publish, and a full ring drains this subscriber again
+                sequence = next;
+                if ((typeMask & (1 << slot.type.ordinal())) != 0) {
+                    // A publish from the handler may reuse this slot, and a drain nested in it needs its own copy
+                    GameEvent event = copyAt(depth);
+                    event.copyFrom(slot);
+                    event.sequence = next;
+                    depth++;
+                    try {
+                        handler.onEvent(event);
+                    } finally {
+                        depth--;
+                    }
+                    count++;
+                }
+            }
+            handled += count;
+            return count;
+        }
+
+        private GameEvent copyAt(int level) {
+            if (level == 0) {
+                return copy;
+            }
+            if (level > nested.length) {
+                nested = Arrays.copyOf(nested, level);
+                nested[level - 1] = new GameEvent();
+            }
+            return nested[level - 1];
+        }
+
+        // Seqlock read: copy the slot, then check the publisher didn't reuse it meanwhile
+        private int pollCopying() {
+            int count = 0;
+            long next;
+            long published;
+            while ((next = sequence + 1) <= (published = cursor)) {
+                if (published - next >= capacity) {
+                    skipTo(published - capacity + 1);
+                    continue;
+                }
+                GameEvent slot = ring[(int) next & mask];
+                if (slot.sequence != next) {
+                    skipTo(Math.max(next + 1, cursor - capacity + 1));
+                    continue;
+                }
+                copy.copyFrom(slot);
+                VarHandle.loadLoadFence();
+                if (slot.sequence != next) {
+                    skipTo(Math.max(next + 1, cursor - capacity + 1));
+                    continue;
+                }
+                sequence = next;
+                if ((typeMask & (1 << copy.type.ordinal())) != 0) {
+                    copy.sequence = next;
+                    handler.onEvent(copy);
+                    count++;
+                }
+            }
+            handled += count;
+            return count;
+        }
+
+        private void skipTo(long next) {
+            missed += next - (sequence + 1);
+            sequence = next - 1;
+        }
+
+        public String getName() { return name; }
+        public boolean isGating() { return gating; }
+        public long getSequence() { return sequence; }
+        public long getHandledCount() { return handled; }
+        public long getMissedCount() { return missed; }
+        public long getLag() { return cursor - sequence; }
+    }
+
+    private final GameEvent[] ring;
+    private final int capacity;
+    private final int mask;
+    private volatile long cursor = -1;         // last published sequence
+    private volatile Subscriber[] subscribers = new Subscriber[0];
+    private final List<Thread> threads = new ArrayList<>();
+
+    // Stats
+    private volatile long inlineDrains;
+
+    public GameEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity slots in the ring, rounded up to a power of two */
+    public GameEventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ring = new GameEvent[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new GameEvent();
+        }
+    }
+
+    /**
+     * Adds a subscriber that sees events published from now on, of the
+     * given types or of every type if none are given.
+     */
+    public synchronized Subscriber subscribe(String name, boolean gating, Handler handler, Type... types) {
+        int typeMask = 0;
+        for (Type type : types) {
+            typeMask |= 1 << type.ordinal();
+        }
+        Subscriber subscriber = new Subscriber(name, handler, gating, types.length == 0 ? -1 : typeMask, cursor);
+        Subscriber[] current = subscribers;
+        Subscriber[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscriber;
+        subscribers = updated;
+        return subscriber;
+    }
+
+    public synchronized void unsubscribe(Subscriber subscriber) {
+        subscriber.running = false;
+        Subscriber[] current = subscribers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                Subscriber[] updated = new Subscriber[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscribers = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Polls a non-gating subscriber on its own daemon thread, parking a
+     * little longer each time it finds nothing, up to a millisecond.
+     */
+    public synchronized Thread startConsumer(Subscriber subscriber, String threadName) {
+        if (subscriber.gating) {
+            throw new IllegalArgumentException("Gating subscriber " + subscriber.name + " is polled by the game thread");
+        }
+        subscriber.running = true;
+        Thread thread = new Thread(() -> {
+            long park = 1_000;
+            while (subscriber.running) {
+                try {
+                    if (subscriber.poll() > 0) {
+                        park = 1_000;
+                        continue;
+                    }
+                } catch (Exception e) {
+                    System.err.println("Event subscriber " + subscriber.name + " failed: " + e);
+                    e.printStackTrace();
+                }
+                LockSupport.parkNanos(park);
+                park = Math.min(park * 2, MAX_IDLE_PARK_NANOS);
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+        subscriber.thread = thread;
+        threads.add(thread);
+        return thread;
+    }
+
+    /** Stops the consumer threads after they handle what is already published. */
+    public synchronized void close() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.running = false;
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads.clear();
+        // Whatever came in while they were stopping
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.gating && subscriber.thread != null && !subscriber.thread.isAlive()) {
+                subscriber.poll();
+            }
+        }
+    }
+
+    // Publishing, on the game thread
+
+    public void itemCollected(String roomId, String itemId) {
+        publish(Type.ITEM_COLLECTED, roomId, itemId, 0);
+    }
+
+    public void containerOpened(String roomId, String containerId) {
+        publish(Type.CONTAINER_OPENED, roomId, containerId, 0);
+    }
+
+    public void puzzleSolved(String roomId, String puzzleId) {
+        publish(Type.PUZZLE_SOLVED, roomId, puzzleId, 0);
+    }
+
+    public void roomEntered(String roomId) {
+        publish(Type.ROOM_ENTERED, roomId, roomId, 0);
+    }
+
+    public void timerExpired(String roomId, String timerId, long tick) {
+        publish(Type.TIMER_EXPIRED, roomId, timerId, tick);
+    }
+
+    public void publish(Type type, String roomId, String subjectId, long value) {
+        long next = cursor + 1;
+        long wrap = next - capacity;
+        if (wrap >= 0) {
+            for (Subscriber subscriber : subscribers) {
+                // Never overwrite what a gating subscriber hasn't seen; the others fend for themselves
+                if (subscriber.gating && subscriber.sequence < wrap) {
+                    inlineDrains++;
+                    subscriber.poll();
+                }
+            }
+        }
+        GameEvent slot = ring[(int) next & mask];
+        slot.sequence = -1;
+        VarHandle.storeStoreFence();
+        slot.type = type;
+        slot.roomId = roomId;
+        slot.subjectId = subjectId;
+        slot.value = value;
+        slot.sequence = next;
+        cursor = next;
+    }
+
+    // Stats
+    public int getCapacity() { return capacity; }
+    public long getPublishedCount() { return cursor + 1; }
+    public long getInlineDrainCount() { return inlineDrains; }
+    public int getSubscriberCount() { return subscribers.length; }
+}
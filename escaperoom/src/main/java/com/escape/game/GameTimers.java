@@ -0,0 +1,240 @@
+package com.escape.game;
+
+import com.escape.data.DialogueStore;
+import com.escape.objects.ContainerObject;
+import com.escape.puzzles.Puzzle;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Timed mechanics of one game, on its own TimingWheel:
+ *
+ *   - a puzzle whose attempts run out is locked out for a while, then gets
+ *     its attempts back
+ *   - hints unlock one at a time, a wait after entering the room and after
+ *     each hint taken
+ *   - a room with onScare dialogue plays it once, some time after entry
+ *   - a container opened with a code locks itself again after a while
+ *
+ * The wheel only moves when advance() is called from the game clock, so a
+ * paused game or one sitting in dialogue holds all of its timers. Timer
+ * objects are made once per puzzle or container and reused. Messages for
+ * the player wait in a small queue until drainNotices(), and each firing is
+ * published as a TIMER_EXPIRED event if an event bus is attached.
+ *
+ * Not thread-safe; the owner serialises calls as it does for the game.
+ */
+public class GameTimers {
+
+    public static final int LOCKOUT_SECONDS = 60;
+    public static final int HINT_WAIT_SECONDS = 90;
+    public static final int SCARE_SECONDS = 45;
+    public static final int RELOCK_SECONDS = 120;
+    private static final int MAX_NOTICES = 16;
+
+    private final HollowmoreGameManager gameManager;
+    private final long ticksPerSecond;
+    private final TimingWheel wheel = new TimingWheel();
+    private final Map<String, Lockout> lockouts = new HashMap<>();
+    private final Map<ContainerObject, Relock> relocks = new HashMap<>();
+    private final Set<String> scaredRooms = new HashSet<>();
+    private final HintUnlock hintUnlock = new HintUnlock();
+    private final Scare scare = new Scare();
+    private final ArrayDeque<String> notices = new ArrayDeque<>();
+    private boolean hintReady;
+    private GameEventBus events;
+
+    public GameTimers(HollowmoreGameManager gameManager, long ticksPerSecond) {
+        this.gameManager = gameManager;
+        this.ticksPerSecond = Math.max(1, ticksPerSecond);
+    }
+
+    public void setEventBus(GameEventBus events) {
+        this.events = events;
+    }
+
+    /** Moves game time forward; call only while the game is being played. */
+    public void advance(long ticks) {
+        wheel.advance(ticks);
+    }
+
+    // Puzzle lockout
+
+    /** Starts the lockout once a wrong answer has used the last attempt. */
+    public void puzzleFailed(Puzzle puzzle) {
+        if (puzzle.isSolved() || puzzle.getAttemptsRemaining() > 0) {
+            return;
+        }
+        Lockout lockout = lockouts.computeIfAbsent(puzzle.getPuzzleId(), id -> new Lockout(puzzle));
+        if (!lockout.isScheduled()) {
+            wheel.schedule(lockout, LOCKOUT_SECONDS * ticksPerSecond);
+        }
+    }
+
+    public boolean isLockedOut(Puzzle puzzle) {
+        Lockout lockout = lockouts.get(puzzle.getPuzzleId());
+        return lockout != null && lockout.isScheduled();
+    }
+
+    /** Whole seconds until the lockout ends, 0 if there is none. */
+    public long getLockoutSecondsLeft(Puzzle puzzle) {
+        Lockout lockout = lockouts.get(puzzle.getPuzzleId());
+        return lockout == null ? 0 : secondsOf(wheel.remaining(lockout));
+    }
+
+    // Hints and scares follow the current room
+
+    /** Restarts the room's hint and scare timers; call after every room change. */
+    public void roomEntered(Room room) {
+        wheel.cancel(hintUnlock);
+        wheel.cancel(scare);
+        hintReady = false;
+        if (room == null) {
+            return;
+        }
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle != null && !puzzle.isSolved() && puzzle.getHintsRevealed() < puzzle.getHintCount()) {
+            wheel.schedule(hintUnlock, HINT_WAIT_SECONDS * ticksPerSecond);
+        }
+        String roomId = room.getRoomId();
+        if (!scaredRooms.contains(roomId) && DialogueStore.getInstance().getLineCount(roomId, DialogueStore.ON_SCARE) > 0) {
+            scare.roomId = roomId;
+            wheel.schedule(scare, SCARE_SECONDS * ticksPerSecond);
+        }
+    }
+
+    public boolean isHintReady() {
+        return hintReady;
+    }
+
+    /** Whole seconds until the next hint unlocks, 0 if one is ready or none is coming. */
+    public long getHintSecondsLeft() {
+        return secondsOf(wheel.remaining(hintUnlock));
+    }
+
+    /** Uses up the ready hint and starts the wait for the next one. */
+    public void hintTaken(Puzzle puzzle) {
+        hintReady = false;
+        if (!puzzle.isSolved() && puzzle.getHintsRevealed() < puzzle.getHintCount()) {
+            wheel.schedule(hintUnlock, HINT_WAIT_SECONDS * ticksPerSecond);
+        }
+    }
+
+    // Container relock
+
+    /** Starts (or restarts) the relock countdown of a container opened with its code. */
+    public void containerOpened(ContainerObject container) {
+        Relock relock = relocks.computeIfAbsent(container, Relock::new);
+        wheel.schedule(relock, RELOCK_SECONDS * ticksPerSecond);
+    }
+
+    // Notices
+
+    /** Messages from timers that fired since the last call, oldest first; empties the queue. */
+    public String drainNotices() {
+        if (notices.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        String notice;
+        while ((notice = notices.poll()) != null) {
+            if (sb.length() > 0) {
+                sb.append(" | ");
+            }
+            sb.append(notice);
+        }
+        return sb.toString();
+    }
+
+    public int getNoticeCount() { return notices.size(); }
+
+    private void notice(String text) {
+        if (notices.size() == MAX_NOTICES) {
+            notices.poll();
+        }
+        notices.add(text);
+    }
+
+    private void published(String timerId, long now) {
+        if (events != null) {
+            Room room = gameManager.getCurrentRoom();
+            events.timerExpired(room != null ? room.getRoomId() : null, timerId, now);
+        }
+    }
+
+    private long secondsOf(long ticks) {
+        return ticks <= 0 ? 0 : (ticks + ticksPerSecond - 1) / ticksPerSecond;
+    }
+
+    // Stats
+    public int getPendingCount() { return wheel.getPendingCount(); }
+    public long getFiredCount() { return wheel.getFiredCount(); }
+
+    private class Lockout extends TimingWheel.Timer {
+        final Puzzle puzzle;
+        final String timerId;
+
+        Lockout(Puzzle puzzle) {
+            this.puzzle = puzzle;
+            this.timerId = "lockout:" + puzzle.getPuzzleId();
+        }
+
+        @Override
+        protected void expire(long now) {
+            published(timerId, now);
+            puzzle.restoreAttempts();
+            if (!puzzle.isSolved()) {
+                notice(puzzle.getTitle() + " can be tried again");
+            }
+        }
+    }
+
+    private class HintUnlock extends TimingWheel.Timer {
+        @Override
+        protected void expire(long now) {
+            Puzzle puzzle = gameManager.getCurrentPuzzle();
+            if (puzzle == null || puzzle.isSolved()) {
+                return;
+            }
+            hintReady = true;
+            published("hint", now);
+            notice("A hint is available");
+        }
+    }
+
+    private class Scare extends TimingWheel.Timer {
+        String roomId;
+
+        @Override
+        protected void expire(long now) {
+            scaredRooms.add(roomId);
+            published("scare", now);
+            List<String> lines = DialogueStore.getInstance().getLines(roomId, DialogueStore.ON_SCARE);
+            for (String line : lines) {
+                notice(line);
+            }
+        }
+    }
+
+    private class Relock extends TimingWheel.Timer {
+        final ContainerObject container;
+        final String timerId;
+
+        Relock(ContainerObject container) {
+            this.container = container;
+            this.timerId = "relock:" + container.getObjectId();
+        }
+
+        @Override
+        protected void expire(long now) {
+            if (container.relock()) {
+                published(timerId, now);
+                notice(container.getName() + " has locked itself again");
+            }
+        }
+    }
+}
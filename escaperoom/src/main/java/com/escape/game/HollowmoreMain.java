@@ -1,7 +1,15 @@
 package com.escape;
 
 import com.escape.game.*;
-import com.escape.data.HollowmoreDataLoader;
+import com.escape.data.ActionJournal;
+import com.escape.data.ContentReloadService;
+import com.escape.data.HollowmoreStreamLoader;
+import com.escape.data.JournalRecovery;
+import com.escape.data.Leaderboard;
+import com.escape.data.LoadReport;
+import com.escape.data.ParallelContentLoader;
+import com.escape.data.SaveGameStore;
+import com.escape.data.SaveSnapshot;
 import javafx.application.Application;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -12,6 +20,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
+import java.nio.file.Paths;
 
 /**
  * Main entry point for Hollowmore Manor
@@ -21,6 +30,13 @@ public class HollowmoreMain extends Application {
     
     private Stage primaryStage;
     private boolean useJsonData = false; // Toggle this to use JSON or hardcoded data
+    private boolean parallelLoad = true; // Parse JSON records on all cores
+    private boolean hotReload = false; // Watch content files and apply edits live
+    private boolean journalActions = true; // Log actions so a crashed game can be picked up again
+    private static final String LOCAL_SESSION = "local";
+    private String recordInputTo = null; // Record clicks and keys to this file for replay
+    private boolean recordResults = true; // Rank finished games on the local leaderboard
+    private boolean logEvents = true; // Print game events from a consumer thread, off the game thread
     
     @Override
     public void start(Stage stage) {
@@ -114,7 +130,12 @@ public class HollowmoreMain extends Application {
             if (useJsonData) {
                 // Load from JSON file
                 System.out.println("Loading game data from JSON...");
-                HollowmoreDataLoader.loadGameData(gameManager);
+                if (parallelLoad) {
+                    LoadReport report = ParallelContentLoader.loadGameData(gameManager);
+                    report.print();
+                } else {
+                    HollowmoreStreamLoader.loadGameData(gameManager);
+                }
                 gameManager.startGame("foyer");
             } else {
                 // Use hardcoded demo data
@@ -127,6 +148,38 @@ public class HollowmoreMain extends Application {
             HollowmoreUI gameUI = new HollowmoreUI();
             Scene gameScene = new Scene(gameUI, 768, 576);
             
+            if (useJsonData && hotReload) {
+                ContentReloadService reloadService = new ContentReloadService(gameManager,
+                    Paths.get("json/hollowmore.json"), Paths.get("src/main/resources/maps"));
+                reloadService.start();
+                gameUI.setReloadService(reloadService);
+            }
+            gameUI.setSaveStore(new SaveGameStore());
+            if (journalActions) {
+                gameUI.setJournal(openJournal(gameManager));
+            }
+            Leaderboard leaderboard = recordResults ? new Leaderboard() : null;
+            if (leaderboard != null) {
+                String contentSet = useJsonData ? "hollowmore" : "hollowmore-demo";
+                gameUI.setLeaderboard(leaderboard, contentSet, System.getProperty("user.name", LOCAL_SESSION));
+            }
+            if (recordInputTo != null) {
+                gameUI.startRecording(Paths.get(recordInputTo));
+            }
+            GameEventBus events = gameUI.getEventBus();
+            if (logEvents) {
+                GameEventBus.Subscriber console = events.subscribe("console", false,
+                    event -> System.out.println("Event: " + event));
+                events.startConsumer(console, "game-events-console");
+            }
+            primaryStage.setOnCloseRequest(e -> {
+                gameUI.stopRecording();
+                events.close();
+                if (leaderboard != null) {
+                    leaderboard.close();
+                }
+            });
+            
             primaryStage.setScene(gameScene);
             gameUI.requestFocus();
             gameUI.startGameLoop();
@@ -138,6 +191,32 @@ public class HollowmoreMain extends Application {
         }
     }
     
+    /**
+     * Continues the game a crash interrupted, if the journal holds one,
+     * otherwise starts logging the game that was just set up.
+     */
+    private ActionJournal.Session openJournal(HollowmoreGameManager gameManager) {
+        try {
+            ActionJournal journal = new ActionJournal();
+            JournalRecovery.RecoveredSession saved = journal.getRecovered(LOCAL_SESSION);
+            if (saved != null && !saved.isEnded() && !saved.isEmpty()) {
+                int skipped = saved.apply(gameManager);
+                System.out.println("Recovered the previous game (" + saved.getEntryCount() + " actions replayed, "
+                    + gameManager.getTimeRemainingFormatted() + " left"
+                    + (skipped > 0 ? ", " + skipped + " no longer match the content" : "") + ")");
+                ActionJournal.Session session = journal.resume(saved);
+                session.checkpoint(SaveSnapshot.capture(gameManager));
+                return session;
+            }
+            return journal.open(LOCAL_SESSION, gameManager.getCurrentRoom().getRoomId());
+        } catch (Exception e) {
+            // The game still runs, it just can't be recovered after a crash
+            System.err.println("Error opening action journal: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
     private void startDemo() {
         try {
             // Run the demo with just Foyer and Parlor
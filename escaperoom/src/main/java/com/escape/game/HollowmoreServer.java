@@ -0,0 +1,585 @@
+package com.escape.game;
+
+import com.escape.data.ContentIndex;
+import com.escape.data.DialogueStore;
+import com.escape.data.HollowmoreStreamLoader;
+import com.escape.data.SessionContent;
+import com.escape.objects.*;
+import com.escape.puzzles.*;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Headless server hosting many games in one JVM, one per connection, for
+ * venue terminals. Content is loaded once into a SessionContent template
+ * and every connection gets its own game manager copied from it.
+ *
+ * Listens on the loopback interface only. The protocol is one command line
+ * in, one reply line out; replies start with OK or ERR:
+ *
+ *   LOOK                  room id and name, then id:type:state for visible objects
+ *   INTERACT <object>     collect, open, cycle or examine an object
+ *   UNLOCK <object> <code>
+ *   GO <room>             move to a room (its required item must be held)
+ *   SOLVE <answer>        answer the current room's puzzle; refused while it is locked out
+ *   HINT                  reveal the next hint once it has unlocked
+ *   INV                   inventory
+ *   STATUS                room, time left, and the ending once the game is over
+ *   NEXT                  next line of the room's entry dialogue
+ *   NEWS                  messages from game timers (lockouts ending, hints, scares, relocks)
+ *   PAUSE / RESUME
+ *   RESTART               a fresh game on the same connection
+ *   PING                  no-op
+ *   QUIT
+ *
+ * Each connection is served by its own thread, which sits blocked in a
+ * read while the terminal is idle. Threads are created with a small stack
+ * so ten thousand idle sessions fit comfortably; newSessionThread() is the
+ * one place to switch to virtual threads on a Java 21 build.
+ *
+ * Each new game takes a pre-generated cipher from PuzzleVariantCache when
+ * one is ready, so terminals don't all decode the same diary.
+ *
+ * Game timers are stepped by one SessionTickScheduler for all sessions.
+ * A session in dialogue or paused is off the schedule until it resumes,
+ * which also holds its GameTimers: they count scheduler ticks, not wall
+ * time. Each session publishes its timer firings on a small GameEventBus
+ * of its own, drained after every tick into the server's stats.
+ */
+public class HollowmoreServer {
+
+    public static final int DEFAULT_PORT = 7447;
+    private static final String HOLLOWMORE_JSON = "json/hollowmore.json";
+    private static final String START_ROOM = "foyer";
+    private static final long SESSION_STACK_SIZE = 256 * 1024;
+    private static final long STATS_INTERVAL_MILLIS = 10_000;
+
+    private final SessionContent content;
+    private final int port;
+    private final Map<Integer, ServerSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger(1);
+    private final SessionTickScheduler scheduler = new SessionTickScheduler();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    // Stats
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder timersFired = new LongAdder();
+
+    public HollowmoreServer(SessionContent content, int port) {
+        this.content = content;
+        this.port = port;
+    }
+
+    /** Binds and accepts connections until stop(); blocks the calling thread. */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        running = true;
+        scheduler.start();
+        startStatsThread();
+        System.out.println("Hollowmore server on " + serverSocket.getLocalSocketAddress() + ": "
+            + content.getRoomCount() + " rooms, " + content.getObjectCount() + " objects, "
+            + content.getPuzzleCount() + " puzzles per session, " + content.getGeneratedPuzzleCount() + " generated");
+
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+                continue;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                ServerSession session = new ServerSession(this, nextSessionId.getAndIncrement(), socket);
+                sessions.put(session.id, session);
+                opened.increment();
+                newSessionThread(session, "session-" + session.id).start();
+            } catch (Throwable t) {
+                // Out of threads or memory: turn this terminal away, keep serving the others
+                System.err.println("Could not start session: " + t);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static Thread newSessionThread(Runnable session, String name) {
+        Thread thread = new Thread(null, session, name, SESSION_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public void stop() {
+        running = false;
+        scheduler.stop();
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+        }
+        for (ServerSession session : sessions.values()) {
+            closeQuietly(session.socket);
+        }
+    }
+
+    void sessionClosed(ServerSession session) {
+        sessions.remove(session.id);
+        scheduler.sleep(session.slot);
+    }
+
+    SessionTickScheduler getScheduler() {
+        return scheduler;
+    }
+
+    SessionContent getContent() {
+        return content;
+    }
+
+    void commandServed() {
+        commands.increment();
+    }
+
+    void timerFired() {
+        timersFired.increment();
+    }
+
+    static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Already gone
+        }
+    }
+
+    // Stats
+    public int getSessionCount() { return sessions.size(); }
+    public long getCommandCount() { return commands.sum(); }
+    public long getOpenedCount() { return opened.sum(); }
+    public long getTimersFiredCount() { return timersFired.sum(); }
+
+    private void startStatsThread() {
+        Thread stats = new Thread(() -> {
+            long lastCommands = 0;
+            while (running) {
+                try {
+                    Thread.sleep(STATS_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long total = getCommandCount();
+                Runtime rt = Runtime.getRuntime();
+                System.out.printf("Sessions: %d open, %d ticking, %d since start; %.0f commands/s; "
+                        + "ticks %.1f%% busy, %d late; %d timers fired; heap %d MB%n",
+                    getSessionCount(), scheduler.getActiveCount(), getOpenedCount(),
+                    (total - lastCommands) * 1000.0 / STATS_INTERVAL_MILLIS,
+                    scheduler.getBusyRatio() * 100, scheduler.getOverruns(), getTimersFiredCount(),
+                    (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024));
+                lastCommands = total;
+            }
+        }, "server-stats");
+        stats.setDaemon(true);
+        stats.start();
+    }
+
+    /** Usage: HollowmoreServer [port] [content json] */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String path = args.length > 1 ? args[1] : HOLLOWMORE_JSON;
+        try {
+            // The shared instance only holds the template; sessions never play on it
+            HollowmoreGameManager template = HollowmoreGameManager.getInstance();
+            HollowmoreStreamLoader.loadGameData(template, path);
+            SessionContent content = SessionContent.capture(template, START_ROOM);
+            // Terminals sharing a server shouldn't share answers
+            content.useGeneratedPuzzles(PuzzleVariant.MEDIUM);
+            HollowmoreServer server = new HollowmoreServer(content, port);
+            server.run();
+        } catch (Exception e) {
+            System.err.println("Server failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
+
+/**
+ * One connection and its game. The session's thread runs commands and the
+ * scheduler's workers run ticks; the lock keeps them off the game manager
+ * at the same time.
+ */
+class ServerSession implements Runnable, SessionTickScheduler.Ticked {
+    private static final int MAX_LINE = 1024;
+    private static final int EVENT_SLOTS = 16;   // drained every tick, so a few timers' worth is plenty
+
+    final int id;
+    final Socket socket;
+    final SessionTickScheduler.Slot slot = new SessionTickScheduler.Slot(this);
+    private final HollowmoreServer server;
+    private final ReentrantLock lock = new ReentrantLock();
+    private HollowmoreGameManager gameManager;
+    private ContentIndex index;   // this game's own rooms, linked
+    private GameTimers timers;
+    // Timer events, published and drained on whichever thread holds the lock
+    private final GameEventBus events = new GameEventBus(EVENT_SLOTS);
+    private final GameEventBus.Subscriber timerEvents;
+    private int missedTicks;   // ticks skipped while a command held the lock; only tick() touches it
+    private boolean paused;
+    private List<String> dialogue = Collections.emptyList();
+    private int dialogueIndex;
+
+    // Lines are short; small buffers keep idle sessions cheap
+    private final byte[] line = new byte[MAX_LINE];
+    private InputStream in;
+    private OutputStream out;
+    private boolean quit;
+
+    ServerSession(HollowmoreServer server, int id, Socket socket) {
+        this.server = server;
+        this.id = id;
+        this.socket = socket;
+        this.timerEvents = events.subscribe("server-stats", true, event -> server.timerFired(),
+            GameEventBus.Type.TIMER_EXPIRED);
+    }
+
+    @Override
+    public void run() {
+        try {
+            in = new BufferedInputStream(socket.getInputStream(), 256);
+            out = socket.getOutputStream();
+            lock.lock();
+            try {
+                newGame();
+            } finally {
+                lock.unlock();
+            }
+            reply("OK HOLLOWMORE session " + id);
+            String command;
+            while (!quit && (command = readLine()) != null) {
+                String result;
+                lock.lock();
+                try {
+                    result = handle(command.trim());
+                    updateSchedule();
+                } catch (Exception e) {
+                    System.err.println("Session " + id + ": error in '" + command + "': " + e);
+                    result = "ERR internal error";
+                } finally {
+                    lock.unlock();
+                }
+                server.commandServed();
+                reply(result);
+            }
+        } catch (IOException e) {
+            // Terminal went away
+        } finally {
+            HollowmoreServer.closeQuietly(socket);
+            server.sessionClosed(this);
+        }
+    }
+
+    /** Steps the game timer; leaves the schedule once the game is over. */
+    @Override
+    public boolean tick(long nowNanos) {
+        // A command is running and will update the timer itself; the wheel catches up next tick
+        if (!lock.tryLock()) {
+            missedTicks++;
+            return true;
+        }
+        try {
+            gameManager.updateTimer();
+            timers.advance(1 + missedTicks);
+            timerEvents.poll();
+            missedTicks = 0;
+            return !gameManager.isGameOver() && isPlaying();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isPlaying() {
+        return !paused && dialogueIndex >= dialogue.size();
+    }
+
+    // Caller holds the lock
+    private void updateSchedule() {
+        if (isPlaying() && !gameManager.isGameOver()) {
+            server.getScheduler().wake(slot);
+        } else {
+            server.getScheduler().sleep(slot);
+        }
+    }
+
+    private void newGame() {
+        gameManager = server.getContent().newGame();
+        index = server.getContent().link(gameManager);
+        timers = new GameTimers(gameManager, 1_000_000_000L / server.getScheduler().getTickNanos());
+        timers.setEventBus(events);
+        paused = false;
+        startDialogue(gameManager.getCurrentRoom());
+        timers.roomEntered(gameManager.getCurrentRoom());
+        updateSchedule();
+    }
+
+    // Entry lines come from the compiled dialogue file when the room has one
+    private void startDialogue(Room room) {
+        DialogueStore store = DialogueStore.getInstance();
+        if (room == null) {
+            dialogue = Collections.emptyList();
+        } else if (store.hasDialogue(room.getRoomId())) {
+            dialogue = store.getLines(room.getRoomId(), DialogueStore.ON_ENTER);
+        } else if (room.getDialogue() != null) {
+            dialogue = room.getDialogue().getOnEnter();
+        } else {
+            dialogue = Collections.emptyList();
+        }
+        dialogueIndex = 0;
+    }
+
+    /** One line without its terminator, or null at end of stream. Overlong lines are cut. */
+    private String readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (length < MAX_LINE) {
+                line[length++] = (byte) b;
+            }
+        }
+        if (b == -1 && length == 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void reply(String text) throws IOException {
+        // Replies are single lines
+        out.write((text.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String handle(String command) {
+        int space = command.indexOf(' ');
+        String verb = (space < 0 ? command : command.substring(0, space)).toUpperCase();
+        String arg = space < 0 ? "" : command.substring(space + 1).trim();
+
+        gameManager.updateTimer();
+        switch (verb) {
+            case "PING": return "OK PONG";
+            case "STATUS": return status();
+            case "RESTART":
+                newGame();
+                return "OK restarted";
+            case "QUIT":
+                quit = true;
+                return "OK bye";
+            case "PAUSE":
+                paused = true;
+                return "OK paused";
+            case "RESUME":
+                paused = false;
+                return "OK resumed";
+            case "NEXT":
+                if (dialogueIndex >= dialogue.size()) {
+                    return "ERR no dialogue";
+                }
+                return "OK " + dialogue.get(dialogueIndex++);
+            case "NEWS":
+                return "OK " + timers.drainNotices();
+            default:
+                break;
+        }
+        if (gameManager.isGameOver()) {
+            return "ERR game over: " + gameManager.getEndingType();
+        }
+        if (paused) {
+            return "ERR paused";
+        }
+        if (dialogueIndex < dialogue.size()) {
+            return "ERR in dialogue, " + (dialogue.size() - dialogueIndex) + " lines left";
+        }
+        switch (verb) {
+            case "LOOK": return look();
+            case "INV": return "OK " + String.join(" ", gameManager.getInventory());
+            case "INTERACT": return interact(arg);
+            case "UNLOCK": return unlock(arg);
+            case "GO": return go(arg);
+            case "SOLVE": return solve(arg);
+            case "HINT": return hint();
+            default: return "ERR unknown command " + verb;
+        }
+    }
+
+    private String go(String roomId) {
+        if (!gameManager.transitionToRoom(roomId)) {
+            return "ERR can't go to " + roomId;
+        }
+        startDialogue(gameManager.getCurrentRoom());
+        timers.roomEntered(gameManager.getCurrentRoom());
+        return "OK " + roomId + (dialogue.isEmpty() ? "" : ", " + dialogue.size() + " lines of dialogue");
+    }
+
+    private String status() {
+        Room room = gameManager.getCurrentRoom();
+        StringBuilder sb = new StringBuilder("OK room ").append(room != null ? room.getRoomId() : "-")
+            .append(" time ").append(gameManager.getTimeRemainingFormatted());
+        if (timers.getNoticeCount() > 0) {
+            sb.append(" news ").append(timers.getNoticeCount());
+        }
+        if (gameManager.isGameOver()) {
+            sb.append(" over ").append(gameManager.getEndingType());
+        } else if (paused) {
+            sb.append(" paused");
+        } else if (dialogueIndex < dialogue.size()) {
+            sb.append(" dialogue");
+        }
+        return sb.toString();
+    }
+
+    private String look() {
+        Room room = gameManager.getCurrentRoom();
+        StringBuilder sb = new StringBuilder("OK ").append(room.getRoomId()).append(" \"").append(room.getName()).append('"');
+        for (InteractiveObject obj : room.getObjects()) {
+            if (obj.isVisible()) {
+                sb.append(' ').append(obj.getObjectId()).append(':').append(obj.getType()).append(':').append(stateOf(obj));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String stateOf(InteractiveObject obj) {
+        if (obj instanceof ContainerObject) {
+            ContainerObject container = (ContainerObject) obj;
+            return container.isLocked() ? "locked" : container.isOpened() ? "open" : "closed";
+        } else if (obj instanceof CyclicObject) {
+            return ((CyclicObject) obj).getCurrentState();
+        } else if (obj instanceof ExamineObject) {
+            return ((ExamineObject) obj).isExamined() ? "examined" : "new";
+        }
+        return obj.canInteract() ? "ready" : "done";
+    }
+
+    private InteractiveObject find(String objectId) {
+        InteractiveObject obj = index.findObject(gameManager.getCurrentRoom(), objectId);
+        return obj != null && obj.isVisible() ? obj : null;
+    }
+
+    // Same rules as HollowmoreUI.handleObjectInteraction, without the dialogue box
+    private String interact(String objectId) {
+        InteractiveObject obj = find(objectId);
+        if (obj == null) {
+            return "ERR no object " + objectId;
+        }
+        switch (obj.getType()) {
+            case "COLLECTIBLE":
+                if (!obj.canInteract()) {
+                    return "ERR already collected";
+                }
+                obj.interact();
+                gameManager.addToInventory(obj.getObjectId());
+                return "OK collected " + obj.getObjectId();
+
+            case "CONTAINER":
+                ContainerObject container = (ContainerObject) obj;
+                if (container.isLocked()) {
+                    return "OK locked";
+                }
+                return open(container);
+
+            case "EXAMINE":
+                obj.interact();
+                String text = ((ExamineObject) obj).getExamineText();
+                return "OK " + (text != null ? text : obj.getName());
+
+            default:
+                obj.interact();
+                return "OK " + stateOf(obj);
+        }
+    }
+
+    private String unlock(String arg) {
+        int space = arg.indexOf(' ');
+        InteractiveObject obj = find(space < 0 ? arg : arg.substring(0, space));
+        if (!(obj instanceof ContainerObject)) {
+            return "ERR no container " + arg;
+        }
+        ContainerObject container = (ContainerObject) obj;
+        String code = space < 0 ? "" : arg.substring(space + 1).trim();
+        if (!container.isLocked()) {
+            return open(container);
+        }
+        if (!container.tryUnlock(code)) {
+            return "ERR wrong code";
+        }
+        // The code is also the answer to the room's puzzle, as in the desktop game
+        gameManager.solvePuzzle(code);
+        timers.containerOpened(container);
+        return open(container);
+    }
+
+    private String open(ContainerObject container) {
+        container.interact();
+        StringBuilder sb = new StringBuilder("OK opened");
+        List<String> inventory = gameManager.getInventory();
+        for (String itemId : container.getContainedItems()) {
+            // A relocked container gives nothing twice
+            if (!inventory.contains(itemId)) {
+                gameManager.addToInventory(itemId);
+                sb.append(' ').append(itemId);
+            }
+        }
+        return sb.toString();
+    }
+
+    private String solve(String answer) {
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle == null) {
+            return "ERR no puzzle here";
+        }
+        if (puzzle.isSolved()) {
+            return "OK already solved";
+        }
+        if (timers.isLockedOut(puzzle)) {
+            return "ERR locked out for " + timers.getLockoutSecondsLeft(puzzle) + " s";
+        }
+        if (gameManager.solvePuzzle(answer)) {
+            return "OK solved";
+        }
+        if (puzzle.getAttemptsRemaining() <= 0) {
+            timers.puzzleFailed(puzzle);
+            return "ERR incorrect, locked out for " + timers.getLockoutSecondsLeft(puzzle) + " s";
+        }
+        return "ERR incorrect, " + puzzle.getAttemptsRemaining() + " attempts left";
+    }
+
+    private String hint() {
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle == null) {
+            return "ERR no puzzle here";
+        }
+        if (!timers.isHintReady()) {
+            long wait = timers.getHintSecondsLeft();
+            return wait > 0 ? "ERR next hint in " + wait + " s" : "ERR no more hints";
+        }
+        String hint = puzzle.revealNextHint();
+        timers.hintTaken(puzzle);
+        return hint != null ? "OK " + hint : "ERR no more hints";
+    }
+}
@@ -1,17 +1,33 @@
 package com.escape.game;
 
+import com.escape.data.ActionJournal;
+import com.escape.data.ContentIndex;
+import com.escape.data.ContentReloadService;
+import com.escape.data.DialogueStore;
+import com.escape.data.GameStateTracker;
+import com.escape.data.InputRecorder;
+import com.escape.data.InputRecording;
+import com.escape.data.Leaderboard;
+import com.escape.data.SaveGameStore;
+import com.escape.data.SaveSnapshot;
+import com.escape.data.UndoHistory;
 import com.escape.objects.*;
 import com.escape.puzzles.*;
 import javafx.animation.AnimationTimer;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.image.Image;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class HollowmoreUI extends Pane {
@@ -28,21 +44,66 @@ public class HollowmoreUI extends Pane {
     private List<String> currentDialogue;
     private int dialogueIndex;
     
-    // Animation timer
+    // Animation timer; the game steps in fixed ticks
+    private static final long TICK_NANOS = 16_666_666; // ~60 FPS
+    private static final int MAX_CATCH_UP_TICKS = 5;
     private AnimationTimer gameLoop;
     private long lastUpdate = 0;
+    private long accumulated = 0;
+    private long tickCount;
+    
+    // Clicks and keys are queued by the event handlers and applied at the next tick
+    private final List<PendingInput> pendingInput = new ArrayList<>();
+    private InputRecorder recorder;
     
     // Inventory UI
     private List<String> inventorySlots;
     private int selectedInventoryIndex = -1;
     
+    // Content hot-reload (optional)
+    private ContentReloadService reloadService;
+    
+    // Persistent copy of the game state, kept in step every tick; saves and
+    // checkpoints take its current version instead of walking the rooms
+    private GameStateTracker stateTracker;
+    private boolean stateStale = true;
+    private UndoHistory undoHistory;
+    
+    // Quick save / load (optional)
+    private static final String QUICK_SLOT = "quicksave";
+    private SaveGameStore saveStore;
+    
+    // Action journal for crash recovery (optional)
+    private static final long TIMER_CHECKPOINT_NANOS = 10_000_000_000L;
+    private ActionJournal.Session journal;
+    private String journaledRoomId;
+    private int journaledInventory;
+    private long[] journaledPuzzle;
+    private long lastTimerCheckpoint;
+    
+    // What happened in the game goes out on the bus; the game's own rules
+    // react through a gating subscriber polled on this thread
+    private final GameEventBus events = new GameEventBus();
+    private final GameEventBus.Subscriber gameRules;
+    private String enteredRoomId;
+    
+    // Leaderboard the result goes to at game over (optional)
+    private Leaderboard leaderboard;
+    private String contentSet;
+    private String playerName;
+    private int leaderboardRank;
+    
     public HollowmoreUI() {
         canvas = new Canvas(screenWidth, screenHeight);
         gc = canvas.getGraphicsContext2D();
         this.getChildren().add(canvas);
         
         gameManager = HollowmoreGameManager.getInstance();
+        stateTracker = new GameStateTracker(gameManager);
+        undoHistory = new UndoHistory(stateTracker);
         inventorySlots = new ArrayList<>();
+        gameRules = events.subscribe("game-rules", true, this::onGameEvent,
+            GameEventBus.Type.ITEM_COLLECTED, GameEventBus.Type.PUZZLE_SOLVED, GameEventBus.Type.ROOM_ENTERED);
         
         setupMouseHandlers();
         setupKeyHandlers();
@@ -53,33 +114,64 @@ public class HollowmoreUI extends Pane {
         canvas.setOnMouseMoved(this::handleMouseMove);
     }
     
+    private static class PendingInput {
+        final KeyCode key;       // null for a click
+        final double x, y;
+        
+        PendingInput(KeyCode key, double x, double y) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+        }
+    }
+    
     private void setupKeyHandlers() {
         this.setFocusTraversable(true);
-        this.setOnKeyPressed(e -> {
-            switch(e.getCode()) {
-                case ENTER:
-                    if (showingDialogue) {
-                        advanceDialogue();
-                    }
-                    break;
-                case ESCAPE:
-                    if (showingDialogue) {
-                        closeDialogue();
-                    }
-                    break;
-                case I:
-                    toggleInventory();
-                    break;
-                default:
-                    break;
-            }
-        });
+        this.setOnKeyPressed(e -> pendingInput.add(new PendingInput(e.getCode(), 0, 0)));
     }
     
+    private void applyKey(KeyCode code) {
+        switch(code) {
+            case ENTER:
+                if (showingDialogue) {
+                    advanceDialogue();
+                }
+                break;
+            case ESCAPE:
+                if (showingDialogue) {
+                    closeDialogue();
+                }
+                break;
+            case I:
+                toggleInventory();
+                break;
+            case Z:
+                if (!showingDialogue) {
+                    undoHistory.undo();
+                }
+                break;
+            case Y:
+                if (!showingDialogue) {
+                    undoHistory.redo();
+                }
+                break;
+            case F5:
+                quickSave();
+                break;
+            case F9:
+                quickLoad();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    // Rounded the way recordings store clicks, so a replay hits the same objects
     private void handleMouseClick(MouseEvent e) {
-        double x = e.getX();
-        double y = e.getY();
-        
+        pendingInput.add(new PendingInput(null, InputRecording.quantize(e.getX()), InputRecording.quantize(e.getY())));
+    }
+    
+    private void applyClick(double x, double y) {
         if (showingDialogue) {
             advanceDialogue();
             return;
@@ -121,13 +213,13 @@ public class HollowmoreUI extends Pane {
     
     private void handleObjectInteraction(InteractiveObject obj) {
         String type = obj.getType();
+        boolean wasLocked = obj instanceof ContainerObject && ((ContainerObject) obj).isLocked();
         
         switch(type) {
             case "COLLECTIBLE":
                 CollectibleObject collectible = (CollectibleObject) obj;
                 collectible.interact();
-                gameManager.addToInventory(obj.getObjectId());
-                checkLedgerPuzzleProgress();
+                collect(obj.getObjectId());
                 break;
                 
             case "CONTAINER":
@@ -137,18 +229,14 @@ public class HollowmoreUI extends Pane {
                     // Show code input prompt
                     promptForCode(container);
                 } else {
-                    container.interact();
-                    // Give items to player
-                    for (String itemId : container.getContainedItems()) {
-                        gameManager.addToInventory(itemId);
-                    }
+                    openContainer(container);
                 }
                 break;
                 
             case "CYCLIC":
                 CyclicObject cyclic = (CyclicObject) obj;
                 cyclic.interact();
-                checkPortraitPuzzle();
+                tryPortraitPuzzle();
                 break;
                 
             case "EXAMINE":
@@ -161,6 +249,58 @@ public class HollowmoreUI extends Pane {
                 obj.interact();
                 break;
         }
+        // Reactions land before the journal records what the interaction changed
+        gameRules.poll();
+        journalInteraction(obj, wasLocked);
+    }
+    
+    private void collect(String itemId) {
+        gameManager.addToInventory(itemId);
+        events.itemCollected(gameManager.getCurrentRoom().getRoomId(), itemId);
+    }
+    
+    // Give the items inside to the player
+    private void openContainer(ContainerObject container) {
+        container.interact();
+        events.containerOpened(gameManager.getCurrentRoom().getRoomId(), container.getObjectId());
+        for (String itemId : container.getContainedItems()) {
+            collect(itemId);
+        }
+    }
+    
+    private void solve(Object input) {
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle != null && gameManager.solvePuzzle(input)) {
+            events.puzzleSolved(gameManager.getCurrentRoom().getRoomId(), puzzle.getPuzzleId());
+        }
+    }
+    
+    /** The game's own reactions to its events, on the game thread. */
+    private void onGameEvent(GameEventBus.GameEvent event) {
+        switch (event.getType()) {
+            case ITEM_COLLECTED:
+                // Pages picked up in the room, not items out of a container
+                if (isRoomCollectible(event.getSubjectId())) {
+                    checkLedgerPuzzleProgress();
+                }
+                break;
+            case PUZZLE_SOLVED:
+                if (gameManager.getPuzzle(event.getSubjectId()) instanceof PortraitEyesPuzzle) {
+                    showDialogue("The portraits align! You hear a click from the safe.");
+                    unlockSafe();
+                }
+                queueDialogue(roomLines(event.getRoomId(), DialogueStore.ON_PUZZLE_SOLVED));
+                break;
+            case ROOM_ENTERED:
+                queueDialogue(roomLines(event.getRoomId(), DialogueStore.ON_ENTER));
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private boolean isRoomCollectible(String objectId) {
+        return ContentIndex.find(gameManager.getCurrentRoom(), objectId) instanceof CollectibleObject;
     }
     
     // Foyer Ledger Puzzle Logic
@@ -195,35 +335,27 @@ public class HollowmoreUI extends Pane {
         boolean unlocked = container.tryUnlock(code);
         
         if (unlocked) {
-            gameManager.solvePuzzle(code);
-            container.interact();
-            for (String itemId : container.getContainedItems()) {
-                gameManager.addToInventory(itemId);
-            }
+            solve(code);
+            openContainer(container);
             showDialogue("The credenza unlocks! You found items inside.");
         }
     }
     
-    // Portrait Puzzle Logic
-    private void checkPortraitPuzzle() {
-        Puzzle puzzle = gameManager.getCurrentPuzzle();
-        if (puzzle instanceof PortraitEyesPuzzle) {
-            PortraitEyesPuzzle portraitPuzzle = (PortraitEyesPuzzle) puzzle;
-            
-            boolean solved = gameManager.solvePuzzle(null);
-            if (solved) {
-                showDialogue("The portraits align! You hear a click from the safe.");
-                unlockSafe();
-            }
+    // Portrait Puzzle Logic: every turn of a portrait is an attempt
+    private void tryPortraitPuzzle() {
+        if (gameManager.getCurrentPuzzle() instanceof PortraitEyesPuzzle) {
+            solve(null);
         }
     }
     
     private void unlockSafe() {
         Room room = gameManager.getCurrentRoom();
-        for (InteractiveObject obj : room.getObjects()) {
-            if (obj.getObjectId().equals("hidden_safe")) {
-                ContainerObject safe = (ContainerObject) obj;
-                safe.unlock();
+        InteractiveObject obj = ContentIndex.find(room, "hidden_safe");
+        if (obj instanceof ContainerObject) {
+            ContainerObject safe = (ContainerObject) obj;
+            safe.unlock();
+            if (journal != null) {
+                journal.objectChanged(ActionJournal.UNLOCK, room.getRoomId(), safe);
             }
         }
     }
@@ -242,6 +374,36 @@ public class HollowmoreUI extends Pane {
         dialogueIndex = 0;
     }
     
+    // After whatever is already on screen
+    private void queueDialogue(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        if (showingDialogue) {
+            currentDialogue.addAll(lines);
+        } else {
+            showDialogue(lines);
+        }
+    }
+    
+    // From the room's dialogue file, or the lines inlined in its record
+    private List<String> roomLines(String roomId, String key) {
+        DialogueStore store = DialogueStore.getInstance();
+        if (roomId == null) {
+            return Collections.emptyList();
+        }
+        if (store.hasDialogue(roomId)) {
+            return store.getLines(roomId, key);
+        }
+        Room room = gameManager.getRoom(roomId);
+        if (room == null || room.getDialogue() == null) {
+            return Collections.emptyList();
+        }
+        return DialogueStore.ON_ENTER.equals(key) ? room.getDialogue().getOnEnter()
+            : DialogueStore.ON_PUZZLE_SOLVED.equals(key) ? room.getDialogue().getOnPuzzleSolved()
+            : Collections.emptyList();
+    }
+    
     private void advanceDialogue() {
         dialogueIndex++;
         if (dialogueIndex >= currentDialogue.size()) {
@@ -287,22 +449,289 @@ public class HollowmoreUI extends Pane {
                     return;
                 }
                 
-                long elapsed = now - lastUpdate;
-                if (elapsed >= 16_666_666) { // ~60 FPS
-                    update();
+                accumulated = Math.min(accumulated + now - lastUpdate, MAX_CATCH_UP_TICKS * TICK_NANOS);
+                lastUpdate = now;
+                if (accumulated >= TICK_NANOS) {
+                    while (accumulated >= TICK_NANOS && !gameManager.isGameOver()) {
+                        tick();
+                        accumulated -= TICK_NANOS;
+                    }
                     render();
-                    lastUpdate = now;
                 }
             }
         };
         gameLoop.start();
     }
     
+    /** One step: the queued clicks and keys, then the update. */
+    private void tick() {
+        for (PendingInput input : pendingInput) {
+            if (input.key == null) {
+                if (recorder != null) {
+                    recorder.click(input.x, input.y, 0);
+                }
+                applyClick(input.x, input.y);
+            } else {
+                if (recorder != null) {
+                    recorder.keyPressed(input.key.getCode());
+                }
+                applyKey(input.key);
+            }
+        }
+        pendingInput.clear();
+        update();
+        if (recorder != null) {
+            recorder.endTick();
+        }
+        tickCount++;
+    }
+    
+    /**
+     * Records clicks and keys from now on. Start it before the first tick of
+     * a freshly started game. The game timer runs on wall-clock time, so a
+     * replay only matches a recording that doesn't depend on running out of time.
+     */
+    public void startRecording(Path file) {
+        if (tickCount != 0) {
+            System.err.println("Recording must start before the first tick");
+            return;
+        }
+        try {
+            recorder = new InputRecorder(file, 0, TICK_NANOS, "hollowmore", null, 0, stateDigest());
+        } catch (IOException e) {
+            System.err.println("Error starting input recording: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.finish(stateDigest());
+            recorder = null;
+        }
+    }
+    
+    /** Replays a recording on a freshly started game, without rendering; returns the final state digest. */
+    public long replay(InputRecording recording) {
+        InputRecording.Cursor cursor = recording.cursor();
+        for (long t = 0; t < recording.getTickCount(); t++) {
+            for (InputRecording.Event event : cursor.eventsAt(t)) {
+                if (!event.isKey()) {
+                    pendingInput.add(new PendingInput(null, event.x, event.y));
+                } else if (event.isPressed()) {
+                    for (KeyCode code : KeyCode.values()) {
+                        if (code.getCode() == event.code) {
+                            pendingInput.add(new PendingInput(code, 0, 0));
+                            break;
+                        }
+                    }
+                }
+            }
+            tick();
+        }
+        return stateDigest();
+    }
+    
+    public long getTickCount() { return tickCount; }
+    
+    /** Hash of the room, its objects and puzzle, the inventory and the dialogue. */
+    public long stateDigest() {
+        long h = 17;
+        Room room = gameManager.getCurrentRoom();
+        if (room != null) {
+            h = h * 31 + room.getRoomId().hashCode();
+            for (InteractiveObject obj : room.getObjects()) {
+                ObjectState state = obj.captureState();
+                h = h * 31 + (state.visible ? 1 : 0);
+                h = h * 31 + Double.hashCode(state.x);
+                h = h * 31 + Double.hashCode(state.y);
+                h = h * 31 + state.flags;
+                h = h * 31 + state.index;
+                h = h * 31 + state.ref;
+            }
+        }
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle != null) {
+            h = h * 31 + Arrays.hashCode(puzzle.snapshotState());
+        }
+        h = h * 31 + gameManager.getInventory().hashCode();
+        h = h * 31 + (showingDialogue ? dialogueIndex + 1 : 0);
+        return h;
+    }
+    
+    public void setReloadService(ContentReloadService reloadService) {
+        this.reloadService = reloadService;
+    }
+    
+    public GameStateTracker getStateTracker() {
+        return stateTracker;
+    }
+    
+    public UndoHistory getUndoHistory() {
+        return undoHistory;
+    }
+    
+    /** Where audio, analytics, saving or networking subscribe to what happens in the game. */
+    public GameEventBus getEventBus() {
+        return events;
+    }
+    
+    public void setLeaderboard(Leaderboard leaderboard, String contentSet, String playerName) {
+        this.leaderboard = leaderboard;
+        this.contentSet = contentSet;
+        this.playerName = playerName;
+    }
+    
+    // Completion time is ticks played, so pauses and stalls don't count against the player
+    private void submitResult() {
+        int[] totals = new int[2];
+        stateTracker.current().forEachPuzzle((puzzleId, words) -> {
+            Puzzle puzzle = gameManager.getPuzzle(puzzleId);
+            if (puzzle != null) {
+                totals[0] += puzzle.getHintsRevealed();
+                totals[1] += puzzle.getAttemptsUsed();
+            }
+        });
+        long millis = tickCount * TICK_NANOS / 1_000_000;
+        leaderboardRank = leaderboard.submit(contentSet, playerName, gameManager.getEndingType(),
+            millis, totals[0], totals[1]);
+        System.out.println("Result recorded: rank " + leaderboardRank + " of " + leaderboard.size(contentSet));
+    }
+    
+    public void setSaveStore(SaveGameStore saveStore) {
+        this.saveStore = saveStore;
+    }
+    
+    public void setJournal(ActionJournal.Session journal) {
+        this.journal = journal;
+        Room room = gameManager.getCurrentRoom();
+        journaledRoomId = room != null ? room.getRoomId() : null;
+        journaledInventory = gameManager.getInventory().size();
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        journaledPuzzle = puzzle != null ? puzzle.snapshotState() : null;
+    }
+    
+    // Log what the interaction changed: the object, and the room's puzzle if it moved on
+    private void journalInteraction(InteractiveObject obj, boolean wasLocked) {
+        if (journal == null) {
+            return;
+        }
+        int type;
+        switch (obj.getType()) {
+            case "COLLECTIBLE": type = ActionJournal.COLLECT; break;
+            case "CONTAINER": type = wasLocked ? ActionJournal.UNLOCK : ActionJournal.OPEN; break;
+            case "CYCLIC": type = ActionJournal.CYCLE; break;
+            case "DRAGGABLE": type = ActionJournal.PLACE; break;
+            case "EXAMINE": type = ActionJournal.EXAMINE; break;
+            default: type = ActionJournal.OBJECT; break;
+        }
+        journal.objectChanged(type, gameManager.getCurrentRoom().getRoomId(), obj);
+        
+        Puzzle puzzle = gameManager.getCurrentPuzzle();
+        if (puzzle != null) {
+            long[] words = puzzle.snapshotState();
+            if (!Arrays.equals(words, journaledPuzzle)) {
+                journal.puzzleChanged(ActionJournal.SOLVE_ATTEMPT, puzzle);
+                journaledPuzzle = words;
+            }
+        }
+        journalInventory();
+    }
+    
+    private void journalInventory() {
+        List<String> inventory = gameManager.getInventory();
+        for (int i = journaledInventory; i < inventory.size(); i++) {
+            journal.inventoryAdded(inventory.get(i));
+        }
+        journaledInventory = inventory.size();
+    }
+    
+    // Room changes and the timer are picked up once a frame, wherever they came from
+    private void updateJournal() {
+        Room room = gameManager.getCurrentRoom();
+        if (room != null && !room.getRoomId().equals(journaledRoomId)) {
+            journal.transition(room.getRoomId());
+            journaledRoomId = room.getRoomId();
+            Puzzle puzzle = gameManager.getCurrentPuzzle();
+            journaledPuzzle = puzzle != null ? puzzle.snapshotState() : null;
+        }
+        journalInventory();
+        
+        long now = System.nanoTime();
+        if (now - lastTimerCheckpoint >= TIMER_CHECKPOINT_NANOS) {
+            journal.timer(gameManager.getTimeRemainingFormatted());
+            lastTimerCheckpoint = now;
+        }
+        if (gameManager.isGameOver()) {
+            journal.end();
+        } else if (journal.needsCheckpoint()) {
+            journal.checkpoint(stateTracker.current());
+        }
+    }
+    
+    // Hand over the current version; the store's thread copies, encodes and writes it
+    private void quickSave() {
+        if (saveStore == null) {
+            return;
+        }
+        saveStore.save(QUICK_SLOT, stateTracker.current())
+            .thenAccept(path -> System.out.println("Saved to " + path));
+    }
+    
+    private void quickLoad() {
+        if (saveStore == null || !saveStore.exists(QUICK_SLOT)) {
+            return;
+        }
+        try {
+            SaveSnapshot snapshot = saveStore.load(QUICK_SLOT);
+            int skipped = snapshot.apply(gameManager);
+            stateTracker.syncAll();
+            if (journal != null) {
+                // The journal carries on from the loaded state
+                journal.checkpoint(stateTracker.current());
+                setJournal(journal);
+            }
+            if (skipped > 0) {
+                System.out.println("Quick load: " + skipped + " saved entries no longer match the content");
+            }
+            showDialogue("Game loaded.");
+        } catch (Exception e) {
+            System.err.println("Error loading save: " + e.getMessage());
+            e.printStackTrace();
+            showDialogue("The save file could not be read.");
+        }
+    }
+    
     private void update() {
+        if (reloadService != null && reloadService.applyPending() > 0) {
+            stateStale = true;
+        }
         gameManager.updateTimer();
+        // Room changes are picked up here, wherever they came from
+        Room room = gameManager.getCurrentRoom();
+        if (room != null && !room.getRoomId().equals(enteredRoomId)) {
+            enteredRoomId = room.getRoomId();
+            events.roomEntered(enteredRoomId);
+        }
+        gameRules.poll();
+        if (stateStale) {
+            stateTracker.syncAll();
+            stateStale = false;
+        } else {
+            stateTracker.sync();
+        }
+        if (journal != null) {
+            updateJournal();
+        }
         
         if (gameManager.isGameOver()) {
-            gameLoop.stop();
+            stopRecording();
+            if (leaderboard != null && leaderboardRank == 0) {
+                submitResult();
+            }
+            if (gameLoop != null) {
+                gameLoop.stop();
+            }
         }
     }
     
@@ -468,6 +897,10 @@ public class HollowmoreUI extends Pane {
         gc.fillText(endingTitle, screenWidth/2 - 150, screenHeight/2);
         
         gc.setFont(Font.font("Arial", 20));
+        if (leaderboardRank > 0) {
+            gc.fillText("Rank #" + leaderboardRank + " of " + leaderboard.size(contentSet),
+                screenWidth/2 - 100, screenHeight/2 + 90);
+        }
         gc.fillText("Press ESC to exit", screenWidth/2 - 100, screenHeight/2 + 50);
     }
 }
\ No newline at end of file
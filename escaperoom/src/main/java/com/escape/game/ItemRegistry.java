@@ -0,0 +1,124 @@
+package com.escape.game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of every item in the loaded content.
+ * Each item id string is interned once to a dense int, and item metadata is
+ * kept in arrays indexed by that int. Objects, puzzles and inventories hold
+ * the int, so comparing items is an int compare and lookups are array reads.
+ */
+public class ItemRegistry {
+    public static final int NO_ITEM = -1;
+
+    private final ConcurrentHashMap<String, Integer> idsByItemId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> idsByName = new ConcurrentHashMap<>();
+
+    // Metadata columns, indexed by interned id
+    private String[] itemIds = new String[64];
+    private String[] names = new String[64];
+    private String[] types = new String[64];
+    private String[] descriptions = new String[64];
+    private String[] sprites = new String[64];
+    private Item[] items = new Item[64];
+    private volatile int count;
+
+    // Created on first use without locking every later call
+    private static class Holder {
+        static final ItemRegistry INSTANCE = new ItemRegistry();
+    }
+
+    public static ItemRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the int id for an item id string, assigning the next free one
+     * the first time it is seen. References can be interned before the item
+     * itself is registered.
+     */
+    public int intern(String itemId) {
+        if (itemId == null) {
+            return NO_ITEM;
+        }
+        Integer id = idsByItemId.get(itemId);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = idsByItemId.get(itemId);
+            if (id != null) {
+                return id;
+            }
+            int next = count;
+            ensureCapacity(next + 1);
+            itemIds[next] = itemId;
+            count = next + 1;
+            idsByItemId.put(itemId, next);
+            return next;
+        }
+    }
+
+    /** Registers item metadata, interning its id if needed. */
+    public synchronized int register(Item item) {
+        int id = intern(item.getItemId());
+        if (id == NO_ITEM) {
+            return NO_ITEM;
+        }
+        items[id] = item;
+        names[id] = item.getName();
+        types[id] = item.getType();
+        descriptions[id] = item.getDescription();
+        sprites[id] = item.getSprite();
+        if (item.getName() != null) {
+            idsByName.putIfAbsent(item.getName(), id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= itemIds.length) {
+            return;
+        }
+        int size = Math.max(needed, itemIds.length * 2);
+        itemIds = Arrays.copyOf(itemIds, size);
+        names = Arrays.copyOf(names, size);
+        types = Arrays.copyOf(types, size);
+        descriptions = Arrays.copyOf(descriptions, size);
+        sprites = Arrays.copyOf(sprites, size);
+        items = Arrays.copyOf(items, size);
+    }
+
+    // Lookups
+    public int idOf(String itemId) {
+        if (itemId == null) {
+            return NO_ITEM;
+        }
+        Integer id = idsByItemId.get(itemId);
+        return id != null ? id : NO_ITEM;
+    }
+
+    public int idOfName(String name) {
+        if (name == null) {
+            return NO_ITEM;
+        }
+        Integer id = idsByName.get(name);
+        return id != null ? id : NO_ITEM;
+    }
+
+    public String getItemId(int id) { return valid(id) ? itemIds[id] : null; }
+    public String getName(int id) { return valid(id) ? names[id] : null; }
+    public String getType(int id) { return valid(id) ? types[id] : null; }
+    public String getDescription(int id) { return valid(id) ? descriptions[id] : null; }
+    public String getSprite(int id) { return valid(id) ? sprites[id] : null; }
+    public Item getItem(int id) { return valid(id) ? items[id] : null; }
+
+    /** True if the id has registered metadata, not just an interned reference. */
+    public boolean isDefined(int id) { return valid(id) && items[id] != null; }
+    public int size() { return count; }
+
+    private boolean valid(int id) {
+        return id >= 0 && id < count;
+    }
+}
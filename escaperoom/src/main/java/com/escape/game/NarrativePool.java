@@ -0,0 +1,196 @@
+package com.escape.game;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Shared pool for narrative text (descriptions, examine text, evidence, hints).
+ * Each distinct string is stored once as Latin-1 or UTF-8 bytes inside large
+ * backing pages and referred to by an int handle. Text is decoded only when
+ * it is displayed. The pool only ever grows, so handles stay valid and can
+ * be read from any thread without locking: intern() fills in an entry and
+ * its bytes before bumping the volatile count, and readers check count
+ * before touching entries or pages.
+ */
+public class NarrativePool {
+    public static final int NONE = -1;
+
+    private static final int PAGE_SIZE = 1 << 20;   // 1 MB pages
+    private static final int MAX_LENGTH = (1 << 23) - 1;
+
+    // Entry layout: page (16 bits) | offset (24 bits) | length (23 bits) | latin1 (1 bit)
+    private byte[][] pages = new byte[1][];
+    private int pageCount;
+    private int pageUsed = PAGE_SIZE;   // forces a page on first append
+    private long[] entries = new long[256];
+    private volatile int count;
+
+    // Open-addressed hash table of handles for deduplication
+    private int[] table = new int[512];
+    private int[] hashes = new int[256];
+
+    private long storedBytes;
+    private long requestedChars;
+
+    public NarrativePool() {
+        Arrays.fill(table, NONE);
+    }
+
+    // Created on first use without locking every later call
+    private static class Holder {
+        static final NarrativePool INSTANCE = new NarrativePool();
+    }
+
+    public static NarrativePool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /** Stores the text if it isn't pooled yet and returns its handle. */
+    public synchronized int intern(String text) {
+        if (text == null) {
+            return NONE;
+        }
+        requestedChars += text.length();
+
+        boolean latin1 = isLatin1(text);
+        byte[] bytes = text.getBytes(latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Narrative text too long: " + bytes.length + " bytes");
+        }
+        int hash = hash(bytes, latin1);
+
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != NONE) {
+            int handle = table[slot];
+            if (hashes[handle] == hash && matches(handle, bytes, latin1)) {
+                return handle;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int handle = append(bytes, latin1);
+        hashes[handle] = hash;
+        table[slot] = handle;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return handle;
+    }
+
+    /** Decodes the text for a handle. */
+    public String get(int handle) {
+        if (handle == NONE) {
+            return null;
+        }
+        // Reading count first makes the entry and its page visible
+        int published = count;
+        if (handle < 0 || handle >= published) {
+            throw new IllegalArgumentException("Unknown narrative handle " + handle);
+        }
+        long e = entries[handle];
+        byte[] page = pages[page(e)];
+        return new String(page, offset(e), length(e),
+            latin1(e) ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /** Stored length in bytes. */
+    public int length(int handle) {
+        int published = count;
+        if (handle == NONE || handle < 0 || handle >= published) {
+            return 0;
+        }
+        return length(entries[handle]);
+    }
+
+    private int append(byte[] bytes, boolean latin1) {
+        int page;
+        int offset;
+        if (bytes.length > PAGE_SIZE) {
+            // Oversized text gets a page of its own
+            page = addPage(bytes.length);
+            offset = 0;
+            pageUsed = PAGE_SIZE;
+        } else {
+            if (pageUsed + bytes.length > PAGE_SIZE) {
+                addPage(PAGE_SIZE);
+                pageUsed = 0;
+            }
+            page = pageCount - 1;
+            offset = pageUsed;
+            pageUsed += bytes.length;
+        }
+        System.arraycopy(bytes, 0, pages[page], offset, bytes.length);
+        storedBytes += bytes.length;
+
+        int handle = count;
+        if (handle == entries.length) {
+            entries = Arrays.copyOf(entries, handle * 2);
+            hashes = Arrays.copyOf(hashes, handle * 2);
+        }
+        entries[handle] = ((long) page << 48) | ((long) offset << 24) | ((long) bytes.length << 1) | (latin1 ? 1 : 0);
+        count = handle + 1;   // publishes the entry to readers
+        return handle;
+    }
+
+    private int addPage(int size) {
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount * 2);
+        }
+        pages[pageCount] = new byte[size];
+        return pageCount++;
+    }
+
+    private boolean matches(int handle, byte[] bytes, boolean latin1) {
+        long e = entries[handle];
+        if (length(e) != bytes.length || latin1(e) != latin1) {
+            return false;
+        }
+        byte[] page = pages[page(e)];
+        int offset = offset(e);
+        return Arrays.equals(page, offset, offset + bytes.length, bytes, 0, bytes.length);
+    }
+
+    private void rehash() {
+        int[] fresh = new int[table.length * 2];
+        Arrays.fill(fresh, NONE);
+        int mask = fresh.length - 1;
+        for (int handle = 0; handle < count; handle++) {
+            int slot = hashes[handle] & mask;
+            while (fresh[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            fresh[slot] = handle;
+        }
+        table = fresh;
+    }
+
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, boolean latin1) {
+        int h = latin1 ? 1 : 2;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int page(long e) { return (int) (e >>> 48); }
+    private static int offset(long e) { return (int) ((e >>> 24) & 0xFFFFFF); }
+    private static int length(long e) { return (int) ((e >>> 1) & 0x7FFFFF); }
+    private static boolean latin1(long e) { return (e & 1) != 0; }
+
+    // Stats
+    public int size() { return count; }
+    public synchronized long getStoredBytes() { return storedBytes; }
+
+    /** Characters passed to intern, including duplicates. */
+    public synchronized long getRequestedChars() { return requestedChars; }
+}
@@ -0,0 +1,138 @@
+package com.escape.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loopback client for HollowmoreServer. Opens many sessions and leaves
+ * them connected, then drives commands through them for a while from a few
+ * threads, one command at a time per session, and reports throughput and
+ * round-trip latency.
+ *
+ * Usage: ServerLoadClient [port] [sessions] [seconds] [threads]
+ */
+public class ServerLoadClient {
+
+    private static final String[] SCRIPT = {"NEXT", "LOOK", "STATUS", "INV", "HINT", "PING", "INTERACT nothing_here"};
+
+    /** One open session. */
+    static class Connection {
+        final Socket socket;
+        final BufferedReader in;
+        final OutputStream out;
+        int step;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 512);
+            this.out = socket.getOutputStream();
+        }
+
+        String call(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            String reply = in.readLine();
+            if (reply == null) {
+                throw new IOException("server closed the session");
+            }
+            return reply;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : HollowmoreServer.DEFAULT_PORT;
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int threadCount = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        // Connect everything first; these sessions stay open and mostly idle
+        List<Connection> connections = new ArrayList<>(sessionCount);
+        long start = System.nanoTime();
+        for (int i = 0; i < sessionCount; i++) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket);
+            String greeting = connection.in.readLine();
+            if (greeting == null || !greeting.startsWith("OK")) {
+                throw new IOException("bad greeting: " + greeting);
+            }
+            connections.add(connection);
+        }
+        System.out.printf("Connected %d sessions in %d ms%n", sessionCount, (System.nanoTime() - start) / 1_000_000);
+
+        // Each thread walks its own share of the sessions
+        long[][] latencies = new long[threadCount][];
+        int[] counts = new int[threadCount];
+        int[] errors = new int[threadCount];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int n = 0;
+                int next = index;
+                try {
+                    while (System.nanoTime() < deadline) {
+                        Connection connection = connections.get(next);
+                        next += threadCount;
+                        if (next >= connections.size()) {
+                            next = index;
+                        }
+                        String command = SCRIPT[connection.step++ % SCRIPT.length];
+                        long before = System.nanoTime();
+                        String reply = connection.call(command);
+                        long took = System.nanoTime() - before;
+                        if (!reply.startsWith("OK") && !reply.startsWith("ERR")) {
+                            errors[index]++;
+                        }
+                        if (n == samples.length) {
+                            samples = Arrays.copyOf(samples, n * 2);
+                        }
+                        samples[n++] = took;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Client thread " + index + ": " + e.getMessage());
+                    errors[index]++;
+                }
+                latencies[index] = Arrays.copyOf(samples, n);
+                counts[index] = n;
+            }, "load-client-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        int failed = 0;
+        for (int t = 0; t < threadCount; t++) {
+            total += counts[t];
+            failed += errors[t];
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (long[] samples : latencies) {
+            System.arraycopy(samples, 0, all, pos, samples.length);
+            pos += samples.length;
+        }
+        Arrays.sort(all);
+        System.out.printf("%d commands in %d s = %.0f/s over %d sessions, %d errors%n",
+            total, seconds, total / (double) seconds, sessionCount, failed);
+        if (total > 0) {
+            System.out.printf("Round trip: p50 %.0f us, p99 %.0f us, max %.0f us%n",
+                all[total / 2] / 1000.0, all[(int) (total * 0.99)] / 1000.0, all[total - 1] / 1000.0);
+        }
+
+        for (Connection connection : connections) {
+            connection.socket.close();
+        }
+    }
+}
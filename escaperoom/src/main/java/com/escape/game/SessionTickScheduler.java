@@ -0,0 +1,220 @@
+package com.escape.game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Central clock for headless sessions, in place of a timer loop per game.
+ * Once per tick the active sessions are cut into batches and run on a
+ * fork/join pool with one worker per core; a worker that runs out of
+ * batches steals from the others, so a few slow sessions don't hold up
+ * the tick.
+ *
+ * Only active sessions are visited. A session leaves the schedule by
+ * returning false from tick() or through sleep() (dialogue, pause, game
+ * over) and comes back with wake(), so the cost of a tick follows the
+ * number of sessions that are playing, not the number connected.
+ *
+ * wake() and sleep() may be called from any thread; they take effect at
+ * the start of the next tick.
+ */
+public class SessionTickScheduler {
+
+    public static final long DEFAULT_TICK_NANOS = 100_000_000L;   // 10 Hz is plenty for a countdown
+    private static final int BATCH_SIZE = 256;
+
+    /** Something the scheduler steps. */
+    public interface Ticked {
+        /**
+         * One step, on a pool thread. Must not block for long; returns false
+         * to leave the schedule until the next wake().
+         */
+        boolean tick(long nowNanos);
+    }
+
+    /** Per-session bookkeeping, owned by the scheduler thread. */
+    public static final class Slot {
+        final Ticked session;
+        volatile boolean wanted;   // last wake() or sleep() wins
+        int index = -1;            // position in the active array, -1 when idle
+
+        public Slot(Ticked session) {
+            this.session = session;
+        }
+
+        public boolean isScheduled() { return index >= 0; }
+    }
+
+    private final long tickNanos;
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<Slot> changed = new ConcurrentLinkedQueue<>();
+    private Slot[] active = new Slot[1024];
+    private int activeCount;
+    private boolean[] keep = new boolean[1024];
+    private Thread clock;
+    private volatile boolean running;
+
+    // Stats
+    private volatile long ticks;
+    private volatile long sessionTicks;
+    private volatile long overruns;
+    private volatile long busyNanos;
+
+    public SessionTickScheduler() {
+        this(DEFAULT_TICK_NANOS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SessionTickScheduler(long tickNanos, int workers) {
+        this.tickNanos = tickNanos;
+        this.pool = new ForkJoinPool(workers);
+    }
+
+    public void start() {
+        running = true;
+        clock = new Thread(this::run, "session-ticks");
+        clock.setDaemon(true);
+        clock.start();
+    }
+
+    /** Stops the clock, letting a tick in progress finish, then the workers. */
+    public void stop() {
+        running = false;
+        if (clock != null && clock != Thread.currentThread()) {
+            clock.interrupt();
+            try {
+                // Shutting the pool down under a running tick would reject its batch
+                clock.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.shutdown();
+    }
+
+    /** Puts the session on the schedule, if it isn't already. */
+    public void wake(Slot slot) {
+        slot.wanted = true;
+        changed.add(slot);
+    }
+
+    /** Takes the session off the schedule; it costs nothing until woken. */
+    public void sleep(Slot slot) {
+        slot.wanted = false;
+        changed.add(slot);
+    }
+
+    // Fixed rate: each tick is due tickNanos after the last; a late tick doesn't queue up extras
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            tick(now);
+            busyNanos += System.nanoTime() - now;
+            next += tickNanos;
+            if (System.nanoTime() > next) {
+                overruns++;
+                next = System.nanoTime() + tickNanos;
+            }
+        }
+    }
+
+    private void tick(long now) {
+        applyChanges();
+        int count = activeCount;
+        if (count > 0) {
+            pool.invoke(new Batch(active, keep, 0, count, now));
+            // Drop the ones that went idle; keep[] was filled by the batch
+            for (int i = count - 1; i >= 0; i--) {
+                if (!keep[i]) {
+                    remove(active[i]);
+                }
+            }
+            sessionTicks += count;
+        }
+        ticks++;
+    }
+
+    private void applyChanges() {
+        Slot slot;
+        while ((slot = changed.poll()) != null) {
+            if (!slot.wanted) {
+                if (slot.index >= 0) {
+                    remove(slot);
+                }
+            } else if (slot.index < 0) {
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, activeCount * 2);
+                    keep = new boolean[activeCount * 2];
+                }
+                slot.index = activeCount;
+                active[activeCount++] = slot;
+            }
+        }
+    }
+
+    // Swap the last active session into the hole
+    private void remove(Slot slot) {
+        int i = slot.index;
+        Slot last = active[--activeCount];
+        active[i] = last;
+        last.index = i;
+        active[activeCount] = null;
+        slot.index = -1;
+    }
+
+    /** Steps a range of the active array, halving until it is one batch. */
+    @SuppressWarnings("serial")
+    private static class Batch extends RecursiveAction {
+        private final Slot[] slots;
+        private final boolean[] keep;
+        private final int from, to;
+        private final long now;
+
+        Batch(Slot[] slots, boolean[] keep, int from, int to, long now) {
+            this.slots = slots;
+            this.keep = keep;
+            this.from = from;
+            this.to = to;
+            this.now = now;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    boolean stay;
+                    try {
+                        stay = slots[i].session.tick(now);
+                    } catch (Exception e) {
+                        System.err.println("Session tick failed: " + e);
+                        stay = false;
+                    }
+                    keep[i] = stay;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Batch(slots, keep, from, mid, now), new Batch(slots, keep, mid, to, now));
+        }
+    }
+
+    // Stats
+    public int getActiveCount() { return activeCount; }
+    public long getTicks() { return ticks; }
+    public long getSessionTicks() { return sessionTicks; }
+    public long getOverruns() { return overruns; }
+    public long getTickNanos() { return tickNanos; }
+
+    /** Share of wall time spent ticking since start, 0 to 1. */
+    public double getBusyRatio() {
+        long t = ticks;
+        return t == 0 ? 0 : busyNanos / (double) (t * tickNanos);
+    }
+}
@@ -0,0 +1,179 @@
+package com.escape.game;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel for game timers: four levels of 64 buckets,
+ * each level's bucket spanning a whole turn of the level below. A timer
+ * goes into the lowest level whose span covers its delay and is moved
+ * down a level each time the wheel below completes a turn, so it is
+ * touched at most four times however far out it is due.
+ *
+ * Timers are intrusive list nodes, so schedule() and cancel() are O(1)
+ * and allocate nothing. advance() detaches the bucket that comes due as a
+ * whole and fires it as one batch.
+ *
+ * Time is in ticks of whatever clock calls advance(). Nothing happens
+ * between calls, so a wheel driven by a game clock stops while the game
+ * is paused. Not thread-safe: one owner schedules, cancels and advances.
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SIZE = 1 << BITS;
+    private static final int MASK = SIZE - 1;
+    private static final int LEVELS = 4;
+    /** Delays at or past this are parked in the top level and re-filed as they come closer. */
+    public static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    /** A pending timer. Reusable: it can be scheduled again once it has fired or been cancelled. */
+    public abstract static class Timer {
+        long deadline;
+        Timer prev, next;
+        int bucket = -1;         // level * SIZE + slot while scheduled, FIRING in a due batch, -1 otherwise
+
+        /** Called from advance() when the timer comes due. */
+        protected abstract void expire(long now);
+
+        public boolean isScheduled() { return bucket != -1; }
+        public long getDeadline() { return deadline; }
+    }
+
+    private static final int FIRING = -2;
+
+    private final Timer[] buckets = new Timer[LEVELS * SIZE];
+    private Timer[] firing = new Timer[16];
+    private long now;
+    private int pending;
+
+    // Stats
+    private long fired;
+
+    public long now() { return now; }
+    public int getPendingCount() { return pending; }
+    public long getFiredCount() { return fired; }
+
+    /**
+     * Fires the timer after delay ticks; a delay under one fires on the
+     * next tick. Re-schedules it if it is already pending.
+     */
+    public void schedule(Timer timer, long delay) {
+        if (timer.bucket >= 0) {
+            unlink(timer);
+            pending--;
+        }
+        timer.deadline = now + Math.max(1, delay);
+        file(timer);
+        pending++;
+    }
+
+    /** Returns false if the timer wasn't pending. */
+    public boolean cancel(Timer timer) {
+        if (timer.bucket == FIRING) {
+            timer.bucket = -1;      // due in the running batch; it won't fire now
+            return true;
+        }
+        if (timer.bucket < 0) {
+            return false;
+        }
+        unlink(timer);
+        pending--;
+        return true;
+    }
+
+    /** Ticks left until the timer fires, or -1 if it isn't pending. */
+    public long remaining(Timer timer) {
+        return timer.bucket != -1 ? Math.max(0, timer.deadline - now) : -1;
+    }
+
+    /** Moves the clock forward, firing everything that comes due; returns how many fired. */
+    public int advance(long ticks) {
+        int count = 0;
+        for (long i = 0; i < ticks; i++) {
+            count += step();
+        }
+        return count;
+    }
+
+    private int step() {
+        now++;
+        // When a level completes a turn, the next bucket up is re-filed into the levels below
+        for (int level = 1; level < LEVELS && (now & ((1L << (BITS * level)) - 1)) == 0; level++) {
+            cascade(level * SIZE + (int) ((now >>> (BITS * level)) & MASK));
+        }
+        int index = (int) (now & MASK);
+        Timer t = buckets[index];
+        if (t == null) {
+            return 0;
+        }
+        buckets[index] = null;
+
+        // Take the batch out of the list first: expire() may cancel or re-schedule any of it
+        int count = 0;
+        while (t != null) {
+            if (count == firing.length) {
+                firing = Arrays.copyOf(firing, count * 2);
+            }
+            firing[count++] = t;
+            Timer next = t.next;
+            t.prev = t.next = null;
+            t.bucket = FIRING;
+            t = next;
+        }
+        pending -= count;
+        int expired = 0;
+        for (int i = 0; i < count; i++) {
+            Timer timer = firing[i];
+            firing[i] = null;
+            if (timer.bucket == FIRING) {   // not cancelled or re-scheduled by an earlier one
+                timer.bucket = -1;
+                timer.expire(now);
+                expired++;
+            }
+        }
+        fired += expired;
+        return expired;
+    }
+
+    private void cascade(int bucketIndex) {
+        Timer t = buckets[bucketIndex];
+        buckets[bucketIndex] = null;
+        while (t != null) {
+            Timer next = t.next;
+            t.prev = t.next = null;
+            file(t);
+            t = next;
+        }
+    }
+
+    private void file(Timer timer) {
+        long delta = timer.deadline - now;
+        long at = delta < MAX_SPAN ? timer.deadline : now + MAX_SPAN - 1;
+        int level = 0;
+        while (level < LEVELS - 1 && (at - now) >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        int index = level * SIZE + (int) ((at >>> (BITS * level)) & MASK);
+        timer.bucket = index;
+        Timer head = buckets[index];
+        timer.next = head;
+        timer.prev = null;
+        if (head != null) {
+            head.prev = timer;
+        }
+        buckets[index] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            buckets[timer.bucket] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = timer.next = null;
+        timer.bucket = -1;
+    }
+}
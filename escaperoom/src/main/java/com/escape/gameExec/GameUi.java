@@ -1,5 +1,17 @@
 package com.escape.gameExec;
 
+import com.escape.data.ContentReloadService;
+import com.escape.data.InputRecorder;
+import com.escape.data.InputRecording;
+import com.escape.data.PlayerProfile;
+import com.escape.data.ProfileStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import javafx.animation.AnimationTimer;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
@@ -40,18 +52,42 @@ public class GameUi extends Pane {
     public int pauseState = 2;
     public int dialogueState = 3;
     
-    // Animation timer for game loop
+    // Animation timer for game loop; the simulation steps in fixed ticks
     private AnimationTimer gameTimer;
     private long lastUpdate = 0;
-    private final long FRAME_TIME = 1_000_000_000 / 60; // 60 FPS
+    private long accumulated = 0;
+    public static final long FRAME_TIME = 1_000_000_000 / 60; // 60 FPS
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private long tickCount;
+    
+    // Input is queued by the event handlers and applied at the start of the next tick
+    private final List<KeyInput> pendingKeys = new ArrayList<>();
+    private InputRecorder recorder;
+    private final boolean headless;
+    
+    // Map hot-reload (optional)
+    private ContentReloadService reloadService;
+    
+    // Profile the player's position is loaded from and saved back to (optional)
+    private ProfileStore profileStore;
+    private PlayerProfile profile;
     
     public GameUi() {
-        // Create canvas
-        canvas = new Canvas(screenWidth, screenHeight);
-        gc = canvas.getGraphicsContext2D();
+        this(false);
+    }
+    
+    /** A headless game has no canvas and loads no images; it only simulates, for replays. */
+    public GameUi(boolean headless) {
+        this.headless = headless;
         
-        // Add canvas to pane
-        this.getChildren().add(canvas);
+        if (!headless) {
+            // Create canvas
+            canvas = new Canvas(screenWidth, screenHeight);
+            gc = canvas.getGraphicsContext2D();
+            
+            // Add canvas to pane
+            this.getChildren().add(canvas);
+        }
         
         // Initialize game components
         keyH = new KeyHandler(this);
@@ -72,9 +108,32 @@ public class GameUi extends Pane {
         this.setFocusTraversable(true);
     }
     
-    private void handleKeyPressed(KeyEvent e) {
-        KeyCode code = e.getCode();
+    private static class KeyInput {
+        final KeyCode code;
+        final boolean pressed;
         
+        KeyInput(KeyCode code, boolean pressed) {
+            this.code = code;
+            this.pressed = pressed;
+        }
+    }
+    
+    private static final Map<Integer, KeyCode> KEY_CODES = new HashMap<>();
+    static {
+        for (KeyCode code : KeyCode.values()) {
+            KEY_CODES.putIfAbsent(code.getCode(), code);
+        }
+    }
+    
+    private void handleKeyPressed(KeyEvent e) {
+        pendingKeys.add(new KeyInput(e.getCode(), true));
+    }
+    
+    private void handleKeyReleased(KeyEvent e) {
+        pendingKeys.add(new KeyInput(e.getCode(), false));
+    }
+    
+    private void applyKeyPressed(KeyCode code) {
         if (gameState == playState) {
             if (code == KeyCode.W) keyH.upPressed = true;
             if (code == KeyCode.S) keyH.downPressed = true;
@@ -100,8 +159,7 @@ public class GameUi extends Pane {
         }
     }
     
-    private void handleKeyReleased(KeyEvent e) {
-        KeyCode code = e.getCode();
+    private void applyKeyReleased(KeyCode code) {
         if (code == KeyCode.W) keyH.upPressed = false;
         if (code == KeyCode.S) keyH.downPressed = false;
         if (code == KeyCode.A) keyH.leftPressed = false;
@@ -122,11 +180,16 @@ public class GameUi extends Pane {
                     return;
                 }
                 
-                long elapsed = now - lastUpdate;
-                if (elapsed >= FRAME_TIME) {
-                    update();
+                // Fixed timestep: run as many ticks as real time asks for, but
+                // don't try to catch up more than a few after a stall
+                accumulated = Math.min(accumulated + now - lastUpdate, MAX_CATCH_UP_TICKS * FRAME_TIME);
+                lastUpdate = now;
+                if (accumulated >= FRAME_TIME) {
+                    while (accumulated >= FRAME_TIME) {
+                        tick();
+                        accumulated -= FRAME_TIME;
+                    }
                     render();
-                    lastUpdate = now;
                 }
             }
         };
@@ -137,9 +200,147 @@ public class GameUi extends Pane {
         if (gameTimer != null) {
             gameTimer.stop();
         }
+        stopRecording();
+        saveProfile();
+    }
+    
+    /**
+     * Puts the player where their profile left them, or creates the profile
+     * if there is none, and saves it back when the game stops. Call it after
+     * setupGame() and before the first tick.
+     */
+    public void loadProfile(ProfileStore profileStore, String username) throws IOException {
+        PlayerProfile saved = profileStore.findByUsername(username);
+        if (saved != null) {
+            player.worldX = saved.getWorldX();
+            player.worldY = saved.getWorldY();
+            player.speed = saved.getSpeed();
+            player.direction = saved.getDirection();
+        } else {
+            saved = new PlayerProfile(UUID.randomUUID().toString(), username);
+        }
+        this.profileStore = profileStore;
+        this.profile = saved;
+    }
+    
+    /** Writes the player's position and movement to their profile. */
+    public void saveProfile() {
+        if (profileStore == null) {
+            return;
+        }
+        profile.setPosition(player.worldX, player.worldY);
+        profile.setSpeed(player.speed);
+        profile.setDirection(player.direction);
+        profile.setSolidArea((int) player.solidArea.getMinX(), (int) player.solidArea.getMinY(),
+            (int) player.solidArea.getWidth(), (int) player.solidArea.getHeight());
+        profile.setCollisionOn(player.collisionOn);
+        try {
+            profileStore.save(profile);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error saving profile: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /** One simulation step: the queued input, then the update. */
+    private void tick() {
+        if (recorder != null && reloadService != null && reloadService.hasPending()) {
+            // A reload isn't input, so a replay couldn't reproduce what follows
+            System.out.println("Content reloaded; input recording ends here");
+            stopRecording();
+        }
+        for (KeyInput input : pendingKeys) {
+            if (recorder != null) {
+                if (input.pressed) {
+                    recorder.keyPressed(input.code.getCode());
+                } else {
+                    recorder.keyReleased(input.code.getCode());
+                }
+            }
+            if (input.pressed) {
+                applyKeyPressed(input.code);
+            } else {
+                applyKeyReleased(input.code);
+            }
+        }
+        pendingKeys.clear();
+        update();
+        if (recorder != null) {
+            recorder.endTick();
+        }
+        tickCount++;
+    }
+    
+    /**
+     * Starts recording input to a file. Call it after setupGame() and before
+     * the first tick: the replay starts from a freshly set up game.
+     */
+    public void startRecording(Path file) {
+        if (tickCount != 0) {
+            System.err.println("Recording must start before the first tick");
+            return;
+        }
+        try {
+            recorder = new InputRecorder(file, 0, FRAME_TIME, "gameExec",
+                tileM.getCurrentMapPath(), tileM.getMapHash(), stateDigest());
+        } catch (IOException e) {
+            System.err.println("Error starting input recording: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.finish(stateDigest());
+            recorder = null;
+        }
+    }
+    
+    /**
+     * Replays a recording from a freshly set up game as fast as it can,
+     * without rendering, and returns the final state digest. It matches
+     * the recording's when the game behaved the same as when recorded.
+     */
+    public long replay(InputRecording recording) {
+        InputRecording.Cursor cursor = recording.cursor();
+        for (long t = 0; t < recording.getTickCount(); t++) {
+            for (InputRecording.Event event : cursor.eventsAt(t)) {
+                KeyCode code = KEY_CODES.get(event.code);
+                if (event.isKey() && code != null) {
+                    pendingKeys.add(new KeyInput(code, event.isPressed()));
+                }
+            }
+            tick();
+        }
+        return stateDigest();
+    }
+    
+    /** Hash of everything the simulation decides: state, position, dialogue and the map. */
+    public long stateDigest() {
+        long h = 17;
+        h = h * 31 + gameState;
+        h = h * 31 + player.worldX;
+        h = h * 31 + player.worldY;
+        h = h * 31 + player.direction.hashCode();
+        h = h * 31 + ui.currentDialogueIndex;
+        h = h * 31 + (keyH.upPressed ? 1 : 0) + (keyH.downPressed ? 2 : 0)
+            + (keyH.leftPressed ? 4 : 0) + (keyH.rightPressed ? 8 : 0);
+        h = h * 31 + tileM.getMapHash();
+        return h;
+    }
+    
+    public boolean isHeadless() { return headless; }
+    public long getTickCount() { return tickCount; }
+    
+    public void setReloadService(ContentReloadService reloadService) {
+        this.reloadService = reloadService;
+        reloadService.setTileManager(tileM);
     }
     
     private void update() {
+        if (reloadService != null) {
+            reloadService.applyPending();
+        }
         if (gameState == playState) {
             player.update();
         }
@@ -0,0 +1,123 @@
+package com.escape.gameExec;
+
+import com.escape.data.HollowmoreStreamLoader;
+import com.escape.data.InputRecording;
+import com.escape.game.HollowmoreGameManager;
+import com.escape.game.HollowmoreUI;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays an input recording without a window, as fast as the simulation
+ * runs, and checks the game ends in the recorded state. Exits with 1 on a
+ * mismatch, so recordings can serve as regression tests; the ticks/s it
+ * prints make them benchmarks too. The recording's source picks the engine:
+ * "gameExec" replays on GameUi over a map file, "hollowmore" on HollowmoreUI
+ * over a content file started in the foyer.
+ *
+ * Usage: HeadlessReplay <recording> [map or content file] [runs]
+ */
+public class HeadlessReplay {
+
+    private static final String GAME_EXEC = "gameExec";
+    private static final String HOLLOWMORE = "hollowmore";
+    private static final String HOLLOWMORE_CONTENT = "json/hollowmore.json";
+
+    /** A freshly set up game of either engine. */
+    private interface Game {
+        long stateDigest();
+        long replay(InputRecording recording);
+        long getTickCount();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: HeadlessReplay <recording> [map or content file] [runs]");
+            System.exit(2);
+        }
+        InputRecording recording = InputRecording.read(Paths.get(args[0]));
+        Path contentFile = args.length > 1 ? Paths.get(args[1]) : null;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        String source = recording.getSource();
+        if (!GAME_EXEC.equals(source) && !HOLLOWMORE.equals(source)) {
+            System.err.println("Can't replay a recording from " + source);
+            System.exit(2);
+        }
+        System.out.println("Recording from " + source + ": " + recording.getTickCount()
+            + " ticks, " + recording.getInputTicks() + " with input, map " + recording.getContentId());
+
+        boolean ok = true;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            Game game = HOLLOWMORE.equals(source)
+                ? setupHollowmore(contentFile)
+                : setupGameExec(recording, contentFile);
+            if (game.stateDigest() != recording.getStartDigest()) {
+                System.err.println("Start state differs from the recorded one");
+            }
+
+            long start = System.nanoTime();
+            long digest;
+            try {
+                digest = game.replay(recording);
+            } catch (RuntimeException e) {
+                // A diverged replay can walk the player somewhere the recording never went
+                System.out.println("Run " + (run + 1) + ": FAILED at tick " + game.getTickCount() + ": " + e);
+                ok = false;
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+
+            if (digest != recording.getFinalDigest()) {
+                ok = false;
+                System.out.println("Run " + (run + 1) + ": MISMATCH, final state " + Long.toHexString(digest)
+                    + ", recorded " + Long.toHexString(recording.getFinalDigest()));
+            }
+        }
+
+        if (best == Long.MAX_VALUE) {
+            System.exit(1);
+        }
+        double seconds = best / 1e9;
+        double gameSeconds = recording.getTickCount() * recording.getTickNanos() / 1e9;
+        System.out.printf("%s: %d ticks in %.2f ms, %.0f ticks/s, %.0fx real time%n",
+            ok ? "OK" : "MISMATCH", recording.getTickCount(), best / 1e6,
+            recording.getTickCount() / seconds, gameSeconds / seconds);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static Game setupGameExec(InputRecording recording, Path mapFile) throws IOException {
+        GameUi game = new GameUi(true);
+        if (mapFile != null) {
+            game.tileM.reloadMap(mapFile);
+        }
+        if (game.tileM.getMapHash() != recording.getContentHash()) {
+            System.err.println("Map differs from the one recorded on; the replay will likely diverge");
+        }
+        game.setupGame();
+        return new Game() {
+            public long stateDigest() { return game.stateDigest(); }
+            public long replay(InputRecording r) { return game.replay(r); }
+            public long getTickCount() { return game.getTickCount(); }
+        };
+    }
+
+    /** Reloads the content every run, so each replay starts from a fresh game like HollowmoreMain's. */
+    private static Game setupHollowmore(Path contentFile) {
+        HollowmoreGameManager gameManager = HollowmoreGameManager.getInstance();
+        HollowmoreStreamLoader.loadGameData(gameManager,
+            contentFile != null ? contentFile.toString() : HOLLOWMORE_CONTENT);
+        gameManager.startGame("foyer");
+        HollowmoreUI game = new HollowmoreUI();
+        return new Game() {
+            public long stateDigest() { return game.stateDigest(); }
+            public long replay(InputRecording r) { return game.replay(r); }
+            public long getTickCount() { return game.getTickCount(); }
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package com.escape.gameExec;
 
+import com.escape.data.ProfileStore;
+import java.io.IOException;
+import java.nio.file.Paths;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -11,6 +14,9 @@ import javafx.stage.Stage;
 
 public class MenuPanel extends VBox {
     
+    private static final String USERS_JSON = "json/users.json";
+    private static final String DEFAULT_PLAYER = "Player1";
+    
     public MenuPanel(Stage stage) {
         // Set background color
         this.setStyle("-fx-background-color: #2b2b2b;");
@@ -36,10 +42,52 @@ public class MenuPanel extends VBox {
             stage.setScene(gameScene);
             gamePanel.requestFocus();
             gamePanel.setupGame();
+            
+            // -Descape.record=<file> records this run's input for HeadlessReplay
+            String recordTo = System.getProperty("escape.record");
+            if (recordTo != null) {
+                gamePanel.startRecording(Paths.get(recordTo));
+            }
+            // A replay starts from the default position, so recorded runs skip the profile
+            ProfileStore profiles = recordTo == null ? openProfile(gamePanel) : null;
+            stage.setOnCloseRequest(close -> {
+                gamePanel.stopGameThread();
+                if (profiles != null) {
+                    try {
+                        profiles.close();
+                    } catch (IOException ex) {
+                        System.err.println("Error closing profile store: " + ex.getMessage());
+                    }
+                }
+            });
             gamePanel.startGameThread();
         });
         
         // Add components
         this.getChildren().addAll(title, startButton);
     }
+    
+    /**
+     * Opens the profile store, importing json/users.json the first time, and
+     * loads the player's profile; -Descape.player=<name> picks the player.
+     * Returns null if the store can't be opened, and the game runs without it.
+     */
+    private static ProfileStore openProfile(GameUi gamePanel) {
+        String username = System.getProperty("escape.player", System.getProperty("user.name", DEFAULT_PLAYER));
+        try {
+            ProfileStore profiles = ProfileStore.openWithImport(Paths.get(ProfileStore.DEFAULT_DIRECTORY),
+                Paths.get(USERS_JSON));
+            try {
+                gamePanel.loadProfile(profiles, username);
+            } catch (IOException e) {
+                profiles.close();
+                throw e;
+            }
+            return profiles;
+        } catch (Exception e) {
+            System.err.println("Error opening player profiles: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -24,7 +24,9 @@ public class Player extends Entity {
         solidArea = new Rectangle2D(0, 0, gp.tileSize - 16, gp.tileSize - 16);
         
         setDefaultValues();
-        loadSprites();
+        if (!gp.isHeadless()) {
+            loadSprites();
+        }
     }
     
     public void setDefaultValues() {
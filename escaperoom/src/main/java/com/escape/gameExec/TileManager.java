@@ -3,14 +3,19 @@ package com.escape.gameExec;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class TileManager {
     GameUi gp;
     public Tile[] tile;
     public int mapTileNum[][];
     
+    private String currentMapPath;
+    
     public TileManager(GameUi gp) {
         this.gp = gp;
         tile = new Tile[10];
@@ -21,54 +26,93 @@ public class TileManager {
     }
     
     public void getTileImage() {
-        try {
-            tile[0] = new Tile();
-            tile[0].image = new Image(getClass().getResourceAsStream("/tiles/newgrass.png"));
-            tile[0].collision = false;
-            
-            tile[1] = new Tile();
-            tile[1].image = new Image(getClass().getResourceAsStream("/tiles/purble.png"));
-            tile[1].collision = false;
-            
-            tile[2] = new Tile();
-            tile[2].image = new Image(getClass().getResourceAsStream("/tiles/goldblock.png"));
-            tile[2].collision = false;
-            
-            tile[3] = new Tile();
-            tile[3].image = new Image(getClass().getResourceAsStream("/tiles/barrier.png"));
-            tile[3].collision = true;
-        } catch(Exception e) {
-            e.printStackTrace();
+        tile[0] = newTile("/tiles/newgrass.png", false);
+        tile[1] = newTile("/tiles/purble.png", false);
+        tile[2] = newTile("/tiles/goldblock.png", false);
+        tile[3] = newTile("/tiles/barrier.png", true);
+    }
+    
+    // Headless games only need the collision flags
+    private Tile newTile(String imagePath, boolean collision) {
+        Tile t = new Tile();
+        t.collision = collision;
+        if (!gp.isHeadless()) {
+            try {
+                t.image = new Image(getClass().getResourceAsStream(imagePath));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
         }
+        return t;
     }
     
     public void loadMap(String mapPath) {
+        currentMapPath = mapPath;
         try {
             InputStream is = getClass().getResourceAsStream(mapPath);
             BufferedReader br = new BufferedReader(new InputStreamReader(is));
+            readMap(br, mapTileNum);
+            br.close();
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void readMap(BufferedReader br, int[][] target) throws IOException {
+        int col = 0;
+        int row = 0;
+        
+        while(col < gp.maxWorldCol && row < gp.maxWorldRow) {
+            String line = br.readLine();
+            if (line == null) {
+                break;
+            }
             
-            int col = 0;
-            int row = 0;
+            String numbers[] = line.trim().split("\\s+");
+            while(col < gp.maxWorldCol && col < numbers.length) {
+                target[col][row] = Integer.parseInt(numbers[col]);
+                col++;
+            }
             
-            while(col < gp.maxWorldCol && row < gp.maxWorldRow) {
-                String line = br.readLine();
-                
-                while(col < gp.maxWorldCol) {
-                    String numbers[] = line.split(" ");
-                    int num = Integer.parseInt(numbers[col]);
+            col = 0;
+            row++;
+        }
+    }
+    
+    /**
+     * Re-reads a map file from disk and applies only the tiles that changed.
+     * Returns the number of changed tiles; draw() picks them up next frame.
+     */
+    public int reloadMap(Path mapFile) throws IOException {
+        int[][] fresh = new int[gp.maxWorldCol][gp.maxWorldRow];
+        try (BufferedReader br = Files.newBufferedReader(mapFile)) {
+            readMap(br, fresh);
+        }
+        
+        int changed = 0;
+        for (int col = 0; col < gp.maxWorldCol; col++) {
+            for (int row = 0; row < gp.maxWorldRow; row++) {
+                int num = fresh[col][row];
+                if (mapTileNum[col][row] != num && num >= 0 && num < tile.length && tile[num] != null) {
                     mapTileNum[col][row] = num;
-                    col++;
-                }
-                
-                if(col == gp.maxWorldCol) {
-                    col = 0;
-                    row++;
+                    changed++;
                 }
             }
-            br.close();
-        } catch(Exception e) {
-            e.printStackTrace();
         }
+        return changed;
+    }
+    
+    public String getCurrentMapPath() { return currentMapPath; }
+    
+    /** Hash of the tiles now loaded, so a replay can check it runs on the same map. */
+    public long getMapHash() {
+        long h = 17;
+        for (int[] column : mapTileNum) {
+            for (int num : column) {
+                h = h * 31 + num;
+            }
+        }
+        return h;
     }
     
     public void draw(GraphicsContext gc) {
@@ -1,5 +1,7 @@
 package com.escape.gameExec;
 
+import com.escape.data.DialogueStore;
+import java.util.List;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -7,6 +9,10 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.shape.StrokeLineJoin;
 
 public class UI {
+    // Intro room and its dialogue file, as in rooms.json
+    private static final String INTRO_ROOM = "room_entrance";
+    private static final String INTRO_FILE = "intro.txt";
+
     GameUi gp;
     Font arial_40, arial_80B;
     public boolean messageOn = false;
@@ -38,10 +44,16 @@ public class UI {
     }
     
     public void setDialogue() {
-        dialogues[0] = "Welcome to the Escape Room";
-        dialogues[1] = "Make sure to have fun";
-        dialogues[2] = "Now go and escape!";
-        dialogues[3] = "Ciao!";
+        DialogueStore store = DialogueStore.getInstance();
+        store.registerRoom(INTRO_ROOM, INTRO_FILE);
+        List<String> lines = store.getLines(INTRO_ROOM, DialogueStore.ON_ENTER);
+        dialogues = new String[Math.max(1, lines.size())];
+        for (int i = 0; i < lines.size(); i++) {
+            dialogues[i] = lines.get(i);
+        }
+        if (lines.isEmpty()) {
+            dialogues[0] = "Welcome to the Escape Room";
+        }
         currentDialogueIndex = 0;
         currentText = dialogues[currentDialogueIndex];
     }
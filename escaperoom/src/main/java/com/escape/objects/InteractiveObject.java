@@ -1,11 +1,14 @@
 package com.escape.objects;
 
+import com.escape.game.ItemRegistry;
+import com.escape.game.NarrativePool;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public abstract class InteractiveObject {
+public abstract class InteractiveObject implements Cloneable {
     protected String objectId;
     protected String name;
     protected String type;
@@ -14,7 +17,7 @@ public abstract class InteractiveObject {
     protected String sprite;
     protected Image image;
     protected boolean visible;
-    protected String description;
+    protected int descriptionRef = NarrativePool.NONE;  // handle into the narrative pool
     
     public InteractiveObject(String objectId, String name, String type, 
                            double x, double y, String sprite) {
@@ -65,17 +68,60 @@ public abstract class InteractiveObject {
     public double getX() { return x; }
     public double getY() { return y; }
     public boolean isVisible() { return visible; }
-    public String getDescription() { return description; }
+    public String getDescription() { return NarrativePool.getInstance().get(descriptionRef); }
     
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) { this.descriptionRef = NarrativePool.getInstance().intern(description); }
     public void setVisible(boolean visible) { this.visible = visible; }
     public void setPosition(double x, double y) { this.x = x; this.y = y; }
+    
+    // Mutable state, subclasses add their own fields
+    public ObjectState captureState() {
+        ObjectState state = new ObjectState();
+        state.visible = visible;
+        state.x = x;
+        state.y = y;
+        return state;
+    }
+    
+    public void restoreState(ObjectState state) {
+        visible = state.visible;
+        x = state.x;
+        y = state.y;
+    }
+    
+    /**
+     * A copy for another game. The authored definition (text, image, codes,
+     * contents) is shared, so it must not be changed once copies exist; the
+     * player state is the copy's own.
+     */
+    public InteractiveObject copy() {
+        try {
+            return (InteractiveObject) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Copies the authored definition (text, sprite, codes, ...) from a freshly
+     * loaded copy of this object, leaving player progress untouched.
+     */
+    public void copyDefinitionFrom(InteractiveObject other) {
+        name = other.name;
+        descriptionRef = other.descriptionRef;
+        x = other.x;
+        y = other.y;
+        if (sprite == null ? other.sprite != null : !sprite.equals(other.sprite)) {
+            sprite = other.sprite;
+            loadImage();
+        }
+    }
 }
 
 // Collectible Item
 class CollectibleObject extends InteractiveObject {
     private boolean collected;
-    private String evidenceValue;
+    private int evidenceRef = NarrativePool.NONE;
     
     public CollectibleObject(String objectId, String name, double x, double y, String sprite) {
         super(objectId, name, "COLLECTIBLE", x, y, sprite);
@@ -96,9 +142,28 @@ class CollectibleObject extends InteractiveObject {
         return !collected && visible;
     }
     
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.set(ObjectState.COLLECTED, collected);
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        collected = state.has(ObjectState.COLLECTED);
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        evidenceRef = ((CollectibleObject) other).evidenceRef;
+    }
+    
     public boolean isCollected() { return collected; }
-    public void setEvidenceValue(String value) { this.evidenceValue = value; }
-    public String getEvidenceValue() { return evidenceValue; }
+    public void setEvidenceValue(String value) { this.evidenceRef = NarrativePool.getInstance().intern(value); }
+    public String getEvidenceValue() { return NarrativePool.getInstance().get(evidenceRef); }
 }
 
 // Container (safe, chest, drawer, etc.)
@@ -106,14 +171,15 @@ class ContainerObject extends InteractiveObject {
     private boolean locked;
     private String unlockCode;
     private String unlockCondition;
-    private List<String> containedItemIds;
+    private int[] containedItemIds;  // interned item ids
+    private int itemCount;
     private boolean opened;
     
     public ContainerObject(String objectId, String name, double x, double y, String sprite) {
         super(objectId, name, "CONTAINER", x, y, sprite);
         this.locked = true;
         this.opened = false;
-        this.containedItemIds = new ArrayList<>();
+        this.containedItemIds = new int[2];
     }
     
     @Override
@@ -143,12 +209,75 @@ class ContainerObject extends InteractiveObject {
         locked = false;
     }
     
+    /** Closes and locks it again; only a container with a code can be relocked. */
+    public boolean relock() {
+        if (unlockCode == null) {
+            return false;
+        }
+        locked = true;
+        opened = false;
+        return true;
+    }
+    
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.set(ObjectState.LOCKED, locked);
+        state.set(ObjectState.OPENED, opened);
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        locked = state.has(ObjectState.LOCKED);
+        opened = state.has(ObjectState.OPENED);
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        ContainerObject container = (ContainerObject) other;
+        unlockCode = container.unlockCode;
+        unlockCondition = container.unlockCondition;
+        containedItemIds = container.getContainedItemIds();
+        itemCount = container.itemCount;
+    }
+    
     public boolean isLocked() { return locked; }
     public boolean isOpened() { return opened; }
-    public List<String> getContainedItems() { return new ArrayList<>(containedItemIds); }
-    public void addItem(String itemId) { containedItemIds.add(itemId); }
+    public List<String> getContainedItems() {
+        ItemRegistry registry = ItemRegistry.getInstance();
+        List<String> ids = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            ids.add(registry.getItemId(containedItemIds[i]));
+        }
+        return ids;
+    }
+    
+    public int[] getContainedItemIds() { return Arrays.copyOf(containedItemIds, itemCount); }
+    
+    public boolean containsItem(int itemId) {
+        for (int i = 0; i < itemCount; i++) {
+            if (containedItemIds[i] == itemId) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public void addItem(String itemId) { addItem(ItemRegistry.getInstance().intern(itemId)); }
+    
+    public void addItem(int itemId) {
+        if (itemCount == containedItemIds.length) {
+            containedItemIds = Arrays.copyOf(containedItemIds, itemCount * 2);
+        }
+        containedItemIds[itemCount++] = itemId;
+    }
     public void setUnlockCode(String code) { this.unlockCode = code; }
     public void setUnlockCondition(String condition) { this.unlockCondition = condition; }
+    public String getUnlockCode() { return unlockCode; }
+    public String getUnlockCondition() { return unlockCondition; }
 }
 
 // Cyclic Object (portraits with changing states)
@@ -180,6 +309,31 @@ class CyclicObject extends InteractiveObject {
         return null;
     }
     
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.index = currentStateIndex;
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        if (state.index >= 0 && state.index < states.size()) {
+            currentStateIndex = state.index;
+        }
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        String current = getCurrentState();
+        states = new ArrayList<>(((CyclicObject) other).states);
+        // Keep the player's choice if it still exists
+        int index = states.indexOf(current);
+        currentStateIndex = index >= 0 ? index : ((CyclicObject) other).currentStateIndex;
+    }
+    
     public void addState(String state) { states.add(state); }
     public void setStates(List<String> states) { this.states = new ArrayList<>(states); }
     public void setCurrentState(String state) {
@@ -236,12 +390,23 @@ class DraggableObject extends InteractiveObject {
         y = originalY;
     }
     
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        // The player may have moved it, only the home position is authored
+        double currentX = x, currentY = y;
+        super.copyDefinitionFrom(other);
+        originalX = other.x;
+        originalY = other.y;
+        x = currentX;
+        y = currentY;
+    }
+    
     public boolean isBeingDragged() { return beingDragged; }
 }
 
 // Examine Object (for clues, notes, etc.)
 class ExamineObject extends InteractiveObject {
-    private String examineText;
+    private int examineTextRef = NarrativePool.NONE;
     private boolean examined;
     
     public ExamineObject(String objectId, String name, double x, double y, String sprite) {
@@ -252,7 +417,7 @@ class ExamineObject extends InteractiveObject {
     @Override
     public void interact() {
         examined = true;
-        System.out.println(name + ": " + examineText);
+        System.out.println(name + ": " + getExamineText());
     }
     
     @Override
@@ -260,15 +425,34 @@ class ExamineObject extends InteractiveObject {
         return visible;
     }
     
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.set(ObjectState.EXAMINED, examined);
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        examined = state.has(ObjectState.EXAMINED);
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        examineTextRef = ((ExamineObject) other).examineTextRef;
+    }
+    
     public boolean isExamined() { return examined; }
-    public void setExamineText(String text) { this.examineText = text; }
-    public String getExamineText() { return examineText; }
+    public void setExamineText(String text) { this.examineTextRef = NarrativePool.getInstance().intern(text); }
+    public String getExamineText() { return NarrativePool.getInstance().get(examineTextRef); }
 }
 
 // Evidence Holder (mannequins in greenhouse)
 class EvidenceHolderObject extends InteractiveObject {
-    private String correctItemId;
-    private String placedItemId;
+    private int correctItemId = ItemRegistry.NO_ITEM;
+    private int placedItemId = ItemRegistry.NO_ITEM;
     private boolean correctlyPlaced;
     
     public EvidenceHolderObject(String objectId, String name, double x, double y, String sprite) {
@@ -287,25 +471,53 @@ class EvidenceHolderObject extends InteractiveObject {
     }
     
     public boolean placeItem(String itemId) {
+        return placeItem(ItemRegistry.getInstance().intern(itemId));
+    }
+    
+    public boolean placeItem(int itemId) {
         placedItemId = itemId;
-        correctlyPlaced = itemId.equals(correctItemId);
+        correctlyPlaced = itemId != ItemRegistry.NO_ITEM && itemId == correctItemId;
         return correctlyPlaced;
     }
     
     public void removeItem() {
-        placedItemId = null;
+        placedItemId = ItemRegistry.NO_ITEM;
         correctlyPlaced = false;
     }
     
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.ref = placedItemId;
+        state.set(ObjectState.CORRECTLY_PLACED, correctlyPlaced);
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        placedItemId = state.ref;
+        correctlyPlaced = state.has(ObjectState.CORRECTLY_PLACED);
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        correctItemId = ((EvidenceHolderObject) other).correctItemId;
+        correctlyPlaced = placedItemId != ItemRegistry.NO_ITEM && placedItemId == correctItemId;
+    }
+    
     public boolean isCorrectlyPlaced() { return correctlyPlaced; }
-    public void setCorrectItem(String itemId) { this.correctItemId = itemId; }
-    public String getPlacedItem() { return placedItemId; }
+    public void setCorrectItem(String itemId) { this.correctItemId = ItemRegistry.getInstance().intern(itemId); }
+    public String getPlacedItem() { return ItemRegistry.getInstance().getItemId(placedItemId); }
+    public int getPlacedItemId() { return placedItemId; }
+    public int getCorrectItemId() { return correctItemId; }
 }
 
 // Token Slot (for cellar puzzle)
 class TokenSlotObject extends InteractiveObject {
-    private String correctTokenId;
-    private String placedTokenId;
+    private int correctTokenId = ItemRegistry.NO_ITEM;
+    private int placedTokenId = ItemRegistry.NO_ITEM;
     private int slotNumber;
     
     public TokenSlotObject(String objectId, String name, double x, double y, int slotNum) {
@@ -320,11 +532,15 @@ class TokenSlotObject extends InteractiveObject {
     
     @Override
     public boolean canInteract() {
-        return visible && placedTokenId == null;
+        return visible && placedTokenId == ItemRegistry.NO_ITEM;
     }
     
     public boolean placeToken(String tokenId) {
-        if (placedTokenId == null) {
+        return placeToken(ItemRegistry.getInstance().intern(tokenId));
+    }
+    
+    public boolean placeToken(int tokenId) {
+        if (placedTokenId == ItemRegistry.NO_ITEM) {
             placedTokenId = tokenId;
             return true;
         }
@@ -332,14 +548,37 @@ class TokenSlotObject extends InteractiveObject {
     }
     
     public void removeToken() {
-        placedTokenId = null;
+        placedTokenId = ItemRegistry.NO_ITEM;
     }
     
     public boolean isCorrect() {
-        return placedTokenId != null && placedTokenId.equals(correctTokenId);
+        return placedTokenId != ItemRegistry.NO_ITEM && placedTokenId == correctTokenId;
+    }
+    
+    @Override
+    public ObjectState captureState() {
+        ObjectState state = super.captureState();
+        state.ref = placedTokenId;
+        return state;
+    }
+    
+    @Override
+    public void restoreState(ObjectState state) {
+        super.restoreState(state);
+        placedTokenId = state.ref;
+    }
+    
+    @Override
+    public void copyDefinitionFrom(InteractiveObject other) {
+        super.copyDefinitionFrom(other);
+        TokenSlotObject slot = (TokenSlotObject) other;
+        correctTokenId = slot.correctTokenId;
+        slotNumber = slot.slotNumber;
     }
     
-    public void setCorrectToken(String tokenId) { this.correctTokenId = tokenId; }
-    public String getPlacedToken() { return placedTokenId; }
+    public void setCorrectToken(String tokenId) { this.correctTokenId = ItemRegistry.getInstance().intern(tokenId); }
+    public String getPlacedToken() { return ItemRegistry.getInstance().getItemId(placedTokenId); }
+    public int getPlacedTokenId() { return placedTokenId; }
+    public int getCorrectTokenId() { return correctTokenId; }
     public int getSlotNumber() { return slotNumber; }
 }
\ No newline at end of file
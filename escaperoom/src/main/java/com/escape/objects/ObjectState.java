@@ -0,0 +1,52 @@
+package com.escape.objects;
+
+/**
+ * Mutable state of one interactive object, detached from the object itself.
+ * Save snapshots, the action journal and undo history store progress in
+ * this form, and a hot reload carries it from an old object to its
+ * replacement.
+ */
+public class ObjectState {
+    // Flag bits, meaning depends on the object type
+    public static final int COLLECTED = 1;
+    public static final int LOCKED = 1 << 1;
+    public static final int OPENED = 1 << 2;
+    public static final int EXAMINED = 1 << 3;
+    public static final int CORRECTLY_PLACED = 1 << 4;
+
+    public boolean visible;
+    public double x, y;
+    public int flags;
+    public int index;       // cyclic state index
+    public int ref = -1;    // placed item / token, as an interned item id
+
+    /** A copy, so a saved state can be restored more than once. */
+    public ObjectState copy() {
+        ObjectState copy = new ObjectState();
+        copy.visible = visible;
+        copy.x = x;
+        copy.y = y;
+        copy.flags = flags;
+        copy.index = index;
+        copy.ref = ref;
+        return copy;
+    }
+
+    public boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /** Field-by-field comparison; ObjectState stays mutable, so it has no equals(). */
+    public boolean sameAs(ObjectState other) {
+        return other != null && visible == other.visible && x == other.x && y == other.y
+            && flags == other.flags && index == other.index && ref == other.ref;
+    }
+
+    public void set(int flag, boolean value) {
+        if (value) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+}
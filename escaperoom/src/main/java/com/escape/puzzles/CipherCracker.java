@@ -0,0 +1,244 @@
+package com.escape.puzzles;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Frequency-analysis attacks on the ciphers CipherEngine supports.
+ * Texts are scored by the chi-squared distance of their letter counts from
+ * English, lower being more English-like. Caesar and Atbash are checked
+ * exhaustively, Vigenère keys are found by picking the key length with the
+ * most English-like index of coincidence and then cracking each column as a
+ * Caesar shift. Keyword alphabets are too many to search blind, so they are
+ * cracked from a list of candidate words.
+ */
+public class CipherCracker {
+
+    // English letter frequencies, A to Z
+    private static final double[] ENGLISH = {
+        0.0817, 0.0149, 0.0278, 0.0425, 0.1270, 0.0223, 0.0202, 0.0609, 0.0697, 0.0015, 0.0077, 0.0403, 0.0241,
+        0.0675, 0.0751, 0.0193, 0.0010, 0.0599, 0.0633, 0.0906, 0.0276, 0.0098, 0.0236, 0.0015, 0.0197, 0.0007
+    };
+
+    // Index of coincidence of English text; random letters give about 0.038
+    private static final double ENGLISH_IC = 0.066;
+    private static final double IC_THRESHOLD = 0.058;
+
+    public static final int DEFAULT_MAX_KEY_LENGTH = 12;
+
+    /** A recovered cipher and how English its decryption looks. */
+    public static class Guess {
+        public final CipherEngine cipher;
+        public final double score;   // chi-squared, lower is better
+
+        Guess(CipherEngine cipher, double score) {
+            this.cipher = cipher;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return cipher + " (score " + String.format("%.1f", score) + ")";
+        }
+    }
+
+    /**
+     * Cracks a text whose cipher type is known. Keyword ciphers need
+     * candidate words; without them this returns null.
+     */
+    public static Guess crack(CharSequence text, String type, Collection<String> keywords) {
+        switch (type == null ? CipherEngine.CAESAR : type.toLowerCase()) {
+            case CipherEngine.CAESAR: return crackCaesar(text);
+            case CipherEngine.ATBASH: return new Guess(CipherEngine.atbash(), score(CipherEngine.atbash().decode(text)));
+            case CipherEngine.VIGENERE: return crackVigenere(text, DEFAULT_MAX_KEY_LENGTH);
+            case CipherEngine.KEYWORD: return keywords == null ? null : crackKeyword(text, keywords);
+            default: throw new IllegalArgumentException("Unknown cipher '" + type + "'");
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Caesar
+    // ---------------------------------------------------------------
+
+    public static Guess crackCaesar(CharSequence text) {
+        int[] counts = new int[26];
+        int total = count(text, 0, 1, counts);
+        int best = bestShift(counts, total);
+        return new Guess(CipherEngine.caesar(best), shiftScore(counts, total, best));
+    }
+
+    /** How many other shifts look more like English than the given one; 0 means the cracker finds it first. */
+    public static int caesarRank(CharSequence text, int shift) {
+        int[] counts = new int[26];
+        int total = count(text, 0, 1, counts);
+        int s = Math.floorMod(shift, 26);
+        double target = shiftScore(counts, total, s);
+        int rank = 0;
+        for (int other = 0; other < 26; other++) {
+            if (other != s && shiftScore(counts, total, other) < target) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+
+    private static int bestShift(int[] counts, int total) {
+        int best = 0;
+        double bestScore = Double.MAX_VALUE;
+        for (int s = 0; s < 26; s++) {
+            double score = shiftScore(counts, total, s);
+            if (score < bestScore) {
+                best = s;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Chi-squared of the counts decoded with the shift, without decoding anything. */
+    private static double shiftScore(int[] counts, int total, int shift) {
+        if (total == 0) {
+            return 0;
+        }
+        double chi = 0;
+        for (int plain = 0; plain < 26; plain++) {
+            double expected = ENGLISH[plain] * total;
+            double diff = counts[(plain + shift) % 26] - expected;
+            chi += diff * diff / expected;
+        }
+        return chi;
+    }
+
+    // ---------------------------------------------------------------
+    // Vigenère
+    // ---------------------------------------------------------------
+
+    public static Guess crackVigenere(CharSequence text, int maxKeyLength) {
+        int letters = count(text, 0, 1, new int[26]);
+        int length = likelyKeyLength(text, Math.max(1, Math.min(maxKeyLength, letters / 2)));
+
+        char[] key = new char[length];
+        int[] counts = new int[26];
+        for (int column = 0; column < length; column++) {
+            Arrays.fill(counts, 0);
+            int total = count(text, column, length, counts);
+            key[column] = (char) ('A' + bestShift(counts, total));
+        }
+        CipherEngine cipher = CipherEngine.vigenere(new String(key));
+        return new Guess(cipher, score(cipher.decode(text)));
+    }
+
+    /**
+     * The shortest key length whose columns read like single-alphabet text.
+     * Multiples of the true length score as well as the length itself, so the
+     * first one over the threshold is taken rather than the best.
+     */
+    public static int likelyKeyLength(CharSequence text, int maxKeyLength) {
+        int best = 1;
+        double bestDistance = Double.MAX_VALUE;
+        int[] counts = new int[26];
+        for (int length = 1; length <= maxKeyLength; length++) {
+            double ic = 0;
+            for (int column = 0; column < length; column++) {
+                Arrays.fill(counts, 0);
+                int total = count(text, column, length, counts);
+                ic += indexOfCoincidence(counts, total);
+            }
+            ic /= length;
+            if (ic >= IC_THRESHOLD) {
+                return length;
+            }
+            double distance = Math.abs(ENGLISH_IC - ic);
+            if (distance < bestDistance) {
+                best = length;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private static double indexOfCoincidence(int[] counts, int total) {
+        if (total < 2) {
+            return 0;
+        }
+        long pairs = 0;
+        for (int c : counts) {
+            pairs += (long) c * (c - 1);
+        }
+        return (double) pairs / ((long) total * (total - 1));
+    }
+
+    // ---------------------------------------------------------------
+    // Keyword
+    // ---------------------------------------------------------------
+
+    public static Guess crackKeyword(CharSequence text, Collection<String> candidates) {
+        Guess best = null;
+        char[] buffer = new char[text.length()];
+        for (String candidate : candidates) {
+            if (CipherEngine.lettersOf(candidate).isEmpty()) {
+                continue;
+            }
+            CipherEngine cipher = CipherEngine.keyword(candidate);
+            int n = cipher.decode(text, buffer);
+            double score = score(CharBuffer.wrap(buffer, 0, n));
+            if (best == null || score < best.score) {
+                best = new Guess(cipher, score);
+            }
+        }
+        return best;
+    }
+
+    // ---------------------------------------------------------------
+    // Scoring
+    // ---------------------------------------------------------------
+
+    /** Chi-squared distance of the text's letters from English; lower is more English-like. */
+    public static double score(CharSequence text) {
+        int[] counts = new int[26];
+        int total = count(text, 0, 1, counts);
+        return shiftScore(counts, total, 0);
+    }
+
+    /** The most frequent letter of the text, upper case, or 0 if it has none. */
+    public static char mostCommonLetter(CharSequence text) {
+        int[] counts = new int[26];
+        if (count(text, 0, 1, counts) == 0) {
+            return 0;
+        }
+        int best = 0;
+        for (int c = 1; c < 26; c++) {
+            if (counts[c] > counts[best]) {
+                best = c;
+            }
+        }
+        return (char) ('A' + best);
+    }
+
+    /**
+     * Counts every step-th letter starting at the given letter index,
+     * i.e. one column of a text written out in rows of step letters.
+     */
+    private static int count(CharSequence text, int first, int step, int[] counts) {
+        int index = 0;
+        int total = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            int letter;
+            if (c >= 'A' && c <= 'Z') {
+                letter = c - 'A';
+            } else if (c >= 'a' && c <= 'z') {
+                letter = c - 'a';
+            } else {
+                continue;
+            }
+            if (index >= first && (index - first) % step == 0) {
+                counts[letter]++;
+                total++;
+            }
+            index++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,235 @@
+package com.escape.puzzles;
+
+/**
+ * A classical cipher compiled into substitution tables.
+ * Each key position gets a 128-entry table for encoding and one for
+ * decoding, covering upper and lower case; anything outside A-Z passes
+ * through and doesn't use up a key position. A Caesar or Atbash cipher is a
+ * single table, a Vigenère key one table per letter. Engines are immutable
+ * and can be shared between threads; decode into a caller-owned char[] to
+ * avoid allocating per call.
+ */
+public class CipherEngine {
+    public static final String CAESAR = "caesar";
+    public static final String VIGENERE = "vigenere";
+    public static final String ATBASH = "atbash";
+    public static final String KEYWORD = "keyword";
+
+    private static final int TABLE_SIZE = 128;
+
+    // Caesar engines are small and common enough to share
+    private static final CipherEngine[] CAESAR_ENGINES = new CipherEngine[26];
+
+    private final String type;
+    private final String key;
+    private final char[][] encodeTables;
+    private final char[][] decodeTables;
+
+    /** @param alphabets cipher alphabet per key position: plain letter i encodes to alphabets[p][i] */
+    private CipherEngine(String type, String key, int[][] alphabets) {
+        this.type = type;
+        this.key = key;
+        this.encodeTables = new char[alphabets.length][];
+        this.decodeTables = new char[alphabets.length][];
+        for (int p = 0; p < alphabets.length; p++) {
+            char[] encode = identityTable();
+            char[] decode = identityTable();
+            for (int plain = 0; plain < 26; plain++) {
+                int cipher = alphabets[p][plain];
+                encode['A' + plain] = (char) ('A' + cipher);
+                encode['a' + plain] = (char) ('a' + cipher);
+                decode['A' + cipher] = (char) ('A' + plain);
+                decode['a' + cipher] = (char) ('a' + plain);
+            }
+            encodeTables[p] = encode;
+            decodeTables[p] = decode;
+        }
+    }
+
+    private static char[] identityTable() {
+        char[] table = new char[TABLE_SIZE];
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            table[c] = (char) c;
+        }
+        return table;
+    }
+
+    // ---------------------------------------------------------------
+    // Ciphers
+    // ---------------------------------------------------------------
+
+    public static CipherEngine caesar(int shift) {
+        int s = Math.floorMod(shift, 26);
+        CipherEngine engine = CAESAR_ENGINES[s];
+        if (engine == null) {
+            // A race only builds an identical engine twice
+            engine = new CipherEngine(CAESAR, String.valueOf(s), new int[][] {shiftAlphabet(s)});
+            CAESAR_ENGINES[s] = engine;
+        }
+        return engine;
+    }
+
+    /** Each key letter shifts by its position in the alphabet, A = 0. */
+    public static CipherEngine vigenere(String key) {
+        String letters = lettersOf(key);
+        if (letters.isEmpty()) {
+            throw new IllegalArgumentException("Vigenère key needs at least one letter");
+        }
+        int[][] alphabets = new int[letters.length()][];
+        for (int p = 0; p < letters.length(); p++) {
+            alphabets[p] = shiftAlphabet(letters.charAt(p) - 'A');
+        }
+        return new CipherEngine(VIGENERE, letters, alphabets);
+    }
+
+    public static CipherEngine atbash() {
+        int[] alphabet = new int[26];
+        for (int i = 0; i < 26; i++) {
+            alphabet[i] = 25 - i;
+        }
+        return new CipherEngine(ATBASH, "", new int[][] {alphabet});
+    }
+
+    /** Cipher alphabet is the keyword without repeated letters, then the rest of A-Z. */
+    public static CipherEngine keyword(String keyword) {
+        String letters = lettersOf(keyword);
+        if (letters.isEmpty()) {
+            throw new IllegalArgumentException("Keyword needs at least one letter");
+        }
+        int[] alphabet = new int[26];
+        boolean[] used = new boolean[26];
+        int next = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            int c = letters.charAt(i) - 'A';
+            if (!used[c]) {
+                used[c] = true;
+                alphabet[next++] = c;
+            }
+        }
+        for (int c = 0; c < 26; c++) {
+            if (!used[c]) {
+                alphabet[next++] = c;
+            }
+        }
+        return new CipherEngine(KEYWORD, letters, new int[][] {alphabet});
+    }
+
+    /**
+     * Builds a cipher from its content name and key, e.g. ("vigenere", "LANTERN").
+     * A null type means Caesar, as in older content where only "shift" is given.
+     */
+    public static CipherEngine of(String type, String key) {
+        switch (type == null ? CAESAR : type.toLowerCase()) {
+            case CAESAR: return caesar(key == null || key.isEmpty() ? 0 : Integer.parseInt(key.trim()));
+            case VIGENERE: return vigenere(key == null ? "" : key);
+            case ATBASH: return atbash();
+            case KEYWORD: return keyword(key == null ? "" : key);
+            default: throw new IllegalArgumentException("Unknown cipher '" + type + "'");
+        }
+    }
+
+    private static int[] shiftAlphabet(int shift) {
+        int[] alphabet = new int[26];
+        for (int i = 0; i < 26; i++) {
+            alphabet[i] = (i + shift) % 26;
+        }
+        return alphabet;
+    }
+
+    /** Upper-case A-Z letters of the text, everything else dropped. */
+    static String lettersOf(String text) {
+        StringBuilder letters = new StringBuilder();
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toUpperCase(text.charAt(i));
+                if (c >= 'A' && c <= 'Z') {
+                    letters.append(c);
+                }
+            }
+        }
+        return letters.toString();
+    }
+
+    static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    // ---------------------------------------------------------------
+    // Encoding and decoding
+    // ---------------------------------------------------------------
+
+    public String encode(CharSequence text) {
+        char[] out = new char[text.length()];
+        apply(encodeTables, text, out);
+        return new String(out);
+    }
+
+    public String decode(CharSequence text) {
+        char[] out = new char[text.length()];
+        apply(decodeTables, text, out);
+        return new String(out);
+    }
+
+    /**
+     * Decodes into a buffer the caller keeps between calls.
+     * @return the number of chars written, which is text.length()
+     */
+    public int decode(CharSequence text, char[] out) {
+        if (out.length < text.length()) {
+            throw new IllegalArgumentException("Buffer holds " + out.length + " chars, need " + text.length());
+        }
+        apply(decodeTables, text, out);
+        return text.length();
+    }
+
+    /**
+     * True if the text decodes to the expected plain text, ignoring case.
+     * Nothing is allocated, so this is the check to use in bulk validation.
+     */
+    public boolean decodesTo(CharSequence encrypted, CharSequence expected) {
+        int n = encrypted.length();
+        if (expected.length() != n) {
+            return false;
+        }
+        int period = decodeTables.length;
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            char c = encrypted.charAt(i);
+            char d = c;
+            if (c < TABLE_SIZE && isLetter(c)) {
+                d = decodeTables[pos][c];
+                pos = pos + 1 == period ? 0 : pos + 1;
+            }
+            char e = expected.charAt(i);
+            if (d != e && Character.toUpperCase(d) != Character.toUpperCase(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void apply(char[][] tables, CharSequence text, char[] out) {
+        int period = tables.length;
+        int pos = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < TABLE_SIZE && isLetter(c)) {
+                out[i] = tables[pos][c];
+                pos = pos + 1 == period ? 0 : pos + 1;
+            } else {
+                out[i] = c;
+            }
+        }
+    }
+
+    public String getType() { return type; }
+    /** Shift for Caesar, the letters for Vigenère and keyword, empty for Atbash. */
+    public String getKey() { return key; }
+    /** Number of key positions before the tables repeat. */
+    public int getPeriod() { return decodeTables.length; }
+
+    @Override
+    public String toString() {
+        return key.isEmpty() ? type : type + ":" + key;
+    }
+}
@@ -0,0 +1,416 @@
+package com.escape.puzzles;
+
+import java.util.*;
+
+/**
+ * Constraint-propagation solver for logic grid puzzles.
+ *
+ * Category 0 (e.g. victims) names the rows; every other category is a
+ * one-to-one assignment onto those rows. The candidates of each
+ * (row, category) cell are kept as a long bitset, so a category can hold up
+ * to 64 values and any number of categories can be linked through the rows.
+ * Clues are SAME / DIFFERENT constraints between two values.
+ */
+public class LogicGridSolver {
+    public static final int SAME = 0;
+    public static final int DIFFERENT = 1;
+
+    public static final int MAX_VALUES = 64;
+
+    private final List<List<String>> categories;
+    private final int rows;
+    private final int cats;
+    private final Map<String, int[]> valuesByName = new HashMap<>();   // name -> {category, value}
+
+    // Constraints as parallel arrays: type, category a, value a, category b, value b, clue
+    private int[] constraints = new int[6 * 8];
+    private int constraintCount;
+
+    // Deductions from the clues alone, computed on first use
+    private List<Deduction> deductions;
+    private boolean deductionsComplete;
+
+    public LogicGridSolver(List<List<String>> categories) {
+        if (categories.size() < 2) {
+            throw new IllegalArgumentException("A logic grid needs at least two categories");
+        }
+        this.categories = new ArrayList<>();
+        this.rows = categories.get(0).size();
+        this.cats = categories.size();
+        if (rows == 0 || rows > MAX_VALUES) {
+            throw new IllegalArgumentException("Categories must have 1 to " + MAX_VALUES + " values");
+        }
+        for (int c = 0; c < cats; c++) {
+            List<String> values = new ArrayList<>(categories.get(c));
+            if (values.size() != rows) {
+                throw new IllegalArgumentException("Category " + c + " has " + values.size()
+                    + " values, expected " + rows);
+            }
+            this.categories.add(values);
+            for (int v = 0; v < rows; v++) {
+                // Names shared between categories can only be addressed by index
+                int[] previous = valuesByName.put(values.get(v), new int[] {c, v});
+                if (previous != null) {
+                    valuesByName.put(values.get(v), null);
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Constraints
+    // ---------------------------------------------------------------
+
+    /** Adds a constraint between two values addressed by name. */
+    public void addConstraint(int type, String a, String b, int clue) {
+        int[] va = lookup(a);
+        int[] vb = lookup(b);
+        addConstraint(type, va[0], va[1], vb[0], vb[1], clue);
+    }
+
+    public void addConstraint(int type, int catA, int valA, int catB, int valB, int clue) {
+        if (type != SAME && type != DIFFERENT) {
+            throw new IllegalArgumentException("Unknown constraint type " + type);
+        }
+        checkValue(catA, valA);
+        checkValue(catB, valB);
+        if (constraintCount * 6 == constraints.length) {
+            constraints = Arrays.copyOf(constraints, constraints.length * 2);
+        }
+        int base = constraintCount * 6;
+        constraints[base] = type;
+        constraints[base + 1] = catA;
+        constraints[base + 2] = valA;
+        constraints[base + 3] = catB;
+        constraints[base + 4] = valB;
+        constraints[base + 5] = clue;
+        constraintCount++;
+        deductions = null;
+    }
+
+    public static int parseType(String type) {
+        switch (type.toLowerCase()) {
+            case "same": return SAME;
+            case "not":
+            case "different": return DIFFERENT;
+            default: throw new IllegalArgumentException("Unknown constraint type '" + type + "'");
+        }
+    }
+
+    private int[] lookup(String name) {
+        if (!valuesByName.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown value '" + name + "'");
+        }
+        int[] value = valuesByName.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Value '" + name + "' appears in more than one category");
+        }
+        return value;
+    }
+
+    private void checkValue(int cat, int val) {
+        if (cat < 0 || cat >= cats || val < 0 || val >= rows) {
+            throw new IllegalArgumentException("No value " + val + " in category " + cat);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    // Solving
+    // ---------------------------------------------------------------
+
+    /** Counts solutions, stopping once the limit is reached. Use a limit of 2 to check uniqueness. */
+    public int countSolutions(int limit) {
+        int[] count = new int[1];
+        search(initialDomains(), count, limit, null);
+        return count[0];
+    }
+
+    /** Returns the first solution as [row][category] value indices, or null if there is none. */
+    public int[][] solve() {
+        int[][][] found = new int[1][][];
+        search(initialDomains(), new int[1], 1, found);
+        return found[0];
+    }
+
+    private void search(long[] dom, int[] count, int limit, int[][][] found) {
+        if (!propagate(dom, null)) {
+            return;
+        }
+
+        // Branch on the open cell with the fewest candidates
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        for (int cell = 0; cell < dom.length; cell++) {
+            if (cell % cats == 0) {
+                continue;
+            }
+            int size = Long.bitCount(dom[cell]);
+            if (size > 1 && size < bestSize) {
+                best = cell;
+                bestSize = size;
+            }
+        }
+
+        if (best < 0) {
+            if (count[0]++ == 0 && found != null) {
+                found[0] = toGrid(dom);
+            }
+            return;
+        }
+
+        long candidates = dom[best];
+        while (candidates != 0 && count[0] < limit) {
+            long bit = Long.lowestOneBit(candidates);
+            candidates &= ~bit;
+            long[] copy = dom.clone();
+            copy[best] = bit;
+            search(copy, count, limit, found);
+        }
+    }
+
+    private long[] initialDomains() {
+        long all = rows == 64 ? -1L : (1L << rows) - 1;
+        long[] dom = new long[rows * cats];
+        for (int r = 0; r < rows; r++) {
+            dom[r * cats] = 1L << r;   // category 0 is the row itself
+            for (int c = 1; c < cats; c++) {
+                dom[r * cats + c] = all;
+            }
+        }
+        return dom;
+    }
+
+    /**
+     * Applies the clues and the one-to-one rules until nothing changes.
+     * Returns false on a contradiction. Newly fixed cells are logged in order.
+     */
+    private boolean propagate(long[] dom, List<Deduction> log) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int i = 0; i < constraintCount; i++) {
+                int base = i * 6;
+                int catA = constraints[base + 1], valA = constraints[base + 2];
+                int catB = constraints[base + 3], valB = constraints[base + 4];
+                int clue = constraints[base + 5];
+
+                long rowsA = rowsOf(dom, catA, valA);
+                long rowsB = rowsOf(dom, catB, valB);
+                long allowedA;
+                long allowedB;
+                if (constraints[base] == SAME) {
+                    allowedA = allowedB = rowsA & rowsB;
+                } else {
+                    // Once one side is placed, the other can't share its row
+                    allowedA = Long.bitCount(rowsB) == 1 ? rowsA & ~rowsB : rowsA;
+                    allowedB = Long.bitCount(rowsA) == 1 ? rowsB & ~rowsA : rowsB;
+                }
+                int result = restrict(dom, catA, valA, allowedA, log, Deduction.CLUE, clue);
+                if (result < 0) return false;
+                changed |= result > 0;
+                result = restrict(dom, catB, valB, allowedB, log, Deduction.CLUE, clue);
+                if (result < 0) return false;
+                changed |= result > 0;
+            }
+
+            for (int c = 1; c < cats; c++) {
+                int result = eliminate(dom, c, log);
+                if (result < 0) return false;
+                changed |= result > 0;
+            }
+        }
+        return true;
+    }
+
+    /** Rows that can still hold the value. */
+    private long rowsOf(long[] dom, int cat, int val) {
+        if (cat == 0) {
+            return 1L << val;
+        }
+        long bit = 1L << val;
+        long result = 0;
+        for (int r = 0; r < rows; r++) {
+            if ((dom[r * cats + cat] & bit) != 0) {
+                result |= 1L << r;
+            }
+        }
+        return result;
+    }
+
+    /** Removes the value from every row outside the allowed set. Returns -1, 0 or 1 for contradiction, no change, change. */
+    private int restrict(long[] dom, int cat, int val, long allowedRows, List<Deduction> log, int rule, int clue) {
+        if (allowedRows == 0) {
+            return -1;
+        }
+        if (cat == 0) {
+            return (allowedRows & (1L << val)) != 0 ? 0 : -1;
+        }
+        long bit = 1L << val;
+        int changed = 0;
+        for (int r = 0; r < rows; r++) {
+            int cell = r * cats + cat;
+            if ((allowedRows & (1L << r)) == 0 && (dom[cell] & bit) != 0) {
+                int result = setCell(dom, cell, dom[cell] & ~bit, log, rule, clue);
+                if (result < 0) return -1;
+                changed = 1;
+            }
+        }
+        if (Long.bitCount(allowedRows) == 1) {
+            // Only one row is left for the value, so that row takes it
+            int cell = Long.numberOfTrailingZeros(allowedRows) * cats + cat;
+            if ((dom[cell] & bit) == 0) {
+                return -1;
+            }
+            if (dom[cell] != bit) {
+                setCell(dom, cell, bit, log, rule, clue);
+                changed = 1;
+            }
+        }
+        return changed;
+    }
+
+    /** Naked singles and hidden singles within one category. */
+    private int eliminate(long[] dom, int cat, List<Deduction> log) {
+        int changed = 0;
+        long placed = 0;
+        long seen = 0;
+        long seenTwice = 0;
+        for (int r = 0; r < rows; r++) {
+            long d = dom[r * cats + cat];
+            if (Long.bitCount(d) == 1) {
+                if ((placed & d) != 0) {
+                    return -1;   // two rows fixed to the same value
+                }
+                placed |= d;
+            }
+            seenTwice |= seen & d;
+            seen |= d;
+        }
+        long all = rows == 64 ? -1L : (1L << rows) - 1;
+        if (seen != all) {
+            return -1;   // some value fits nowhere
+        }
+
+        long hidden = seen & ~seenTwice & ~placed;
+        for (int r = 0; r < rows; r++) {
+            int cell = r * cats + cat;
+            long d = dom[cell];
+            long next = d;
+            if (Long.bitCount(d) > 1) {
+                long only = d & hidden;
+                next = only != 0 ? only : d & ~placed;
+            }
+            if (next != d) {
+                int rule = (d & hidden) != 0 ? Deduction.ONLY_PLACE : Deduction.ELIMINATION;
+                if (setCell(dom, cell, next, log, rule, -1) < 0) {
+                    return -1;
+                }
+                changed = 1;
+            }
+        }
+        return changed;
+    }
+
+    private int setCell(long[] dom, int cell, long value, List<Deduction> log, int rule, int clue) {
+        if (value == 0) {
+            return -1;
+        }
+        boolean wasOpen = Long.bitCount(dom[cell]) > 1;
+        dom[cell] = value;
+        if (log != null && wasOpen && Long.bitCount(value) == 1) {
+            log.add(new Deduction(cell / cats, cell % cats, Long.numberOfTrailingZeros(value), rule, clue));
+        }
+        return 1;
+    }
+
+    private int[][] toGrid(long[] dom) {
+        int[][] grid = new int[rows][cats];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cats; c++) {
+                grid[r][c] = Long.numberOfTrailingZeros(dom[r * cats + c]);
+            }
+        }
+        return grid;
+    }
+
+    // ---------------------------------------------------------------
+    // Hints
+    // ---------------------------------------------------------------
+
+    /** Cells that follow from the clues without guessing, in the order they are found. */
+    public List<Deduction> getDeductions() {
+        if (deductions == null) {
+            List<Deduction> log = new ArrayList<>();
+            long[] dom = initialDomains();
+            boolean consistent = propagate(dom, log);
+            boolean complete = consistent;
+            for (int cell = 0; cell < dom.length && complete; cell++) {
+                complete = Long.bitCount(dom[cell]) == 1;
+            }
+            deductions = Collections.unmodifiableList(log);
+            deductionsComplete = complete;
+        }
+        return deductions;
+    }
+
+    /** True if the clues alone fill the whole grid. */
+    public boolean isDeducible() {
+        getDeductions();
+        return deductionsComplete;
+    }
+
+    /**
+     * The first deduction the player hasn't made yet.
+     * @param known the player's grid as [row][category] value indices, -1 for empty
+     */
+    public Deduction nextDeduction(int[][] known) {
+        for (Deduction d : getDeductions()) {
+            if (known == null || known[d.row][d.category] != d.value) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    public String describe(Deduction d, List<String> clues) {
+        String row = categories.get(0).get(d.row);
+        String value = categories.get(d.category).get(d.value);
+        switch (d.rule) {
+            case Deduction.CLUE:
+                String clue = clues != null && d.clue >= 0 && d.clue < clues.size()
+                    ? "\"" + clues.get(d.clue) + "\"" : "clue " + (d.clue + 1);
+                return row + " goes with " + value + ": follows from " + clue;
+            case Deduction.ONLY_PLACE:
+                return row + " goes with " + value + ": no one else can have it.";
+            default:
+                return row + " goes with " + value + ": every other option is ruled out.";
+        }
+    }
+
+    public List<String> getCategory(int cat) { return Collections.unmodifiableList(categories.get(cat)); }
+    public int getRowCount() { return rows; }
+    public int getCategoryCount() { return cats; }
+    public int getConstraintCount() { return constraintCount; }
+
+    /** One cell fixed by propagation: row goes with value in category, and why. */
+    public static class Deduction {
+        public static final int CLUE = 0;
+        public static final int ELIMINATION = 1;
+        public static final int ONLY_PLACE = 2;
+
+        public final int row;
+        public final int category;
+        public final int value;
+        public final int rule;
+        public final int clue;   // clue index for CLUE, -1 otherwise
+
+        Deduction(int row, int category, int value, int rule, int clue) {
+            this.row = row;
+            this.category = category;
+            this.value = value;
+            this.rule = rule;
+            this.clue = clue;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.escape.puzzles;
+
+import java.util.Arrays;
+
+/**
+ * Fixed number of slots holding small integer codes, eight 8-bit codes per long.
+ * Puzzles keep both the player's state and the precomputed solution in this
+ * form, so checking a solution is a compare of a word or two and a snapshot
+ * is a copy of the words. Code 0 means the slot is empty.
+ */
+public class PackedSlots {
+    public static final int EMPTY = 0;
+    public static final int MAX_CODE = 0xFF;
+
+    private static final int BITS = 8;
+    private static final int PER_WORD = 64 / BITS;
+
+    private final long[] words;
+    private final int size;
+
+    public PackedSlots(int size) {
+        this.size = size;
+        this.words = new long[Math.max(1, (size + PER_WORD - 1) / PER_WORD)];
+    }
+
+    public PackedSlots(PackedSlots other) {
+        this.size = other.size;
+        this.words = other.words.clone();
+    }
+
+    public int get(int slot) {
+        checkSlot(slot);
+        return (int) (words[slot / PER_WORD] >>> shift(slot)) & MAX_CODE;
+    }
+
+    public void set(int slot, int code) {
+        checkSlot(slot);
+        if (code < 0 || code > MAX_CODE) {
+            throw new IllegalArgumentException("Code out of range: " + code);
+        }
+        int w = slot / PER_WORD;
+        int shift = shift(slot);
+        words[w] = (words[w] & ~((long) MAX_CODE << shift)) | ((long) code << shift);
+    }
+
+    public void fill(int code) {
+        for (int i = 0; i < size; i++) {
+            set(i, code);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /** True if every slot holds the same code. */
+    public boolean matches(PackedSlots other) {
+        return Arrays.equals(words, other.words);
+    }
+
+    public boolean isFull() {
+        for (int i = 0; i < size; i++) {
+            if (get(i) == EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() { return size; }
+    public int wordCount() { return words.length; }
+
+    /** Copies the words into dst at the offset. */
+    public void copyTo(long[] dst, int offset) {
+        System.arraycopy(words, 0, dst, offset, words.length);
+    }
+
+    public void copyFrom(long[] src, int offset) {
+        System.arraycopy(src, offset, words, 0, words.length);
+    }
+
+    private static int shift(int slot) {
+        return (slot % PER_WORD) * BITS;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + size);
+        }
+    }
+}
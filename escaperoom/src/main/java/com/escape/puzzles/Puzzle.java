@@ -1,17 +1,32 @@
 package com.escape.puzzles;
 
+import com.escape.game.NarrativePool;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class Puzzle {
+public abstract class Puzzle implements Cloneable {
     protected String puzzleId;
     protected String type;
     protected String title;
     protected String description;
     protected String difficulty;
-    protected boolean isSolved;
-    protected List<String> hints;
-    protected int attemptsRemaining;
+    protected int[] hintRefs;    // handles into the narrative pool
+    protected int hintCount;
+    
+    // Solved flag, hints revealed and attempts remaining in one word, so every
+    // change is a single compare-and-set and readers never see half of one
+    private static final long SOLVED = 1L;
+    private static final int HINTS_SHIFT = 8;
+    private static final long HINTS_MASK = 0xFFFFL << HINTS_SHIFT;
+    private static final int ATTEMPTS_SHIFT = 32;
+    private static final int DEFAULT_ATTEMPTS = 3;
+    
+    private AtomicLong state = new AtomicLong(withAttempts(0L, DEFAULT_ATTEMPTS));
     
     public Puzzle(String puzzleId, String type, String title, String description, String difficulty) {
         this.puzzleId = puzzleId;
@@ -19,9 +34,7 @@ public abstract class Puzzle {
         this.title = title;
         this.description = description;
         this.difficulty = difficulty;
-        this.isSolved = false;
-        this.hints = new ArrayList<>();
-        this.attemptsRemaining = 3;
+        this.hintRefs = new int[4];
     }
     
     // Abstract methods that each puzzle type must implement
@@ -29,19 +42,77 @@ public abstract class Puzzle {
     public abstract String getSolutionHint(int hintLevel);
     public abstract void reset();
     
+    /**
+     * Copies the puzzle's progress into a few words: the state word
+     * (solved, hints revealed, attempts) in the first, then the subclass state.
+     */
+    public long[] snapshotState() {
+        long[] snapshot = new long[1 + progressWordCount()];
+        snapshot[0] = state.get();
+        saveProgress(snapshot, 1);
+        return snapshot;
+    }
+    
+    public void restoreState(long[] snapshot) {
+        loadProgress(snapshot, 1);
+        state.set(snapshot[0]);
+    }
+    
+    /**
+     * A copy for another game, with the same progress as this one. The
+     * authored definition is shared and must not be changed once copies exist.
+     */
+    public Puzzle copy() {
+        try {
+            Puzzle copy = (Puzzle) super.clone();
+            copy.state = new AtomicLong(state.get());
+            copy.detachProgress();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // Subclasses with player state override these
+    /** Gives a fresh copy its own progress holders in place of the shared ones. */
+    protected void detachProgress() {}
+    protected int progressWordCount() { return 0; }
+    protected void saveProgress(long[] dst, int offset) {}
+    protected void loadProgress(long[] src, int offset) {}
+    
+    /** Checks the authored puzzle data. Returns a description of the problem, or null if it is fine. */
+    public String validate() {
+        return null;
+    }
+    
     // Common methods
+    
+    /**
+     * Checks the input and records the outcome. Safe to call from several
+     * threads: only the call that actually marks the puzzle solved runs
+     * onPuzzleSolved, and a wrong answer that loses the race to a right one
+     * doesn't cost an attempt.
+     */
     public boolean solve(Object playerInput) {
-        if (isSolved) {
+        if (isSolved()) {
             return true;
         }
         
         boolean correct = checkSolution(playerInput);
+        long current;
+        long next;
+        do {
+            current = state.get();
+            if ((current & SOLVED) != 0) {
+                return true;
+            }
+            next = correct ? current | SOLVED : withAttempts(current, attemptsOf(current) - 1);
+        } while (!state.compareAndSet(current, next));
+        
         if (correct) {
-            isSolved = true;
             onPuzzleSolved();
         } else {
-            attemptsRemaining--;
-            onPuzzleFailed();
+            onPuzzleFailed(attemptsOf(next));
         }
         return correct;
     }
@@ -50,17 +121,69 @@ public abstract class Puzzle {
         System.out.println("Puzzle solved: " + title);
     }
     
-    protected void onPuzzleFailed() {
+    /** @param attemptsRemaining the count this failure left, not whatever it is by now */
+    protected void onPuzzleFailed(int attemptsRemaining) {
         System.out.println("Incorrect. Attempts remaining: " + attemptsRemaining);
     }
     
+    /** Clears the solved flag and restores the attempts; revealed hints stay revealed. */
+    protected void resetState() {
+        long current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, withAttempts(current & HINTS_MASK, DEFAULT_ATTEMPTS)));
+    }
+    
+    /** Gives back the full attempts after a lockout; a solved puzzle is left as it is. */
+    public void restoreAttempts() {
+        long current;
+        do {
+            current = state.get();
+            if ((current & SOLVED) != 0) {
+                return;
+            }
+        } while (!state.compareAndSet(current, withAttempts(current, DEFAULT_ATTEMPTS)));
+    }
+    
+    /**
+     * Reveals the next authored hint and returns it, or null once all have
+     * been shown. Concurrent callers each get a different hint.
+     */
+    public String revealNextHint() {
+        long current;
+        int revealed;
+        do {
+            current = state.get();
+            revealed = hintsOf(current);
+            if (revealed >= hintCount) {
+                return null;
+            }
+        } while (!state.compareAndSet(current, (current & ~HINTS_MASK) | ((long) (revealed + 1) << HINTS_SHIFT)));
+        return getHint(revealed);
+    }
+    
+    private static int attemptsOf(long word) {
+        return (int) (word >> ATTEMPTS_SHIFT);
+    }
+    
+    private static int hintsOf(long word) {
+        return (int) ((word & HINTS_MASK) >>> HINTS_SHIFT);
+    }
+    
+    private static long withAttempts(long word, int attempts) {
+        return (word & 0xFFFFFFFFL) | ((long) attempts << ATTEMPTS_SHIFT);
+    }
+    
     public void addHint(String hint) {
-        hints.add(hint);
+        if (hintCount == hintRefs.length) {
+            hintRefs = Arrays.copyOf(hintRefs, hintCount * 2);
+        }
+        hintRefs[hintCount++] = NarrativePool.getInstance().intern(hint);
     }
     
     public String getHint(int index) {
-        if (index >= 0 && index < hints.size()) {
-            return hints.get(index);
+        if (index >= 0 && index < hintCount) {
+            return NarrativePool.getInstance().get(hintRefs[index]);
         }
         return "No more hints available.";
     }
@@ -70,33 +193,48 @@ public abstract class Puzzle {
     public String getType() { return type; }
     public String getTitle() { return title; }
     public String getDescription() { return description; }
-    public boolean isSolved() { return isSolved; }
-    public int getAttemptsRemaining() { return attemptsRemaining; }
-    public List<String> getAllHints() { return new ArrayList<>(hints); }
+    public boolean isSolved() { return (state.get() & SOLVED) != 0; }
+    public int getAttemptsRemaining() { return attemptsOf(state.get()); }
+    public int getAttemptsUsed() { return DEFAULT_ATTEMPTS - attemptsOf(state.get()); }
+    public int getHintsRevealed() { return hintsOf(state.get()); }
+    public int getHintCount() { return hintCount; }
+    
+    /** Text of the puzzle that an object in the room shows the player, or null. */
+    public String getShownText() { return null; }
+    
+    public List<String> getAllHints() {
+        NarrativePool pool = NarrativePool.getInstance();
+        List<String> all = new ArrayList<>(hintCount);
+        for (int i = 0; i < hintCount; i++) {
+            all.add(pool.get(hintRefs[i]));
+        }
+        return all;
+    }
 }
 
 // Ledger Assembly Puzzle - Foyer
 class LedgerAssemblyPuzzle extends Puzzle {
     private String correctCode;
-    private List<String> collectedPages;
+    private SlotSymbols pages = new SlotSymbols();
+    private long collectedPages;   // one bit per distinct page
     private int requiredPages;
     
     public LedgerAssemblyPuzzle(String puzzleId, String solution, int requiredPages) {
         super(puzzleId, "LEDGER_ASSEMBLY", "Torn Ledger Pages", 
               "Collect and reassemble torn pages to reveal a code.", "EASY");
         this.correctCode = solution;
-        this.collectedPages = new ArrayList<>();
         this.requiredPages = requiredPages;
     }
     
     public void collectPage(String pageContent) {
-        if (!collectedPages.contains(pageContent)) {
-            collectedPages.add(pageContent);
+        int code = pages.intern(pageContent);
+        if (code != PackedSlots.EMPTY && code <= 64) {
+            collectedPages |= 1L << (code - 1);
         }
     }
     
     public boolean hasAllPages() {
-        return collectedPages.size() >= requiredPages;
+        return Long.bitCount(collectedPages) >= requiredPages;
     }
     
     @Override
@@ -120,76 +258,95 @@ class LedgerAssemblyPuzzle extends Puzzle {
     
     @Override
     public void reset() {
-        isSolved = false;
-        collectedPages.clear();
-        attemptsRemaining = 3;
+        collectedPages = 0;
+        resetState();
     }
     
+    @Override
+    protected void detachProgress() { pages = pages.copy(); }
+    @Override
+    protected int progressWordCount() { return 1; }
+    @Override
+    protected void saveProgress(long[] dst, int offset) { dst[offset] = collectedPages; }
+    @Override
+    protected void loadProgress(long[] src, int offset) { collectedPages = src[offset]; }
+    
     public int getCollectedPageCount() {
-        return collectedPages.size();
+        return Long.bitCount(collectedPages);
     }
 }
 
 // Portrait Eyes Puzzle - Parlor
 class PortraitEyesPuzzle extends Puzzle {
-    private List<String> correctSequence;
-    private List<String> currentSequence;
+    static final String[] EYE_COLORS = {"BLUE", "BROWN", "GREEN", "HAZEL"};
+    static final String START_COLOR = "BROWN";
+    
+    private SlotSymbols colors = new SlotSymbols();
+    private PackedSlots correctSequence;
+    private PackedSlots currentSequence;
     
     public PortraitEyesPuzzle(String puzzleId, List<String> solution) {
         super(puzzleId, "PORTRAIT_EYES", "Portrait Eyes", 
               "Adjust portrait eyes to match victim descriptions.", "EASY_MEDIUM");
-        this.correctSequence = new ArrayList<>(solution);
-        this.currentSequence = new ArrayList<>();
-        // Initialize with random states
+        // Cycle colors get codes 1..4 in cycle order
+        for (String color : EYE_COLORS) {
+            colors.intern(color);
+        }
+        this.correctSequence = new PackedSlots(solution.size());
         for (int i = 0; i < solution.size(); i++) {
-            currentSequence.add("BROWN");
+            correctSequence.set(i, colors.intern(solution.get(i)));
         }
+        this.currentSequence = new PackedSlots(solution.size());
+        currentSequence.fill(colors.code(START_COLOR));
     }
     
     public void cyclePortrait(int portraitIndex) {
-        String[] eyeColors = {"BLUE", "BROWN", "GREEN", "HAZEL"};
-        String current = currentSequence.get(portraitIndex);
-        
-        int currentIndex = 0;
-        for (int i = 0; i < eyeColors.length; i++) {
-            if (eyeColors[i].equals(current)) {
-                currentIndex = i;
-                break;
-            }
-        }
-        
-        int nextIndex = (currentIndex + 1) % eyeColors.length;
-        currentSequence.set(portraitIndex, eyeColors[nextIndex]);
+        int current = currentSequence.get(portraitIndex);
+        currentSequence.set(portraitIndex, current % EYE_COLORS.length + 1);
     }
     
     @Override
     public boolean checkSolution(Object playerInput) {
-        // Check if current sequence matches correct sequence
-        return currentSequence.equals(correctSequence);
+        return currentSequence.matches(correctSequence);
     }
     
     @Override
     public String getSolutionHint(int hintLevel) {
         switch(hintLevel) {
             case 0: return "Check the ledger for eye color descriptions.";
-            case 1: return "The portraits are in order: Blue, Brown, Green, Hazel.";
-            case 2: return "Portrait 1: BLUE, Portrait 2: BROWN, Portrait 3: GREEN, Portrait 4: HAZEL";
+            case 1: return "The portraits are in order: " + String.join(", ", colors.decode(correctSequence, false)) + ".";
+            case 2:
+                StringBuilder answer = new StringBuilder();
+                for (int i = 0; i < correctSequence.size(); i++) {
+                    answer.append(i == 0 ? "" : ", ").append("Portrait ").append(i + 1)
+                          .append(": ").append(colors.name(correctSequence.get(i)));
+                }
+                return answer.toString();
             default: return "No more hints.";
         }
     }
     
     @Override
     public void reset() {
-        isSolved = false;
-        currentSequence.clear();
-        for (int i = 0; i < correctSequence.size(); i++) {
-            currentSequence.add("BROWN");
-        }
-        attemptsRemaining = 3;
+        currentSequence.fill(colors.code(START_COLOR));
+        resetState();
     }
     
+    @Override
+    protected void detachProgress() { currentSequence = new PackedSlots(currentSequence); }
+    @Override
+    protected int progressWordCount() { return currentSequence.wordCount(); }
+    @Override
+    protected void saveProgress(long[] dst, int offset) { currentSequence.copyTo(dst, offset); }
+    @Override
+    protected void loadProgress(long[] src, int offset) { currentSequence.copyFrom(src, offset); }
+    
     public List<String> getCurrentSequence() {
-        return new ArrayList<>(currentSequence);
+        return colors.decode(currentSequence, false);
+    }
+    
+    int getPortraitCount() {
+        return correctSequence.size();
     }
 }
 
@@ -197,26 +354,29 @@ class PortraitEyesPuzzle extends Puzzle {
 class CipherPuzzle extends Puzzle {
     private String encryptedText;
     private String decryptedSolution;
-    private int caesarShift;
+    private String normalizedSolution;
+    private CipherEngine cipher;
     
     public CipherPuzzle(String puzzleId, String encrypted, String solution, int shift) {
+        this(puzzleId, encrypted, solution, CipherEngine.caesar(shift));
+    }
+    
+    public CipherPuzzle(String puzzleId, String encrypted, String solution, CipherEngine cipher) {
         super(puzzleId, "CIPHER_DECODE", "Ciphered Diary", 
               "Decode the scrambled text.", "MEDIUM");
         this.encryptedText = encrypted;
         this.decryptedSolution = solution;
-        this.caesarShift = shift;
+        this.normalizedSolution = solution.toUpperCase().trim();
+        this.cipher = cipher;
     }
     
     public String decrypt(String text, int shift) {
-        StringBuilder result = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            if (Character.isLetter(c)) {
-                char base = Character.isUpperCase(c) ? 'A' : 'a';
-                c = (char) ((c - base - shift + 26) % 26 + base);
-            }
-            result.append(c);
-        }
-        return result.toString();
+        return CipherEngine.caesar(shift).decode(text);
+    }
+    
+    /** Decrypts with this puzzle's own cipher. */
+    public String decrypt(String text) {
+        return cipher.decode(text);
     }
     
     @Override
@@ -225,59 +385,114 @@ class CipherPuzzle extends Puzzle {
             return false;
         }
         String input = ((String) playerInput).toUpperCase().trim();
-        return input.equals(decryptedSolution.toUpperCase().trim());
+        return input.equals(normalizedSolution);
     }
     
     @Override
     public String getSolutionHint(int hintLevel) {
         switch(hintLevel) {
-            case 0: return "The phonograph shows the number 3.";
-            case 1: return "Try shifting each letter back by 3 positions.";
-            case 2: return "The message says: " + decryptedSolution;
+            case 0: return keyClue();
+            case 1:
+                // What a player doing frequency analysis would notice first
+                char common = CipherCracker.mostCommonLetter(encryptedText);
+                if (common != 0) {
+                    return "The letter " + common + " appears most often. It stands for "
+                        + Character.toUpperCase(cipher.decode(String.valueOf(common)).charAt(0))
+                        + (cipher.getPeriod() > 1 ? " in at least one place." : ".");
+                }
+                return keyClue();
+            case 2: return keyReveal();
+            case 3: return "The message says: " + decryptedSolution;
             default: return "No more hints.";
         }
     }
     
+    private String keyClue() {
+        switch (cipher.getType()) {
+            case CipherEngine.CAESAR: return "The phonograph shows the number " + cipher.getKey() + ".";
+            case CipherEngine.VIGENERE: return "The key is a word of " + cipher.getKey().length() + " letters, repeated.";
+            case CipherEngine.ATBASH: return "The alphabet runs backwards here.";
+            default: return "The alphabet starts with a hidden word.";
+        }
+    }
+    
+    private String keyReveal() {
+        switch (cipher.getType()) {
+            case CipherEngine.CAESAR: return "Try shifting each letter back by " + cipher.getKey() + " positions.";
+            case CipherEngine.ATBASH: return "A becomes Z, B becomes Y, and so on.";
+            default: return "The key is " + cipher.getKey() + ".";
+        }
+    }
+    
+    @Override
+    public String validate() {
+        if (encryptedText == null || encryptedText.isEmpty()) {
+            return "Cipher puzzle has no encrypted text";
+        }
+        if (!cipher.decodesTo(encryptedText, decryptedSolution)) {
+            return "Encrypted text does not decode to the solution with " + cipher;
+        }
+        return null;
+    }
+    
     @Override
     public void reset() {
-        isSolved = false;
-        attemptsRemaining = 3;
+        resetState();
     }
     
     public String getEncryptedText() {
         return encryptedText;
     }
+    
+    // The burned diary carries the encrypted text
+    @Override
+    public String getShownText() {
+        return encryptedText;
+    }
+    
+    public CipherEngine getCipher() {
+        return cipher;
+    }
+    
+    String getSolutionText() {
+        return decryptedSolution;
+    }
 }
 
 // Item Arrangement Puzzle - Kitchen
 class ItemArrangementPuzzle extends Puzzle {
+    private SlotSymbols items = new SlotSymbols();
     private List<String> correctArrangement;
-    private List<String> currentArrangement;
+    private PackedSlots correctSlots;
+    private PackedSlots currentArrangement;
     
     public ItemArrangementPuzzle(String puzzleId, List<String> solution) {
         super(puzzleId, "ITEM_ARRANGEMENT", "Table Settings", 
               "Arrange items in the correct order.", "MEDIUM");
         this.correctArrangement = new ArrayList<>(solution);
-        this.currentArrangement = new ArrayList<>();
+        this.correctSlots = new PackedSlots(solution.size());
+        for (int i = 0; i < solution.size(); i++) {
+            correctSlots.set(i, items.intern(solution.get(i)));
+        }
+        this.currentArrangement = new PackedSlots(solution.size());
     }
     
     public void placeItem(String item, int position) {
-        while (currentArrangement.size() <= position) {
-            currentArrangement.add(null);
+        if (position >= 0 && position < currentArrangement.size()) {
+            currentArrangement.set(position, items.intern(item));
         }
-        currentArrangement.set(position, item);
     }
     
     @Override
     public boolean checkSolution(Object playerInput) {
-        return currentArrangement.equals(correctArrangement);
+        return currentArrangement.matches(correctSlots);
     }
     
     @Override
     public String getSolutionHint(int hintLevel) {
         switch(hintLevel) {
             case 0: return "Check the diary for table etiquette.";
-            case 1: return "Fork left, plate center, knife right, spoon far right.";
+            case 1: return "Start with " + correctArrangement.get(0) + ".";
             case 2: return "Correct order: " + correctArrangement.toString();
             default: return "No more hints.";
         }
@@ -285,9 +500,28 @@ class ItemArrangementPuzzle extends Puzzle {
     
     @Override
     public void reset() {
-        isSolved = false;
         currentArrangement.clear();
-        attemptsRemaining = 3;
+        resetState();
+    }
+    
+    @Override
+    protected void detachProgress() {
+        items = items.copy();
+        currentArrangement = new PackedSlots(currentArrangement);
+    }
+    @Override
+    protected int progressWordCount() { return currentArrangement.wordCount(); }
+    @Override
+    protected void saveProgress(long[] dst, int offset) { currentArrangement.copyTo(dst, offset); }
+    @Override
+    protected void loadProgress(long[] src, int offset) { currentArrangement.copyFrom(src, offset); }
+    
+    public List<String> getCurrentArrangement() {
+        return items.decode(currentArrangement, true);
+    }
+    
+    List<String> getSolutionItems() {
+        return new ArrayList<>(correctArrangement);
     }
 }
 
@@ -296,8 +530,13 @@ class LogicGridPuzzle extends Puzzle {
     private List<String> victims;
     private List<String> weapons;
     private List<String> times;
-    private String[][] solution; // [victim_index][0=weapon, 1=time]
-    private String[][] playerGrid;
+    private Map<String, Integer> weaponCodes = new HashMap<>();
+    private Map<String, Integer> timeCodes = new HashMap<>();
+    // Two slots per victim: weapon code, time code (list index + 1)
+    private PackedSlots solution;
+    private PackedSlots playerGrid;
+    private List<String> clues = new ArrayList<>();
+    private LogicGridSolver solver;
     
     public LogicGridPuzzle(String puzzleId, List<String> victims, 
                           List<String> weapons, List<String> times) {
@@ -306,80 +545,201 @@ class LogicGridPuzzle extends Puzzle {
         this.victims = new ArrayList<>(victims);
         this.weapons = new ArrayList<>(weapons);
         this.times = new ArrayList<>(times);
-        this.playerGrid = new String[victims.size()][2];
+        for (int i = 0; i < weapons.size(); i++) {
+            weaponCodes.putIfAbsent(weapons.get(i), i + 1);
+        }
+        for (int i = 0; i < times.size(); i++) {
+            timeCodes.putIfAbsent(times.get(i), i + 1);
+        }
+        this.playerGrid = new PackedSlots(victims.size() * 2);
+        this.solver = new LogicGridSolver(Arrays.asList(this.victims, this.weapons, this.times));
     }
     
+    /** @param solution [victim_index][0=weapon, 1=time] */
     public void setSolution(String[][] solution) {
-        this.solution = solution;
+        PackedSlots packed = new PackedSlots(victims.size() * 2);
+        for (int i = 0; i < victims.size() && i < solution.length; i++) {
+            packed.set(2 * i, codeOf(weaponCodes, solution[i][0]));
+            packed.set(2 * i + 1, codeOf(timeCodes, solution[i][1]));
+        }
+        this.solution = packed;
+    }
+    
+    public void addClue(String clue) {
+        clues.add(clue);
+    }
+    
+    /**
+     * Adds the machine-readable form of a clue, e.g. ("same", "J.M.", "Midnight", 0).
+     * @param clueIndex index of the clue text it came from, or -1
+     */
+    public void addConstraint(String type, String a, String b, int clueIndex) {
+        solver.addConstraint(LogicGridSolver.parseType(type), a, b, clueIndex);
+        if (solution == null && solver.isDeducible()) {
+            solution = pack(solver.solve());
+        }
     }
     
     public void assignToVictim(int victimIndex, String weapon, String time) {
-        playerGrid[victimIndex][0] = weapon;
-        playerGrid[victimIndex][1] = time;
+        playerGrid.set(2 * victimIndex, codeOf(weaponCodes, weapon));
+        playerGrid.set(2 * victimIndex + 1, codeOf(timeCodes, time));
+    }
+    
+    private static int codeOf(Map<String, Integer> codes, String name) {
+        if (name == null) {
+            return PackedSlots.EMPTY;
+        }
+        Integer code = codes.get(name);
+        return code != null ? code : PackedSlots.MAX_CODE;
+    }
+    
+    private String nameOf(int slot, int code) {
+        if (code == PackedSlots.EMPTY || code == PackedSlots.MAX_CODE) {
+            return null;
+        }
+        return (slot % 2 == 0 ? weapons : times).get(code - 1);
     }
     
     @Override
     public boolean checkSolution(Object playerInput) {
-        for (int i = 0; i < victims.size(); i++) {
-            if (!playerGrid[i][0].equals(solution[i][0]) || 
-                !playerGrid[i][1].equals(solution[i][1])) {
-                return false;
+        return solution != null && playerGrid.matches(solution);
+    }
+    
+    @Override
+    public String getSolutionHint(int hintLevel) {
+        if (hintLevel == 0) {
+            return "Read all the clues carefully.";
+        }
+        
+        // Point out a wrong assignment before suggesting new ones
+        if (solution != null) {
+            for (int slot = 0; slot < playerGrid.size(); slot++) {
+                int code = playerGrid.get(slot);
+                if (code != PackedSlots.EMPTY && code != solution.get(slot)) {
+                    String placed = nameOf(slot, code);
+                    return victims.get(slot / 2) + " did not go with "
+                        + (placed != null ? placed : "that") + ".";
+                }
+            }
+        }
+        
+        LogicGridSolver.Deduction next = solver.nextDeduction(playerIndices());
+        if (next != null) {
+            return solver.describe(next, clues);
+        }
+        
+        // The clues don't settle it, so reveal the next missing assignment
+        if (solution != null) {
+            for (int i = 0; i < victims.size(); i++) {
+                if (playerGrid.get(2 * i) == PackedSlots.EMPTY || playerGrid.get(2 * i + 1) == PackedSlots.EMPTY) {
+                    return victims.get(i) + ": " + nameOf(2 * i, solution.get(2 * i))
+                        + " at " + nameOf(2 * i + 1, solution.get(2 * i + 1)) + ".";
+                }
             }
         }
-        return true;
+        return "No more hints.";
     }
     
     @Override
-    public String getSolutionHint(int hintLevel) {
-        switch(hintLevel) {
-            case 0: return "Read all the clues carefully.";
-            case 1: return "J.M. at midnight with knife, A.R. at 3AM with rope.";
-            case 2: return "L.K. at dawn with poison, S.T. at noon with blunt object.";
-            default: return "No more hints.";
+    public String validate() {
+        if (solver.getConstraintCount() == 0) {
+            return solution == null ? "logic grid has neither a solution nor constraints" : null;
+        }
+        int count = solver.countSolutions(2);
+        if (count == 0) {
+            return "logic grid constraints have no solution";
+        }
+        if (count > 1) {
+            return "logic grid constraints allow more than one solution";
+        }
+        if (solution != null && !pack(solver.solve()).matches(solution)) {
+            return "logic grid constraints don't match the authored solution";
+        }
+        return null;
+    }
+    
+    /** Player grid as solver indices: [row][0=victim, 1=weapon, 2=time], -1 for empty. */
+    private int[][] playerIndices() {
+        int[][] known = new int[victims.size()][3];
+        for (int i = 0; i < victims.size(); i++) {
+            known[i][0] = i;
+            known[i][1] = indexOf(playerGrid.get(2 * i));
+            known[i][2] = indexOf(playerGrid.get(2 * i + 1));
         }
+        return known;
     }
     
+    private static int indexOf(int code) {
+        return code == PackedSlots.EMPTY || code == PackedSlots.MAX_CODE ? -1 : code - 1;
+    }
+    
+    /** Solver grid in slot form: value index + 1 per category. */
+    private PackedSlots pack(int[][] grid) {
+        if (grid == null) {
+            return null;
+        }
+        PackedSlots packed = new PackedSlots(victims.size() * 2);
+        for (int i = 0; i < grid.length; i++) {
+            packed.set(2 * i, grid[i][1] + 1);
+            packed.set(2 * i + 1, grid[i][2] + 1);
+        }
+        return packed;
+    }
+    
+    public List<String> getClues() { return Collections.unmodifiableList(clues); }
+    public LogicGridSolver getSolver() { return solver; }
+    
     @Override
     public void reset() {
-        isSolved = false;
-        playerGrid = new String[victims.size()][2];
-        attemptsRemaining = 3;
+        playerGrid.clear();
+        resetState();
     }
+    
+    @Override
+    protected void detachProgress() { playerGrid = new PackedSlots(playerGrid); }
+    @Override
+    protected int progressWordCount() { return playerGrid.wordCount(); }
+    @Override
+    protected void saveProgress(long[] dst, int offset) { playerGrid.copyTo(dst, offset); }
+    @Override
+    protected void loadProgress(long[] src, int offset) { playerGrid.copyFrom(src, offset); }
 }
 
 // Token Sequence Puzzle - Cellar
 class TokenSequencePuzzle extends Puzzle {
+    private SlotSymbols tokens = new SlotSymbols();
     private List<String> correctSequence;
-    private List<String> currentSequence;
+    private PackedSlots correctSlots;
+    private PackedSlots currentSequence;
     private int slotCount;
     
     public TokenSequencePuzzle(String puzzleId, List<String> solution, int slots) {
         super(puzzleId, "TOKEN_SEQUENCE", "Final Performance", 
               "Place tokens in the correct order.", "HARD");
         this.correctSequence = new ArrayList<>(solution);
-        this.currentSequence = new ArrayList<>();
-        this.slotCount = slots;
+        this.slotCount = Math.max(slots, solution.size());
+        this.correctSlots = new PackedSlots(slotCount);
+        for (int i = 0; i < solution.size(); i++) {
+            correctSlots.set(i, tokens.intern(solution.get(i)));
+        }
+        this.currentSequence = new PackedSlots(slotCount);
     }
     
     public void placeToken(String token, int slotIndex) {
-        while (currentSequence.size() <= slotIndex) {
-            currentSequence.add(null);
+        if (slotIndex >= 0 && slotIndex < slotCount) {
+            currentSequence.set(slotIndex, tokens.intern(token));
         }
-        currentSequence.set(slotIndex, token);
     }
     
     public void removeToken(int slotIndex) {
-        if (slotIndex < currentSequence.size()) {
-            currentSequence.set(slotIndex, null);
+        if (slotIndex >= 0 && slotIndex < slotCount) {
+            currentSequence.set(slotIndex, PackedSlots.EMPTY);
         }
     }
     
     @Override
     public boolean checkSolution(Object playerInput) {
-        if (currentSequence.size() != correctSequence.size()) {
-            return false;
-        }
-        return currentSequence.equals(correctSequence);
+        return currentSequence.matches(correctSlots);
     }
     
     @Override
@@ -394,12 +754,31 @@ class TokenSequencePuzzle extends Puzzle {
     
     @Override
     public void reset() {
-        isSolved = false;
         currentSequence.clear();
-        attemptsRemaining = 3;
+        resetState();
+    }
+    
+    @Override
+    protected void detachProgress() {
+        tokens = tokens.copy();
+        currentSequence = new PackedSlots(currentSequence);
     }
+    @Override
+    protected int progressWordCount() { return currentSequence.wordCount(); }
+    @Override
+    protected void saveProgress(long[] dst, int offset) { currentSequence.copyTo(dst, offset); }
+    @Override
+    protected void loadProgress(long[] src, int offset) { currentSequence.copyFrom(src, offset); }
     
     public List<String> getCurrentSequence() {
-        return new ArrayList<>(currentSequence);
+        return tokens.decode(currentSequence, true);
     }
-}
\ No newline at end of file
+    
+    List<String> getSolutionTokens() {
+        return new ArrayList<>(correctSequence);
+    }
+    
+    int getSlotCount() {
+        return slotCount;
+    }
+}
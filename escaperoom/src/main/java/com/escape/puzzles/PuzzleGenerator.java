@@ -0,0 +1,413 @@
+package com.escape.puzzles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator for new instances of an authored puzzle.
+ * The authored puzzle is the template: the generator keeps its pieces (the
+ * portraits, the table items, the tokens, the grid's names) and draws a new
+ * answer for them, so the room's objects still fit. Every candidate is played
+ * through or solved before it is accepted, and its difficulty band comes from
+ * how much work that took. The same seed always gives the same variant.
+ */
+public class PuzzleGenerator {
+
+    // Candidates tried per request before settling for the closest band
+    private static final int MAX_ATTEMPTS = 64;
+
+    private static final String[] DEFAULT_PHRASES = {
+        "THE GREENHOUSE HOLDS THE FINAL SECRET",
+        "THE CELLAR REMEMBERS EVERY NAME",
+        "LOOK BEHIND THE PORTRAIT WITH NO EYES",
+        "THE LULLABY PLAYS BACKWARDS AT MIDNIGHT",
+        "FOUR GUESTS ARRIVED AND NONE DEPARTED",
+        "THE HOUSE KEEPS WHAT IT IS GIVEN",
+        "COUNT THE CANDLES ON THE DINING TABLE",
+        "HER LAST LETTER WAS NEVER SENT"
+    };
+
+    private final String type;
+    private final List<String> pieces;          // sequence types: the authored solution
+    private final int slots;                    // portrait count, token sequence slot count
+    private final List<String> phrases;         // cipher plain texts
+    private final List<List<String>> categories;   // logic grid names
+
+    /** Creates a generator for new instances of the template's puzzle. */
+    public PuzzleGenerator(Puzzle template) {
+        this.type = template.getType();
+        List<String> pieces = null;
+        int slots = 0;
+        List<String> phrases = null;
+        List<List<String>> categories = null;
+
+        if (template instanceof PortraitEyesPuzzle) {
+            slots = ((PortraitEyesPuzzle) template).getPortraitCount();
+        } else if (template instanceof ItemArrangementPuzzle) {
+            pieces = ((ItemArrangementPuzzle) template).getSolutionItems();
+        } else if (template instanceof TokenSequencePuzzle) {
+            TokenSequencePuzzle tokens = (TokenSequencePuzzle) template;
+            pieces = tokens.getSolutionTokens();
+            slots = tokens.getSlotCount();
+        } else if (template instanceof CipherPuzzle) {
+            phrases = new ArrayList<>();
+            for (String phrase : DEFAULT_PHRASES) {
+                phrases.add(phrase);
+            }
+            String authored = ((CipherPuzzle) template).getSolutionText().toUpperCase().trim();
+            if (!phrases.contains(authored)) {
+                phrases.add(authored);
+            }
+        } else if (template instanceof LogicGridPuzzle) {
+            LogicGridSolver solver = ((LogicGridPuzzle) template).getSolver();
+            categories = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            for (int c = 0; c < solver.getCategoryCount(); c++) {
+                categories.add(solver.getCategory(c));
+                for (String name : solver.getCategory(c)) {
+                    if (!names.add(name)) {
+                        // Constraints are stored by name, so every name must be unique
+                        throw new IllegalArgumentException("Logic grid names must be unique: " + name);
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("No generator for puzzle type " + type);
+        }
+        this.pieces = pieces;
+        this.slots = slots;
+        this.phrases = phrases;
+        this.categories = categories;
+    }
+
+    public static boolean supports(Puzzle template) {
+        return template instanceof PortraitEyesPuzzle
+            || template instanceof ItemArrangementPuzzle
+            || template instanceof TokenSequencePuzzle
+            || template instanceof CipherPuzzle
+            || template instanceof LogicGridPuzzle;
+    }
+
+    /**
+     * Whether a variant can stand in for the template in a game: nothing but
+     * the puzzle checks its answer. The mannequins' correct items repeat the
+     * logic grid's answer and the sequence puzzles' answers are item ids
+     * placed in the room, so only the cipher qualifies for now.
+     */
+    public static boolean isSelfContained(Puzzle template) {
+        return template instanceof CipherPuzzle;
+    }
+
+    public String getType() { return type; }
+
+    /**
+     * Generates a validated variant in the requested band. If none of the
+     * candidates lands in the band, the closest one is returned, so check
+     * getBand() when the band matters. Returns null only if every candidate
+     * failed validation.
+     */
+    public PuzzleVariant generate(String band, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        PuzzleVariant closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            PuzzleVariant candidate = generateOnce(band, seed, random);
+            if (candidate == null) {
+                continue;
+            }
+            int distance = Math.abs(bandRank(candidate.getBand()) - bandRank(band));
+            if (distance == 0) {
+                return candidate;
+            }
+            if (distance < closestDistance) {
+                closest = candidate;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    private PuzzleVariant generateOnce(String band, long seed, SplittableRandom random) {
+        switch (type) {
+            case "PORTRAIT_EYES": return generatePortraits(seed, random);
+            case "ITEM_ARRANGEMENT":
+            case "TOKEN_SEQUENCE": return generateSequence(seed, random);
+            case "CIPHER_DECODE": return generateCipher(seed, random);
+            case "LOGIC_GRID": return generateLogicGrid(band, seed, random);
+            default: return null;
+        }
+    }
+
+    private static int bandRank(String band) {
+        switch (band) {
+            case PuzzleVariant.EASY: return 0;
+            case PuzzleVariant.MEDIUM: return 1;
+            default: return 2;
+        }
+    }
+
+    /** Band from effort, given the effort at which a puzzle stops being easy and medium. */
+    private static String band(int effort, int easyMax, int mediumMax) {
+        if (effort <= easyMax) {
+            return PuzzleVariant.EASY;
+        }
+        return effort <= mediumMax ? PuzzleVariant.MEDIUM : PuzzleVariant.HARD;
+    }
+
+    // ---------------------------------------------------------------
+    // Portraits
+    // ---------------------------------------------------------------
+
+    private PuzzleVariant generatePortraits(long seed, SplittableRandom random) {
+        String[] colors = PortraitEyesPuzzle.EYE_COLORS;
+        int start = Arrays.asList(colors).indexOf(PortraitEyesPuzzle.START_COLOR);
+        int count = slots;
+
+        List<String> solution = new ArrayList<>(count);
+        int[] presses = new int[count];
+        int effort = 0;
+        for (int i = 0; i < count; i++) {
+            int color = random.nextInt(colors.length);
+            solution.add(colors[color]);
+            presses[i] = Math.floorMod(color - start, colors.length);
+            effort += presses[i];
+        }
+        if (effort == 0) {
+            return null;   // already solved when the room loads
+        }
+
+        // Play it: the presses counted above must solve it
+        PortraitEyesPuzzle check = new PortraitEyesPuzzle("generated", solution);
+        for (int i = 0; i < count; i++) {
+            for (int p = 0; p < presses[i]; p++) {
+                check.cyclePortrait(i);
+            }
+        }
+        if (!check.checkSolution(null)) {
+            return null;
+        }
+        int max = count * (colors.length - 1);
+        return new PuzzleVariant(type, band(effort, max / 3, 2 * max / 3), seed, effort, solution, 0);
+    }
+
+    // ---------------------------------------------------------------
+    // Item and token sequences
+    // ---------------------------------------------------------------
+
+    private PuzzleVariant generateSequence(long seed, SplittableRandom random) {
+        int n = pieces.size();
+        int[] order = shuffledRange(n, random);
+        List<String> solution = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            solution.add(pieces.get(order[i]));
+        }
+
+        // Effort is how far the answer is from the order the pieces are laid out in
+        int inversions = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (order[i] > order[j]) {
+                    inversions++;
+                }
+            }
+        }
+        if (inversions == 0) {
+            return null;   // that is the authored answer again
+        }
+
+        Puzzle check;
+        if (type.equals("TOKEN_SEQUENCE")) {
+            TokenSequencePuzzle tokens = new TokenSequencePuzzle("generated", solution, slots);
+            for (int i = 0; i < n; i++) {
+                tokens.placeToken(solution.get(i), i);
+            }
+            check = tokens;
+        } else {
+            ItemArrangementPuzzle items = new ItemArrangementPuzzle("generated", solution);
+            for (int i = 0; i < n; i++) {
+                items.placeItem(solution.get(i), i);
+            }
+            check = items;
+        }
+        if (!check.checkSolution(null)) {
+            return null;
+        }
+        int max = n * (n - 1) / 2;
+        return new PuzzleVariant(type, band(inversions, max / 3, 2 * max / 3), seed, inversions, solution, slots);
+    }
+
+    // ---------------------------------------------------------------
+    // Cipher
+    // ---------------------------------------------------------------
+
+    private PuzzleVariant generateCipher(long seed, SplittableRandom random) {
+        String plain = phrases.get(random.nextInt(phrases.size()));
+        int shift = 1 + random.nextInt(25);
+
+        CipherEngine cipher = CipherEngine.caesar(shift);
+        String encrypted = cipher.encode(plain);
+        if (!cipher.decodesTo(encrypted, plain)) {
+            return null;
+        }
+        // No other key may turn the text into another phrase from the list
+        for (int other = 1; other < 26; other++) {
+            if (other != shift && phrases.contains(CipherEngine.caesar(other).decode(encrypted))) {
+                return null;
+            }
+        }
+
+        // Effort: how many keys frequency analysis tries before the right one,
+        // plus how far the key is from no shift for someone counting by hand
+        int rank = CipherCracker.caesarRank(encrypted, shift);
+        int effort = 3 * rank + Math.min(shift, 26 - shift);
+        return new PuzzleVariant(type, band(effort, 4, 9), seed, effort, Arrays.asList(encrypted, plain), shift);
+    }
+
+    // ---------------------------------------------------------------
+    // Logic grid
+    // ---------------------------------------------------------------
+
+    private PuzzleVariant generateLogicGrid(String band, long seed, SplittableRandom random) {
+        int rows = categories.get(0).size();
+        int cats = categories.size();
+
+        // Row r goes with value grid[r][c] of each category
+        int[][] grid = new int[rows][cats];
+        for (int c = 0; c < cats; c++) {
+            int[] perm = c == 0 ? identity(rows) : shuffledRange(rows, random);
+            for (int r = 0; r < rows; r++) {
+                grid[r][c] = perm[r];
+            }
+        }
+
+        // Every true statement about a pair of values: {type, catA, valA, catB, valB}
+        List<int[]> facts = new ArrayList<>();
+        for (int ca = 0; ca < cats; ca++) {
+            for (int cb = ca + 1; cb < cats; cb++) {
+                for (int va = 0; va < rows; va++) {
+                    int row = rowOf(grid, ca, va);
+                    for (int vb = 0; vb < rows; vb++) {
+                        int kind = grid[row][cb] == vb ? LogicGridSolver.SAME : LogicGridSolver.DIFFERENT;
+                        facts.add(new int[] {kind, ca, va, cb, vb});
+                    }
+                }
+            }
+        }
+        shuffle(facts, random);
+        // Easy grids lead with direct matches, hard ones with exclusions
+        if (!band.equals(PuzzleVariant.MEDIUM)) {
+            int first = band.equals(PuzzleVariant.EASY) ? LogicGridSolver.SAME : LogicGridSolver.DIFFERENT;
+            facts.sort((x, y) -> Boolean.compare(x[0] != first, y[0] != first));
+        }
+
+        // Add facts until the answer is unique, then drop the ones that aren't needed
+        List<int[]> chosen = new ArrayList<>();
+        for (int[] fact : facts) {
+            chosen.add(fact);
+            if (solverFor(chosen).countSolutions(2) == 1) {
+                break;
+            }
+        }
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            int[] removed = chosen.remove(i);
+            LogicGridSolver without = solverFor(chosen);
+            if (without.countSolutions(2) != 1 || !without.isDeducible()) {
+                chosen.add(i, removed);
+            }
+        }
+
+        LogicGridSolver solver = solverFor(chosen);
+        if (solver.countSolutions(2) != 1 || !solver.isDeducible()) {
+            return null;   // players must be able to get there without guessing
+        }
+
+        // Effort: steps that need more than reading a clue count double
+        int indirect = 0;
+        for (LogicGridSolver.Deduction d : solver.getDeductions()) {
+            if (d.rule != LogicGridSolver.Deduction.CLUE) {
+                indirect++;
+            }
+        }
+        int effort = chosen.size() + 2 * indirect;
+
+        List<String> clues = new ArrayList<>(chosen.size());
+        List<String[]> constraints = new ArrayList<>(chosen.size());
+        for (int[] fact : chosen) {
+            String a = categories.get(fact[1]).get(fact[2]);
+            String b = categories.get(fact[3]).get(fact[4]);
+            constraints.add(new String[] {
+                fact[0] == LogicGridSolver.SAME ? "same" : "not", a, b, String.valueOf(clues.size())
+            });
+            clues.add(clueText(fact, a, b));
+        }
+        // Easy grids take fewer steps than there are cells to fill, hard ones half as many again
+        int cells = rows * (cats - 1);
+        return new PuzzleVariant(type, band(effort, cells - 1, 3 * cells / 2 + 1), seed, effort, null, 0,
+            categories, grid, clues, constraints);
+    }
+
+    private LogicGridSolver solverFor(List<int[]> facts) {
+        LogicGridSolver solver = new LogicGridSolver(categories);
+        for (int i = 0; i < facts.size(); i++) {
+            int[] f = facts.get(i);
+            solver.addConstraint(f[0], f[1], f[2], f[3], f[4], i);
+        }
+        return solver;
+    }
+
+    /** Clue wording for the victims / weapons / times grid. */
+    private static String clueText(int[] fact, String a, String b) {
+        boolean same = fact[0] == LogicGridSolver.SAME;
+        if (fact[1] == 0 && fact[3] == 1) {
+            return a + (same ? " was killed with the " : " was not killed with the ") + b.toLowerCase() + ".";
+        }
+        if (fact[1] == 0) {
+            return a + (same ? " was killed at " : " was not killed at ") + b + ".";
+        }
+        return "The " + a.toLowerCase() + (same ? " murder happened at " : " murder did not happen at ") + b + ".";
+    }
+
+    private static int rowOf(int[][] grid, int cat, int value) {
+        for (int r = 0; r < grid.length; r++) {
+            if (grid[r][cat] == value) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------
+
+    private static int[] identity(int n) {
+        int[] range = new int[n];
+        for (int i = 0; i < n; i++) {
+            range[i] = i;
+        }
+        return range;
+    }
+
+    private static int[] shuffledRange(int n, SplittableRandom random) {
+        int[] range = identity(n);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = range[i];
+            range[i] = range[j];
+            range[j] = tmp;
+        }
+        return range;
+    }
+
+    private static <T> void shuffle(List<T> list, SplittableRandom random) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            list.set(i, list.set(j, list.get(i)));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.escape.puzzles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One generated, already validated puzzle instance.
+ * Variants are immutable and hold only the puzzle data, so the same variant
+ * can be built into a fresh Puzzle under whichever id the room uses. The seed
+ * reproduces the variant exactly through PuzzleGenerator.
+ */
+public class PuzzleVariant {
+    public static final String EASY = "EASY";
+    public static final String MEDIUM = "MEDIUM";
+    public static final String HARD = "HARD";
+
+    // Hints given to a built puzzle, as many as the authored ones have
+    private static final int HINTS = 3;
+
+    private final String type;
+    private final String band;
+    private final long seed;
+    private final int effort;
+
+    // Sequence types: the solution in order. Cipher: encrypted text, then plain text.
+    private final List<String> values;
+    // Cipher: the shift. Token sequence: the slot count.
+    private final int parameter;
+
+    // Logic grid only
+    private final List<List<String>> categories;
+    private final int[][] grid;
+    private final List<String> clues;
+    private final List<String[]> constraints;   // {type, a, b, clue index}
+
+    PuzzleVariant(String type, String band, long seed, int effort, List<String> values, int parameter) {
+        this(type, band, seed, effort, values, parameter, null, null, null, null);
+    }
+
+    PuzzleVariant(String type, String band, long seed, int effort, List<String> values, int parameter,
+                  List<List<String>> categories, int[][] grid, List<String> clues, List<String[]> constraints) {
+        this.type = type;
+        this.band = band;
+        this.seed = seed;
+        this.effort = effort;
+        this.values = values == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(values));
+        this.parameter = parameter;
+        this.categories = categories;
+        this.grid = grid;
+        this.clues = clues == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(clues));
+        this.constraints = constraints == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(constraints));
+    }
+
+    /** Builds a new puzzle from this variant. Each call returns an independent instance. */
+    public Puzzle build(String puzzleId) {
+        Puzzle puzzle;
+        switch (type) {
+            case "PORTRAIT_EYES":
+                puzzle = new PortraitEyesPuzzle(puzzleId, values);
+                break;
+            case "CIPHER_DECODE":
+                puzzle = new CipherPuzzle(puzzleId, values.get(0), values.get(1), parameter);
+                break;
+            case "ITEM_ARRANGEMENT":
+                puzzle = new ItemArrangementPuzzle(puzzleId, values);
+                break;
+            case "TOKEN_SEQUENCE":
+                puzzle = new TokenSequencePuzzle(puzzleId, values, parameter);
+                break;
+            case "LOGIC_GRID":
+                puzzle = buildLogicGrid(puzzleId);
+                break;
+            default:
+                throw new IllegalStateException("Unknown puzzle type: " + type);
+        }
+        puzzle.difficulty = band;
+        // The authored hints describe the authored answer, so use the puzzle's own hint ladder
+        for (int level = 0; level < HINTS; level++) {
+            puzzle.addHint(puzzle.getSolutionHint(level));
+        }
+        return puzzle;
+    }
+
+    private Puzzle buildLogicGrid(String puzzleId) {
+        LogicGridPuzzle puzzle = new LogicGridPuzzle(puzzleId, categories.get(0), categories.get(1), categories.get(2));
+        String[][] solution = new String[grid.length][2];
+        for (int r = 0; r < grid.length; r++) {
+            solution[r][0] = categories.get(1).get(grid[r][1]);
+            solution[r][1] = categories.get(2).get(grid[r][2]);
+        }
+        puzzle.setSolution(solution);
+        for (String clue : clues) {
+            puzzle.addClue(clue);
+        }
+        for (String[] constraint : constraints) {
+            puzzle.addConstraint(constraint[0], constraint[1], constraint[2], Integer.parseInt(constraint[3]));
+        }
+        return puzzle;
+    }
+
+    public String getType() { return type; }
+    public String getBand() { return band; }
+    public long getSeed() { return seed; }
+    /** Solver effort the difficulty band was derived from. */
+    public int getEffort() { return effort; }
+    public List<String> getValues() { return values; }
+    public List<String> getClues() { return clues; }
+
+    @Override
+    public String toString() {
+        return type + "[" + band + ", effort " + effort + ", seed " + Long.toHexString(seed) + "]";
+    }
+}
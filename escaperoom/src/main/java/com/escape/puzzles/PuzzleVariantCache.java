@@ -0,0 +1,259 @@
+package com.escape.puzzles;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ready-to-use puzzle variants, generated ahead of time.
+ * Authored puzzles are registered as templates; batches of variants are then
+ * generated on a fork/join pool and queued per puzzle and difficulty band.
+ * Starting a session takes a queued variant instead of generating one, and a
+ * queue that runs low is topped up in the background. Nothing is generated
+ * on the caller's thread: an empty queue hands out the authored puzzle and
+ * starts a refill, so prefill() the bands in use as soon as they are known.
+ * Seeds are handed out from a counter and each seed fixes its variant, so a
+ * run started with setSeed() produces the same variants however the batches
+ * are scheduled. SessionContent takes a variant for every new server game.
+ */
+public class PuzzleVariantCache {
+
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    // Variants per leaf task
+    private static final int LEAF_SIZE = 4;
+
+    private final Map<String, PuzzleGenerator> generators = new ConcurrentHashMap<>();
+    private final Map<String, Puzzle> authored = new ConcurrentHashMap<>();
+    private final Map<String, Shelf> shelves = new ConcurrentHashMap<>();
+    private final AtomicLong nextIndex = new AtomicLong();
+
+    private volatile long baseSeed = System.nanoTime();
+    private volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    // Stats
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger generated = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    // Created on first use without locking every later call
+    private static class Holder {
+        static final PuzzleVariantCache INSTANCE = new PuzzleVariantCache();
+    }
+
+    public static PuzzleVariantCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public void setSeed(long seed) {
+        this.baseSeed = seed;
+        nextIndex.set(0);
+    }
+
+    public void setPool(ForkJoinPool pool) { this.pool = pool; }
+
+    /** Variants generated per refill; a queue is refilled once it drops below a quarter of this. */
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    /**
+     * Registers an authored puzzle as the template for its puzzle id.
+     * Returns false if its type has no generator.
+     */
+    public boolean register(Puzzle template) {
+        if (!PuzzleGenerator.supports(template)) {
+            return false;
+        }
+        try {
+            generators.put(template.getPuzzleId(), new PuzzleGenerator(template));
+            // Kept without the player's progress, for when no variant is ready
+            Puzzle fallback = template.copy();
+            fallback.reset();
+            authored.put(template.getPuzzleId(), fallback);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Cannot generate variants of " + template.getPuzzleId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isRegistered(String puzzleId) {
+        return generators.containsKey(puzzleId);
+    }
+
+    /** Starts generating a batch in the background if the queue isn't already full. */
+    public void prefill(String puzzleId, String band) {
+        Shelf shelf = shelf(puzzleId, band);
+        if (shelf != null) {
+            refill(shelf);
+        }
+    }
+
+    /** Generates a batch on the calling thread's pool and waits for it. */
+    public void fill(String puzzleId, String band) {
+        Shelf shelf = shelf(puzzleId, band);
+        if (shelf != null && shelf.refilling.compareAndSet(false, true)) {
+            runBatch(shelf);
+        }
+    }
+
+    /**
+     * Returns a new puzzle for the id in the requested band: a queued variant
+     * when there is one, otherwise a copy of the authored puzzle while the
+     * queue refills. Returns null if the id was never registered.
+     */
+    public Puzzle take(String puzzleId, String band) {
+        PuzzleVariant variant = takeVariant(puzzleId, band);
+        if (variant != null) {
+            return variant.build(puzzleId);
+        }
+        Puzzle fallback = authored.get(puzzleId);
+        return fallback == null ? null : fallback.copy();
+    }
+
+    /** A queued variant, or null if none is ready (a refill is then under way). */
+    public PuzzleVariant takeVariant(String puzzleId, String band) {
+        Shelf shelf = shelf(puzzleId, band);
+        if (shelf == null) {
+            return null;
+        }
+        PuzzleVariant variant = shelf.ready.poll();
+        if (variant != null) {
+            shelf.size.decrementAndGet();
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        if (shelf.size.get() < Math.max(1, batchSize / 4)) {
+            refill(shelf);
+        }
+        return variant;
+    }
+
+    public int getReadyCount(String puzzleId, String band) {
+        Shelf shelf = shelves.get(key(puzzleId, band));
+        return shelf == null ? 0 : shelf.size.get();
+    }
+
+    private Shelf shelf(String puzzleId, String band) {
+        PuzzleGenerator generator = generators.get(puzzleId);
+        if (generator == null) {
+            return null;
+        }
+        return shelves.computeIfAbsent(key(puzzleId, band), k -> new Shelf(generator, band));
+    }
+
+    private static String key(String puzzleId, String band) {
+        return puzzleId + "/" + band;
+    }
+
+    // ---------------------------------------------------------------
+    // Generation
+    // ---------------------------------------------------------------
+
+    private void refill(Shelf shelf) {
+        if (shelf.size.get() >= batchSize || !shelf.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        pool.execute(() -> runBatch(shelf));
+    }
+
+    private void runBatch(Shelf shelf) {
+        try {
+            int count = batchSize;
+            long first = nextIndex.getAndAdd(count);
+            PuzzleVariant[] batch = new PuzzleVariant[count];
+            pool.invoke(new BatchTask(shelf, first, batch, 0, count));
+            for (PuzzleVariant variant : batch) {
+                if (variant != null) {
+                    shelf.ready.offer(variant);
+                    shelf.size.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error generating puzzle variants: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            shelf.refilling.set(false);
+        }
+    }
+
+    private PuzzleVariant generate(Shelf shelf, long index) {
+        PuzzleVariant variant = shelf.generator.generate(shelf.band, seedFor(index));
+        if (variant == null) {
+            rejected.incrementAndGet();
+        } else {
+            generated.incrementAndGet();
+        }
+        return variant;
+    }
+
+    /** Spreads consecutive indexes over the seed space (SplitMix64 finalizer). */
+    private long seedFor(long index) {
+        long z = baseSeed + index * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Generates the variants for a range of seed indexes, splitting down to LEAF_SIZE. */
+    @SuppressWarnings("serial")
+    private class BatchTask extends RecursiveAction {
+        private final Shelf shelf;
+        private final long firstIndex;
+        private final PuzzleVariant[] results;
+        private final int from, to;
+
+        BatchTask(Shelf shelf, long firstIndex, PuzzleVariant[] results, int from, int to) {
+            this.shelf = shelf;
+            this.firstIndex = firstIndex;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = generate(shelf, firstIndex + i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(shelf, firstIndex, results, from, mid),
+                      new BatchTask(shelf, firstIndex, results, mid, to));
+        }
+    }
+
+    /** Queue of ready variants for one puzzle and band. */
+    private static class Shelf {
+        final PuzzleGenerator generator;
+        final String band;
+        final ConcurrentLinkedQueue<PuzzleVariant> ready = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean refilling = new AtomicBoolean();
+
+        Shelf(PuzzleGenerator generator, String band) {
+            this.generator = generator;
+            this.band = band;
+        }
+    }
+
+    // Stats
+    public int getHits() { return hits.get(); }
+    public int getMisses() { return misses.get(); }
+    public int getGeneratedCount() { return generated.get(); }
+    public int getRejectedCount() { return rejected.get(); }
+
+    public void printStats() {
+        System.out.println("Puzzle variants: " + generated.get() + " generated, " + rejected.get()
+            + " rejected, " + hits.get() + " served from cache, " + misses.get() + " authored while refilling");
+    }
+}
@@ -0,0 +1,80 @@
+package com.escape.puzzles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-puzzle mapping between names and slot codes.
+ * Codes start at 1; once the table is full, further names share MAX_CODE.
+ */
+class SlotSymbols {
+    private static final String OTHER = "?";
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    SlotSymbols() {
+        names.add(null);   // code 0 is EMPTY
+    }
+
+    /** Names seen during play are added, so each game needs its own table. */
+    SlotSymbols copy() {
+        SlotSymbols copy = new SlotSymbols();
+        copy.codes.putAll(codes);
+        copy.names.clear();
+        copy.names.addAll(names);
+        return copy;
+    }
+
+    int intern(String name) {
+        if (name == null) {
+            return PackedSlots.EMPTY;
+        }
+        Integer code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        if (names.size() == PackedSlots.MAX_CODE) {
+            return PackedSlots.MAX_CODE;
+        }
+        code = names.size();
+        codes.put(name, code);
+        names.add(name);
+        return code;
+    }
+
+    /** Code of a known name, or MAX_CODE for anything else. */
+    int code(String name) {
+        if (name == null) {
+            return PackedSlots.EMPTY;
+        }
+        Integer code = codes.get(name);
+        return code != null ? code : PackedSlots.MAX_CODE;
+    }
+
+    String name(int code) {
+        if (code == PackedSlots.MAX_CODE && names.size() <= code) {
+            return OTHER;
+        }
+        return names.get(code);
+    }
+
+    int size() {
+        return names.size() - 1;
+    }
+
+    List<String> decode(PackedSlots slots, boolean trimEmpty) {
+        List<String> result = new ArrayList<>(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            result.add(name(slots.get(i)));
+        }
+        if (trimEmpty) {
+            while (!result.isEmpty() && result.get(result.size() - 1) == null) {
+                result.remove(result.size() - 1);
+            }
+        }
+        return result;
+    }
+}